@@ -22,15 +22,12 @@ public class App {
             .withKey("private", JobType.COLLECT)
             .addJar(1, "./testjars/bfcarm.jar");
 
-        // Add mappers.
-        for (int i = 1; i <= 1000; i++) {
-            var job = JobBuilder.newInstance(i, 1, JobType.SLOG)
-                .setJobData(i) // input is the number to test
-                .setRedundancyCount(1)
-                .setProperty("Xclass", "bfcarm.Test")
-                .build();
-            jmBuilder.addJob(i, job);
-        }
+        // Add mappers, as one family: jobs 1 to 1000 share a template, and their input is the number to test.
+        var mapper = JobBuilder.newInstance(1, 1, JobType.SLOG)
+            .setRedundancyCount(1)
+            .setProperty("Xclass", "bfcarm.Test")
+            .build();
+        jmBuilder.addJobFamily(1, 1001, mapper, i -> (int) i);
 
         // Add reducers
         for (int i = 0; i < 10; i++) {
@@ -0,0 +1,73 @@
+package smolrx;
+
+import java.io.Serializable;
+import java.util.zip.Deflater;
+
+/**
+ * Decides how the frames sent on a channel are compressed.
+ * The server chooses a policy and announces it in ProtocolConfig; each frame records its own codec, so the receiver needs no configuration.
+ */
+public final class CompressionPolicy implements Serializable {
+    private static final long serialVersionUID = 0x5eedc0decL;
+
+    /**
+     * Deflate with the preset dictionary at the default level, for frames of at least 64 bytes.
+     */
+    public static final CompressionPolicy DEFAULT = new CompressionPolicy(FrameCodec.DEFLATE_DICT, Deflater.DEFAULT_COMPRESSION, 64);
+
+    /**
+     * Never compress.
+     */
+    public static final CompressionPolicy NONE = new CompressionPolicy(FrameCodec.NONE, Deflater.NO_COMPRESSION, 0);
+
+    /**
+     * Codec for frames worth compressing.
+     */
+    final FrameCodec codec;
+
+    /**
+     * Deflate level, from 0 to 9, or -1 for the default level.
+     */
+    final int level;
+
+    /**
+     * Frames shorter than this many bytes are sent without compression.
+     */
+    final int minSize;
+
+    /**
+     * Create a new compression policy.
+     * @param codec Codec for frames worth compressing.
+     * @param level Deflate level, from 0 to 9, or -1 for the default level. Ignored by FrameCodec.NONE.
+     * @param minSize Frames shorter than this many bytes are sent without compression.
+     */
+    public CompressionPolicy(FrameCodec codec, int level, int minSize) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid deflate level: " + level);
+        }
+        this.codec = codec;
+        this.level = level;
+        this.minSize = minSize;
+    }
+
+    public FrameCodec getCodec() {
+        return codec;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    @Override
+    public String toString() {
+        return "CompressionPolicy{" +
+                "codec=" + codec +
+                ", level=" + level +
+                ", minSize=" + minSize +
+                '}';
+    }
+}
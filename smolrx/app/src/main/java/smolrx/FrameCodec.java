@@ -0,0 +1,40 @@
+package smolrx;
+
+/**
+ * Encodings a frame's plaintext may be sent in. The codec is chosen per frame by the sender and recorded in the frame flags.
+ */
+public enum FrameCodec {
+    /**
+     * Plaintext is sent as-is. Used for small frames, and for data that is already compressed, such as jars.
+     */
+    NONE((byte) 0),
+    /**
+     * Plaintext is deflated.
+     */
+    DEFLATE((byte) 1),
+    /**
+     * Plaintext is deflated with a preset dictionary of serialized protocol messages, so that class descriptors compress even in short messages.
+     */
+    DEFLATE_DICT((byte) 2);
+
+    /**
+     * Identifier carried in the frame flags.
+     */
+    final byte id;
+
+    FrameCodec(byte id) {
+        this.id = id;
+    }
+
+    /**
+     * Find the codec with the given identifier.
+     * @param id The identifier read from the frame flags.
+     * @return The codec, or null if no such codec exists.
+     */
+    static FrameCodec fromId(int id) {
+        for (var codec : FrameCodec.values()) {
+            if (codec.id == id) return codec;
+        }
+        return null;
+    }
+}
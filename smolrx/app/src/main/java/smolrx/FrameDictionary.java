@@ -0,0 +1,72 @@
+package smolrx;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import smolrx.jobs.JobBuilder;
+import smolrx.jobs.JobMetadata;
+import smolrx.jobs.JobType;
+import smolrx.msg.BulkInputs;
+import smolrx.msg.BulkPush;
+import smolrx.msg.InputRequest;
+import smolrx.msg.JarRequest;
+import smolrx.msg.JobRequest;
+import smolrx.msg.Joblisting;
+import smolrx.msg.PushResult;
+import smolrx.msg.SignOff;
+import smolrx.msg.Termination;
+
+/**
+ * Preset deflate dictionary for FrameCodec.DEFLATE_DICT, made of sample protocol messages as written by ObjectOutputStream.
+ * Short messages are mostly class descriptors, which then compress to back-references into the dictionary.
+ * Both ends build the dictionary from the same classes; zlib checks its Adler-32 on inflate, so a mismatch fails loudly rather than corrupting data.
+ */
+final class FrameDictionary {
+
+    /**
+     * The dictionary. Most frequent messages come last, since deflate encodes nearer matches more cheaply.
+     */
+    static final byte[] BYTES = build();
+
+    private FrameDictionary() {}
+
+    private static byte[] build() {
+        var results = new HashMap<Long, Object>();
+        results.put(1L, Boolean.TRUE);
+        results.put(2L, "result");
+        results.put(3L, 3L);
+        results.put(4L, 4);
+
+        var jobIds = new ArrayList<>(List.of(1L));
+        var jobInfos = new ArrayList<>(List.of(JobBuilder.newInstance(0, 1, JobType.SLOG).build()));
+        var jobMetas = new ArrayList<>(List.of(new JobMetadata()));
+
+        Object[] samples = {
+            Termination.normal(),
+            new SignOff(),
+            new JarRequest(1, "key"),
+            new Joblisting(jobIds, jobInfos, jobMetas),
+            new PushResult(1, "key", 1L),
+            new InputRequest("key", 1, 2, new ArrayList<>(List.of(3L))),
+            new JobRequest(0, 100, "key"),
+            new BulkInputs(results, 0),
+            new BulkPush(results, "key"),
+        };
+
+        var bytes = new ByteArrayOutputStream();
+        try {
+            for (var sample : samples) {
+                var oos = new ObjectOutputStream(bytes);
+                oos.writeObject(sample);
+                oos.flush();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to build frame dictionary", e);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,37 @@
+package smolrx;
+
+/**
+ * Key-exchange schemes a client may propose when opening a secure channel.
+ */
+public enum HandshakeMode {
+    /**
+     * Server generates an ephemeral RSA-2048 key pair, client sends an AES key encrypted with RSA-OAEP.
+     * Key pair generation dominates the cost of this handshake.
+     */
+    RSA_OAEP((byte) 0x01),
+    /**
+     * Both peers exchange ephemeral X25519 public keys, and derive the AES key from the shared secret using HKDF-SHA256.
+     */
+    X25519((byte) 0x02);
+
+    /**
+     * Identifier sent over the wire.
+     */
+    final byte id;
+
+    HandshakeMode(byte id) {
+        this.id = id;
+    }
+
+    /**
+     * Find the handshake mode with the given wire identifier.
+     * @param id The identifier read from the wire.
+     * @return The handshake mode, or null if no such mode exists.
+     */
+    static HandshakeMode fromId(byte id) {
+        for (var mode : HandshakeMode.values()) {
+            if (mode.id == id) return mode;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,69 @@
+package smolrx;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * HMAC-based key derivation (RFC 5869) over SHA-256.
+ */
+final class Hkdf {
+
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int HASH_LEN = 32;
+
+    private Hkdf() {}
+
+    /**
+     * Extract a pseudo-random key from the input keying material.
+     * @param salt Optional salt; an all-zero salt is used if null or empty.
+     * @param ikm The input keying material.
+     * @return The pseudo-random key.
+     * @throws NoSuchAlgorithmException If HmacSHA256 is unavailable.
+     * @throws InvalidKeyException If the salt could not be used as a MAC key.
+     */
+    static byte[] extract(byte[] salt, byte[] ikm) throws NoSuchAlgorithmException, InvalidKeyException {
+        if (salt == null || salt.length == 0) salt = new byte[HASH_LEN];
+        var mac = Mac.getInstance(MAC_ALGORITHM);
+        mac.init(new SecretKeySpec(salt, MAC_ALGORITHM));
+        return mac.doFinal(ikm);
+    }
+
+    /**
+     * Expand a pseudo-random key into output keying material of the requested length.
+     * @param prk The pseudo-random key, usually from `extract`.
+     * @param info Context and application specific information.
+     * @param length Number of bytes to produce. At most 255 * 32.
+     * @return The output keying material.
+     * @throws NoSuchAlgorithmException If HmacSHA256 is unavailable.
+     * @throws InvalidKeyException If the pseudo-random key could not be used as a MAC key.
+     */
+    static byte[] expand(byte[] prk, byte[] info, int length) throws NoSuchAlgorithmException, InvalidKeyException {
+        if (length > 255 * HASH_LEN) throw new IllegalArgumentException("HKDF output too long: " + length);
+        var mac = Mac.getInstance(MAC_ALGORITHM);
+        mac.init(new SecretKeySpec(prk, MAC_ALGORITHM));
+
+        var okm = new byte[length];
+        var block = new byte[0];
+        int offset = 0;
+        for (int i = 1; offset < length; i++) {
+            mac.update(block);
+            mac.update(info);
+            mac.update((byte) i);
+            block = mac.doFinal();
+            int n = Math.min(block.length, length - offset);
+            System.arraycopy(block, 0, okm, offset, n);
+            offset += n;
+        }
+        return okm;
+    }
+
+    /**
+     * Extract-then-expand in one call.
+     */
+    static byte[] derive(byte[] salt, byte[] ikm, byte[] info, int length) throws NoSuchAlgorithmException, InvalidKeyException {
+        return expand(extract(salt, ikm), info, length);
+    }
+}
@@ -7,10 +7,14 @@ import java.lang.reflect.InvocationTargetException;
 import java.net.MalformedURLException;
 import java.net.Socket;
 import java.security.InvalidAlgorithmParameterException;
+import java.security.DigestOutputStream;
 import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -31,18 +35,20 @@ import javax.crypto.IllegalBlockSizeException;
 
 import smolrx.jobs.JobInfo;
 import smolrx.jobs.JobType;
-import smolrx.msg.BulkInputs;
 import smolrx.msg.BulkPush;
 import smolrx.msg.BulkResults;
-import smolrx.msg.InputRequest;
+import smolrx.msg.ClaimWork;
+import smolrx.msg.ClientHello;
+import smolrx.msg.ClientMessage;
 import smolrx.msg.InspectBlock;
 import smolrx.msg.JarRequest;
-import smolrx.msg.JobRequest;
 import smolrx.msg.Joblisting;
 import smolrx.msg.ProtocolConfig;
+import smolrx.msg.PushAck;
 import smolrx.msg.PushResult;
 import smolrx.msg.SignOff;
 import smolrx.msg.Termination;
+import smolrx.msg.WorkBatch;
 
 public class ParallelClient implements Runnable {
     private static final int MAX_CONCURRENT_JOBS = Runtime.getRuntime().availableProcessors();
@@ -57,6 +63,16 @@ public class ParallelClient implements Runnable {
     private final String roleKey;
     private ProtocolConfig config;
 
+    /**
+     * Slog jobs per second this JVM ran in its last session, advertised in the next one; 0 until measured.
+     */
+    private static volatile double jobsPerSecond = 0;
+
+    /**
+     * Jars downloaded by this client, by the hex SHA-256 of their contents; deleted on exit.
+     */
+    private final Map<String, File> jars = new HashMap<>();
+
     public ParallelClient(String hostName, int serverPort, int minPriority, int maxJobIds, String roleKey) {
         this.hostName = hostName;
         this.serverPort = serverPort;
@@ -77,15 +93,17 @@ public class ParallelClient implements Runnable {
         try (Socket socket = new Socket(hostName, serverPort)) {
             SecureChannel channel = SecureChannel.openServerChannel(socket);
             config = initializeConnection(channel);
+            channel.sendObject(ClientHello.ofRuntime(jobsPerSecond));
             
-            Joblisting jobListing = requestJobListing(channel);
+            WorkBatch batch = claimWork(channel);
+            Joblisting jobListing = batch.toListing();
             JobType jobType = determineJobType(jobListing);
             
             if (null == jobType) {
                 throw new RuntimeException("Unsupported job type: " + jobType);
             } else switch (jobType) {
-                case SLOG -> processSlogJobs(channel, completionService, jobListing);
-                case COLLECT -> processCollectorJobs(channel, completionService, jobListing);
+                case SLOG -> processSlogJobs(channel, completionService, batch);
+                case COLLECT -> processCollectorJobs(channel, completionService, batch);
                 default -> throw new RuntimeException("Unsupported job type: " + jobType);
             }
             
@@ -104,18 +122,20 @@ public class ParallelClient implements Runnable {
         if (!(configuration instanceof ProtocolConfig)) {
             throw new RuntimeException("Invalid protocol config object received.");
         }
+        channel.applyConfig((ProtocolConfig) configuration);
         return (ProtocolConfig) configuration;
     }
 
-    private Joblisting requestJobListing(SecureChannel channel) throws IOException, ClassNotFoundException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, InvalidAlgorithmParameterException {
-        LOGGER.info("Requesting job listing...");
-        channel.sendObject(new JobRequest(minPriority, maxJobIds, roleKey));
-        
-        Object response = channel.readObject();
+    /**
+     * Claim jobs along with their inputs and program hashes, in one round trip.
+     */
+    private WorkBatch claimWork(SecureChannel channel) throws IOException, ClassNotFoundException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, InvalidAlgorithmParameterException {
+        LOGGER.info("Claiming work...");
+        Object response = channel.request(new ClaimWork(minPriority, maxJobIds, roleKey));
         if (response instanceof Termination term) {
             throw new RuntimeException("Server terminated session: " + term.getCause());
         }
-        return (Joblisting) response;
+        return (WorkBatch) response;
     }
 
     private JobType determineJobType(Joblisting jobListing) {
@@ -126,36 +146,39 @@ public class ParallelClient implements Runnable {
     }
 
     private void processSlogJobs(SecureChannel channel, CompletionService<Object> completionService, 
-                               Joblisting jobListing) throws Exception {
+                               WorkBatch batch) throws Exception {
+        Joblisting jobListing = batch.toListing();
         determineJobIdRange(jobListing);
-        BulkInputs bulkInputs = requestBulkInputs(channel);
-        Map<Long, Map<Long, Object>> programToJobs = groupJobsByProgram(jobListing, bulkInputs);
+        Map<Long, Map<Long, Object>> programToJobs = groupJobsByProgram(jobListing, batch.getInputs());
         Map<Long, JobInfo> jobInfoMap = createJobInfoMap(jobListing);
+        long running = 0;
+        int ran = 0;
         for (Map.Entry<Long, Map<Long, Object>> entry : programToJobs.entrySet()) {
             Long programId = entry.getKey();
             Map<Long, Object> jobsForProgram = entry.getValue();
             
-            File jarFile = downloadJarFile(channel, programId);
+            File jarFile = downloadJarFile(channel, programId, batch.getProgramHashes().get(programId));
             String className = determineClassName(jobsForProgram, jobInfoMap);
             logJarContents(jarFile);
             
+            long t0 = System.nanoTime();
             HashMap<Long, Object> results = processSlogJobs(completionService, jarFile, className, jobsForProgram);
+            running += System.nanoTime() - t0;
+            ran += jobsForProgram.size();
             sendResults(channel, results);
-            jarFile.delete(); // Clean up temp file
         }
+        if (ran > 0) jobsPerSecond = ran * 1e9 / Math.max(1, running);
     }
     private void processCollectorJobs(SecureChannel channel, CompletionService<Object> completionService,
-                                    Joblisting jobListing) throws Exception {
+                                    WorkBatch batch) throws Exception {
+        Joblisting jobListing = batch.toListing();
         determineJobIdRange(jobListing);
         Map<Long, JobInfo> jobInfoMap = createJobInfoMap(jobListing);
-        Map<Long, File> programJarMap = downloadProgramJars(channel, jobListing);
+        Map<Long, File> programJarMap = downloadProgramJars(channel, batch);
         
         HashMap<Long, Object> results = processCollectorJobs(completionService, channel, jobInfoMap, programJarMap);
         LOGGER.log(Level.INFO, "Collected results: {0}", results);
         sendResults(channel, results);
-        
-        // Clean up temp files
-        programJarMap.values().forEach(File::delete);
     }
 
     // ===== SLOG-specific methods =====
@@ -166,31 +189,7 @@ public class ParallelClient implements Runnable {
         }
     }
 
-    private BulkInputs requestBulkInputs(SecureChannel channel) throws IOException, ClassNotFoundException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, InvalidAlgorithmParameterException {
-        LOGGER.log(Level.INFO, "Requesting bulk inputs in range: {0} to {1}", new Object[]{minJobId, maxJobId});
-
-        long bulkRequestLimit = config.getBulkRequestLimit();
-        long i = 0;
-        HashMap<Long, Object> inputs = new HashMap<>();
-        while(minJobId + i < maxJobId){
-            channel.sendObject(new InputRequest(roleKey, minJobId + i, (maxJobId < minJobId + i + bulkRequestLimit) ? maxJobId + 1: minJobId + i + bulkRequestLimit + 1, new ArrayList<>()));
-            
-            Object response = channel.readObject();
-            if (response instanceof Termination term) {
-                throw new RuntimeException("Server terminated session: " + term.getCause());
-            }
-            
-            BulkInputs bulkInputTemp = (BulkInputs) response;
-            Objects.requireNonNull(bulkInputTemp, "BulkInputs must not be null");
-            inputs.putAll(bulkInputTemp.getInputs());
-            LOGGER.log(Level.INFO, "Received {0} bulk inputs.", bulkInputTemp.getInputs().size());
-            i += bulkRequestLimit;
-        }
-        BulkInputs bulkInputs = new BulkInputs(inputs, 2);
-        return bulkInputs;
-    }
-
-    private Map<Long, Map<Long, Object>> groupJobsByProgram(Joblisting jobListing, BulkInputs bulkInputs) {
+    private Map<Long, Map<Long, Object>> groupJobsByProgram(Joblisting jobListing, Map<Long, Object> inputs) {
         Map<Long, Map<Long, Object>> programToJobs = new HashMap<>();
         List<Long> jobIds = jobListing.getJobIDs();
         List<JobInfo> jobInfos = jobListing.getJobInfos();
@@ -200,7 +199,7 @@ public class ParallelClient implements Runnable {
             if (jobId < minJobId || jobId > maxJobId) continue;
             
             JobInfo info = jobInfos.get(i);
-            Object input = bulkInputs.getInputs().get(jobId);
+            Object input = inputs.get(jobId);
             programToJobs.computeIfAbsent(info.getProgramId(), k -> new HashMap<>()).put(jobId, input);
         }
         return programToJobs;
@@ -250,13 +249,13 @@ public class ParallelClient implements Runnable {
     }
 
     // ===== COLLECTOR-specific methods =====
-    private Map<Long, File> downloadProgramJars(SecureChannel channel, Joblisting jobListing) 
+    private Map<Long, File> downloadProgramJars(SecureChannel channel, WorkBatch batch) 
             throws IOException, ClassNotFoundException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, InvalidAlgorithmParameterException {
         Map<Long, File> programJarMap = new HashMap<>();
-        for (JobInfo jobInfo : jobListing.getJobInfos()) {
-            Long programId = jobInfo.getProgramId();
+        for (int i = 0; i < batch.getJobIDs().size(); i++) {
+            Long programId = batch.getJobInfos().get(i).getProgramId();
             if (!programJarMap.containsKey(programId)) {
-                programJarMap.put(programId, downloadJarFile(channel, programId));
+                programJarMap.put(programId, downloadJarFile(channel, programId, batch.getProgramHashes().get(programId)));
             }
         }
         return programJarMap;
@@ -279,19 +278,17 @@ public class ParallelClient implements Runnable {
             long maxId = Collections.max(jobIds);
             long bulkInspectLimit = config.getBulkInspectLimit();
             long i = 0;
+            List<ClientMessage> blocks = new ArrayList<>();
             while(minId + i < maxId) {
-                InspectBlock inspectBlock = new InspectBlock(1, minId + i, (minId + i < maxId - bulkInspectLimit ? minId + i + bulkInspectLimit : maxId), new ArrayList<>(), roleKey);
-                LOGGER.log(Level.INFO, "Requesting block of results for jobId {0}", jobId);
-                channel.sendObject(inspectBlock);
-                Object response = channel.readObject();
-                if (response instanceof Termination term) {
-                    throw new RuntimeException("Server terminated session: " + term.getCause());
-                }
+                blocks.add(new InspectBlock(1, minId + i, (minId + i < maxId - bulkInspectLimit ? minId + i + bulkInspectLimit : maxId), new ArrayList<>(), roleKey));
+                i += bulkInspectLimit;
+            }
+            LOGGER.log(Level.INFO, "Requesting {0} blocks of results for jobId {1}", new Object[]{blocks.size(), jobId});
+            for (Object response : requestAll(channel, blocks)) {
                 BulkResults bulkResults = (BulkResults) response;
                 Objects.requireNonNull(bulkResults, "BulkResults must not be null");
                 Map<Long, Object[]> recievedResults = bulkResults.getResults();
                 inputResults.putAll(recievedResults);
-                i += bulkInspectLimit;
             }
             
             Function<Object, Object> fobj;
@@ -355,14 +352,28 @@ public class ParallelClient implements Runnable {
 
     private Object processDependency(SecureChannel channel, Function<Object, Object> reducer, Object input,
         Object result, Long dep) throws Exception {
+        // Reducers come from the program's jar and need not be thread-safe; run one at a time per channel, as before.
         synchronized (channel) {
-        LOGGER.log(Level.FINE, "Input: {0}, Results: {1}", new Object[]{dep, result});
-        Object redInput = new Object[]{input, result};
-        return reducer.apply(redInput);
-        }   
+            LOGGER.log(Level.FINE, "Input: {0}, Results: {1}", new Object[]{dep, result});
+            Object redInput = new Object[]{input, result};
+            return reducer.apply(redInput);
+        }
     }
 
     // ===== Common utility methods =====
+    /**
+     * Pipeline requests on the channel, and collect their replies in the order of the requests.
+     */
+    private List<Object> requestAll(SecureChannel channel, List<ClientMessage> requests) throws IOException, ClassNotFoundException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, InvalidAlgorithmParameterException {
+        List<Object> replies = channel.requestAll(requests);
+        for (Object response : replies) {
+            if (response instanceof Termination term) {
+                throw new RuntimeException("Server terminated session: " + term.getCause());
+            }
+        }
+        return replies;
+    }
+
     private Map<Long, JobInfo> createJobInfoMap(Joblisting jobListing) {
         Map<Long, JobInfo> jobInfoMap = new HashMap<>();
         for (int i = 0; i < jobListing.getJobIDs().size(); i++) {
@@ -372,20 +383,45 @@ public class ParallelClient implements Runnable {
         return jobInfoMap;
     }
 
-    private File downloadJarFile(SecureChannel channel, Long programId) throws IOException, ClassNotFoundException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, InvalidAlgorithmParameterException {
+    /**
+     * Get the jar of a program, downloading it only if no jar with the given hash was downloaded before.
+     * @param hash The hex SHA-256 of the jar, from the WorkBatch.
+     */
+    private File downloadJarFile(SecureChannel channel, Long programId, String hash) throws IOException, ClassNotFoundException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, InvalidAlgorithmParameterException {
+        File cached = jars.get(hash);
+        if (cached != null && cached.exists()) {
+            LOGGER.log(Level.INFO, "Using cached JAR for program ID {0}", programId);
+            return cached;
+        }
         LOGGER.log(Level.INFO, "Downloading JAR for program ID {0}", programId);
-        channel.sendObject(new JarRequest(minJobId, roleKey));
+        // The input came with the claim; ask for the jar alone, by its hash, so that it is served even if the batch's jobs have finished elsewhere.
+        channel.sendObject(JarRequest.forProgram(programId, hash, roleKey));
         
         File jarFile = File.createTempFile("smolrx", ".jar");
         jarFile.deleteOnExit();
         
-        try (FileOutputStream fos = new FileOutputStream(jarFile)) {
-            Object programInput = channel.readObject();
-            if (programInput instanceof Termination term) {
-                throw new RuntimeException("Server terminated: " + term.getCause());
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+        Object refusal;
+        try (DigestOutputStream out = new DigestOutputStream(new FileOutputStream(jarFile), digest)) {
+            refusal = channel.readStreamOrObject(out);
+        }
+        if (refusal != null) {
+            jarFile.delete();
+            if (refusal instanceof Termination term) {
+                throw new RuntimeException("Server refused JAR for program ID " + programId + ": " + term.getCause());
             }
-            channel.readStream(fos);
+            throw new RuntimeException("Expected JAR for program ID " + programId + ", but received " + refusal);
         }
+        String actual = HexFormat.of().formatHex(digest.digest());
+        if (!actual.equals(hash)) {
+            throw new RuntimeException("JAR for program ID " + programId + " does not match its hash");
+        }
+        jars.put(actual, jarFile);
         return jarFile;
     }
 
@@ -409,7 +445,7 @@ public class ParallelClient implements Runnable {
     }
 
     private void sendResults(SecureChannel channel, HashMap<Long, Object> results)
-        throws IOException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, InvalidAlgorithmParameterException {
+        throws IOException, ClassNotFoundException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, InvalidAlgorithmParameterException {
 
         if (results.isEmpty()) {
             LOGGER.warning("No results to send.");
@@ -418,6 +454,7 @@ public class ParallelClient implements Runnable {
 
         long bulkPushLimit = config.getBulkPushLimit();
         long currentStart = minJobId;
+        List<ClientMessage> pushes = new ArrayList<>();
 
         while (currentStart <= maxJobId) {
             long currentEnd = Math.min(currentStart + bulkPushLimit - 1, maxJobId);
@@ -430,13 +467,22 @@ public class ParallelClient implements Runnable {
             }
 
             if (!chunk.isEmpty()) {
-                channel.sendObject(new BulkPush(chunk, roleKey));
-                LOGGER.log(Level.INFO, "Sent results for job ID range [{0} - {1}] (count: {2})",
-                        new Object[]{currentStart, currentEnd, chunk.size()});
+                pushes.add(new BulkPush(chunk, roleKey).withAck());
             }
 
             currentStart = currentEnd + 1;
         }
+
+        // Pipelined; each chunk is acknowledged once stored, so a lost or rejected chunk is noticed here rather than never.
+        List<Object> acks = requestAll(channel, pushes);
+        for (int i = 0; i < pushes.size(); i++) {
+            BulkPush push = (BulkPush) pushes.get(i);
+            PushAck ack = (PushAck) acks.get(i);
+            if (ack.getStored() + ack.getDropped() != push.getJobs().size()) {
+                LOGGER.log(Level.WARNING, "Server stored {0} of {1} results", new Object[]{ack.getStored(), push.getJobs().size()});
+            }
+        }
+        LOGGER.log(Level.INFO, "Sent {0} results in {1} acknowledged pushes", new Object[]{results.size(), pushes.size()});
     }
 
 
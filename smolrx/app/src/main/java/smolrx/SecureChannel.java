@@ -1,38 +1,64 @@
 package smolrx;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
 import java.io.OutputStream;
+import java.io.StreamCorruptedException;
 import java.net.Socket;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.KeyFactory;
 import java.security.KeyPairGenerator;
 import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
 import java.security.SecureRandom;
 import java.security.spec.AlgorithmParameterSpec;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.X509EncodedKeySpec;
-import java.util.zip.DeflaterInputStream;
-import java.util.zip.DeflaterOutputStream;
-import java.util.zip.InflaterInputStream;
-import java.util.zip.InflaterOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.KeyAgreement;
 import javax.crypto.KeyGenerator;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
+import javax.crypto.ShortBufferException;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
+import smolrx.msg.BulkPush;
+import smolrx.msg.JarRequest;
+import smolrx.msg.MessageCodec;
+import smolrx.msg.ProtocolConfig;
+import smolrx.msg.PushResult;
+import smolrx.msg.SignOff;
+import smolrx.msg.Termination;
+
 /**
  * Implement protocol-details pertaining to establishing a secure channel between client and servlet.
  */
@@ -43,75 +69,859 @@ public class SecureChannel implements Closeable {
     // TODO: Re-factor all methods to use `ChannelException` and group channel-related errors into one. This will reduce try-catch gore.
 
     private static final int KEYSIZE_B = 256;
-    private static final String ALGORITHM = "RSA"; // Ideally "X25519". RSA for now.
+    private static final String ALGORITHM = "RSA";
+    private static final String ECDH_ALGORITHM = "X25519";
     private static final String SYM_ALGORITHM = "AES";
     private static final String ALGORITHM_TRANSFORMATION = "RSA/ECB/OAEPWithSHA-1AndMGF1Padding";
     private static final String SYM_ALGORIHTM_TRANSFORMATION = "AES/GCM/NoPadding";
-    private static final int BUFFER_SIZE = 4096; // < 32767
+    private static final int SYM_KEYSIZE_B = 32; // AES-256
+    private static final int MAX_HANDSHAKE_BLOCK = 4096;
+    private static final byte[] HKDF_INFO = "smolrx x25519 aes-gcm".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] RESUME_INFO = "smolrx resume aes-gcm".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] RESUMPTION_SECRET_INFO = "smolrx resumption secret".getBytes(StandardCharsets.US_ASCII);
+    private static final int NONCE_SIZE = 32;
+
+    /**
+     * Handshake identifier of a resumption attempt. Never proposed on its own; the client falls back to a full handshake if the ticket is rejected.
+     */
+    private static final byte RESUME_ID = 0x7f;
+
+    /**
+     * Handshake mode proposed by clients unless specified otherwise.
+     */
+    public static final HandshakeMode DEFAULT_HANDSHAKE = HandshakeMode.X25519;
 
     private static final int IV_SIZE = 12; // 96-bits; optimal for GCM.
     private static final int TAG_SIZE = 128; // 128-bits; optimal for GCM.
+    private static final int TAG_SIZE_B = TAG_SIZE / 8;
 
     /**
-     * Generate a random IV for the cipher.
-     * @param iv The byte array to be filled with the IV.
-     * @return The algorithm parameter spec for the cipher.
+     * Maximum plaintext carried by one frame. Messages and streams larger than this are split across frames, so memory per channel is fixed regardless of payload size.
      */
-    private static AlgorithmParameterSpec generateSpec(byte[] iv) {
-        new SecureRandom().nextBytes(iv); // randomize IV.
-        return new GCMParameterSpec(TAG_SIZE, iv); // Use 128-bit tag.
+    public static final int FRAME_SIZE = 16 * 1024;
+
+    /**
+     * A frame whose compressed form would not be smaller than its plaintext is sent uncompressed, so ciphertext never exceeds a frame plus its tag.
+     */
+    private static final int MAX_CIPHERTEXT_SIZE = FRAME_SIZE + TAG_SIZE_B;
+    private static final int FRAME_HEADER_SIZE = 1 + 4; // flags, then length of ciphertext.
+
+    /**
+     * Frame flag marking the last frame of a message or stream. Authenticated, so a message cannot be truncated at a frame boundary.
+     */
+    private static final byte FLAG_FIN = 0x01;
+
+    /**
+     * Frame flag marking a message written by the channel's session ObjectOutputStream, rather than by a fresh stream of its own.
+     */
+    private static final byte FLAG_SESSION = 0x08;
+
+    /**
+     * Frame flag marking a message encoded with MessageCodec rather than written with `writeObject`.
+     */
+    private static final byte FLAG_BINARY = 0x10;
+
+    /**
+     * Frame flag marking a message that belongs to a numbered request; the first 4 bytes of its plaintext hold the request ID.
+     * Replies carry the ID of their request, so several requests may be in flight on one channel and answered out of order.
+     */
+    private static final byte FLAG_REQUEST = 0x20;
+
+    /**
+     * Frame flag marking the frames of a stream, e.g. a jar, so that a reader expecting one can tell a message sent in its place, such as a Termination.
+     */
+    private static final byte FLAG_STREAM = 0x40;
+
+    /**
+     * Frame flag marking the final frame of a message the sender failed to write, e.g. because a payload is not serializable.
+     * The reader discards the message, and both ends start their session streams afresh, so the channel stays in step.
+     */
+    private static final byte FLAG_ABORT = (byte) 0x80;
+
+    /**
+     * Class descriptors kept per session stream; classes beyond this many are described in full every time.
+     */
+    private static final int MAX_SESSION_DESCRIPTORS = 4096;
+
+    /**
+     * Largest plaintext of a frame in a stream, when large stream frames are negotiated.
+     */
+    public static final int MAX_STREAM_FRAME_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * Ciphers used to seal stream frames in parallel; a Cipher is not thread-safe, so each worker thread has its own.
+     */
+    private static final ThreadLocal<Cipher> SEAL_CIPHER = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance(SecureChannel.SYM_ALGORIHTM_TRANSFORMATION);
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+            throw new IllegalStateException("AES-GCM unavailable", e);
+        }
+    });
+
+    /**
+     * Frame flag bits holding the FrameCodec of the frame.
+     */
+    private static final int CODEC_SHIFT = 1;
+    private static final int CODEC_MASK = 0x03;
+
+    /**
+     * Frames whose sampled byte entropy, in bits per byte, is at least this are taken to be compressed or encrypted already.
+     */
+    private static final double INCOMPRESSIBLE_ENTROPY = 7.2;
+
+    /**
+     * Number of bytes sampled to estimate the entropy of a frame.
+     */
+    private static final int ENTROPY_SAMPLE_SIZE = 1024;
+
+    /**
+     * First byte of every nonce used by either end. Both directions share a key, so their nonces must never collide.
+     */
+    private static final byte SERVER_NONCE_PREFIX = 0x01;
+    private static final byte CLIENT_NONCE_PREFIX = 0x02;
+
+    private final Socket conn;
+    private final SecretKey secretKey;
+
+    /**
+     * True if this channel was opened by presenting a session ticket.
+     */
+    private boolean resumed = false;
+
+    /**
+     * Frames sent on this channel. Touched only by the thread holding `sendLock`.
+     */
+    private final RecordOutputStream recordOut;
+
+    /**
+     * Frames received on this channel. Touched only by the thread reading from this channel; see `request` for many threads sharing the client end.
+     */
+    private final RecordInputStream recordIn;
+
+    /**
+     * If true, objects are sent through one ObjectOutputStream kept for the whole session.
+     */
+    private boolean sessionStreams = false;
+
+    /**
+     * If true, protocol messages are sent in the binary encoding of MessageCodec.
+     */
+    private boolean binaryCodec = false;
+
+    /**
+     * Serialization streams kept for the whole session, created with the first message that uses them.
+     */
+    private SessionObjectOutputStream sessionOut;
+    private SessionObjectInputStream sessionIn;
+
+    /**
+     * Request ID that objects sent by the current thread reply to; 0 for none. Set by the servlet for each request it handles concurrently.
+     */
+    private final ThreadLocal<Integer> replyTo = ThreadLocal.withInitial(() -> 0);
+
+    /**
+     * Limits the requests in flight from the client end; null if the server handles one request at a time.
+     */
+    private Semaphore inFlight;
+    private final AtomicInteger lastRequestId = new AtomicInteger();
+
+    /**
+     * Held while a message is written, so messages sent by different threads never interleave.
+     * Locks rather than monitors throughout, since a virtual thread blocked on the socket inside `synchronized` would pin its carrier.
+     */
+    private final ReentrantLock sendLock = new ReentrantLock();
+
+    /**
+     * Replies that arrived for requests whose threads have not collected them yet, and the IDs of requests still awaiting replies.
+     * Whichever waiting thread reads from the channel hands out the replies it reads. Both are guarded by `replyLock`.
+     */
+    private final ReentrantLock replyLock = new ReentrantLock();
+    private final Condition replyArrived = this.replyLock.newCondition();
+    private final HashMap<Integer, Object> replies = new HashMap<>();
+    private final HashSet<Integer> awaiting = new HashSet<>();
+    private boolean readingReplies = false;
+
+    /**
+     * Termination received for a request that no thread awaits; returned to every request made afterwards.
+     */
+    private Termination failure;
+
+    /**
+     * Carries a cryptographic failure through the OutputStream / InputStream interfaces used by serialization.
+     */
+    private static final class CryptoFailure extends IOException {
+        private static final long serialVersionUID = 0xc2f7f41L;
+
+        CryptoFailure(GeneralSecurityException cause) {
+            super(cause);
+        }
+    }
+
+    /**
+     * Signals a message that the peer aborted; it is discarded, and the next message is read in its place.
+     */
+    private static final class MessageAborted extends IOException {
+        private static final long serialVersionUID = 0xab0f7edL;
+
+        MessageAborted() {
+            super("Message aborted by the peer");
+        }
     }
 
     /**
-     * Recover the algorithm parameter spec from the provided IV.
-     * @param iv The IV to be used for the spec..
-     * @return The algorithm parameter spec for the cipher.
+     * Re-throw the cryptographic failure wrapped by `failure` with its original type.
+     * @return `failure` itself, if the cause is of no expected type.
      */
-    private static AlgorithmParameterSpec recoverSpec(byte[] iv) {
+    private static IOException unwrap(CryptoFailure failure) throws InvalidKeyException, IllegalBlockSizeException, BadPaddingException, InvalidAlgorithmParameterException {
+        switch (failure.getCause()) {
+            case InvalidKeyException e -> throw e;
+            case IllegalBlockSizeException e -> throw e;
+            case BadPaddingException e -> throw e;
+            case InvalidAlgorithmParameterException e -> throw e;
+            default -> { return failure; }
+        }
+    }
+
+    /**
+     * Build the GCM parameters for the frame with the given sequence number.
+     * Nonces are implicit: both ends count frames in each direction, so a dropped, replayed or reordered frame fails authentication.
+     * @param iv Array to fill with the nonce; its first byte holds the direction prefix.
+     * @param counter The sequence number of the frame.
+     */
+    private static AlgorithmParameterSpec frameSpec(byte[] iv, long counter) {
+        for (int i = IV_SIZE - 1; i >= IV_SIZE - 8; i--) {
+            iv[i] = (byte) counter;
+            counter >>>= 8;
+        }
         return new GCMParameterSpec(TAG_SIZE, iv); // Use 128-bit tag.
     }
 
-    private final Cipher symCipher; // TODO: Compare re-initialization vs two ciphers.
-    private final Socket conn;
-    private final SecretKey secretKey;
+    /**
+     * Run the cipher into a caller-provided buffer. Buffers are always sized for the output, so a short buffer is a bug.
+     */
+    private static int doFinal(Cipher cipher, byte[] input, int offset, int len, byte[] output, int outOffset) throws IllegalBlockSizeException, BadPaddingException {
+        try {
+            return cipher.doFinal(input, offset, len, output, outOffset);
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException("Channel buffer too small for cipher output", e);
+        }
+    }
+
+    private static void readFully(InputStream in, byte[] buf, int len, String what) throws IOException {
+        if (in.readNBytes(buf, 0, len) != len) {
+            throw new IOException("Failed to read " + what + ".");
+        }
+    }
+
+    /**
+     * Splits written data into frames; each frame is deflated, sealed and written to the socket as soon as it fills.
+     * A message or stream ends with a call to `finish`, which sends the last frame with FLAG_FIN set.
+     */
+    private final class RecordOutputStream extends OutputStream {
+        private final Cipher cipher;
+        private final byte[] iv = new byte[IV_SIZE];
+        private long counter = 0;
+        private final Deflater deflater = new Deflater();
+        private final byte[] plain = new byte[FRAME_SIZE];
+        private final byte[] deflated = new byte[FRAME_SIZE];
+        private final byte[] record = new byte[FRAME_HEADER_SIZE + MAX_CIPHERTEXT_SIZE];
+        private final byte[] aad = new byte[1];
+        private final int[] histogram = new int[256];
+        private int pos = 0;
+        private CompressionPolicy policy = CompressionPolicy.DEFAULT;
+
+        /**
+         * Flags set on every frame of the current message.
+         */
+        byte messageFlags = 0;
+
+        /**
+         * Plaintext size of stream frames, and the number of stream frames sealed at once across cores.
+         */
+        int streamFrameSize = FRAME_SIZE;
+        int parallelism = 1;
+
+        RecordOutputStream(byte noncePrefix) throws NoSuchAlgorithmException, NoSuchPaddingException {
+            this.cipher = Cipher.getInstance(SecureChannel.SYM_ALGORIHTM_TRANSFORMATION);
+            this.iv[0] = noncePrefix;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (this.pos == FRAME_SIZE) this.emit((byte) 0);
+            this.plain[this.pos++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (this.pos == FRAME_SIZE) this.emit((byte) 0);
+                int n = Math.min(len, FRAME_SIZE - this.pos);
+                System.arraycopy(b, off, this.plain, this.pos, n);
+                this.pos += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        /**
+         * Copy everything from `in` into frames, reading directly into the frame buffer.
+         */
+        void writeFrom(InputStream in) throws IOException {
+            while (true) {
+                if (this.pos == FRAME_SIZE) this.emit((byte) 0);
+                int n = in.read(this.plain, this.pos, FRAME_SIZE - this.pos);
+                if (n == -1) return;
+                this.pos += n;
+            }
+        }
+
+        /**
+         * Send whatever is buffered as the final frame of the current message.
+         */
+        void finish() throws IOException {
+            this.emit(FLAG_FIN);
+            SecureChannel.this.conn.getOutputStream().flush();
+        }
+
+        /**
+         * Drop whatever is buffered of the current message, and end it with an empty frame marked with FLAG_ABORT.
+         * Frames of the message already sent are discarded by the reader.
+         */
+        void abort() throws IOException {
+            this.pos = 0;
+            this.messageFlags = 0;
+            this.emit((byte) (FLAG_FIN | FLAG_ABORT));
+            SecureChannel.this.conn.getOutputStream().flush();
+        }
+
+        void setPolicy(CompressionPolicy policy) {
+            this.policy = policy;
+            this.deflater.setLevel(policy.level);
+        }
+
+        /**
+         * Estimate whether the buffered plaintext is worth compressing, from the entropy of an evenly spaced sample of its bytes.
+         */
+        private boolean looksCompressible() {
+            int stride = Math.max(1, this.pos / ENTROPY_SAMPLE_SIZE);
+            int n = 0;
+            Arrays.fill(this.histogram, 0);
+            for (int i = 0; i < this.pos; i += stride, n++) this.histogram[this.plain[i] & 0xff]++;
+            // A small sample cannot reach a high entropy estimate; leave it to the size check after deflating.
+            if (n < ENTROPY_SAMPLE_SIZE / 2) return true;
+            double entropy = 0;
+            for (int count : this.histogram) {
+                if (count == 0) continue;
+                double p = (double) count / n;
+                entropy -= p * Math.log(p);
+            }
+            return entropy / Math.log(2) < INCOMPRESSIBLE_ENTROPY;
+        }
+
+        /**
+         * Compress the buffered plaintext with the codec of the current policy, unless it is too small or looks incompressible.
+         * @return The length of the compressed frame in `deflated`, or -1 if the frame should be sent uncompressed.
+         */
+        private int compress(FrameCodec codec) {
+            if (codec == FrameCodec.NONE || this.pos < this.policy.minSize || !this.looksCompressible()) return -1;
+            this.deflater.reset();
+            if (codec == FrameCodec.DEFLATE_DICT) this.deflater.setDictionary(FrameDictionary.BYTES);
+            this.deflater.setInput(this.plain, 0, this.pos);
+            this.deflater.finish();
+            int zlen = this.deflater.deflate(this.deflated, 0, this.pos);
+            return this.deflater.finished() && zlen < this.pos ? zlen : -1;
+        }
+
+        private void emit(byte flags) throws IOException {
+            var codec = this.policy.codec;
+            int zlen = this.compress(codec);
+            if (zlen == -1) codec = FrameCodec.NONE;
+            flags |= (byte) (this.messageFlags | codec.id << CODEC_SHIFT);
+            byte[] input = zlen == -1 ? this.plain : this.deflated;
+            int inputLen = zlen == -1 ? this.pos : zlen;
+            this.pos = 0;
+
+            try {
+                this.aad[0] = flags;
+                this.cipher.init(Cipher.ENCRYPT_MODE, SecureChannel.this.secretKey, SecureChannel.frameSpec(this.iv, ++this.counter));
+                this.cipher.updateAAD(this.aad);
+                int encLen = SecureChannel.doFinal(this.cipher, input, 0, inputLen, this.record, FRAME_HEADER_SIZE);
+                this.writeRecord(flags, encLen);
+            } catch (InvalidKeyException | InvalidAlgorithmParameterException | IllegalBlockSizeException | BadPaddingException e) {
+                throw new CryptoFailure(e);
+            }
+        }
+
+        /**
+         * Send the contents of the buffer as a complete stream of uncompressed frames.
+         * For data known to be incompressible, e.g. jars: frames skip the entropy check and deflate, and each is copied once, from the buffer into the frame.
+         * The copy is cheaper than letting the cipher read a direct buffer, which allocates a temporary array per call.
+         */
+        void writeStored(ByteBuffer data) throws IOException {
+            if (this.pos != 0) throw new IllegalStateException("Stored stream started inside a message");
+            do {
+                int n = Math.min(FRAME_SIZE, data.remaining());
+                data.get(this.plain, 0, n);
+                byte flags = (byte) (this.messageFlags | FrameCodec.NONE.id << CODEC_SHIFT | (data.hasRemaining() ? 0 : FLAG_FIN));
+                try {
+                    this.aad[0] = flags;
+                    this.cipher.init(Cipher.ENCRYPT_MODE, SecureChannel.this.secretKey, SecureChannel.frameSpec(this.iv, ++this.counter));
+                    this.cipher.updateAAD(this.aad);
+                    int encLen = SecureChannel.doFinal(this.cipher, this.plain, 0, n, this.record, FRAME_HEADER_SIZE);
+                    this.writeRecord(flags, encLen);
+                } catch (InvalidKeyException | InvalidAlgorithmParameterException | IllegalBlockSizeException | BadPaddingException e) {
+                    throw new CryptoFailure(e);
+                }
+            } while (data.hasRemaining());
+            SecureChannel.this.conn.getOutputStream().flush();
+        }
+
+        /**
+         * Send a complete stream of uncompressed frames of up to `streamFrameSize`, reading data from `in`.
+         * Up to `parallelism` frames are read, then sealed concurrently on the common fork-join pool, then written in order.
+         * Frames are independent, since each has its own nonce, so the order in which they are sealed does not matter.
+         * @param in Source of the data.
+         * @param sizeHint Upper bound on the size of the data, if known; buffers are sized to fit it.
+         */
+        void writeLarge(InputStream in, long sizeHint) throws IOException {
+            if (this.pos != 0) throw new IllegalStateException("Stored stream started inside a message");
+            // One more byte than the data, so a frame holding all of it is seen to be the last.
+            int frameSize = sizeHint < this.streamFrameSize ? (int) sizeHint + 1 : this.streamFrameSize;
+            var plains = new byte[this.parallelism][];
+            var records = new byte[this.parallelism][];
+            var lengths = new int[this.parallelism];
+            var flags = new byte[this.parallelism];
+            var counters = new long[this.parallelism];
+            var failure = new AtomicReference<GeneralSecurityException>();
+            boolean last = false;
+            while (!last) {
+                int filled = 0;
+                for (; filled < this.parallelism && !last; filled++) {
+                    if (plains[filled] == null) {
+                        plains[filled] = new byte[frameSize];
+                        records[filled] = new byte[FRAME_HEADER_SIZE + frameSize + TAG_SIZE_B];
+                    }
+                    int n = in.readNBytes(plains[filled], 0, frameSize);
+                    last = n < frameSize;
+                    lengths[filled] = n;
+                    flags[filled] = (byte) (this.messageFlags | FrameCodec.NONE.id << CODEC_SHIFT | (last ? FLAG_FIN : 0));
+                    counters[filled] = ++this.counter;
+                }
+
+                int k = filled;
+                IntConsumer seal = i -> {
+                    try {
+                        this.seal(k == 1 ? this.cipher : SEAL_CIPHER.get(), counters[i], flags[i], plains[i], lengths[i], records[i]);
+                    } catch (GeneralSecurityException e) {
+                        failure.compareAndSet(null, e);
+                    }
+                };
+                if (k == 1) seal.accept(0);
+                else IntStream.range(0, k).parallel().forEach(seal);
+                if (failure.get() != null) throw new CryptoFailure(failure.get());
+
+                var out = SecureChannel.this.conn.getOutputStream();
+                for (int i = 0; i < k; i++) out.write(records[i], 0, FRAME_HEADER_SIZE + lengths[i] + TAG_SIZE_B);
+            }
+            SecureChannel.this.conn.getOutputStream().flush();
+        }
+
+        /**
+         * Seal one frame into `record`, header included. Touches no state of the stream, so frames may be sealed concurrently.
+         */
+        private void seal(Cipher cipher, long counter, byte flags, byte[] plain, int len, byte[] record) throws GeneralSecurityException {
+            var iv = Arrays.copyOf(this.iv, IV_SIZE); // Only the direction prefix is kept; frameSpec overwrites the counter.
+            cipher.init(Cipher.ENCRYPT_MODE, SecureChannel.this.secretKey, SecureChannel.frameSpec(iv, counter));
+            cipher.updateAAD(new byte[]{flags});
+            int encLen = SecureChannel.doFinal(cipher, plain, 0, len, record, FRAME_HEADER_SIZE);
+            record[0] = flags;
+            ByteBuffer.wrap(record, 1, 4).putInt(encLen);
+        }
+
+        /**
+         * Write the header and the ciphertext already in `record` to the socket, in one write.
+         */
+        private void writeRecord(byte flags, int encLen) throws IOException {
+            this.record[0] = flags;
+            ByteBuffer.wrap(this.record, 1, 4).putInt(encLen);
+            SecureChannel.this.conn.getOutputStream().write(this.record, 0, FRAME_HEADER_SIZE + encLen);
+        }
+
+        void end() {
+            this.deflater.end();
+        }
+    }
+
+    /**
+     * Reads frames from the socket on demand, presenting the plaintext of one message or stream at a time.
+     * Reports end-of-stream once the final frame of the current message has been consumed.
+     */
+    private final class RecordInputStream extends InputStream {
+        private final Cipher cipher;
+        private final byte[] iv = new byte[IV_SIZE];
+        private long counter = 0;
+        private final Inflater inflater = new Inflater();
+        private final byte[] header = new byte[FRAME_HEADER_SIZE];
+        private final byte[] record = new byte[MAX_CIPHERTEXT_SIZE];
+        private final byte[] deflated = new byte[FRAME_SIZE];
+        private final byte[] framePlain = new byte[FRAME_SIZE];
+        private final byte[] aad = new byte[1];
+        private int pos = 0;
+        private int limit = 0;
+        private boolean fin = true;
+        private byte flags = 0;
+
+        /**
+         * Plaintext of the current frame; either `framePlain`, or `largePlain` for a large stream frame.
+         */
+        private byte[] plain = this.framePlain;
+
+        /**
+         * Largest plaintext accepted in a stream frame. Buffers for frames larger than FRAME_SIZE are allocated for each message that uses them.
+         */
+        int maxStreamFrameSize = FRAME_SIZE;
+        private byte[] largeRecord;
+        private byte[] largePlain;
+
+        /**
+         * Request ID of the current message; 0 if it belongs to no request.
+         */
+        int requestId = 0;
+
+        RecordInputStream(byte noncePrefix) throws NoSuchAlgorithmException, NoSuchPaddingException {
+            this.cipher = Cipher.getInstance(SecureChannel.SYM_ALGORIHTM_TRANSFORMATION);
+            this.iv[0] = noncePrefix;
+        }
+
+        /**
+         * Start reading the next message. The previous one must have been consumed up to its final frame.
+         */
+        void begin() {
+            this.fin = false;
+            this.pos = this.limit = 0;
+        }
+
+        /**
+         * Check whether the current message was written by the peer's session stream.
+         * Reads the first frame of the message, if it has not been read yet.
+         */
+        boolean isSessionMessage() throws IOException {
+            this.fill();
+            return (this.flags & FLAG_SESSION) != 0;
+        }
+
+        /**
+         * Read the request ID at the start of the current message, if its frames are marked with one. Call after `isSessionMessage`.
+         */
+        void readRequestId() throws IOException {
+            this.requestId = 0;
+            if ((this.flags & FLAG_REQUEST) == 0) return;
+            for (int i = 0; i < 4; i++) {
+                int b = this.read();
+                if (b == -1) throw new EOFException("Message ended inside its request ID");
+                this.requestId = this.requestId << 8 | b;
+            }
+        }
 
-    private SecureChannel(Cipher symCipher, Socket conn, SecretKey secretKey) throws IOException {
+        /**
+         * Check whether the current message is a stream rather than an object. Reads the first frame of the message, if it has not been read yet.
+         */
+        boolean isStream() throws IOException {
+            this.fill();
+            return (this.flags & FLAG_STREAM) != 0;
+        }
+
+        /**
+         * Check whether the current message is encoded with MessageCodec. Call after `isSessionMessage`.
+         */
+        boolean isBinaryMessage() {
+            return (this.flags & FLAG_BINARY) != 0;
+        }
+
+        /**
+         * Discard the rest of the current message, up to and including its final frame.
+         */
+        void skipRest() throws IOException {
+            while (!this.fin) this.next();
+            this.pos = this.limit;
+        }
+
+        /**
+         * Make plaintext available, reading frames as needed.
+         * @return false at the end of the current message.
+         */
+        private boolean fill() throws IOException {
+            while (this.pos == this.limit) {
+                if (this.fin) return false;
+                this.next();
+            }
+            return true;
+        }
+
+        private void next() throws IOException {
+            var in = SecureChannel.this.conn.getInputStream();
+            readFully(in, this.header, FRAME_HEADER_SIZE, "frame header");
+            byte flags = this.header[0];
+            int length = ByteBuffer.wrap(this.header, 1, 4).getInt();
+            var codec = FrameCodec.fromId((flags >> CODEC_SHIFT) & CODEC_MASK);
+            if (codec == null) {
+                throw new IOException("Unknown frame codec: " + ((flags >> CODEC_SHIFT) & CODEC_MASK));
+            }
+            boolean large = length > MAX_CIPHERTEXT_SIZE;
+            if (length < TAG_SIZE_B || (large && (codec != FrameCodec.NONE || length > this.maxStreamFrameSize + TAG_SIZE_B))) {
+                throw new IOException("Invalid length of incoming data: " + length);
+            }
+            if (large && (this.largeRecord == null || this.largeRecord.length < length)) {
+                this.largeRecord = new byte[length];
+                this.largePlain = new byte[length - TAG_SIZE_B];
+            }
+            var record = large ? this.largeRecord : this.record;
+            this.plain = large ? this.largePlain : this.framePlain;
+            readFully(in, record, length, "frame data");
+
+            int dlen;
+            try {
+                this.aad[0] = flags;
+                this.cipher.init(Cipher.DECRYPT_MODE, SecureChannel.this.secretKey, SecureChannel.frameSpec(this.iv, ++this.counter));
+                this.cipher.updateAAD(this.aad);
+                // Uncompressed frames decrypt straight into the plaintext buffer.
+                dlen = SecureChannel.doFinal(this.cipher, record, 0, length, codec == FrameCodec.NONE ? this.plain : this.deflated, 0);
+            } catch (InvalidKeyException | InvalidAlgorithmParameterException | IllegalBlockSizeException | BadPaddingException e) {
+                throw new CryptoFailure(e);
+            }
+
+            this.limit = codec == FrameCodec.NONE ? dlen : this.inflate(dlen, codec);
+            this.pos = 0;
+            this.fin = (flags & FLAG_FIN) != 0;
+            this.flags = flags;
+            if ((flags & FLAG_ABORT) != 0) {
+                this.pos = this.limit;
+                this.fin = true;
+                throw new MessageAborted();
+            }
+        }
+
+        private int inflate(int zlen, FrameCodec codec) throws IOException {
+            this.inflater.reset();
+            this.inflater.setInput(this.deflated, 0, zlen);
+            int n;
+            try {
+                n = this.inflater.inflate(this.framePlain, 0, FRAME_SIZE);
+                if (n == 0 && this.inflater.needsDictionary()) {
+                    if (codec != FrameCodec.DEFLATE_DICT) throw new IOException("Frame requires a dictionary.");
+                    this.inflater.setDictionary(FrameDictionary.BYTES);
+                    n = this.inflater.inflate(this.framePlain, 0, FRAME_SIZE);
+                }
+            } catch (DataFormatException | IllegalArgumentException e) {
+                // IllegalArgumentException signals a dictionary that differs from the sender's.
+                throw new IOException("Malformed frame data.", e);
+            }
+            if (!this.inflater.finished()) throw new IOException("Frame inflates beyond frame size.");
+            return n;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!this.fill()) return -1;
+            return this.plain[this.pos++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (!this.fill()) return -1;
+            int n = Math.min(len, this.limit - this.pos);
+            System.arraycopy(this.plain, this.pos, b, off, n);
+            this.pos += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return this.limit - this.pos;
+        }
+
+        /**
+         * Copy the rest of the current message to `out`, straight from the frame buffer.
+         * Buffers of large frames are released at the end.
+         */
+        void readTo(OutputStream out) throws IOException {
+            try {
+                while (this.fill()) {
+                    out.write(this.plain, this.pos, this.limit - this.pos);
+                    this.pos = this.limit;
+                }
+            } finally {
+                this.releaseLarge();
+            }
+        }
+
+        /**
+         * Drop the buffers of large frames, so that one large message does not pin them for the rest of the session. Call once a message is consumed.
+         */
+        void releaseLarge() {
+            this.plain = this.framePlain;
+            this.largeRecord = this.largePlain = null;
+        }
+
+        void end() {
+            this.inflater.end();
+        }
+    }
+
+    /**
+     * ObjectOutputStream kept for a whole session. Every message starts with a reset, so no object is shared between messages;
+     * class descriptors are kept in a table of their own that survives resets, and are sent in full only the first time.
+     */
+    private static final class SessionObjectOutputStream extends ObjectOutputStream {
+        private final HashMap<ObjectStreamClass, Integer> descriptors = new HashMap<>();
+
+        SessionObjectOutputStream(OutputStream out) throws IOException {
+            super(out);
+        }
+
+        @Override
+        protected void writeClassDescriptor(ObjectStreamClass desc) throws IOException {
+            var id = this.descriptors.get(desc);
+            if (id != null) {
+                this.writeShort(id);
+                return;
+            }
+            this.writeShort(0); // Full descriptor follows.
+            if (this.descriptors.size() < MAX_SESSION_DESCRIPTORS) this.descriptors.put(desc, this.descriptors.size() + 1);
+            super.writeClassDescriptor(desc);
+        }
+    }
+
+    /**
+     * Reads what SessionObjectOutputStream writes, keeping the class descriptors received for the whole session.
+     */
+    private static final class SessionObjectInputStream extends ObjectInputStream {
+        private final ArrayList<ObjectStreamClass> descriptors = new ArrayList<>();
+
+        SessionObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+            int id = this.readUnsignedShort();
+            if (id == 0) {
+                var desc = super.readClassDescriptor();
+                if (this.descriptors.size() < MAX_SESSION_DESCRIPTORS) this.descriptors.add(desc);
+                return desc;
+            }
+            if (id > this.descriptors.size()) throw new StreamCorruptedException("Unknown class descriptor: " + id);
+            return this.descriptors.get(id - 1);
+        }
+    }
+
+    private SecureChannel(Socket conn, SecretKey secretKey, boolean serverSide) throws NoSuchAlgorithmException, NoSuchPaddingException {
         this.conn = conn;
-        this.symCipher = symCipher;
         this.secretKey = secretKey;
+        this.recordOut = new RecordOutputStream(serverSide ? SERVER_NONCE_PREFIX : CLIENT_NONCE_PREFIX);
+        this.recordIn = new RecordInputStream(serverSide ? CLIENT_NONCE_PREFIX : SERVER_NONCE_PREFIX);
     }
 
     /**
      * Send an object across the channel by serializing, compressing and encrypting.
+     * The object is serialized straight into fixed-size frames, each compressed, sealed and written as soon as it fills; the whole message is never buffered.
+     * If serialization fails partway, e.g. on a payload that is not serializable, the peer is told to discard the message, and the channel stays usable.
+     * With session streams enabled, class descriptors already sent on this channel are replaced by short references.
+     * With the binary codec enabled, protocol messages are encoded by MessageCodec, and only user payloads go through Java serialization.
      * @param o The object to be sent.
      * @throws IOException If any errors occur while writing to the socket.
      * @throws InvalidKeyException If Cipher re-initialization fails.
      * @throws IllegalBlockSizeException If Cipher operation fails.
      * @throws BadPaddingException If Cipher operation fails.
-     * @throws InvalidAlgorithmParameterException If Cipher re-initialization with nonce fails. 
+     * @throws InvalidAlgorithmParameterException If Cipher re-initialization with nonce fails.
      */
     public void sendObject(Object o) throws IOException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, InvalidAlgorithmParameterException {
-        var baos = new ByteArrayOutputStream();
-        var defalteos = new DeflaterOutputStream(baos);
-        var oos = new ObjectOutputStream(defalteos);
-        oos.writeObject(o);
+        this.sendObject(o, this.replyTo.get());
+    }
 
-        oos.close();
-        defalteos.close();
-        
-        var iv = new byte[SecureChannel.IV_SIZE];
-        this.symCipher.init(Cipher.ENCRYPT_MODE, this.secretKey, SecureChannel.generateSpec(iv));
+    /**
+     * Send an object as part of the request with the given ID, or of none if it is 0. Messages from different threads never interleave.
+     */
+    private void sendObject(Object o, int requestId) throws IOException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, InvalidAlgorithmParameterException {
+        this.sendLock.lock();
+        try {
+            this.writeObject(o, requestId);
+        } finally {
+            this.sendLock.unlock();
+        }
+    }
 
-        var encData = this.symCipher.doFinal(baos.toByteArray());
+    private void writeObject(Object o, int requestId) throws IOException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, InvalidAlgorithmParameterException {
+        try {
+            boolean binary = this.binaryCodec && MessageCodec.supports(o);
+            byte requestFlag = requestId == 0 ? 0 : FLAG_REQUEST;
+            if (requestId != 0) {
+                // Before the stream header a new ObjectOutputStream writes, so the ID is always the first thing in the message.
+                this.recordOut.write(requestId >>> 24);
+                this.recordOut.write(requestId >>> 16);
+                this.recordOut.write(requestId >>> 8);
+                this.recordOut.write(requestId);
+            }
+            ObjectOutputStream oos;
+            if (this.sessionStreams) {
+                this.recordOut.messageFlags = (byte) (FLAG_SESSION | requestFlag | (binary ? FLAG_BINARY : 0));
+                if (this.sessionOut == null) {
+                    this.sessionOut = new SessionObjectOutputStream(this.recordOut);
+                } else {
+                    // Objects may have changed since they were last sent, e.g. JobMetadata; send them afresh.
+                    this.sessionOut.reset();
+                }
+                oos = this.sessionOut;
+            } else {
+                this.recordOut.messageFlags = (byte) (requestFlag | (binary ? FLAG_BINARY : 0));
+                oos = new ObjectOutputStream(this.recordOut);
+            }
+            if (binary) {
+                MessageCodec.write(oos, o);
+            } else {
+                oos.writeObject(o);
+            }
+            oos.flush();
+            this.recordOut.finish();
+        } catch (CryptoFailure f) {
+            // A frame failed to seal after its nonce was used, so the peer can read nothing more.
+            this.closeAfter(f);
+            throw unwrap(f);
+        } catch (IOException | RuntimeException | Error e) {
+            this.abort(e);
+            throw e;
+        }
+    }
 
-        conn.getOutputStream().write(iv); // Send IV first.
-        conn.getOutputStream().write(ByteBuffer.allocate(4).putInt(encData.length).array());
-        conn.getOutputStream().write(encData);
-        conn.getOutputStream().flush();
+    /**
+     * Abort the message being written after `failure`, so that the peer discards what was sent of it and the next message starts cleanly.
+     * The session stream is dropped, since its handle and descriptor tables may hold entries the peer never received.
+     * If even the abort cannot be sent, the channel is closed for good.
+     */
+    private void abort(Throwable failure) {
+        this.sessionOut = null;
+        try {
+            this.recordOut.abort();
+        } catch (IOException | RuntimeException e) {
+            failure.addSuppressed(e);
+            this.closeAfter(failure);
+        }
+    }
+
+    private void closeAfter(Throwable failure) {
+        try {
+            this.conn.close();
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+        }
     }
 
     /**
      * Read an object from the channel after decrypting, de-compresing and de-serializing.
+     * Frames are read as de-serialization consumes them, so at most one frame of the message is held at a time.
      * @return The object read.
      * @throws IOException If any errros occur while reading from socket.
      * @throws ClassNotFoundException If the object fails to be de-serialized due to it's class not existing in the ClassLoader / ClassPath.
@@ -121,70 +931,116 @@ public class SecureChannel implements Closeable {
      * @throws InvalidAlgorithmParameterException If Cipher initialization with nonce fails.
      */
     public Object readObject() throws IOException, ClassNotFoundException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, InvalidAlgorithmParameterException{
-        var iv = new byte[SecureChannel.IV_SIZE]; // Read IV first.
-        if (conn.getInputStream().read(iv) != SecureChannel.IV_SIZE) {
-            throw new IOException("Failed to read IV.");
-        }
-        
-        var intBytes = new byte[4];
-        if (conn.getInputStream().read(intBytes) != 4) {
-            throw new IOException("Failed to read length of incoming data.");
+        while (true) {
+            this.recordIn.begin();
+            try {
+                return this.readMessage();
+            } catch (MessageAborted a) {
+                this.sessionIn = null;
+            }
         }
-        var length = ByteBuffer.wrap(intBytes).getInt();
+    }
 
-        var encDataBuf = new byte[length];
-        if (conn.getInputStream().read(encDataBuf) != length) {
-            throw new IOException("Failed to read object data.");
+    /**
+     * Read the object of the message begun on `recordIn`.
+     */
+    private Object readMessage() throws IOException, ClassNotFoundException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, InvalidAlgorithmParameterException {
+        try {
+            ObjectInputStream ois;
+            boolean session = this.recordIn.isSessionMessage();
+            this.recordIn.readRequestId();
+            if (session) {
+                if (this.sessionIn == null) this.sessionIn = new SessionObjectInputStream(this.recordIn);
+                ois = this.sessionIn;
+            } else {
+                ois = new ObjectInputStream(this.recordIn);
+            }
+            Object ret = this.recordIn.isBinaryMessage() ? MessageCodec.read(ois) : ois.readObject();
+            this.recordIn.skipRest();
+            return ret;
+        } catch (CryptoFailure f) {
+            throw unwrap(f);
+        } finally {
+            this.recordIn.releaseLarge();
         }
-
-        this.symCipher.init(Cipher.DECRYPT_MODE, this.secretKey, SecureChannel.recoverSpec(iv));
-        var dataBuf = this.symCipher.doFinal(encDataBuf);
-
-        var bais = new ByteArrayInputStream(dataBuf);
-        var inflateris = new InflaterInputStream(bais);
-        var ois = new ObjectInputStream(inflateris);
-
-        Object ret = ois.readObject();
-        ois.close();
-    
-        return ret;
     }
 
     /**
-     * Send data from the input stream over the channel using chunks of BUFFER_SIZE.
+     * Send data from the input stream over the channel, in frames of FRAME_SIZE, or of the negotiated stream frame size.
+     * Large stream frames are never compressed.
      * @param inputStream The input stream to read data from and send.
      * @throws IOException If writing to underlying socket failed.
      * @throws InvalidKeyException If Cipher re-initialization failed.
      * @throws IllegalBlockSizeException If Cipher operation failed.
      * @throws BadPaddingException If Cipher operation failed.
-     * @throws InvalidAlgorithmParameterException If Cipher re-initialization with nonce failed. 
+     * @throws InvalidAlgorithmParameterException If Cipher re-initialization with nonce failed.
      */
     public void sendStream(InputStream inputStream) throws IOException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, InvalidAlgorithmParameterException {
-        DeflaterInputStream deflateis = new DeflaterInputStream(inputStream);
-        var buffer = new byte[SecureChannel.BUFFER_SIZE];
-        var lenBuffer = ByteBuffer.allocate(2);
-        int len;
-
-        var iv = new byte[SecureChannel.IV_SIZE];
-        
-        while ((len = deflateis.read(buffer)) != -1) {
-            // Cipher needs re-initialization for each chunk of data. Cannot use single IV for whole transmission.
-            this.symCipher.init(Cipher.ENCRYPT_MODE, this.secretKey, SecureChannel.generateSpec(iv));
-
-            var encData = this.symCipher.doFinal(buffer, 0, len);
+        this.sendLock.lock();
+        try {
+            this.writeStream(inputStream);
+        } finally {
+            this.sendLock.unlock();
+        }
+    }
 
-            lenBuffer.clear();
-            lenBuffer.putShort((short) encData.length);
-            this.conn.getOutputStream().write(lenBuffer.array());
+    private void writeStream(InputStream inputStream) throws IOException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, InvalidAlgorithmParameterException {
+        try {
+            this.recordOut.messageFlags = FLAG_STREAM;
+            if (this.recordOut.streamFrameSize > FRAME_SIZE) {
+                this.recordOut.writeLarge(inputStream, Long.MAX_VALUE);
+            } else {
+                this.recordOut.writeFrom(inputStream);
+                this.recordOut.finish();
+            }
+        } catch (CryptoFailure f) {
+            throw unwrap(f);
+        }
+    }
 
-            this.conn.getOutputStream().write(iv);
-            this.conn.getOutputStream().write(encData);
+    /**
+     * Send the remaining contents of the buffer over the channel as a stream, read on the other end by `readStream`.
+     * Frames are never compressed, so this suits data that is already compressed, such as a memory-mapped jar.
+     * @param data The data to send. Its position is advanced to its limit.
+     * @throws IOException If writing to underlying socket failed.
+     * @throws InvalidKeyException If Cipher re-initialization failed.
+     * @throws IllegalBlockSizeException If Cipher operation failed.
+     * @throws BadPaddingException If Cipher operation failed.
+     * @throws InvalidAlgorithmParameterException If Cipher re-initialization with nonce failed.
+     */
+    public void sendBuffer(ByteBuffer data) throws IOException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, InvalidAlgorithmParameterException {
+        this.sendLock.lock();
+        try {
+            this.writeBuffer(data);
+        } finally {
+            this.sendLock.unlock();
         }
+    }
 
-        // Send FIN 0x00_00.
-        lenBuffer.clear(); lenBuffer.putShort((short)0);
-        this.conn.getOutputStream().write(lenBuffer.array());
+    private void writeBuffer(ByteBuffer data) throws IOException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, InvalidAlgorithmParameterException {
+        try {
+            this.recordOut.messageFlags = FLAG_STREAM;
+            if (this.recordOut.streamFrameSize > FRAME_SIZE && data.remaining() > FRAME_SIZE) {
+                this.recordOut.writeLarge(new InputStream() {
+                    @Override
+                    public int read() {
+                        return data.hasRemaining() ? data.get() & 0xff : -1;
+                    }
 
+                    @Override
+                    public int read(byte[] b, int off, int len) {
+                        if (!data.hasRemaining()) return -1;
+                        int n = Math.min(len, data.remaining());
+                        data.get(b, off, n);
+                        return n;
+                    }
+                }, data.remaining());
+            } else {
+                this.recordOut.writeStored(data);
+            }
+        } catch (CryptoFailure f) {
+            throw unwrap(f);
+        }
     }
 
     /**
@@ -194,125 +1050,636 @@ public class SecureChannel implements Closeable {
      * @throws InvalidKeyException If Cipher re-initialization failed.
      * @throws IllegalBlockSizeException If Cipher operation failed.
      * @throws BadPaddingException If Cipher operation failed.
-     * @throws InvalidAlgorithmParameterException If Cipher re-initialization with nonce failed. 
+     * @throws InvalidAlgorithmParameterException If Cipher re-initialization with nonce failed.
      */
     public void readStream(OutputStream outputStream) throws IOException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, InvalidAlgorithmParameterException {
-        InflaterOutputStream inflateos = new InflaterOutputStream(outputStream);
-        var encDataBuf = new byte[SecureChannel.BUFFER_SIZE * 2]; // Over-allocate to avoid dealing with padding shenanigans.
-        var lenBuffer = ByteBuffer.allocate(2);
-        
-        if (this.conn.getInputStream().read(lenBuffer.array()) != 2) {
-            throw new IOException("Failed to read length of incoming data.");
+        Object message;
+        try {
+            message = this.readStreamOrObject(outputStream);
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Expected a stream, but received an object of an unknown class", e);
         }
+        if (message != null) throw new IOException("Expected a stream, but received " + message);
+    }
 
-        int encLen = lenBuffer.getShort();
-            
-        while (encLen != 0) {
-            var iv = new byte[SecureChannel.IV_SIZE]; // Read IV first.
-            if (this.conn.getInputStream().read(iv) != SecureChannel.IV_SIZE) {
-                throw new IOException("Failed to read IV.");
+    /**
+     * Read a stream sent over the channel and write it to the provided output stream, or read the object the peer sent in its place,
+     * e.g. a Termination sent instead of a jar.
+     * @param outputStream The output stream to write data being read to.
+     * @return null if a stream was read; otherwise the object sent in its place, of which nothing is written to `outputStream`.
+     * @throws IOException If any errors occur while reading from the socket.
+     * @throws ClassNotFoundException If an object sent in place of the stream fails to be de-serialized.
+     * @throws InvalidKeyException If Cipher re-initialization failed.
+     * @throws IllegalBlockSizeException If Cipher operation failed.
+     * @throws BadPaddingException If Cipher operation failed.
+     * @throws InvalidAlgorithmParameterException If Cipher re-initialization with nonce failed.
+     */
+    public Object readStreamOrObject(OutputStream outputStream) throws IOException, ClassNotFoundException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, InvalidAlgorithmParameterException {
+        try {
+            while (true) {
+                this.recordIn.begin();
+                try {
+                    if (!this.recordIn.isStream()) return this.readMessage();
+                    this.recordIn.readTo(outputStream);
+                    return null;
+                } catch (MessageAborted a) {
+                    this.sessionIn = null;
+                }
             }
+        } catch (CryptoFailure f) {
+            throw unwrap(f);
+        }
+    }
 
-            this.symCipher.init(Cipher.DECRYPT_MODE, this.secretKey, SecureChannel.recoverSpec(iv));
+    /**
+     * Send a request and wait for its reply. Any number of threads may make requests on one channel at once:
+     * each request carries an ID, the servlet handles them concurrently, and replies are matched to their requests in whatever order they arrive.
+     * If the server handles one request at a time, requests are sent and answered one after another instead.
+     * Requests answered by a stream as well as an object, i.e. JarRequest, and SignOff must be sent with `sendObject`, while no requests are in flight.
+     * Pushes are answered only if they ask for an ack, with `PushResult.withAck` or `BulkPush.withAck`; send others with `post`.
+     * @param message The request.
+     * @return The reply; a Termination if the request, or an earlier one sent with `post`, failed.
+     * @throws IOException If any errors occur while writing to or reading from the socket, or a reply to an unknown request arrives.
+     * @throws ClassNotFoundException If the reply fails to be de-serialized.
+     * @throws InvalidKeyException If Cipher re-initialization fails.
+     * @throws IllegalBlockSizeException If Cipher operation fails.
+     * @throws BadPaddingException If Cipher operation fails.
+     * @throws InvalidAlgorithmParameterException If Cipher re-initialization with nonce fails.
+     */
+    public Object request(Object message) throws IOException, ClassNotFoundException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, InvalidAlgorithmParameterException {
+        SecureChannel.checkAnswered(message);
+        var permits = this.inFlight;
+        if (permits == null) {
+            this.replyLock.lock();
+            try {
+                this.sendObject(message, 0);
+                return this.readObject();
+            } finally {
+                this.replyLock.unlock();
+            }
+        }
+        permits.acquireUninterruptibly();
+        try {
+            int requestId = this.sendRequest(message);
+            return requestId == 0 ? this.failure : this.awaitReply(requestId);
+        } finally {
+            permits.release();
+        }
+    }
 
-            if (this.conn.getInputStream().read(encDataBuf, 0, encLen) != encLen) {
-                throw new IOException("Failed to read stream data.");
+    /**
+     * Send requests back to back and collect their replies, from the calling thread alone.
+     * Up to the number of requests in flight the server allows are sent before the first reply is awaited, and one more is sent as each reply arrives,
+     * so a batch costs about one round trip plus transfer time rather than a round trip per request. Other threads may make requests at the same time.
+     * @param requests The requests; none may be a JarRequest, SignOff, or push without an ack.
+     * @return The replies, in the order of the requests; Terminations for requests that failed.
+     * @throws IOException If any errors occur while writing to or reading from the socket, or a reply to an unknown request arrives.
+     * @throws ClassNotFoundException If a reply fails to be de-serialized.
+     * @throws InvalidKeyException If Cipher re-initialization fails.
+     * @throws IllegalBlockSizeException If Cipher operation fails.
+     * @throws BadPaddingException If Cipher operation fails.
+     * @throws InvalidAlgorithmParameterException If Cipher re-initialization with nonce fails.
+     */
+    public List<Object> requestAll(List<?> requests) throws IOException, ClassNotFoundException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, InvalidAlgorithmParameterException {
+        var replies = new ArrayList<Object>(requests.size());
+        var permits = this.inFlight;
+        if (permits == null) {
+            for (var message : requests) replies.add(this.request(message));
+            return replies;
+        }
+        for (var message : requests) SecureChannel.checkAnswered(message);
+        var requestIds = new int[requests.size()];
+        int sent = 0, received = 0;
+        try {
+            for (; received < requests.size(); received++) {
+                // Keep the window full: block for a permit only when nothing is in flight.
+                if (sent == received) {
+                    permits.acquireUninterruptibly();
+                    requestIds[sent] = this.sendRequest(requests.get(sent));
+                    sent++;
+                }
+                while (sent < requests.size() && permits.tryAcquire()) {
+                    requestIds[sent] = this.sendRequest(requests.get(sent));
+                    sent++;
+                }
+                int requestId = requestIds[received];
+                replies.add(requestId == 0 ? this.failure : this.awaitReply(requestId));
+                permits.release();
             }
+        } finally {
+            if (sent > received) permits.release(sent - received);
+        }
+        return replies;
+    }
 
-            var buffer = this.symCipher.doFinal(encDataBuf, 0, encLen);
-            inflateos.write(buffer);
+    /**
+     * Check that a request is answered by exactly one reply, so that waiting for it cannot hang.
+     */
+    private static void checkAnswered(Object message) {
+        boolean answered = switch (message) {
+            case JarRequest r -> false;
+            case SignOff s -> false;
+            case PushResult p -> p.wantsAck();
+            case BulkPush p -> p.wantsAck();
+            default -> true;
+        };
+        if (!answered) {
+            throw new IllegalArgumentException("Not answered by a single reply: " + message.getClass().getSimpleName() + "; pushes must ask for an ack.");
+        }
+    }
 
-            lenBuffer.clear();
-            if (this.conn.getInputStream().read(lenBuffer.array()) != 2) {
-                throw new IOException("Failed to read length of incoming data.");
-            }
+    /**
+     * Send a numbered request, registering it as awaiting a reply.
+     * @return The request ID; 0 if nothing was sent because an earlier request ended in `failure`.
+     */
+    private int sendRequest(Object message) throws IOException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, InvalidAlgorithmParameterException {
+        int requestId = this.nextRequestId();
+        this.replyLock.lock();
+        try {
+            if (this.failure != null) return 0;
+            this.awaiting.add(requestId);
+        } finally {
+            this.replyLock.unlock();
+        }
+        this.sendObject(message, requestId);
+        return requestId;
+    }
+
+    /**
+     * Send a message that expects no reply, such as BulkPush without an ack, as a numbered request, so that the servlet may handle it alongside other requests.
+     * If it fails, the Termination is returned by the next call to `request`. To learn when a push is stored, use `request` with `BulkPush.withAck` instead.
+     * @param message The message.
+     * @throws IOException If writing to the socket fails.
+     * @throws InvalidKeyException If Cipher re-initialization fails.
+     * @throws IllegalBlockSizeException If Cipher operation fails.
+     * @throws BadPaddingException If Cipher operation fails.
+     * @throws InvalidAlgorithmParameterException If Cipher re-initialization with nonce fails.
+     */
+    public void post(Object message) throws IOException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, InvalidAlgorithmParameterException {
+        if (message instanceof JarRequest || message instanceof SignOff) {
+            throw new IllegalArgumentException("Not a request: " + message.getClass().getSimpleName());
+        }
+        this.sendObject(message, this.inFlight == null ? 0 : this.nextRequestId());
+    }
+
+    private int nextRequestId() {
+        int id;
+        do {
+            id = this.lastRequestId.incrementAndGet();
+        } while (id == 0);
+        return id;
+    }
 
-            encLen = lenBuffer.getShort();
+    /**
+     * Wait for the reply to a request. If no other thread is reading from the channel, read replies until ours arrives, handing the others out.
+     */
+    private Object awaitReply(int requestId) throws IOException, ClassNotFoundException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, InvalidAlgorithmParameterException {
+        this.replyLock.lock();
+        try {
+            while (true) {
+                if (this.replies.containsKey(requestId)) return this.replies.remove(requestId);
+                if (!this.readingReplies) break;
+                try {
+                    this.replyArrived.await();
+                } catch (InterruptedException e) {
+                    this.awaiting.remove(requestId);
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while awaiting reply to request " + requestId);
+                }
+            }
+            this.readingReplies = true;
+        } finally {
+            this.replyLock.unlock();
+        }
+        try {
+            while (true) {
+                var reply = this.readObject();
+                int from = this.recordIn.requestId;
+                this.replyLock.lock();
+                try {
+                    if (from == requestId) {
+                        this.awaiting.remove(requestId);
+                        return reply;
+                    }
+                    if (this.awaiting.remove(from)) {
+                        this.replies.put(from, reply);
+                    } else if (reply instanceof Termination t) {
+                        // A failed post, or the end of the session.
+                        this.failure = t;
+                        if (from == 0) {
+                            this.awaiting.remove(requestId);
+                            return t;
+                        }
+                    } else {
+                        throw new IOException("Reply to unknown request: " + from);
+                    }
+                    this.replyArrived.signalAll();
+                } finally {
+                    this.replyLock.unlock();
+                }
+            }
+        } finally {
+            this.replyLock.lock();
+            try {
+                this.readingReplies = false;
+                this.replyArrived.signalAll();
+            } finally {
+                this.replyLock.unlock();
+            }
         }
     }
-    
+
+    /**
+     * Get the request ID of the message last read by `readObject`.
+     * @return The request ID; 0 if the message belongs to no request.
+     */
+    public int lastRequestId() {
+        return this.recordIn.requestId;
+    }
+
     /**
-     * Open a secure channel to the client from the server.
+     * Mark objects sent by the current thread as replies to the given request, until called again with 0.
+     * @param requestId The request ID, as returned by `lastRequestId` for the request.
+     */
+    public void replyTo(int requestId) {
+        this.replyTo.set(requestId);
+    }
+
+    /**
+     * Open a secure channel to the client from the server, using the handshake mode proposed by the client. Resumption is not accepted.
      * @param conn Socket connected to client.
      * @return a Secure channel ready for communication.
-     * @throws NoSuchAlgorithmException If Cryptography provider does not support SecureChannel.ALGORITHM or SecureChannel.SYM_ALGORITHM
-     * @throws IOException If any errors occur while writing / reading from socket.
+     * @throws NoSuchAlgorithmException If Cryptography provider does not support the algorithms of the proposed handshake mode.
+     * @throws IOException If any errors occur while writing / reading from socket, or the client proposed an unknown handshake mode.
      * @throws NoSuchPaddingException If Cipher initialization failed.
      * @throws InvalidKeyException If Cipher and and generated key are incompatible.
+     * @throws InvalidKeySpecException If the public key sent by the client is malformed.
      * @throws IllegalBlockSizeException If client encrypted data is invalid.
      * @throws BadPaddingException If client encrypted data is incorrectly padded.
      */
-    public static SecureChannel openClientChannel(Socket conn) throws NoSuchAlgorithmException, IOException, NoSuchPaddingException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
-        var generator = KeyPairGenerator.getInstance(SecureChannel.ALGORITHM);
-        generator.initialize(KEYSIZE_B * 8, new SecureRandom());
-
-        var keyPair = generator.genKeyPair();
-        var publicKeyData = keyPair.getPublic().getEncoded();
+    public static SecureChannel openClientChannel(Socket conn) throws NoSuchAlgorithmException, IOException, NoSuchPaddingException, InvalidKeyException, InvalidKeySpecException, IllegalBlockSizeException, BadPaddingException {
+        return SecureChannel.openClientChannel(conn, null);
+    }
 
-        conn.getOutputStream().write(ByteBuffer.allocate(4).putInt(publicKeyData.length).array());
-        conn.getOutputStream().write(publicKeyData);
+    /**
+     * Open a secure channel to the client from the server, using the handshake mode proposed by the client.
+     * If the client presents a session ticket that `tickets` accepts, the channel is resumed without a key exchange.
+     * @param conn Socket connected to client.
+     * @param tickets The issuer of session tickets, or null to reject all resumption attempts.
+     * @return a Secure channel ready for communication.
+     * @throws NoSuchAlgorithmException If Cryptography provider does not support the algorithms of the proposed handshake mode.
+     * @throws IOException If any errors occur while writing / reading from socket, or the client proposed an unknown handshake mode.
+     * @throws NoSuchPaddingException If Cipher initialization failed.
+     * @throws InvalidKeyException If Cipher and and generated key are incompatible.
+     * @throws InvalidKeySpecException If the public key sent by the client is malformed.
+     * @throws IllegalBlockSizeException If client encrypted data is invalid.
+     * @throws BadPaddingException If client encrypted data is incorrectly padded.
+     */
+    public static SecureChannel openClientChannel(Socket conn, SessionTickets tickets) throws NoSuchAlgorithmException, IOException, NoSuchPaddingException, InvalidKeyException, InvalidKeySpecException, IllegalBlockSizeException, BadPaddingException {
+        conn.setTcpNoDelay(true); // Small request/response writes must not wait on delayed ACKs.
+        int modeId = conn.getInputStream().read();
+        if (modeId == SecureChannel.RESUME_ID) {
+            var resumedKey = SecureChannel.acceptResumption(conn, tickets);
+            if (resumedKey != null) {
+                var channel = new SecureChannel(conn, resumedKey, true);
+                channel.resumed = true;
+                return channel;
+            }
+            modeId = conn.getInputStream().read(); // Client falls back to a full handshake.
+        }
 
-        var lenBuf = new byte[4]; 
-        if(conn.getInputStream().read(lenBuf) != 4) 
-            throw new IOException("Failed to read length of incoming data. Failed to negotiate channel.");
-        int len = ByteBuffer.wrap(lenBuf).getInt();
+        if (modeId == -1) throw new IOException("Failed to read handshake mode. Failed to negotiate channel.");
+        var mode = HandshakeMode.fromId((byte) modeId);
+        if (mode == null) throw new IOException("Client proposed unknown handshake mode: " + modeId);
 
-        var clientRandomDataEnc = new byte[len];
-        if (conn.getInputStream().read(clientRandomDataEnc) != len) {
-            throw new IOException("Failed to negotiate channel security.");
-        }
+        SecretKey secretKey = switch (mode) {
+            case RSA_OAEP -> SecureChannel.acceptRsaHandshake(conn);
+            case X25519 -> SecureChannel.acceptX25519Handshake(conn);
+        };
 
-        Cipher cipher = Cipher.getInstance(SecureChannel.ALGORITHM_TRANSFORMATION);
-        cipher.init(Cipher.DECRYPT_MODE, keyPair.getPrivate());
-        var clientRandomData = cipher.doFinal(clientRandomDataEnc);
+        return new SecureChannel(conn, secretKey, true);
+    }
 
-        SecretKeySpec secretKey = new SecretKeySpec(clientRandomData, SYM_ALGORITHM);
-        Cipher symCipher = Cipher.getInstance(SecureChannel.SYM_ALGORIHTM_TRANSFORMATION);
-        
-        return new SecureChannel(symCipher, conn, secretKey);
+    /**
+     * Open a secure channel to the server from the client, using the default handshake mode.
+     * If a session ticket from an earlier channel to the same server is held, resumption is attempted first.
+     * @param conn Socket connected to the server.
+     * @return a Secure Channel ready for communication.
+     * @throws IOException If any errors occur while reading / writing socket.
+     * @throws InvalidKeySpecException If the public key sent by the server is malformed.
+     * @throws NoSuchAlgorithmException If cryptography provider does not support the algorithms of the handshake mode.
+     * @throws NoSuchPaddingException If cryptography provider does not support specified transformation padding
+     * @throws InvalidKeyException If key received from server is invalid.
+     * @throws IllegalBlockSizeException
+     * @throws BadPaddingException If data is incorrectly padded.
+     */
+    public static SecureChannel openServerChannel(Socket conn) throws IOException, InvalidKeySpecException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+        return SecureChannel.openServerChannel(conn, SecureChannel.DEFAULT_HANDSHAKE);
     }
 
     /**
      * Open a secure channel to the server from the client.
+     * If a session ticket from an earlier channel to the same server is held, resumption is attempted first; `mode` is used only if the server rejects the ticket.
      * @param conn Socket connected to the server.
+     * @param mode The key-exchange scheme to propose to the server.
      * @return a Secure Channel ready for communication.
      * @throws IOException If any errors occur while reading / writing socket.
-     * @throws InvalidKeySpecException 
-     * @throws NoSuchAlgorithmException If cryptography provider does not support SecureChannel.ALGORITHM or SecureChannel.SYM_ALGORITHM
+     * @throws InvalidKeySpecException If the public key sent by the server is malformed.
+     * @throws NoSuchAlgorithmException If cryptography provider does not support the algorithms of the handshake mode.
      * @throws NoSuchPaddingException If cryptography provider does not support specified transformation padding
      * @throws InvalidKeyException If key received from server is invalid.
      * @throws IllegalBlockSizeException
      * @throws BadPaddingException If data is incorrectly padded.
      */
-    public static SecureChannel openServerChannel(Socket conn) throws IOException, InvalidKeySpecException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
-        var keyBuf = new byte[4];
-        if (conn.getInputStream().read(keyBuf) != 4) throw 
-            new IOException("Failed to negotiate channel security, could not read key length.");
+    public static SecureChannel openServerChannel(Socket conn, HandshakeMode mode) throws IOException, InvalidKeySpecException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+        conn.setTcpNoDelay(true); // Small request/response writes must not wait on delayed ACKs.
+
+        var server = conn.getRemoteSocketAddress();
+        var ticket = SessionTicket.recall(server);
+        if (ticket != null) {
+            var resumedKey = SecureChannel.initiateResumption(conn, ticket);
+            if (resumedKey != null) {
+                var channel = new SecureChannel(conn, resumedKey, false);
+                channel.resumed = true;
+                return channel;
+            }
+            SessionTicket.forget(server, ticket);
+        }
+
+        conn.getOutputStream().write(mode.id);
 
-        var keyLen = ByteBuffer.wrap(keyBuf).getInt();
+        SecretKey secretKey = switch (mode) {
+            case RSA_OAEP -> SecureChannel.initiateRsaHandshake(conn);
+            case X25519 -> SecureChannel.initiateX25519Handshake(conn);
+        };
 
-        var publicKeyData = new byte[keyLen];
-        if (conn.getInputStream().read(publicKeyData) != keyLen) throw 
-            new IOException("Failed to negotiate channel security, could not read key.");
+        return new SecureChannel(conn, secretKey, false);
+    }
+
+    /**
+     * Server half of the RSA-OAEP exchange: send a fresh public key, and receive the encrypted AES key.
+     */
+    private static SecretKey acceptRsaHandshake(Socket conn) throws NoSuchAlgorithmException, IOException, NoSuchPaddingException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+        var generator = KeyPairGenerator.getInstance(SecureChannel.ALGORITHM);
+        generator.initialize(KEYSIZE_B * 8, new SecureRandom());
+
+        var keyPair = generator.genKeyPair();
+        var publicKeyData = keyPair.getPublic().getEncoded();
+
+        SecureChannel.writeHandshakeBlock(conn, publicKeyData);
+
+        var clientRandomDataEnc = SecureChannel.readHandshakeBlock(conn);
+
+        Cipher cipher = Cipher.getInstance(SecureChannel.ALGORITHM_TRANSFORMATION);
+        cipher.init(Cipher.DECRYPT_MODE, keyPair.getPrivate());
+        var clientRandomData = cipher.doFinal(clientRandomDataEnc);
+
+        return new SecretKeySpec(clientRandomData, SYM_ALGORITHM);
+    }
+
+    /**
+     * Client half of the RSA-OAEP exchange: receive the server public key, and send a fresh AES key encrypted with it.
+     */
+    private static SecretKey initiateRsaHandshake(Socket conn) throws IOException, InvalidKeySpecException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+        var publicKeyData = SecureChannel.readHandshakeBlock(conn);
 
         var publicKey = KeyFactory.getInstance(SecureChannel.ALGORITHM).generatePublic(new X509EncodedKeySpec(publicKeyData));
         var cipher = Cipher.getInstance(SecureChannel.ALGORITHM_TRANSFORMATION);
         cipher.init(Cipher.ENCRYPT_MODE, publicKey);
 
-        Cipher symCipher = Cipher.getInstance(SecureChannel.SYM_ALGORIHTM_TRANSFORMATION);
         KeyGenerator kg = KeyGenerator.getInstance(SecureChannel.SYM_ALGORITHM);
         SecretKey secretKey = kg.generateKey();
 
         var randomDataEnc = cipher.doFinal(secretKey.getEncoded());
         
-        conn.getOutputStream().write(ByteBuffer.allocate(4).putInt(randomDataEnc.length).array());
-        conn.getOutputStream().write(randomDataEnc);
+        SecureChannel.writeHandshakeBlock(conn, randomDataEnc);
+
+        return secretKey;
+    }
+
+    /**
+     * Server half of the X25519 exchange: receive the client public key, reply with a fresh public key and derive the shared AES key.
+     */
+    private static SecretKey acceptX25519Handshake(Socket conn) throws NoSuchAlgorithmException, IOException, InvalidKeyException, InvalidKeySpecException {
+        var clientPublicKeyData = SecureChannel.readHandshakeBlock(conn);
+
+        var keyPair = KeyPairGenerator.getInstance(SecureChannel.ECDH_ALGORITHM).generateKeyPair();
+        var publicKeyData = keyPair.getPublic().getEncoded();
+
+        SecureChannel.writeHandshakeBlock(conn, publicKeyData);
+
+        return SecureChannel.deriveX25519Key(keyPair.getPrivate(), clientPublicKeyData, clientPublicKeyData, publicKeyData);
+    }
+
+    /**
+     * Client half of the X25519 exchange: send a fresh public key, receive the server public key and derive the shared AES key.
+     */
+    private static SecretKey initiateX25519Handshake(Socket conn) throws NoSuchAlgorithmException, IOException, InvalidKeyException, InvalidKeySpecException {
+        var keyPair = KeyPairGenerator.getInstance(SecureChannel.ECDH_ALGORITHM).generateKeyPair();
+        var publicKeyData = keyPair.getPublic().getEncoded();
+
+        SecureChannel.writeHandshakeBlock(conn, publicKeyData);
+
+        var serverPublicKeyData = SecureChannel.readHandshakeBlock(conn);
+
+        return SecureChannel.deriveX25519Key(keyPair.getPrivate(), serverPublicKeyData, publicKeyData, serverPublicKeyData);
+    }
+
+    /**
+     * Server half of resumption: open the client's ticket, and derive a fresh AES key from the sealed resumption secret and both nonces.
+     * @return The AES key, or null if the ticket was rejected. The client is told of the rejection.
+     */
+    private static SecretKey acceptResumption(Socket conn, SessionTickets tickets) throws IOException, NoSuchAlgorithmException, InvalidKeyException {
+        var ticket = SecureChannel.readHandshakeBlock(conn);
+        var clientNonce = SecureChannel.readHandshakeBlock(conn);
+
+        var resumptionSecret = tickets == null ? null : tickets.redeem(ticket);
+        if (resumptionSecret == null || clientNonce.length != SecureChannel.NONCE_SIZE) {
+            conn.getOutputStream().write(0);
+            conn.getOutputStream().flush();
+            return null;
+        }
+
+        var serverNonce = new byte[SecureChannel.NONCE_SIZE];
+        new SecureRandom().nextBytes(serverNonce);
+        var reply = ByteBuffer.allocate(1 + 4 + serverNonce.length).put((byte) 1).putInt(serverNonce.length).put(serverNonce);
+        conn.getOutputStream().write(reply.array());
+        conn.getOutputStream().flush();
+
+        return SecureChannel.deriveResumedKey(resumptionSecret, clientNonce, serverNonce);
+    }
+
+    /**
+     * Client half of resumption: present the ticket with a fresh nonce, and derive the AES key if the server accepts it.
+     * @return The AES key, or null if the server rejected the ticket.
+     */
+    private static SecretKey initiateResumption(Socket conn, SessionTicket ticket) throws IOException, NoSuchAlgorithmException, InvalidKeyException {
+        var clientNonce = new byte[SecureChannel.NONCE_SIZE];
+        new SecureRandom().nextBytes(clientNonce);
+
+        var hello = ByteBuffer.allocate(1 + 4 + ticket.ticket.length + 4 + clientNonce.length)
+            .put(SecureChannel.RESUME_ID)
+            .putInt(ticket.ticket.length).put(ticket.ticket)
+            .putInt(clientNonce.length).put(clientNonce);
+        conn.getOutputStream().write(hello.array());
+        conn.getOutputStream().flush();
+
+        int accepted = conn.getInputStream().read();
+        if (accepted == -1) throw new IOException("Connection closed during resumption. Failed to negotiate channel.");
+        if (accepted == 0) return null;
+
+        var serverNonce = SecureChannel.readHandshakeBlock(conn);
+        return SecureChannel.deriveResumedKey(ticket.resumptionSecret, clientNonce, serverNonce);
+    }
+
+    private static SecretKey deriveResumedKey(byte[] resumptionSecret, byte[] clientNonce, byte[] serverNonce) throws NoSuchAlgorithmException, InvalidKeyException {
+        var salt = new byte[clientNonce.length + serverNonce.length];
+        System.arraycopy(clientNonce, 0, salt, 0, clientNonce.length);
+        System.arraycopy(serverNonce, 0, salt, clientNonce.length, serverNonce.length);
+        var keyData = Hkdf.derive(salt, resumptionSecret, SecureChannel.RESUME_INFO, SecureChannel.SYM_KEYSIZE_B);
+        return new SecretKeySpec(keyData, SYM_ALGORITHM);
+    }
+
+    /**
+     * Run X25519 key agreement, and expand the shared secret into an AES key with HKDF.
+     * Both public keys are used as salt, binding the derived key to this exchange.
+     * @param privateKey Our ephemeral private key.
+     * @param peerPublicKeyData The X.509 encoding of the peer's public key.
+     * @param clientPublicKeyData The X.509 encoding of the client's public key.
+     * @param serverPublicKeyData The X.509 encoding of the server's public key.
+     * @return The AES key for the channel.
+     */
+    private static SecretKey deriveX25519Key(PrivateKey privateKey, byte[] peerPublicKeyData, byte[] clientPublicKeyData, byte[] serverPublicKeyData) throws NoSuchAlgorithmException, InvalidKeyException, InvalidKeySpecException {
+        var peerPublicKey = KeyFactory.getInstance(SecureChannel.ECDH_ALGORITHM).generatePublic(new X509EncodedKeySpec(peerPublicKeyData));
+        var agreement = KeyAgreement.getInstance(SecureChannel.ECDH_ALGORITHM);
+        agreement.init(privateKey);
+        agreement.doPhase(peerPublicKey, true);
+        var sharedSecret = agreement.generateSecret();
+
+        var salt = new byte[clientPublicKeyData.length + serverPublicKeyData.length];
+        System.arraycopy(clientPublicKeyData, 0, salt, 0, clientPublicKeyData.length);
+        System.arraycopy(serverPublicKeyData, 0, salt, clientPublicKeyData.length, serverPublicKeyData.length);
+
+        var keyData = Hkdf.derive(salt, sharedSecret, SecureChannel.HKDF_INFO, SecureChannel.SYM_KEYSIZE_B);
+        return new SecretKeySpec(keyData, SYM_ALGORITHM);
+    }
 
-        return new SecureChannel(symCipher, conn, secretKey);
+    /**
+     * Write a length-prefixed block of handshake data in a single write.
+     * @param conn The socket to write to.
+     * @param block The block to write.
+     * @throws IOException If writing to the socket failed.
+     */
+    private static void writeHandshakeBlock(Socket conn, byte[] block) throws IOException {
+        var buf = ByteBuffer.allocate(4 + block.length).putInt(block.length).put(block);
+        conn.getOutputStream().write(buf.array());
+        conn.getOutputStream().flush();
+    }
+
+    /**
+     * Read a length-prefixed block of handshake data, such as a public key.
+     * @param conn The socket to read from.
+     * @return The block read.
+     * @throws IOException If the block could not be read fully, or is larger than MAX_HANDSHAKE_BLOCK.
+     */
+    private static byte[] readHandshakeBlock(Socket conn) throws IOException {
+        var lenBuf = new byte[4];
+        if (conn.getInputStream().readNBytes(lenBuf, 0, 4) != 4) 
+            throw new IOException("Failed to read length of incoming data. Failed to negotiate channel.");
+        int len = ByteBuffer.wrap(lenBuf).getInt();
+        if (len <= 0 || len > SecureChannel.MAX_HANDSHAKE_BLOCK)
+            throw new IOException("Invalid handshake block length: " + len + ". Failed to negotiate channel.");
+
+        var block = new byte[len];
+        if (conn.getInputStream().readNBytes(block, 0, len) != len) {
+            throw new IOException("Failed to negotiate channel security.");
+        }
+        return block;
+    }
+
+    public boolean isResumed() {
+        return this.resumed;
+    }
+
+    /**
+     * Derive the secret that a session ticket for this channel seals. Never sent in the clear.
+     * @return The resumption secret.
+     * @throws GeneralSecurityException If HKDF is unavailable.
+     */
+    byte[] resumptionSecret() throws GeneralSecurityException {
+        return Hkdf.derive(null, this.secretKey.getEncoded(), SecureChannel.RESUMPTION_SECRET_INFO, SecureChannel.SYM_KEYSIZE_B);
+    }
+
+    /**
+     * Set how frames sent from this end of the channel are compressed. The peer reads frames of any codec.
+     * @param policy The compression policy.
+     */
+    public void setCompressionPolicy(CompressionPolicy policy) {
+        this.recordOut.setPolicy(policy);
+    }
+
+    /**
+     * Choose whether objects sent from this end of the channel go through one ObjectOutputStream kept for the whole session.
+     * Session streams send each class descriptor in full only once per channel, which matters for short messages. The peer reads either kind.
+     * @param enabled True to use session streams.
+     */
+    public void setSessionStreams(boolean enabled) {
+        this.sessionStreams = enabled;
+    }
+
+    /**
+     * Choose whether protocol messages sent from this end of the channel are encoded by MessageCodec, rather than with Java serialization.
+     * Messages MessageCodec does not cover are serialized either way. The peer reads either kind.
+     * @param enabled True to use the binary encoding.
+     */
+    public void setBinaryCodec(boolean enabled) {
+        this.binaryCodec = enabled;
+    }
+
+    /**
+     * Set the size of frames in streams sent and accepted on this end of the channel, and how many frames are sealed at once across cores.
+     * Both ends must agree on the frame size, since the receiver rejects larger frames; the server announces it in ProtocolConfig.
+     * Large frames cut the per-frame cost of cipher initialization and framing for jars and other bulk data, and are never compressed.
+     * @param frameSize Plaintext size of stream frames, from FRAME_SIZE (16 KiB) to MAX_STREAM_FRAME_SIZE.
+     * @param parallelism Number of frames sealed concurrently when sending a stream; 1 to seal on the sending thread only.
+     */
+    public void setStreamFrames(int frameSize, int parallelism) {
+        if (frameSize < FRAME_SIZE || frameSize > MAX_STREAM_FRAME_SIZE) {
+            throw new IllegalArgumentException("Stream frame size out of range: " + frameSize);
+        }
+        if (parallelism < 1) throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        this.recordOut.streamFrameSize = frameSize;
+        this.recordOut.parallelism = parallelism;
+        this.recordIn.maxStreamFrameSize = frameSize;
+    }
+
+    /**
+     * Apply the protocol configuration sent by the server to the client end of this channel.
+     * The compression policy it carries, if any, is adopted for frames sent by the client, as are its choices of session streams, binary codec and stream frame size.
+     * Requests are sent concurrently, up to the number of requests in flight the server allows.
+     * The session ticket it carries, if any, is remembered for the next connection to the same server.
+     * @param config The configuration received from the server.
+     */
+    public void applyConfig(ProtocolConfig config) {
+        config.getCompressionPolicy().ifPresent(this::setCompressionPolicy);
+        this.setSessionStreams(config.usesSessionStreams());
+        this.setBinaryCodec(config.usesBinaryCodec());
+        if (config.getStreamFrameSize() > 0) this.setStreamFrames(config.getStreamFrameSize(), 1);
+        this.inFlight = config.getMaxInFlight() > 1 ? new Semaphore(config.getMaxInFlight()) : null;
+        var ticket = config.getSessionTicket();
+        if (ticket.isEmpty()) return;
+        try {
+            var expiresAt = System.currentTimeMillis() + config.getTicketLifetime();
+            SessionTicket.remember(this.conn.getRemoteSocketAddress(), new SessionTicket(ticket.get(), this.resumptionSecret(), expiresAt));
+        } catch (GeneralSecurityException e) {
+            // Resumption is an optimization; carry on without the ticket.
+        }
     }
 
     @Override
     public void close() throws IOException {
+        this.recordOut.end();
+        this.recordIn.end();
         this.conn.close();
     }
 
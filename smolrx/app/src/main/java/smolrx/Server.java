@@ -29,6 +29,11 @@ public class Server extends Thread {
      */
     private ObjectStorage storage;
 
+    /**
+     * Issuer of session tickets for resuming clients.
+     */
+    private final SessionTickets tickets;
+
     /**
      * Logger for servers.
      */
@@ -41,12 +46,32 @@ public class Server extends Thread {
      * @throws IOException If the underlying ServerSocket could not be acquired.
      */
     public Server(int port, int backlong, JobManager manager, ObjectStorage storage) throws IOException {
+        this(port, backlong, manager, storage, new SessionTickets());
+    }
+
+    /**
+     * Create a new SmolRX Server with specified port, backlog and session ticket issuer. Listen on all addresses.
+     * @param port The port to listen on for client connections.
+     * @param backlong Maximum number of client connections to queue.
+     * @param tickets The issuer of session tickets, which sets ticket lifetime.
+     * @throws IOException If the underlying ServerSocket could not be acquired.
+     */
+    public Server(int port, int backlong, JobManager manager, ObjectStorage storage, SessionTickets tickets) throws IOException {
         this.serverSocket = new ServerSocket(port, port);
         this.jobManager = manager;
         this.storage = storage;
+        this.tickets = tickets;
         this.alive = true;
     }
 
+    /**
+     * Get the issuer of session tickets, e.g. to rotate the ticket key.
+     * @return The session ticket issuer.
+     */
+    public SessionTickets getSessionTickets() {
+        return this.tickets;
+    }
+
     /**
      * Kill this server.
      */
@@ -61,7 +86,7 @@ public class Server extends Thread {
                 Server.LOGGER.fine("Listening for clients at: " + serverSocket.toString());
                 var clientConnSocket = this.serverSocket.accept();
                 LOGGER.info("Received connection from " + clientConnSocket.getInetAddress());
-                var servlet = new Servlet(clientConnSocket, jobManager, storage);
+                var servlet = new Servlet(clientConnSocket, jobManager, storage, tickets);
                 Thread.ofVirtual().name("smolrx-servlet").start(servlet); // Start virtual thread.
             } catch (IOException e) {
                 Server.LOGGER.warning("Failed to accept client connection. Error occurred while blocking.");
@@ -2,9 +2,13 @@ package smolrx;
 
 import java.io.IOException;
 import java.net.Socket;
+import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.security.spec.InvalidKeySpecException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -14,8 +18,10 @@ import javax.crypto.NoSuchPaddingException;
 
 import smolrx.jobs.JobManager;
 import smolrx.msg.ClientMessage;
+import smolrx.msg.JarRequest;
 import smolrx.msg.ProtocolConfig;
 import smolrx.msg.SignOff;
+import smolrx.msg.Termination;
 import smolrx.storage.ObjectStorage;
 
 public class Servlet implements Runnable {
@@ -40,23 +46,29 @@ public class Servlet implements Runnable {
      */
     private final ObjectStorage sObjectStorage;
 
+    /**
+     * Reference to server's session ticket issuer.
+     */
+    private final SessionTickets sTickets;
+
     public static final Logger LOGGER = Logger.getLogger("smolrx-servlet");
 
     /**
      * Create a new Servlet to handle connection from a client.
      * @param clientConnSocket Connection socket for the new client.
      */
-    protected Servlet(Socket clientConnSocket, JobManager jobManager, ObjectStorage objectStorage) {
+    protected Servlet(Socket clientConnSocket, JobManager jobManager, ObjectStorage objectStorage, SessionTickets tickets) {
         this.conn = clientConnSocket;
         this.sJobManager = jobManager;
         this.sObjectStorage = objectStorage;
+        this.sTickets = tickets;
     }
 
     @Override
     public void run() {
         try {
-            this.channel = SecureChannel.openClientChannel(this.conn);
-        } catch (IOException | InvalidKeyException | NoSuchAlgorithmException | NoSuchPaddingException | IllegalBlockSizeException | BadPaddingException e) {
+            this.channel = SecureChannel.openClientChannel(this.conn, this.sTickets);
+        } catch (IOException | InvalidKeyException | NoSuchAlgorithmException | InvalidKeySpecException | NoSuchPaddingException | IllegalBlockSizeException | BadPaddingException e) {
             Servlet.LOGGER.log(Level.WARNING, "Failed to open secure channel with client: " + this.conn.toString(), e);
             try {
                 this.conn.close();
@@ -66,22 +78,38 @@ public class Servlet implements Runnable {
             return;
         }
 
-        Servlet.LOGGER.log(Level.INFO, "Channel opened for client {0}", this.conn.toString());
+        Servlet.LOGGER.log(Level.INFO, "Channel opened for client {0} (resumed={1})", new Object[]{this.conn.toString(), this.channel.isResumed()});
 
         // For now, if something goes wrong here; bee-line to servlet end.
         // Try-catch gore occurs because RXExceptions can re-throw channel errors.
         try {
             // -- 
             try {
-                this.channel.sendObject(
-                    new ProtocolConfig(this.sJobManager.getBulkRequestLimit(), this.sJobManager.getBulkPushLimit(), this.sJobManager.getBulkInspectLimit())
-                );
-                while (true){
-                    // it MUST be a client message.
-                    var clientMessage = (ClientMessage)this.channel.readObject();
-                    clientMessage.handle(this.channel, this.sJobManager, this.sObjectStorage);
-                    if (clientMessage instanceof SignOff) {
-                        break; // End of session.
+                this.channel.setCompressionPolicy(this.sJobManager.getCompressionPolicy());
+                this.channel.setSessionStreams(this.sJobManager.usesSessionStreams());
+                this.channel.setBinaryCodec(this.sJobManager.usesBinaryCodec());
+                this.channel.setStreamFrames(this.sJobManager.getStreamFrameSize(), this.sJobManager.getStreamParallelism());
+                this.channel.sendObject(this.protocolConfig());
+                int maxInFlight = this.sJobManager.getMaxInFlight();
+                var inFlight = new Semaphore(maxInFlight);
+                try (var handlers = Executors.newVirtualThreadPerTaskExecutor()) {
+                    while (true){
+                        // it MUST be a client message.
+                        var clientMessage = (ClientMessage)this.channel.readObject();
+                        int requestId = this.channel.lastRequestId();
+                        if (requestId != 0 && !(clientMessage instanceof JarRequest || clientMessage instanceof SignOff)) {
+                            // Numbered requests are independent of each other; stop reading while too many are in flight.
+                            inFlight.acquireUninterruptibly();
+                            handlers.execute(() -> this.handleRequest(clientMessage, requestId, inFlight));
+                            continue;
+                        }
+                        // Anything else waits for the requests in flight, so it sees their effects.
+                        inFlight.acquireUninterruptibly(maxInFlight);
+                        inFlight.release(maxInFlight);
+                        clientMessage.handle(this.channel, this.sJobManager, this.sObjectStorage);
+                        if (clientMessage instanceof SignOff) {
+                            break; // End of session.
+                        }
                     }
                 }
             } catch (RXException e) {
@@ -92,12 +120,77 @@ public class Servlet implements Runnable {
             Servlet.LOGGER.log(Level.WARNING, "Failed to send object message.", e);
         } catch (ClassNotFoundException e) {
             Servlet.LOGGER.log(Level.WARNING, "Received unknown object from " + this.channel, e);
+        } catch (RuntimeException e) {
+            // E.g. a message that is not a ClientMessage, or a handler failing unexpectedly outside a numbered request.
+            Servlet.LOGGER.log(Level.SEVERE, "Servlet failed for " + this.channel, e);
+        } finally {
+            // Whatever ended the session, the client's leases and what the manager keeps about it go with it.
+            int released = this.sJobManager.releaseLeases(this.channel);
+            if (released > 0) {
+                Servlet.LOGGER.log(Level.INFO, "Released {0} unfinished job leases of {1}", new Object[]{released, this.channel});
+            }
+
+            try {
+                this.channel.close();
+            } catch (IOException e) {
+                Servlet.LOGGER.log(Level.WARNING, "Failed to close channel to client");
+            }
+        }
+    }
+
+    /**
+     * Handle a numbered request on a thread of its own; everything sent in handling it is marked as its reply.
+     * A failed request is answered with a Termination, and the session carries on; so is a request whose handler fails unexpectedly,
+     * e.g. with an UncheckedIOException, since the client waits for a reply to every request.
+     * If even the Termination cannot be sent, the channel is closed, so that the client stops waiting.
+     */
+    private void handleRequest(ClientMessage message, int requestId, Semaphore inFlight) {
+        this.channel.replyTo(requestId);
+        try {
+            message.handle(this.channel, this.sJobManager, this.sObjectStorage);
+        } catch (RXException e) {
+            this.terminate(requestId, e.intoTerminationMessage());
+        } catch (RuntimeException e) {
+            Servlet.LOGGER.log(Level.SEVERE, "Failed to handle request " + requestId + " from " + this.channel, e);
+            this.terminate(requestId, Termination.abrupt("Internal error handling " + message.getClass().getSimpleName() + ": " + e));
+        } finally {
+            this.channel.replyTo(0);
+            inFlight.release();
         }
+    }
 
+    /**
+     * Answer a numbered request with a Termination, or close the channel if it cannot be sent.
+     */
+    private void terminate(int requestId, Termination termination) {
+        try {
+            this.channel.sendObject(termination);
+        } catch (InvalidKeyException | IllegalBlockSizeException | BadPaddingException | IOException | InvalidAlgorithmParameterException e) {
+            Servlet.LOGGER.log(Level.WARNING, "Failed to send termination for request " + requestId, e);
+            try {
+                this.channel.close();
+            } catch (IOException e1) {
+                Servlet.LOGGER.log(Level.WARNING, "Failed to close channel to client", e1);
+            }
+        }
+    }
+
+    /**
+     * Build the protocol configuration for this client, with a fresh session ticket if possible.
+     */
+    private ProtocolConfig protocolConfig() {
+        var config = new ProtocolConfig(this.sJobManager.getBulkRequestLimit(), this.sJobManager.getBulkPushLimit(), this.sJobManager.getBulkInspectLimit())
+            .withCompressionPolicy(this.sJobManager.getCompressionPolicy())
+            .withSessionStreams(this.sJobManager.usesSessionStreams())
+            .withBinaryCodec(this.sJobManager.usesBinaryCodec())
+            .withStreamFrameSize(this.sJobManager.getStreamFrameSize())
+            .withMaxInFlight(this.sJobManager.getMaxInFlight());
+        if (this.sTickets == null) return config;
         try {
-            this.channel.close();
-        } catch (IOException e) {
-            Servlet.LOGGER.log(Level.WARNING, "Failed to close channel to client");
+            config.withSessionTicket(this.sTickets.issue(this.channel.resumptionSecret()), this.sTickets.getLifetime());
+        } catch (GeneralSecurityException e) {
+            Servlet.LOGGER.log(Level.WARNING, "Failed to issue session ticket", e);
         }
+        return config;
     }
 }
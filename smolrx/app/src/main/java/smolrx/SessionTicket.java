@@ -0,0 +1,74 @@
+package smolrx;
+
+import java.net.SocketAddress;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Client-side record of a session ticket issued by a server, along with the resumption secret it seals.
+ * Tickets are remembered per server address, so that later connections to the same server may resume without a key exchange.
+ */
+public final class SessionTicket {
+
+    /**
+     * Most recent ticket received from each server.
+     */
+    private static final ConcurrentHashMap<SocketAddress, SessionTicket> TICKETS = new ConcurrentHashMap<>();
+
+    /**
+     * The ticket, opaque to the client.
+     */
+    final byte[] ticket;
+
+    /**
+     * Resumption secret of the channel the ticket was issued on.
+     */
+    final byte[] resumptionSecret;
+
+    /**
+     * Local time after which the server will reject the ticket.
+     */
+    final long expiresAt;
+
+    SessionTicket(byte[] ticket, byte[] resumptionSecret, long expiresAt) {
+        this.ticket = ticket;
+        this.resumptionSecret = resumptionSecret;
+        this.expiresAt = expiresAt;
+    }
+
+    public boolean isExpired() {
+        return System.currentTimeMillis() >= this.expiresAt;
+    }
+
+    /**
+     * Remember a ticket for the given server, replacing any earlier one.
+     * @param server The address of the server that issued the ticket.
+     * @param ticket The ticket.
+     */
+    static void remember(SocketAddress server, SessionTicket ticket) {
+        TICKETS.put(server, ticket);
+    }
+
+    /**
+     * Find an unexpired ticket for the given server.
+     * @param server The address of the server.
+     * @return The ticket, or null if there is none.
+     */
+    static SessionTicket recall(SocketAddress server) {
+        var ticket = TICKETS.get(server);
+        if (ticket == null) return null;
+        if (ticket.isExpired()) {
+            TICKETS.remove(server, ticket);
+            return null;
+        }
+        return ticket;
+    }
+
+    /**
+     * Drop a ticket held for the given server, usually because the server rejected it.
+     * @param server The address of the server.
+     * @param ticket The ticket to drop. A newer ticket for the same server is kept.
+     */
+    static void forget(SocketAddress server, SessionTicket ticket) {
+        TICKETS.remove(server, ticket);
+    }
+}
@@ -0,0 +1,151 @@
+package smolrx;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Server-side issuer of encrypted session tickets.
+ * A ticket seals the resumption secret of a channel under the server's ticket key, so that the client may later open a channel without an asymmetric key exchange.
+ * The server keeps no per-ticket state.
+ */
+public class SessionTickets {
+
+    private static final String TICKET_TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int IV_SIZE = 12;
+    private static final int TAG_SIZE = 128;
+    private static final int SECRET_SIZE = 32;
+
+    /**
+     * Default ticket lifetime of one hour.
+     */
+    public static final long DEFAULT_LIFETIME_MS = 60 * 60 * 1000L;
+
+    /**
+     * A ticket key and the time it was generated.
+     */
+    private record TicketKey(int id, SecretKey key, long createdAt) {}
+
+    /**
+     * Key used to seal new tickets.
+     */
+    private volatile TicketKey current;
+
+    /**
+     * Key retired by the last rotation. Tickets sealed with it are accepted until they expire.
+     */
+    private volatile TicketKey previous;
+
+    /**
+     * Lifetime of issued tickets, in milliseconds. The ticket key is also rotated after this period.
+     */
+    private final long lifetimeMs;
+
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * Create a ticket issuer with the specified ticket lifetime.
+     * @param lifetimeMs Lifetime of tickets in milliseconds. Must be positive.
+     * @throws IllegalArgumentException if the lifetime is not positive.
+     */
+    public SessionTickets(long lifetimeMs) {
+        if (lifetimeMs <= 0) {
+            throw new IllegalArgumentException("Ticket lifetime must be positive.");
+        }
+        this.lifetimeMs = lifetimeMs;
+        this.current = this.newKey();
+        this.previous = null;
+    }
+
+    /**
+     * Create a ticket issuer with the default lifetime.
+     */
+    public SessionTickets() {
+        this(DEFAULT_LIFETIME_MS);
+    }
+
+    public long getLifetime() {
+        return lifetimeMs;
+    }
+
+    /**
+     * Replace the ticket key. Tickets sealed with the replaced key remain valid until they expire; tickets sealed with any older key are rejected.
+     */
+    public synchronized void rotateKey() {
+        this.previous = this.current;
+        this.current = this.newKey();
+    }
+
+    private TicketKey newKey() {
+        try {
+            var kg = KeyGenerator.getInstance("AES");
+            kg.init(256, this.random);
+            return new TicketKey(this.random.nextInt(), kg.generateKey(), System.currentTimeMillis());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("AES unavailable for session tickets", e);
+        }
+    }
+
+    /**
+     * Seal a resumption secret into a ticket.
+     * @param resumptionSecret The secret to seal.
+     * @return The ticket, opaque to the client.
+     * @throws GeneralSecurityException If the ticket could not be encrypted.
+     */
+    byte[] issue(byte[] resumptionSecret) throws GeneralSecurityException {
+        var now = System.currentTimeMillis();
+        var key = this.current;
+        if (now - key.createdAt() >= this.lifetimeMs) {
+            synchronized (this) {
+                if (this.current == key) this.rotateKey();
+                key = this.current;
+            }
+        }
+
+        var iv = new byte[IV_SIZE];
+        this.random.nextBytes(iv);
+        var cipher = Cipher.getInstance(TICKET_TRANSFORMATION);
+        cipher.init(Cipher.ENCRYPT_MODE, key.key(), new GCMParameterSpec(TAG_SIZE, iv));
+        cipher.updateAAD(ByteBuffer.allocate(4).putInt(key.id()).array());
+        var sealed = cipher.doFinal(ByteBuffer.allocate(8 + SECRET_SIZE).putLong(now + this.lifetimeMs).put(resumptionSecret, 0, SECRET_SIZE).array());
+
+        return ByteBuffer.allocate(4 + IV_SIZE + sealed.length).putInt(key.id()).put(iv).put(sealed).array();
+    }
+
+    /**
+     * Open a ticket presented by a client.
+     * @param ticket The ticket.
+     * @return The resumption secret sealed in the ticket, or null if the ticket is malformed, forged, expired or sealed with a retired key.
+     */
+    byte[] redeem(byte[] ticket) {
+        if (ticket.length != 4 + IV_SIZE + 8 + SECRET_SIZE + TAG_SIZE / 8) return null;
+        var buf = ByteBuffer.wrap(ticket);
+        int keyId = buf.getInt();
+
+        TicketKey key = null;
+        var cur = this.current;
+        var prev = this.previous;
+        if (cur.id() == keyId) key = cur;
+        else if (prev != null && prev.id() == keyId) key = prev;
+        if (key == null) return null;
+
+        try {
+            var cipher = Cipher.getInstance(TICKET_TRANSFORMATION);
+            cipher.init(Cipher.DECRYPT_MODE, key.key(), new GCMParameterSpec(TAG_SIZE, ticket, 4, IV_SIZE));
+            cipher.updateAAD(ticket, 0, 4);
+            var plain = ByteBuffer.wrap(cipher.doFinal(ticket, 4 + IV_SIZE, ticket.length - 4 - IV_SIZE));
+            if (plain.getLong() < System.currentTimeMillis()) return null;
+            var secret = new byte[SECRET_SIZE];
+            plain.get(secret);
+            return secret;
+        } catch (GeneralSecurityException e) {
+            return null;
+        }
+    }
+}
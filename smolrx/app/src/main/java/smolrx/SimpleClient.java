@@ -82,10 +82,11 @@ public class SimpleClient implements Runnable {
         SimpleClient.LOGGER.info("Channel opened!");
 
         try {
-            var _config_ignore = channel.readObject(); // read the config object.
-            if (!(_config_ignore instanceof ProtocolConfig)) {
+            var config = channel.readObject(); // read the config object.
+            if (!(config instanceof ProtocolConfig)) {
                 throw new RuntimeException("Invalid protocol config object received.");
             }
+            channel.applyConfig((ProtocolConfig) config);
 
             var jobreq = new JobRequest(this.min_priority, 5, this.roleKey);
             channel.sendObject(jobreq);
@@ -0,0 +1,192 @@
+package smolrx.jobs;
+
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Sizes each client's claims to about a fixed horizon of its work, so that a large client gets as many more jobs as it runs,
+ * and none sits idle or hoards jobs. A client's rate is an EWMA of the jobs per second it finished its past claims at, each from the claim
+ * to its last result; until it has finished one, the rate it advertised, or its cores times the rate per core of other clients.
+ * A client that advertised its cores, but whose rate cannot be told yet, is leased one job per core, which its results soon measure.
+ * Claims are also kept to a quarter of the client's free heap, by the size of the stored inputs claimed so far.
+ * Thread-safe: each client's figures are kept under a lock of its own.
+ */
+final class ClaimSizer {
+
+    /**
+     * Weight of the newest rate in the average.
+     */
+    private static final double ALPHA = 0.3;
+
+    /**
+     * Claims of a client that may be open at once; the oldest is given up beyond this, e.g. as its jobs were lost.
+     */
+    private static final int MAX_OPEN = 16;
+
+    /**
+     * What a client advertised, and the rate it was seen to work at.
+     */
+    private static final class Client {
+        final ReentrantLock lock = new ReentrantLock();
+        int cores;
+        long freeHeap;
+        double advertised;
+        double rate;
+
+        /**
+         * Claims not finished yet, by the time their jobs were leased: {jobs leased, results, time of the last result}.
+         */
+        final HashMap<Long, long[]> open = new HashMap<>();
+    }
+
+    /**
+     * Work to hand out per claim, in milliseconds.
+     */
+    private final long horizon;
+
+    private final ConcurrentHashMap<Object, Client> clients = new ConcurrentHashMap<>();
+
+    /**
+     * Rate per core of clients that advertised their cores, and size in bytes of a stored input; 0 until measured. Guarded by `lock`.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    private double perCore;
+    private double bytesPerJob;
+
+    /**
+     * @param horizon The work to hand out per claim, in milliseconds.
+     */
+    ClaimSizer(long horizon) {
+        this.horizon = horizon;
+    }
+
+    /**
+     * Record what a client advertised of itself.
+     * @param cores The number of cores, or 0 if unknown.
+     * @param freeHeap The free heap in bytes, or 0 if unknown.
+     * @param jobsPerSecond The rate it measured itself to run jobs at, or 0 if unknown.
+     */
+    void hello(Object holder, int cores, long freeHeap, double jobsPerSecond) {
+        var client = this.clients.computeIfAbsent(holder, h -> new Client());
+        client.lock.lock();
+        try {
+            client.cores = Math.max(0, cores);
+            client.freeHeap = Math.max(0, freeHeap);
+            client.advertised = jobsPerSecond > 0 ? jobsPerSecond : 0;
+        } finally {
+            client.lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of jobs to claim for a client.
+     * @param limit The number of jobs asked for, within the bulk limit.
+     * @return The limit, or less if the client's rate or heap calls for it; at least one job.
+     */
+    int size(Object holder, int limit) {
+        var client = this.clients.get(holder);
+        if (client == null || limit <= 1) return limit;
+        double perCore;
+        double bytesPerJob;
+        this.lock.lock();
+        try {
+            perCore = this.perCore;
+            bytesPerJob = this.bytesPerJob;
+        } finally {
+            this.lock.unlock();
+        }
+        double rate;
+        int cores;
+        long freeHeap;
+        client.lock.lock();
+        try {
+            rate = client.rate > 0 ? client.rate : client.advertised > 0 ? client.advertised : client.cores * perCore;
+            cores = client.cores;
+            freeHeap = client.freeHeap;
+        } finally {
+            client.lock.unlock();
+        }
+        long size = rate > 0 ? Math.max(1, Math.round(rate * this.horizon / 1000)) : cores > 0 ? cores : limit;
+        if (freeHeap > 0 && bytesPerJob > 0) size = Math.min(size, Math.max(1, (long) (freeHeap / 4 / bytesPerJob)));
+        return (int) Math.min(limit, size);
+    }
+
+    /**
+     * Record a claim, so that the client's rate is measured once its results are in.
+     * @param now The time the jobs were leased.
+     * @param jobs The number of jobs claimed.
+     * @param inputBytes The size of the claimed inputs that were stored encoded, or 0.
+     * @param stored The number of claimed inputs that were stored encoded.
+     */
+    void claimed(Object holder, long now, int jobs, long inputBytes, int stored) {
+        if (jobs == 0) return;
+        if (stored > 0) {
+            double bytes = (double) inputBytes / stored;
+            this.lock.lock();
+            try {
+                this.bytesPerJob = this.bytesPerJob == 0 ? bytes : ALPHA * bytes + (1 - ALPHA) * this.bytesPerJob;
+            } finally {
+                this.lock.unlock();
+            }
+        }
+        var client = this.clients.computeIfAbsent(holder, h -> new Client());
+        client.lock.lock();
+        try {
+            var claim = client.open.get(now);
+            if (claim != null) {
+                claim[0] += jobs;
+                return;
+            }
+            if (client.open.size() >= MAX_OPEN) {
+                long oldest = client.open.keySet().stream().mapToLong(Long::longValue).min().getAsLong();
+                this.close(client, oldest, client.open.remove(oldest));
+            }
+            client.open.put(now, new long[]{jobs, 0, 0});
+        } finally {
+            client.lock.unlock();
+        }
+    }
+
+    /**
+     * Record a result of a client for a job it leased at the given time. A claim's rate is taken once all its results are in.
+     */
+    void completed(Object holder, long leasedAt, long now) {
+        var client = this.clients.get(holder);
+        if (client == null) return;
+        client.lock.lock();
+        try {
+            var claim = client.open.get(leasedAt);
+            if (claim == null) return;
+            claim[1] += 1;
+            claim[2] = now;
+            if (claim[1] >= claim[0]) this.close(client, leasedAt, client.open.remove(leasedAt));
+        } finally {
+            client.lock.unlock();
+        }
+    }
+
+    /**
+     * Forget a client, e.g. once it disconnects.
+     */
+    void forget(Object holder) {
+        this.clients.remove(holder);
+    }
+
+    /**
+     * Fold a claim's rate into the client's, if any of its results came in. Call with the client's lock held.
+     */
+    private void close(Client client, long leasedAt, long[] claim) {
+        if (claim[1] == 0) return;
+        double rate = claim[1] * 1000.0 / Math.max(1, claim[2] - leasedAt);
+        client.rate = client.rate == 0 ? rate : ALPHA * rate + (1 - ALPHA) * client.rate;
+        if (client.cores == 0) return;
+        double perCore = rate / client.cores;
+        this.lock.lock();
+        try {
+            this.perCore = this.perCore == 0 ? perCore : ALPHA * perCore + (1 - ALPHA) * this.perCore;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+}
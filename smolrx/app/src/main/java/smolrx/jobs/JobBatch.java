@@ -0,0 +1,56 @@
+package smolrx.jobs;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Jobs and programs to add to a running JobManager at once, e.g. the next stage of a pipeline, with `JobManager.submit` or a SubmitJobs message.
+ * Jobs of a batch may depend on each other, and on jobs the manager already has.
+ */
+public final class JobBatch implements Serializable {
+    private static final long serialVersionUID = 0xba7c4L;
+
+    private final LinkedHashMap<Long, JobInfo> jobs = new LinkedHashMap<>();
+    private final HashMap<Long, String> jars = new HashMap<>();
+
+    /**
+     * Add a job to the batch.
+     * @param jobId The ID of the job, which the manager must not have yet.
+     * @param jobInfo The information about the job.
+     * @return The current instance of JobBatch for method chaining.
+     * @throws IllegalArgumentException If the batch has a job with the ID already.
+     */
+    public JobBatch addJob(long jobId, JobInfo jobInfo) {
+        if (this.jobs.putIfAbsent(jobId, jobInfo) != null) throw new IllegalArgumentException("Job " + jobId + " is in the batch already.");
+        return this;
+    }
+
+    /**
+     * Add a program to the batch.
+     * @param programId The ID of the program, which the manager must not have yet, unless with the same jar.
+     * @param jarPath The path to the JAR file, local to the server.
+     * @return The current instance of JobBatch for method chaining.
+     */
+    public JobBatch addJar(long programId, String jarPath) {
+        this.jars.put(programId, jarPath);
+        return this;
+    }
+
+    /**
+     * Get the number of jobs in the batch.
+     */
+    public int size() {
+        return this.jobs.size();
+    }
+
+    Map<Long, JobInfo> getJobs() {
+        return Collections.unmodifiableMap(this.jobs);
+    }
+
+    Map<Long, String> getJars() {
+        return Collections.unmodifiableMap(this.jars);
+    }
+}
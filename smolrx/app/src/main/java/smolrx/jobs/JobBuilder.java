@@ -1,8 +1,9 @@
 package smolrx.jobs;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -17,7 +18,8 @@ public class JobBuilder {
     private Serializable jobData = null;
     private HashMap<String, String> properties = new HashMap<>();
     private int redundancyCount = 1;
-    private HashSet<Long> prerequisiteJobs = new HashSet<>();
+    private long[] prerequisiteJobs = new long[0];
+    private int prerequisiteCount = 0;
     private Optional<String> link = Optional.empty();
     private boolean relax = false; // not relaxed by default.
 
@@ -57,12 +59,18 @@ public class JobBuilder {
     }
 
     public JobBuilder setProperty(String key, String value) {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("Job properties cannot have null keys or values: " + key + "=" + value);
+        }
         this.properties.put(key, value);
         return this;
     }
 
     public JobBuilder addPrerequisiteJob(long jobId) {
-        this.prerequisiteJobs.add(jobId);
+        if (this.prerequisiteCount == this.prerequisiteJobs.length) {
+            this.prerequisiteJobs = Arrays.copyOf(this.prerequisiteJobs, Math.max(4, this.prerequisiteCount * 2));
+        }
+        this.prerequisiteJobs[this.prerequisiteCount++] = jobId;
         return this;
     }
 
@@ -87,9 +95,9 @@ public class JobBuilder {
         jobInfo.priority = this.priority;
         jobInfo.jobData = this.jobData;
         jobInfo.programId = this.programId;
-        jobInfo.properties = this.properties;
+        jobInfo.properties = Map.copyOf(this.properties);
         jobInfo.redundancy_count = this.redundancyCount;
-        jobInfo.prerequisite_jobs = this.prerequisiteJobs;
+        jobInfo.prerequisite_jobs = JobIdSet.of(this.prerequisiteJobs, this.prerequisiteCount);
         jobInfo.relaxed = this.relax;
         jobInfo.link = this.link.isEmpty() ? null : this.link.get();
         return jobInfo;
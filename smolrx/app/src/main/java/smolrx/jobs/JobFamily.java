@@ -0,0 +1,175 @@
+package smolrx.jobs;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongFunction;
+
+/**
+ * A range of jobs that share one template, e.g. a parameter sweep, with inputs generated from their IDs.
+ * The manager adds a job of the range to its table and index only once it is listed, fetched, or named in a result or as a pre-requisite,
+ * so that a range of millions of jobs costs a few bytes until clients work through it. Added jobs share the template as their info.
+ */
+final class JobFamily {
+
+    /**
+     * First job ID of the range, inclusive.
+     */
+    final long start;
+
+    /**
+     * Last job ID of the range, exclusive.
+     */
+    final long end;
+
+    /**
+     * Info shared by the jobs of the range.
+     */
+    final JobInfo template;
+
+    /**
+     * Generates the input of a job from its ID; null if the jobs share the template's input.
+     */
+    private final LongFunction<? extends Serializable> inputs;
+
+    /**
+     * Serializes adding jobs of the range, so that each is added to the table, graph and index once, and completely.
+     */
+    final ReentrantLock adding = new ReentrantLock();
+
+    /**
+     * All jobs of the range below this ID have been added.
+     */
+    private volatile long frontier;
+
+    /**
+     * Pre-requisites of the template that have yet to finish, counted once when the manager is built, like the blockers of a job in the JobGraph.
+     * The range's jobs are ready once none are left.
+     */
+    private final AtomicInteger blockers = new AtomicInteger();
+
+    JobFamily(long start, long end, JobInfo template, LongFunction<? extends Serializable> inputs) {
+        this.start = start;
+        this.end = end;
+        this.template = template;
+        this.inputs = inputs;
+        this.frontier = start;
+    }
+
+    boolean contains(long jobId) {
+        return jobId >= this.start && jobId < this.end;
+    }
+
+    /**
+     * Get the input of a job of the range.
+     */
+    Serializable input(long jobId) {
+        return this.inputs == null ? this.template.jobData : this.inputs.apply(jobId);
+    }
+
+    /**
+     * Count a pre-requisite the range waits on.
+     */
+    void block() {
+        this.blockers.incrementAndGet();
+    }
+
+    /**
+     * Release a pre-requisite that finished.
+     */
+    void unblock() {
+        this.blockers.decrementAndGet();
+    }
+
+    /**
+     * Whether the range's jobs are ready: relaxed, or with all pre-requisites finished.
+     */
+    boolean isReady() {
+        return this.template.relaxed || this.blockers.get() == 0;
+    }
+
+    /**
+     * Get the least job ID that may not have been added yet.
+     */
+    long frontier() {
+        return this.frontier;
+    }
+
+    /**
+     * Move the frontier past the jobs that have been added. Call with `adding` held.
+     */
+    void advance(JobTable jobs) {
+        long next = this.frontier;
+        while (next < this.end && jobs.contains(next)) next += 1;
+        this.frontier = next;
+    }
+
+    /**
+     * Merge ready jobs of the index with the jobs of families that have not been added yet, in order of priority and then job ID.
+     * Jobs of the families are added as they are reached; a job added meanwhile is listed from the index, or skipped if the index was past it.
+     * @param indexed Ready jobs of the index.
+     * @param families Families of the same type whose jobs are ready, at or above the index's least priority.
+     * @param jobs The table the families' jobs are added to.
+     * @param add Adds a job of a family, and returns its info if it is ready, or null.
+     * @return The merged jobs, each listed once.
+     */
+    static Iterable<Map.Entry<PriorityIndex.Key, JobInfo>> merge(Iterable<Map.Entry<PriorityIndex.Key, JobInfo>> indexed, List<JobFamily> families,
+            JobTable jobs, LongFunction<JobInfo> add) {
+        if (families.isEmpty()) return indexed;
+        return () -> new Iterator<>() {
+            private final Iterator<Map.Entry<PriorityIndex.Key, JobInfo>> index = indexed.iterator();
+            private final long[] cursors = families.stream().mapToLong(JobFamily::frontier).toArray();
+            private Map.Entry<PriorityIndex.Key, JobInfo> head;
+            private Map.Entry<PriorityIndex.Key, JobInfo> next;
+            private PriorityIndex.Key last;
+
+            @Override
+            public boolean hasNext() {
+                while (this.next == null) {
+                    // Jobs a family added are also put in the index, which may list them again.
+                    while (this.head == null && this.index.hasNext()) {
+                        var entry = this.index.next();
+                        if (this.last == null || entry.getKey().compareTo(this.last) > 0) this.head = entry;
+                    }
+                    int first = -1;
+                    PriorityIndex.Key firstKey = null;
+                    for (int i = 0; i < this.cursors.length; i++) {
+                        var family = families.get(i);
+                        while (this.cursors[i] < family.end && jobs.contains(this.cursors[i])) this.cursors[i] += 1;
+                        if (this.cursors[i] == family.end) continue;
+                        var key = new PriorityIndex.Key(family.template.priority, this.cursors[i]);
+                        if (firstKey == null || key.compareTo(firstKey) < 0) {
+                            first = i;
+                            firstKey = key;
+                        }
+                    }
+                    if (this.head != null && (firstKey == null || this.head.getKey().compareTo(firstKey) < 0)) {
+                        this.next = this.head;
+                        this.head = null;
+                    } else if (firstKey != null) {
+                        this.cursors[first] += 1;
+                        var info = add.apply(firstKey.jobId());
+                        if (info != null) this.next = new AbstractMap.SimpleImmutableEntry<>(firstKey, info);
+                    } else {
+                        return false;
+                    }
+                }
+                this.last = this.next.getKey();
+                return true;
+            }
+
+            @Override
+            public Map.Entry<PriorityIndex.Key, JobInfo> next() {
+                if (!this.hasNext()) throw new NoSuchElementException();
+                var entry = this.next;
+                this.next = null;
+                return entry;
+            }
+        };
+    }
+}
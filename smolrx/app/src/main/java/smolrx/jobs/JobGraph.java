@@ -0,0 +1,83 @@
+package smolrx.jobs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongPredicate;
+
+/**
+ * Dependencies between pending jobs. Each blocked job counts its unfinished pre-requisites, and each pre-requisite
+ * keeps the jobs waiting on it, so that a job's readiness is known in O(1), and a job becomes ready as soon as its last pre-requisite finishes.
+ * Relaxed jobs are never blocked.
+ * Counts and edges live in columns of the JobTable, as primitives, and are updated under its segment locks,
+ * so it is safe to add jobs, finish jobs and query readiness concurrently. A job with pre-requisites is put in the table with one blocker as a gate,
+ * which `add` releases once all its edges are in place, so that no pre-requisite finishing meanwhile can find the job's count short.
+ */
+final class JobGraph {
+
+    private final JobTable jobs;
+
+    JobGraph(JobTable jobs) {
+        this.jobs = jobs;
+    }
+
+    /**
+     * Get the number of blockers to put a job in the table with, before adding it to the graph.
+     * @return 1 if the job may wait on pre-requisites, 0 otherwise.
+     */
+    static int gate(JobInfo info) {
+        return info.relaxed || info.prerequisite_jobs.isEmpty() ? 0 : 1;
+    }
+
+    /**
+     * Add a job that is in the table with its gate, with edges from its unfinished pre-requisites.
+     * @param jobId The job ID.
+     * @param info The job.
+     * @param unfinished Whether a pre-requisite has yet to finish.
+     * @return Whether the job is ready.
+     */
+    boolean add(long jobId, JobInfo info, LongPredicate unfinished) {
+        if (gate(info) == 0) return true;
+        var prerequisites = info.prerequisite_jobs;
+        for (int i = 0; i < prerequisites.size(); i++) {
+            long prerequisite = prerequisites.get(i);
+            if (!unfinished.test(prerequisite)) continue;
+            // Count the edge before adding it, as the pre-requisite may finish as soon as it is added.
+            this.jobs.addBlocker(jobId);
+            if (!this.jobs.addDependent(prerequisite, jobId)) this.jobs.unblock(jobId);
+        }
+        return this.jobs.unblock(jobId);
+    }
+
+    boolean isReady(long jobId) {
+        return this.jobs.blockers(jobId) == 0;
+    }
+
+    /**
+     * Get the number of unfinished pre-requisites of a job.
+     */
+    int remaining(long jobId) {
+        return this.jobs.blockers(jobId);
+    }
+
+    /**
+     * Record that a job has finished. Only the first call for a job releases its dependents.
+     * @param jobId The job ID.
+     * @return The jobs that became ready.
+     */
+    List<Long> finish(long jobId) {
+        var waiting = this.jobs.takeDependents(jobId);
+        if (waiting.length == 0) return List.of();
+        var ready = new ArrayList<Long>();
+        for (long dependent : waiting) {
+            if (this.jobs.unblock(dependent)) ready.add(dependent);
+        }
+        return ready;
+    }
+
+    /**
+     * Stop tracking a job that is no longer pending, without releasing its dependents.
+     */
+    void forget(long jobId) {
+        this.jobs.setBlockers(jobId, 0);
+    }
+}
@@ -0,0 +1,88 @@
+package smolrx.jobs;
+
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable set of job IDs, kept as a sorted array of primitive longs, e.g. the pre-requisites of a job.
+ * It takes 8 bytes per ID, where a HashSet of boxed Longs takes about 50; lookups are binary searches.
+ */
+public final class JobIdSet extends AbstractSet<Long> implements Serializable {
+
+    private static final long serialVersionUID = 0x1d5e7L;
+
+    /**
+     * The empty set, shared by jobs without pre-requisites.
+     */
+    public static final JobIdSet EMPTY = new JobIdSet(new long[0]);
+
+    private final long[] ids;
+
+    private JobIdSet(long[] ids) {
+        this.ids = ids;
+    }
+
+    /**
+     * Create a set of the given IDs.
+     * @param ids The IDs, in any order, possibly repeated. The array is not kept.
+     * @param count The number of IDs to take from the start of the array.
+     * @return The set.
+     */
+    public static JobIdSet of(long[] ids, int count) {
+        if (count == 0) return EMPTY;
+        var sorted = Arrays.copyOf(ids, count);
+        Arrays.sort(sorted);
+        int unique = 1;
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i] != sorted[unique - 1]) sorted[unique++] = sorted[i];
+        }
+        return new JobIdSet(unique == sorted.length ? sorted : Arrays.copyOf(sorted, unique));
+    }
+
+    public boolean contains(long id) {
+        return Arrays.binarySearch(this.ids, id) >= 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Long id && this.contains(id.longValue());
+    }
+
+    /**
+     * Get the i-th smallest ID, to iterate without boxing.
+     */
+    public long get(int i) {
+        return this.ids[i];
+    }
+
+    @Override
+    public int size() {
+        return this.ids.length;
+    }
+
+    @Override
+    public Iterator<Long> iterator() {
+        return new Iterator<>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return this.next < JobIdSet.this.ids.length;
+            }
+
+            @Override
+            public Long next() {
+                if (!this.hasNext()) throw new NoSuchElementException();
+                return JobIdSet.this.ids[this.next++];
+            }
+        };
+    }
+
+    private Object readResolve() {
+        // Sort again, since a stream is not bound to the invariant.
+        return of(this.ids, this.ids.length);
+    }
+}
@@ -1,20 +1,24 @@
 package smolrx.jobs;
 
+import java.io.IOException;
 import java.io.Serializable;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.io.UncheckedIOException;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 
+import smolrx.msg.MessageCodec;
+
 /**
  * Data-class that maintains instance-specific information about a program to be executed.
  */
 public class JobInfo implements Serializable, Comparable<JobInfo> {
 
-    private static final long serialVersionUID = 0xb00bcafeL;
+    /**
+     * Changed when `properties` became an immutable Map and `prerequisite_jobs` a JobIdSet, so that older peers fail on the version rather than on field types.
+     */
+    private static final long serialVersionUID = 0xb00bcaffL;
 
     /**
      * The type of job.
@@ -27,7 +31,7 @@ public class JobInfo implements Serializable, Comparable<JobInfo> {
     long priority;
 
     /**
-     * Input data for each job.
+     * Input data for each job; null if the manager keeps it in a JobInputStore.
      */
     Serializable jobData;
 
@@ -37,9 +41,11 @@ public class JobInfo implements Serializable, Comparable<JobInfo> {
     long programId;
     
     /**
-     * Miscellaneous properties associated with the job.
+     * Miscellaneous properties associated with the job. Immutable; jobs without properties share the empty map.
+     * Always made by `Map.copyOf`, or read back as one, which is serializable.
      */
-    HashMap<String, String> properties;
+    @SuppressWarnings("serial")
+    Map<String, String> properties;
 
     /**
      * The number of submissions to allow before de-listing the job.
@@ -49,7 +55,7 @@ public class JobInfo implements Serializable, Comparable<JobInfo> {
     /**
      * Jobs that must be completed before allowing admission of any results of this job.
      */
-    HashSet<Long> prerequisite_jobs;
+    JobIdSet prerequisite_jobs;
 
     /**
      * Indicates that the pre-requisite jobs need not all be completed before this job can be executed.
@@ -65,13 +71,25 @@ public class JobInfo implements Serializable, Comparable<JobInfo> {
      */
     String link;
 
+    /**
+     * The masked clone of this job, made once: a job info does not change once its job is added, and a replaced job gets a new one.
+     */
+    private transient volatile JobInfo masked;
+
+    /**
+     * The binary encoding of this masked clone, made once and written to every listing of its job.
+     */
+    private transient volatile byte[] encoding;
+
     JobInfo() {}
 
     /**
-     * Clone and remove unnecessary information.
+     * Clone and remove unnecessary information. The clone is made once and shared, so it must not be modified.
      * @return Cloned object.
      */
     protected JobInfo maskedClone() {
+        var masked = this.masked;
+        if (masked != null) return masked;
         var jinfo = new JobInfo();
     
         jinfo.redundancy_count = 0;
@@ -85,6 +103,42 @@ public class JobInfo implements Serializable, Comparable<JobInfo> {
         jinfo.relaxed = this.relaxed;
         jinfo.properties = this.properties;
         jinfo.priority = this.priority;
+        this.masked = jinfo;
+        return jinfo;
+    }
+
+    /**
+     * Get the encoding of the masked clone by MessageCodec, made once, so that listings write it as it is.
+     * @return The encoding.
+     */
+    byte[] maskedEncoding() {
+        var masked = this.maskedClone();
+        var encoding = masked.encoding;
+        if (encoding != null) return encoding;
+        try {
+            encoding = MessageCodec.encodeJobInfo(masked);
+        } catch (IOException e) {
+            // A masked clone holds no input, so only strings and numbers are written, to memory.
+            throw new UncheckedIOException(e);
+        }
+        masked.encoding = encoding;
+        return encoding;
+    }
+
+    /**
+     * Clone without the input data, which is kept elsewhere.
+     * @return Cloned object.
+     */
+    JobInfo withoutData() {
+        var jinfo = new JobInfo();
+        jinfo.type = this.type;
+        jinfo.priority = this.priority;
+        jinfo.programId = this.programId;
+        jinfo.properties = this.properties;
+        jinfo.redundancy_count = this.redundancy_count;
+        jinfo.prerequisite_jobs = this.prerequisite_jobs;
+        jinfo.relaxed = this.relaxed;
+        jinfo.link = this.link;
         return jinfo;
     }
 
@@ -133,13 +187,33 @@ public class JobInfo implements Serializable, Comparable<JobInfo> {
     }
 
     public Map<String, String> getProperties() {
-        return Collections.unmodifiableMap(properties);
+        return properties;
     }
     public long getProgramId() {
         return this.programId;
     }
 
     public Set<Long> getPrerequisiteJobs() {
-        return Collections.unmodifiableSet(prerequisite_jobs);
+        return prerequisite_jobs;
+    }
+
+    public long getPriority() {
+        return this.priority;
+    }
+
+    public int getRedundancyCount() {
+        return this.redundancy_count;
+    }
+
+    public boolean isRelaxed() {
+        return this.relaxed;
+    }
+
+    /**
+     * Get the input data of this job; null in masked clones sent in job listings, and in jobs whose input the manager keeps in its input store.
+     * @return The input data.
+     */
+    public Serializable getJobData() {
+        return this.jobData;
     }
 }
@@ -0,0 +1,121 @@
+package smolrx.jobs;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+import smolrx.msg.EncodedPayload;
+import smolrx.msg.MessageCodec;
+
+/**
+ * Job inputs kept off the heap, in a memory-mapped file: each input is encoded once with MessageCodec when its job is added,
+ * and handed out as an EncodedPayload over the mapped bytes, which channels send without decoding. The page cache holds what
+ * clients fetch, so input sets may be far larger than the heap.
+ * The file is append-only: inputs of finished jobs are not reclaimed. It is mapped in regions, and an input never straddles two.
+ * Thread-safe: appends take a lock, and reads only use absolute gets on the regions.
+ */
+final class JobInputStore {
+
+    /**
+     * Regions are 256 MiB unless a store is opened with another size, which also bounds the size of one encoded input.
+     */
+    private static final int REGION_BITS = 28;
+
+    /**
+     * Each input is preceded by its length.
+     */
+    private static final int HEADER = Integer.BYTES;
+
+    private final FileChannel file;
+    private final int regionBits;
+    private final long regionSize;
+    private final ReentrantLock appending = new ReentrantLock();
+
+    /**
+     * The mapped regions, replaced as a whole when one is added.
+     */
+    private volatile MappedByteBuffer[] regions = new MappedByteBuffer[0];
+
+    /**
+     * Offset at which the next input is written. Guarded by `appending`.
+     */
+    private long end = 0;
+
+    /**
+     * Open a store, discarding what the file held.
+     * @param path The file.
+     * @throws IOException If the file cannot be opened.
+     */
+    JobInputStore(Path path) throws IOException {
+        this(path, REGION_BITS);
+    }
+
+    /**
+     * Open a store with regions of another size, discarding what the file held.
+     * @param path The file.
+     * @param regionBits The log2 of the size of a region.
+     * @throws IOException If the file cannot be opened.
+     */
+    JobInputStore(Path path, int regionBits) throws IOException {
+        if (regionBits < 3 || regionBits > 30) throw new IllegalArgumentException("Region size out of range: 2^" + regionBits);
+        this.regionBits = regionBits;
+        this.regionSize = 1L << regionBits;
+        this.file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Encode and store a job input.
+     * @param input The input.
+     * @return The reference of the input, which is never 0.
+     * @throws IOException If the input is not serializable, is too large, or the file cannot be grown.
+     */
+    long append(Object input) throws IOException {
+        var encoded = MessageCodec.encodePayload(input);
+        long size = HEADER + (long) encoded.length;
+        if (size > this.regionSize) throw new IOException("Job input too large to store: " + encoded.length + " bytes");
+        this.appending.lock();
+        try {
+            long start = this.end;
+            // Start a new region if the input does not fit in the rest of this one.
+            if ((start >>> this.regionBits) != ((start + size - 1) >>> this.regionBits)) {
+                start = ((start >>> this.regionBits) + 1) << this.regionBits;
+            }
+            var region = this.region((int) (start >>> this.regionBits));
+            int at = (int) (start & (this.regionSize - 1));
+            region.putInt(at, encoded.length);
+            region.put(at + HEADER, encoded);
+            this.end = start + size;
+            return start + 1;
+        } finally {
+            this.appending.unlock();
+        }
+    }
+
+    /**
+     * Map a region, if it is not mapped yet. Call with `appending` held.
+     */
+    private MappedByteBuffer region(int index) throws IOException {
+        var regions = this.regions;
+        if (index < regions.length) return regions[index];
+        regions = Arrays.copyOf(regions, index + 1);
+        regions[index] = this.file.map(FileChannel.MapMode.READ_WRITE, (long) index << this.regionBits, this.regionSize);
+        this.regions = regions;
+        return regions[index];
+    }
+
+    /**
+     * Get a stored input, without copying or decoding it.
+     * @param reference The reference returned by `append`.
+     * @return The encoded input.
+     */
+    EncodedPayload get(long reference) {
+        long start = reference - 1;
+        var region = this.regions[(int) (start >>> this.regionBits)];
+        int at = (int) (start & (this.regionSize - 1));
+        return new EncodedPayload(region.slice(at + HEADER, region.getInt(at)));
+    }
+}
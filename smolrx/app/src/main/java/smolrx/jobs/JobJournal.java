@@ -0,0 +1,484 @@
+package smolrx.jobs;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+import smolrx.msg.EncodedPayload;
+import smolrx.msg.MessageCodec;
+
+/**
+ * Durable state of a JobManager, in a directory: an append-only journal of results counted and batches submitted, and compact snapshots of both.
+ * Files come in generations: `snapshot-<g>` holds everything recorded in journals before `journal-<g>`. A new generation is started for each snapshot,
+ * and older files are deleted once the snapshot is in place. Recovery reads the newest snapshot and replays the journals from its generation on.
+ * Records carry the number of results a job has after the one recorded, not an increment, so that replaying a record the snapshot already holds is harmless.
+ * Each record is framed with its length and a CRC32C; a record torn by a crash ends the journal, and is cut off when the journal is opened.
+ * Appends only copy into a buffer. Writers then wait in `commit` until their records are synced; whoever syncs writes the records of all writers
+ * that appended meanwhile, so that concurrent servlets share one fsync.
+ * A failed write or sync fails the journal for good: what reached the file is unknown, and a sync that failed may not be retried safely,
+ * so no record is taken as durable after it, and the state is recovered from the files on the next start.
+ */
+final class JobJournal {
+
+    private static final String SNAPSHOT = "snapshot-";
+    private static final String JOURNAL = "journal-";
+    private static final int MAGIC = 0x52580001;
+
+    private static final byte COMPLETED = 1;
+    private static final byte SUBMITTED = 2;
+
+    /**
+     * Length and CRC32C in front of each record.
+     */
+    private static final int FRAME = 2 * Integer.BYTES;
+
+    /**
+     * Writes the contents of a snapshot.
+     */
+    interface Contents {
+        void write(Snapshot snapshot) throws IOException;
+    }
+
+    /**
+     * A snapshot being written: programs, then pending submitted jobs, then result counters, in any number.
+     */
+    static final class Snapshot {
+        private final DataOutputStream out;
+        private int section = 0;
+        private long lastJobId = 0;
+
+        private Snapshot(DataOutputStream out) {
+            this.out = out;
+        }
+
+        private void enter(int section) throws IOException {
+            if (section < this.section) throw new IllegalStateException("Snapshot sections out of order");
+            // Each section ends with a 0, where its entries start with a 1.
+            while (this.section < section) {
+                if (this.section > 0) this.out.writeByte(0);
+                this.section += 1;
+            }
+        }
+
+        void jar(long programId, String jarPath) throws IOException {
+            this.enter(1);
+            this.out.writeByte(1);
+            this.out.writeLong(programId);
+            var path = jarPath.getBytes(StandardCharsets.UTF_8);
+            this.out.writeInt(path.length);
+            this.out.write(path);
+        }
+
+        /**
+         * @param input The input of the job, which its info leaves out.
+         */
+        void job(long jobId, JobInfo info, Object input) throws IOException {
+            this.enter(2);
+            this.out.writeByte(1);
+            this.out.writeLong(jobId);
+            var encoded = MessageCodec.encodePayload(info.withoutData());
+            this.out.writeInt(encoded.length);
+            this.out.write(encoded);
+            encoded = MessageCodec.encodePayload(input);
+            this.out.writeInt(encoded.length);
+            this.out.write(encoded);
+        }
+
+        void completions(long jobId, int completions) throws IOException {
+            this.enter(3);
+            this.out.writeByte(1);
+            // IDs are written as differences from the one before, which are small when counters come in order.
+            long delta = jobId - this.lastJobId;
+            this.lastJobId = jobId;
+            writeVarLong(this.out, (delta << 1) ^ (delta >> 63));
+            writeVarLong(this.out, completions);
+        }
+
+        private void end() throws IOException {
+            this.enter(4);
+        }
+    }
+
+    private final Path directory;
+
+    /**
+     * Serializes snapshots, and starting new generations.
+     */
+    private final ReentrantLock snapshotting = new ReentrantLock();
+    private long generation;
+
+    /**
+     * Records appended and not yet written, and the number of records appended so far. Guarded by `appending`.
+     */
+    private final ReentrantLock appending = new ReentrantLock();
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private final CRC32C crc = new CRC32C();
+    private long appended = 0;
+    private long sinceSnapshot = 0;
+
+    /**
+     * The journal of the current generation, and the number of records synced to it. Written under `syncing`.
+     */
+    private final ReentrantLock syncing = new ReentrantLock();
+    private FileChannel journal;
+    private volatile long durable = 0;
+
+    /**
+     * The error that failed the journal, or null. Guarded by `syncing`.
+     */
+    private IOException failure;
+
+    /**
+     * What was recovered, until the manager is built.
+     */
+    final HashMap<Long, String> recoveredJars = new HashMap<>();
+    final LinkedHashMap<Long, JobInfo> recoveredJobs = new LinkedHashMap<>();
+    private long[] recoveredIds = new long[1024];
+    private int[] recoveredCounts = new int[1024];
+    private int recoveredCount = 0;
+
+    /**
+     * Open the journal in a directory, and recover the state it holds.
+     * @param directory The directory, created if it does not exist.
+     * @throws IOException If a file cannot be read, or a snapshot or record is corrupt.
+     */
+    JobJournal(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        var snapshots = this.generations(SNAPSHOT);
+        var journals = this.generations(JOURNAL);
+        this.generation = snapshots.isEmpty() ? 0 : snapshots.last();
+        if (!snapshots.isEmpty()) this.readSnapshot(this.file(SNAPSHOT, this.generation));
+        long last = this.generation;
+        for (long g : journals.tailSet(this.generation)) {
+            this.replay(this.file(JOURNAL, g));
+            last = g;
+        }
+        this.generation = last;
+        this.journal = FileChannel.open(this.file(JOURNAL, last), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.journal.position(this.journal.size());
+        this.removeBefore(snapshots.isEmpty() ? 0 : snapshots.last());
+    }
+
+    private Path file(String prefix, long generation) {
+        return this.directory.resolve(prefix + generation);
+    }
+
+    private TreeSet<Long> generations(String prefix) throws IOException {
+        var found = new TreeSet<Long>();
+        try (var files = Files.list(this.directory)) {
+            for (var file : (Iterable<Path>) files::iterator) {
+                var name = file.getFileName().toString();
+                if (!name.startsWith(prefix)) continue;
+                // Left by a snapshot that did not finish.
+                if (name.endsWith(".tmp")) {
+                    Files.deleteIfExists(file);
+                    continue;
+                }
+                try {
+                    found.add(Long.parseLong(name.substring(prefix.length())));
+                } catch (NumberFormatException e) {
+                    // Not a file of the journal.
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Delete the snapshots and journals of generations before one.
+     */
+    private void removeBefore(long generation) throws IOException {
+        for (var prefix : new String[]{SNAPSHOT, JOURNAL}) {
+            for (long g : this.generations(prefix).headSet(generation)) Files.deleteIfExists(this.file(prefix, g));
+        }
+    }
+
+    private void recover(long jobId, int completions) {
+        if (this.recoveredCount == this.recoveredIds.length) {
+            this.recoveredIds = Arrays.copyOf(this.recoveredIds, this.recoveredCount * 2);
+            this.recoveredCounts = Arrays.copyOf(this.recoveredCounts, this.recoveredCount * 2);
+        }
+        this.recoveredIds[this.recoveredCount] = jobId;
+        this.recoveredCounts[this.recoveredCount++] = completions;
+    }
+
+    /**
+     * Visit the recovered result counters, in the order they were recorded. A job may be visited more than once, with its count at each time.
+     */
+    void forEachRecovered(JobTable.Counters visitor) {
+        for (int i = 0; i < this.recoveredCount; i++) visitor.visit(this.recoveredIds[i], this.recoveredCounts[i]);
+    }
+
+    /**
+     * Drop what was recovered, once the manager holds it.
+     */
+    void clearRecovered() {
+        this.recoveredJars.clear();
+        this.recoveredJobs.clear();
+        this.recoveredIds = new long[0];
+        this.recoveredCounts = new int[0];
+        this.recoveredCount = 0;
+    }
+
+    private void readSnapshot(Path file) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.getInt() != MAGIC) throw new StreamCorruptedException("Not a job snapshot: " + file);
+            while (in.get() != 0) {
+                long programId = in.getLong();
+                var path = new byte[in.getInt()];
+                in.get(path);
+                this.recoveredJars.put(programId, new String(path, StandardCharsets.UTF_8));
+            }
+            while (in.get() != 0) {
+                long jobId = in.getLong();
+                var info = (JobInfo) decode(in);
+                info.jobData = (Serializable) decode(in);
+                this.recoveredJobs.put(jobId, info);
+            }
+            long jobId = 0;
+            while (in.get() != 0) {
+                long zigzag = readVarLong(in);
+                jobId += (zigzag >>> 1) ^ -(zigzag & 1);
+                this.recover(jobId, (int) readVarLong(in));
+            }
+        }
+    }
+
+    private static Object decode(ByteBuffer in) throws IOException {
+        int length = in.getInt();
+        var payload = new EncodedPayload(in.slice(in.position(), length));
+        in.position(in.position() + length);
+        try {
+            return payload.decode();
+        } catch (ClassNotFoundException e) {
+            throw new InvalidObjectException("Unknown class in job journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Replay the records of a journal, and cut off a torn record at its end.
+     */
+    private void replay(Path file) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            var in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            var crc = new CRC32C();
+            while (in.remaining() >= FRAME) {
+                int start = in.position();
+                int length = in.getInt();
+                int checksum = in.getInt();
+                if (length <= 0 || length > in.remaining()) {
+                    in.position(start);
+                    break;
+                }
+                var record = in.slice(in.position(), length);
+                crc.reset();
+                crc.update(record.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    in.position(start);
+                    break;
+                }
+                in.position(in.position() + length);
+                switch (record.get()) {
+                    case COMPLETED -> {
+                        while (record.hasRemaining()) this.recover(record.getLong(), record.getInt());
+                    }
+                    case SUBMITTED -> {
+                        var batch = (JobBatch) decode(record);
+                        this.recoveredJars.putAll(batch.getJars());
+                        this.recoveredJobs.putAll(batch.getJobs());
+                    }
+                    default -> throw new StreamCorruptedException("Unknown record in job journal: " + file);
+                }
+            }
+            if (in.position() < channel.size()) channel.truncate(in.position());
+        }
+    }
+
+    /**
+     * Record the result counts of jobs, after results were counted.
+     * @param jobIds The jobs.
+     * @param completions The number of results of each job, including the ones recorded.
+     * @param count The number of jobs to record, from the start of the arrays.
+     * @return The position to commit to make the record durable.
+     */
+    long completed(long[] jobIds, int[] completions, int count) {
+        var record = ByteBuffer.allocate(1 + count * (Long.BYTES + Integer.BYTES)).put(COMPLETED);
+        for (int i = 0; i < count; i++) record.putLong(jobIds[i]).putInt(completions[i]);
+        return this.append(record.array());
+    }
+
+    /**
+     * Record a batch of submitted jobs, before they are added.
+     * @return The position to commit to make the record durable.
+     * @throws IOException If the batch is not serializable.
+     */
+    long submitted(JobBatch batch) throws IOException {
+        var encoded = MessageCodec.encodePayload(batch);
+        var record = ByteBuffer.allocate(1 + Integer.BYTES + encoded.length).put(SUBMITTED).putInt(encoded.length).put(encoded);
+        return this.append(record.array());
+    }
+
+    private long append(byte[] record) {
+        this.appending.lock();
+        try {
+            this.crc.reset();
+            this.crc.update(record);
+            int checksum = (int) this.crc.getValue();
+            var frame = new byte[FRAME];
+            ByteBuffer.wrap(frame).putInt(record.length).putInt(checksum);
+            this.buffer.write(frame, 0, FRAME);
+            this.buffer.write(record, 0, record.length);
+            this.sinceSnapshot += 1;
+            return ++this.appended;
+        } finally {
+            this.appending.unlock();
+        }
+    }
+
+    /**
+     * Wait until the records up to a position are synced to disk, syncing them along with all other records appended so far if no one else is.
+     * @param position The position returned when appending, or 0 for none.
+     * @throws IOException If the journal cannot be written, now or before; the record is then not durable.
+     */
+    void commit(long position) throws IOException {
+        if (this.durable >= position) return;
+        this.syncing.lock();
+        try {
+            // The writer that held the lock before may have synced this record too.
+            if (this.durable >= position) return;
+            this.flush();
+        } finally {
+            this.syncing.unlock();
+        }
+    }
+
+    /**
+     * Write and sync all records appended so far. Call with `syncing` held.
+     * @throws IOException If the journal cannot be written or synced, now or before.
+     */
+    private void flush() throws IOException {
+        byte[] records;
+        long upTo;
+        this.appending.lock();
+        try {
+            records = this.buffer.toByteArray();
+            this.buffer.reset();
+            upTo = this.appended;
+        } finally {
+            this.appending.unlock();
+        }
+        if (this.failure != null) throw new IOException("Job journal failed, and records are no longer made durable", this.failure);
+        try {
+            var out = ByteBuffer.wrap(records);
+            while (out.hasRemaining()) this.journal.write(out);
+            this.journal.force(false);
+        } catch (IOException e) {
+            this.failure = e;
+            throw e;
+        }
+        this.durable = upTo;
+    }
+
+    /**
+     * Get the number of records appended since the last snapshot.
+     */
+    long sinceSnapshot() {
+        this.appending.lock();
+        try {
+            return this.sinceSnapshot;
+        } finally {
+            this.appending.unlock();
+        }
+    }
+
+    /**
+     * Start a new generation, write a snapshot for it, and delete the files it replaces. Records appended while the snapshot is written
+     * go to the new generation's journal, so the contents may include them or not.
+     * @param contents Writes what the snapshot holds.
+     * @throws IOException If a file cannot be written; the previous generation then stays in use for recovery.
+     */
+    void snapshot(Contents contents) throws IOException {
+        this.snapshotting.lock();
+        try {
+            long next;
+            this.syncing.lock();
+            try {
+                this.flush();
+                next = this.generation + 1;
+                var journal = FileChannel.open(this.file(JOURNAL, next), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                this.journal.close();
+                this.journal = journal;
+                this.generation = next;
+                this.appending.lock();
+                try {
+                    this.sinceSnapshot = 0;
+                } finally {
+                    this.appending.unlock();
+                }
+            } finally {
+                this.syncing.unlock();
+            }
+
+            var temporary = this.directory.resolve(SNAPSHOT + next + ".tmp");
+            try (var channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                 var out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16))) {
+                out.writeInt(MAGIC);
+                var snapshot = new Snapshot(out);
+                contents.write(snapshot);
+                snapshot.end();
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(temporary, this.file(SNAPSHOT, next), StandardCopyOption.ATOMIC_MOVE);
+            this.syncDirectory();
+            this.removeBefore(next);
+        } finally {
+            this.snapshotting.unlock();
+        }
+    }
+
+    private void syncDirectory() {
+        try (var channel = FileChannel.open(this.directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not every platform can sync a directory; the rename is then as durable as the platform makes it.
+        }
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new StreamCorruptedException("Malformed varint in job snapshot");
+    }
+}
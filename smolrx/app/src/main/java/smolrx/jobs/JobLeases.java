@@ -0,0 +1,335 @@
+package smolrx.jobs;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntSupplier;
+
+/**
+ * Leases on jobs held by connected clients. A leased job is hidden from other clients until its lease ends,
+ * so that clients asking for work at the same time get different jobs.
+ * A lease ends when the holder pushes a result for the job, when the holder disconnects, or when it expires.
+ * Renewing a holder's leases only records the time, so it costs O(1); expiries are found in a queue ordered by time.
+ * Thread-safe: jobs are spread over stripes by ID, each with a lock of its own, so that servlets leasing and releasing
+ * different jobs rarely wait on each other. The locks are ReentrantLocks, which do not pin virtual threads while they wait.
+ * The listener hears when a job has as many leases as it allows, and when it has room again, under the job's stripe lock.
+ * A job whose leases all look stuck may be leased once more than it allows, to a second client, for speculative re-execution.
+ */
+final class JobLeases {
+
+    /**
+     * Number of stripes; a power of two.
+     */
+    private static final int STRIPES = 64;
+
+    /**
+     * Hears of changes to the leases of a job, with the job's stripe locked.
+     */
+    interface Listener {
+        /**
+         * The job has as many leases as it allows.
+         */
+        void full(long jobId);
+
+        /**
+         * A lease on the job ended, leaving `live` leases.
+         */
+        void freed(long jobId, int live);
+    }
+
+    /**
+     * One client's claim on one job.
+     */
+    private static final class Lease {
+        final long jobId;
+        final Object holder;
+        final long leasedAt;
+        long expiresAt;
+
+        Lease(long jobId, Object holder, long leasedAt, long expiresAt) {
+            this.jobId = jobId;
+            this.holder = holder;
+            this.leasedAt = leasedAt;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * A lease due to expire at a time; stale once the lease has ended or been renewed.
+     */
+    private record Expiry(long at, Lease lease) {}
+
+    /**
+     * The leases on the jobs of one stripe, guarded by its lock.
+     */
+    private final class Stripe {
+        final ReentrantLock lock = new ReentrantLock();
+        final HashMap<Long, ArrayList<Lease>> byJob = new HashMap<>();
+        final HashMap<Object, HashMap<Long, Lease>> byHolder = new HashMap<>();
+
+        int live(long jobId, long now) {
+            var leases = this.byJob.get(jobId);
+            if (leases == null) return 0;
+            boolean expired = leases.removeIf(lease -> {
+                if (JobLeases.this.until(lease) > now) return false;
+                this.forget(lease);
+                return true;
+            });
+            if (leases.isEmpty()) this.byJob.remove(jobId);
+            if (expired) JobLeases.this.listener.freed(jobId, leases.size());
+            return leases.size();
+        }
+
+        /**
+         * Remove a lease from its job.
+         * @return Whether the lease was held.
+         */
+        boolean drop(Lease lease) {
+            var leases = this.byJob.get(lease.jobId);
+            if (leases == null || !leases.remove(lease)) return false;
+            if (leases.isEmpty()) this.byJob.remove(lease.jobId);
+            JobLeases.this.listener.freed(lease.jobId, leases.size());
+            return true;
+        }
+
+        void forget(Lease lease) {
+            var held = this.byHolder.get(lease.holder);
+            if (held == null) return;
+            held.remove(lease.jobId, lease);
+            if (held.isEmpty()) this.byHolder.remove(lease.holder);
+        }
+    }
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    /**
+     * When each holder last renewed its leases; a lease lasts until its own expiry, or the holder's renewal plus the duration.
+     */
+    private final ConcurrentHashMap<Object, Long> renewed = new ConcurrentHashMap<>();
+
+    /**
+     * Leases by the time they are due to expire.
+     */
+    private final PriorityBlockingQueue<Expiry> expiries = new PriorityBlockingQueue<>(64, Comparator.comparingLong(Expiry::at));
+
+    /**
+     * How long a lease lasts, in milliseconds.
+     */
+    private final long duration;
+
+    private final Listener listener;
+
+    JobLeases(long duration, Listener listener) {
+        this.duration = duration;
+        this.listener = listener;
+        for (int i = 0; i < STRIPES; i++) this.stripes[i] = new Stripe();
+    }
+
+    long getDuration() {
+        return duration;
+    }
+
+    private Stripe stripe(long jobId) {
+        return this.stripes[Long.hashCode(jobId) & (STRIPES - 1)];
+    }
+
+    /**
+     * When a lease ends, counting renewals of its holder.
+     */
+    private long until(Lease lease) {
+        var renewal = this.renewed.get(lease.holder);
+        return renewal == null ? lease.expiresAt : Math.max(lease.expiresAt, renewal + this.duration);
+    }
+
+    /**
+     * Whether a job has fewer unexpired leases than the given capacity.
+     * @param jobId The job ID.
+     * @param capacity The number of leases the job allows, e.g. its redundancy count less its results.
+     * @param now The current time, from System.currentTimeMillis().
+     */
+    boolean available(long jobId, IntSupplier capacity, long now) {
+        var stripe = this.stripe(jobId);
+        stripe.lock.lock();
+        try {
+            return stripe.live(jobId, now) < capacity.getAsInt();
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Lease a job to a holder, unless the holder holds it already, or it has as many unexpired leases as the given capacity.
+     * @param jobId The job ID.
+     * @param holder The client.
+     * @param capacity The number of leases the job allows, e.g. its redundancy count less its results.
+     * It is read under the stripe's lock, so a result counted before its lease was released is always seen.
+     * @param now The current time, from System.currentTimeMillis().
+     * @return Whether the job was leased.
+     */
+    boolean tryLease(long jobId, Object holder, IntSupplier capacity, long now) {
+        var stripe = this.stripe(jobId);
+        stripe.lock.lock();
+        try {
+            int live = stripe.live(jobId, now);
+            int allowed = capacity.getAsInt();
+            if (live >= allowed) {
+                this.listener.full(jobId);
+                return false;
+            }
+            if (!this.add(stripe, jobId, holder, now)) return false;
+            if (live + 1 >= allowed) this.listener.full(jobId);
+            return true;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Lease a job to a holder once more than it allows, if all its leases look stuck: it has exactly as many unexpired leases as the given capacity,
+     * the newest of them is at least `minAge` old, and the holder holds none of them.
+     * @param jobId The job ID.
+     * @param holder The client.
+     * @param capacity The number of leases the job allows, e.g. its redundancy count less its results.
+     * @param now The current time, from System.currentTimeMillis().
+     * @param minAge The age in milliseconds past which a lease is taken for a straggler.
+     * @return Whether the job was leased.
+     */
+    boolean tryLeaseAgain(long jobId, Object holder, IntSupplier capacity, long now, long minAge) {
+        var stripe = this.stripe(jobId);
+        stripe.lock.lock();
+        try {
+            int live = stripe.live(jobId, now);
+            if (live == 0 || live != capacity.getAsInt()) return false;
+            for (var lease : stripe.byJob.get(jobId)) {
+                if (now - lease.leasedAt < minAge) return false;
+            }
+            return this.add(stripe, jobId, holder, now);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Add a lease, unless the holder holds the job already. Call with the stripe locked.
+     */
+    private boolean add(Stripe stripe, long jobId, Object holder, long now) {
+        var held = stripe.byHolder.computeIfAbsent(holder, h -> new HashMap<>());
+        if (held.containsKey(jobId)) return false;
+        var lease = new Lease(jobId, holder, now, now + this.duration);
+        held.put(jobId, lease);
+        stripe.byJob.computeIfAbsent(jobId, id -> new ArrayList<>()).add(lease);
+        this.expiries.add(new Expiry(lease.expiresAt, lease));
+        return true;
+    }
+
+    /**
+     * End the leases that have expired, renewals included.
+     * @param now The current time, from System.currentTimeMillis().
+     */
+    void expire(long now) {
+        Expiry next;
+        while ((next = this.expiries.peek()) != null && next.at() <= now) {
+            next = this.expiries.poll();
+            if (next == null) break;
+            if (next.at() > now) {
+                // Another thread took the expired head meanwhile.
+                this.expiries.add(next);
+                break;
+            }
+            var lease = next.lease();
+            var stripe = this.stripe(lease.jobId);
+            stripe.lock.lock();
+            try {
+                long until = this.until(lease);
+                if (until > now) {
+                    // Renewed since; look again when the renewal runs out.
+                    lease.expiresAt = until;
+                    this.expiries.add(new Expiry(until, lease));
+                    continue;
+                }
+                stripe.forget(lease);
+                stripe.drop(lease);
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * End the holder's lease on a job, if any.
+     * @return When the lease began, or -1 if the holder had none.
+     */
+    long release(long jobId, Object holder) {
+        var stripe = this.stripe(jobId);
+        stripe.lock.lock();
+        try {
+            var held = stripe.byHolder.get(holder);
+            if (held == null) return -1;
+            var lease = held.remove(jobId);
+            if (held.isEmpty()) stripe.byHolder.remove(holder);
+            if (lease == null) return -1;
+            stripe.drop(lease);
+            return lease.leasedAt;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * End all leases of a holder, e.g. when it disconnects.
+     * @return The number of leases ended.
+     */
+    int releaseAll(Object holder) {
+        int released = 0;
+        for (var stripe : this.stripes) {
+            stripe.lock.lock();
+            try {
+                var held = stripe.byHolder.remove(holder);
+                if (held == null) continue;
+                for (var lease : held.values()) {
+                    if (stripe.drop(lease)) released += 1;
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        this.renewed.remove(holder);
+        return released;
+    }
+
+    /**
+     * Extend the leases of a holder, which is still at work. Leases that expired but have not been dropped yet are extended too.
+     */
+    void renewAll(Object holder, long now) {
+        this.renewed.put(holder, now);
+    }
+
+    /**
+     * End all leases on a job that has been completed, and take it out of scheduling with its stripe locked,
+     * so that no lease ending concurrently can make it look available again.
+     * @param jobId The job ID.
+     * @param retire Removes the job from the manager's state.
+     * @return The holders whose leases were ended, e.g. a straggler the job was re-issued from; usually none.
+     */
+    List<Object> retire(long jobId, Runnable retire) {
+        var stripe = this.stripe(jobId);
+        stripe.lock.lock();
+        try {
+            retire.run();
+            var leases = stripe.byJob.remove(jobId);
+            if (leases == null) return List.of();
+            var holders = new ArrayList<Object>(leases.size());
+            for (var lease : leases) {
+                stripe.forget(lease);
+                holders.add(lease.holder);
+            }
+            return holders;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+}
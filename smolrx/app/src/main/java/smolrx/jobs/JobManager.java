@@ -1,15 +1,31 @@
 package smolrx.jobs;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
 import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntSupplier;
+import java.util.logging.Level;
 
+import smolrx.CompressionPolicy;
 import smolrx.RXException;
+import smolrx.Servlet;
 import smolrx.msg.BulkInputs;
 import smolrx.msg.BulkPush;
+import smolrx.msg.ClaimWork;
+import smolrx.msg.ClientHello;
+import smolrx.msg.EncodedPayload;
 import smolrx.msg.InputRequest;
 import smolrx.msg.InspectBlock;
 import smolrx.msg.InspectResult;
@@ -17,31 +33,111 @@ import smolrx.msg.JarRequest;
 import smolrx.msg.JobRequest;
 import smolrx.msg.Joblisting;
 import smolrx.msg.PushResult;
+import smolrx.msg.SubmitJobs;
+import smolrx.msg.WorkBatch;
 
 /**
- * Manage scheduled jobs on the server.
+ * Manage scheduled jobs on the server. Servlets share one manager from many virtual threads, so its state is kept in concurrent structures:
+ * jobs and their result counts live in a segmented table of primitive columns, leases are lock-striped, and nothing holds a monitor, which would pin virtual threads.
+ * Jobs of job families are added to the table as clients reach them, and batches of jobs may be submitted while clients are served.
+ * With a journal, results and submissions are made durable before they are acknowledged, and a manager built on the same journal resumes where this one stopped.
  */
 public class JobManager {
     /**
      * Map program IDs to their jar files.
      */
-    HashMap<Long, String> jarMap;
+    ConcurrentHashMap<Long, String> jarMap;
+
+    /**
+     * Jars of programs, mapped and hashed once for all clients.
+     */
+    final ProgramCache programs = new ProgramCache();
     
     /**
-     * Map JobIDs to job information.
+     * Jobs by ID with their result counters; finished jobs keep only their counters.
+     */
+    JobTable jobs;
+
+    /**
+     * Families of jobs by their first job ID. Not modified once the manager is built.
+     */
+    TreeMap<Long, JobFamily> families;
+
+    /**
+     * Families by the type of their jobs, in order of their first job ID. Filled in once, when the manager is built.
+     */
+    final EnumMap<JobType, List<JobFamily>> familiesByType = new EnumMap<>(JobType.class);
+
+    /**
+     * Families waiting on each unfinished pre-requisite, by its ID; a pre-requisite's families are released once, when it finishes.
+     */
+    final ConcurrentHashMap<Long, List<JobFamily>> familiesWaiting = new ConcurrentHashMap<>();
+
+    /**
+     * Inputs of jobs kept off the heap, or null if they are kept in the job infos.
+     */
+    JobInputStore inputs;
+
+    /**
+     * Journal of results and submissions, or null if the manager's state is kept in memory only.
+     */
+    JobJournal journal;
+
+    /**
+     * Submitted jobs that may be pending, for snapshots to write out; snapshots drop the ones that have finished. Only kept with a journal.
+     */
+    final Set<Long> submitted = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Take a snapshot once the journal has this many records after the last one; 0 to take them only when asked.
+     */
+    long snapshotInterval;
+
+    /**
+     * Whether a snapshot is being taken in the background.
+     */
+    private final AtomicBoolean snapshotting = new AtomicBoolean();
+
+    /**
+     * Dependencies of blocked jobs on unfinished pre-requisites.
      */
-    TreeMap<Long, JobInfo> jobInfo;
+    JobGraph graph;
 
     /**
-     * Map JobIDs to Book-keeping information.
+     * Pending jobs by type, ordered by priority, with blocked and fully leased jobs apart.
      */
-    HashMap<Long, JobMetadata> jobMetas;
+    PriorityIndex pending;
+
+    /**
+     * Leases of jobs to connected clients.
+     */
+    JobLeases leases;
+
+    /**
+     * Lease-to-result times and re-issued jobs for speculative re-execution of stragglers, or null if it is off.
+     */
+    Speculation speculation;
+
+    /**
+     * Sizes claims to each client's rate of work, or null if claims are sized by the bulk limit alone.
+     */
+    ClaimSizer sizer;
 
     /**
      * Map role keys to job types that clients with the key can take.
      */
     HashMap<String, JobType> keyMap;
 
+    /**
+     * Keys that let clients submit jobs.
+     */
+    HashSet<String> submitKeys;
+
+    /**
+     * Serializes submissions, so that each batch is checked against the jobs and programs of those before it.
+     */
+    private final ReentrantLock submitting = new ReentrantLock();
+
     /**
      * Admit results for any slogger.
      */
@@ -67,18 +163,136 @@ public class JobManager {
      */
     int bulkInspLimit;
 
+    /**
+     * How frames are compressed on client channels.
+     */
+    CompressionPolicy compression = CompressionPolicy.DEFAULT;
+
+    /**
+     * Whether client channels keep one serialization stream per direction for the whole session.
+     */
+    boolean sessionStreams = true;
+
+    /**
+     * Whether client channels carry protocol messages in the binary encoding of MessageCodec.
+     */
+    boolean binaryCodec = true;
+
+    /**
+     * Plaintext size of frames in streams sent to clients, and the number of frames sealed at once.
+     */
+    int streamFrameSize = 256 * 1024;
+    int streamParallelism = 1;
+
+    /**
+     * Number of numbered requests from one client handled concurrently.
+     */
+    int maxInFlight = 16;
+
     public boolean admitsAnySlogger() {
         return admitAnySlogger;
     }
 
-    private void verifyPrerequisites(HashSet<Long> prerequisite_jobs) throws RXException {
-        for (long job_id : prerequisite_jobs) {
-            if (this.jobInfo.containsKey(job_id) && (forceRedundance || (this.jobMetas.get(job_id).completion_count == 0))) {
-                throw new RXException("pre-requisite job with id: " + job_id + " is pending.");
+    private void verifyPrerequisites(long job_id) throws RXException {
+        int pending = this.graph.remaining(job_id);
+        if (pending > 0) {
+            throw new RXException(pending + " pre-requisite job(s) of job with id: " + job_id + " are pending.");
+        }
+    }
+
+    /**
+     * Whether a pre-requisite job has yet to finish: it is pending, and, unless redundance is forced, has no result yet.
+     */
+    boolean isUnfinished(long job_id) {
+        return this.info(job_id) != null && (forceRedundance || this.jobs.completions(job_id) == 0);
+    }
+
+    /**
+     * Get a pending job, adding it from its family first if it has not been added yet.
+     * @return The job, or null if it is finished or unknown.
+     */
+    JobInfo info(long job_id) {
+        var info = this.jobs.info(job_id);
+        if (info != null || this.families.isEmpty() || this.jobs.contains(job_id)) return info;
+        var family = this.family(job_id);
+        if (family == null) return null;
+        this.add(family, job_id);
+        return this.jobs.info(job_id);
+    }
+
+    /**
+     * Get the family a job belongs to.
+     * @return The family, or null if the job belongs to none.
+     */
+    JobFamily family(long job_id) {
+        var entry = this.families.floorEntry(job_id);
+        return entry != null && entry.getValue().contains(job_id) ? entry.getValue() : null;
+    }
+
+    /**
+     * Add a job of a family to the table, the graph and the index, unless it has been added already.
+     */
+    private void add(JobFamily family, long job_id) {
+        var template = family.template;
+        // Add pre-requisites from other families first, outside this family's lock; the builder rules out cycles.
+        for (int i = 0; i < template.prerequisite_jobs.size(); i++) this.info(template.prerequisite_jobs.get(i));
+        family.adding.lock();
+        try {
+            if (this.jobs.contains(job_id)) return;
+            this.jobs.put(job_id, template, 0, JobGraph.gate(template));
+            this.index(job_id, template);
+            family.advance(this.jobs);
+        } finally {
+            family.adding.unlock();
+        }
+    }
+
+    /**
+     * Add a job that is in the table, with its gate, to the graph and the index.
+     */
+    void index(long job_id, JobInfo info) {
+        boolean ready = this.graph.add(job_id, info, this::isUnfinished);
+        this.pending.add(job_id, info, ready);
+        // Its last pre-requisite may have finished meanwhile, before the job was in the index to be moved.
+        if (!ready && this.graph.isReady(job_id)) this.pending.unblock(job_id, info);
+        // Results pushed for the job by ID may have completed it before it was in the index to be removed.
+        if (this.jobs.info(job_id) == null) this.pending.remove(job_id, info);
+    }
+
+    /**
+     * Count the unfinished pre-requisites of each family, and group the families by type. Call once, after jobs are indexed and before clients are served;
+     * a family's count then drops as its pre-requisites finish, as a blocked job's does in the graph.
+     */
+    void gateFamilies() {
+        for (var family : this.families.values()) {
+            var template = family.template;
+            this.familiesByType.computeIfAbsent(template.type, type -> new ArrayList<>()).add(family);
+            if (template.relaxed) continue;
+            for (int i = 0; i < template.prerequisite_jobs.size(); i++) {
+                long prerequisite = template.prerequisite_jobs.get(i);
+                if (!this.isUnfinished(prerequisite)) continue;
+                family.block();
+                this.familiesWaiting.computeIfAbsent(prerequisite, id -> new ArrayList<>()).add(family);
             }
         }
     }
 
+    /**
+     * Ready jobs of a type from a priority on, in order, including jobs of families that have not been added yet.
+     * Families whose pre-requisites have not all finished are skipped as a whole, without adding their jobs.
+     */
+    private Iterable<Map.Entry<PriorityIndex.Key, JobInfo>> ready(JobType type, long minPriority) {
+        var families = new ArrayList<JobFamily>();
+        for (var family : this.familiesByType.getOrDefault(type, List.of())) {
+            if (family.template.priority < minPriority || family.frontier() == family.end || !family.isReady()) continue;
+            families.add(family);
+        }
+        return JobFamily.merge(this.pending.from(type, minPriority), families, this.jobs, job_id -> {
+            var info = this.info(job_id);
+            return info != null && this.graph.isReady(job_id) ? info : null;
+        });
+    }
+
     /**
      * For a given key, return the JobType of jobs clients holding that key can take.
      * @param key The key.
@@ -93,111 +307,632 @@ public class JobManager {
     }
 
     /**
-     * List all jobs as per the request.
+     * List all jobs as per the request, in order of priority and then job ID, from the request's minimum priority. Listed slog and collect jobs are leased to the holder, and hidden from other clients
+     * once they are leased as many times as their redundancy count, less the results already registered.
      * @param request The request for the jobs, specifying type.
+     * @param holder The client the jobs are leased to, e.g. its channel.
      * @return The list of jobs.
      * @throws RXException If the request used an invalid role key.
      */
-    public Joblisting listJobs(JobRequest request) throws RXException {
-        var sortedMap = this.jobInfo.tailMap(request.getMinPriority());
-        var it = sortedMap.entrySet().iterator();
+    public Joblisting listJobs(JobRequest request, Object holder) throws RXException {
         var jobIds = new ArrayList<Long>();
         var jobInfos = new ArrayList<JobInfo>();
+        var encodedInfos = new ArrayList<byte[]>();
         ArrayList<JobMetadata> jobMetaS = null;
 
         var suitableType = this.suitableJobType(request.getRoleKey());
 
         if ((request.getRoleKey() != null) && (suitableType == JobType.AUDIT)) {
+            // Take the first ready, leased and blocked jobs of each type, then the first of those overall.
+            var listed = new ArrayList<Map.Entry<PriorityIndex.Key, JobInfo>>();
+            for (var type : JobType.values()) {
+                for (var jobs : List.of(this.ready(type, request.getMinPriority()), this.pending.leasedFrom(type, request.getMinPriority()), this.pending.blockedFrom(type, request.getMinPriority()))) {
+                    int taken = 0;
+                    for (var t : jobs) {
+                        if (taken++ == request.getLimit()) break;
+                        listed.add(t);
+                    }
+                }
+            }
+            listed.sort(Map.Entry.comparingByKey());
             jobMetaS = new ArrayList<>();
-            while (it.hasNext() && jobIds.size() < request.getLimit()) {
-                var t = it.next();
-                jobIds.add(t.getKey());
+            for (var t : listed) {
+                if (jobIds.size() == request.getLimit()) break;
+                jobIds.add(t.getKey().jobId());
                 jobInfos.add(t.getValue().maskedClone());
-                jobMetaS.add(this.jobMetas.get(t.getKey()));
+                encodedInfos.add(t.getValue().maskedEncoding());
+                jobMetaS.add(this.jobs.metadata(t.getKey().jobId()));
             }
 
-            return new Joblisting(jobIds, jobInfos, jobMetaS);
+            return new Joblisting(jobIds, jobInfos, jobMetaS).withEncodedInfos(encodedInfos);
         }
         
-        while (it.hasNext() && jobIds.size() < request.getLimit()) {
-            var t = it.next();
-            if (suitableType != t.getValue().type) continue;
-            jobIds.add(t.getKey());
+        long now = System.currentTimeMillis();
+        this.leases.expire(now);
+        for (var t : this.ready(suitableType, request.getMinPriority())) {
+            if (jobIds.size() >= request.getLimit()) break;
+            long job_id = t.getKey().jobId();
+            if (!this.tryLease(job_id, t.getValue(), holder, now)) continue;
+            jobIds.add(job_id);
+            jobInfos.add(t.getValue().maskedClone());
+            encodedInfos.add(t.getValue().maskedEncoding());
+        }
+        for (var t : this.stragglers(suitableType, request.getMinPriority(), request.getLimit() - jobIds.size(), holder, now)) {
+            jobIds.add(t.getKey().jobId());
             jobInfos.add(t.getValue().maskedClone());
+            encodedInfos.add(t.getValue().maskedEncoding());
         }
 
-        return new Joblisting(jobIds, jobInfos);
+        return new Joblisting(jobIds, jobInfos).withEncodedInfos(encodedInfos);
     }
 
     /**
-     * Fetch the pair of Jar path, and Job input data for the given jar request.
+     * Lease up to the requested number of ready jobs suited to the client, and fetch their inputs, in one step.
+     * Jobs are taken in order of priority and then job ID, from the request's minimum priority.
+     * A job is ready if it is relaxed or its pre-requisites have finished, and leasable while it has fewer leases and results than its redundancy count.
+     * With adaptive claims, a client is leased no more jobs than it runs in the claim horizon, at its observed or advertised rate.
+     * @param request The claim.
+     * @param holder The client the jobs are leased to, e.g. its channel.
+     * @return The leased jobs, their inputs, and the hashes of the jars of their programs.
+     * @throws RXException If the role key is invalid, or the jar of a leased program cannot be read.
+     */
+    public WorkBatch claimWork(ClaimWork request, Object holder) throws RXException {
+        var suitable = this.suitableJobType(request.getRoleKey());
+        int limit = Math.min(request.getLimit(), this.bulkLimit);
+        if (this.sizer != null && holder != null) limit = this.sizer.size(holder, limit);
+        var jobIds = new ArrayList<Long>();
+        var jobInfos = new ArrayList<JobInfo>();
+        var encodedInfos = new ArrayList<byte[]>();
+        var inputs = new HashMap<Long, Object>();
+        long now = System.currentTimeMillis();
+        this.leases.expire(now);
+        for (var entry : this.ready(suitable, request.getMinPriority())) {
+            if (jobIds.size() >= limit) break;
+            long job_id = entry.getKey().jobId();
+            var info = entry.getValue();
+            if (!this.tryLease(job_id, info, holder, now)) continue;
+            jobIds.add(job_id);
+            jobInfos.add(info.maskedClone());
+            encodedInfos.add(info.maskedEncoding());
+            inputs.put(job_id, this.input(job_id, info));
+        }
+        for (var entry : this.stragglers(suitable, request.getMinPriority(), limit - jobIds.size(), holder, now)) {
+            long job_id = entry.getKey().jobId();
+            jobIds.add(job_id);
+            jobInfos.add(entry.getValue().maskedClone());
+            encodedInfos.add(entry.getValue().maskedEncoding());
+            inputs.put(job_id, this.input(job_id, entry.getValue()));
+        }
+
+        var programHashes = new HashMap<Long, String>();
+        try {
+            for (var info : jobInfos) {
+                if (programHashes.containsKey(info.programId)) continue;
+                try {
+                    programHashes.put(info.programId, this.getProgram(info.programId).getHashHex());
+                } catch (IOException e) {
+                    throw new RXException("Jar file could not be read for program: " + info.programId, e);
+                }
+            }
+        } catch (RXException e) {
+            for (var job_id : jobIds) {
+                this.leases.release(job_id, holder);
+            }
+            throw e;
+        }
+        if (this.sizer != null && holder != null) {
+            long inputBytes = 0;
+            int stored = 0;
+            for (var input : inputs.values()) {
+                if (!(input instanceof EncodedPayload encoded)) continue;
+                inputBytes += encoded.size();
+                stored += 1;
+            }
+            this.sizer.claimed(holder, now, jobIds.size(), inputBytes, stored);
+        }
+        return new WorkBatch(jobIds, jobInfos, inputs, programHashes).withEncodedInfos(encodedInfos);
+    }
+
+    /**
+     * Lease a job to the holder, if the holder does not hold it already, and it has fewer unexpired leases and results than its redundancy count.
+     * Without a holder, only check that the job could be leased.
+     * @return Whether the job was leased, or could be.
+     */
+    private boolean tryLease(long job_id, JobInfo info, Object holder, long now) {
+        if (this.jobs.completions(job_id) >= info.redundancy_count) return false;
+        IntSupplier capacity = () -> info.redundancy_count - this.jobs.completions(job_id);
+        if (holder == null) return this.leases.available(job_id, capacity, now);
+        return this.leases.tryLease(job_id, holder, capacity, now);
+    }
+
+    /**
+     * Lease straggling jobs to the holder as well, once no job of the type is left to lease: fully leased jobs, in order, whose leases
+     * have all outlasted the speculation percentile of recent lease-to-result times of the type. Each is leased once more than it allows,
+     * so that the first of its holders to push a result finishes it.
+     * @param limit The number of jobs to lease at most.
+     * @return The jobs leased to the holder; none if speculation is off, or the holder is null.
+     */
+    private List<Map.Entry<PriorityIndex.Key, JobInfo>> stragglers(JobType type, long minPriority, int limit, Object holder, long now) {
+        var leased = new ArrayList<Map.Entry<PriorityIndex.Key, JobInfo>>();
+        if (this.speculation == null || holder == null || limit <= 0) return leased;
+        long threshold = this.speculation.threshold(type);
+        if (threshold == Long.MAX_VALUE) return leased;
+        for (var t : this.pending.leasedFrom(type, minPriority)) {
+            if (leased.size() >= limit) break;
+            long job_id = t.getKey().jobId();
+            var info = t.getValue();
+            IntSupplier capacity = () -> info.redundancy_count - this.jobs.completions(job_id);
+            if (!this.leases.tryLeaseAgain(job_id, holder, capacity, now, threshold)) continue;
+            this.speculation.reissued(job_id);
+            leased.add(t);
+        }
+        return leased;
+    }
+
+    /**
+     * Create empty leases that keep this manager's index up to date.
+     * @param duration How long a lease lasts, in milliseconds.
+     */
+    JobLeases newLeases(long duration) {
+        return new JobLeases(duration, new LeaseListener());
+    }
+
+    /**
+     * Moves jobs between the ready and leased parts of the index as their leases fill up and end.
+     */
+    private final class LeaseListener implements JobLeases.Listener {
+        @Override
+        public void full(long jobId) {
+            var info = JobManager.this.jobs.info(jobId);
+            if (info != null) JobManager.this.pending.park(jobId, info);
+        }
+
+        @Override
+        public void freed(long jobId, int live) {
+            var info = JobManager.this.jobs.info(jobId);
+            if (info == null) return;
+            if (live < info.redundancy_count - JobManager.this.jobs.completions(jobId)) JobManager.this.pending.unpark(jobId, info);
+        }
+    }
+
+    /**
+     * Add a batch of jobs and programs submitted by a client holding a submit key.
+     * @param request The submission.
+     * @return The number of jobs added.
+     * @throws RXException If the key is not a submit key, or the batch is invalid.
+     * @see #submit(JobBatch)
+     */
+    public int submit(SubmitJobs request) throws RXException {
+        if (request.getSubmitKey() == null || !this.submitKeys.contains(request.getSubmitKey())) {
+            throw new RXException("Unknown submit key", new IllegalArgumentException(request.getSubmitKey()));
+        }
+        if (request.getBatch() == null) throw new RXException("No jobs submitted.");
+        return this.submit(request.getBatch());
+    }
+
+    /**
+     * Add a batch of jobs and programs while clients are being served. The batch is checked as a whole, and added only if all of it is valid.
+     * Its programs are added first, then its jobs to the table, and then to the graph and the index, so that no job is listed before
+     * its pre-requisites in the batch are tracked. Servlets do not wait on submissions; only submissions wait on each other.
+     * @param batch The batch.
+     * @return The number of jobs added.
+     * @throws RXException If a job exists already or lies in a job family, a job info is incomplete, a job's program or pre-requisite is unknown,
+     *                     a program has another jar already, or an input or the batch cannot be written to disk.
+     */
+    public int submit(JobBatch batch) throws RXException {
+        var jobs = batch.getJobs();
+        var jars = batch.getJars();
+        this.submitting.lock();
+        try {
+            for (var jar : jars.entrySet()) {
+                if (jar.getKey() == null || jar.getValue() == null) throw new RXException("Incomplete program in batch.");
+                var known = this.jarMap.get(jar.getKey());
+                if (known != null && !known.equals(jar.getValue())) throw new RXException("Program " + jar.getKey() + " has another jar already.");
+            }
+            for (var entry : jobs.entrySet()) {
+                var info = entry.getValue();
+                if (entry.getKey() == null || info == null || info.type == null || info.type == JobType.AUDIT
+                    || info.properties == null || info.prerequisite_jobs == null || info.redundancy_count < 1) {
+                    throw new RXException("Incomplete job info for job: " + entry.getKey());
+                }
+                long job_id = entry.getKey();
+                if (this.jobs.contains(job_id) || this.family(job_id) != null) throw new RXException("Job exists already: " + job_id);
+                if (!this.jarMap.containsKey(info.programId) && !jars.containsKey(info.programId)) throw new RXException("No jar for program: " + info.programId);
+                for (long prerequisite : info.prerequisite_jobs) {
+                    if (jobs.containsKey(prerequisite) || this.jobs.contains(prerequisite) || this.family(prerequisite) != null) continue;
+                    throw new RXException("Unknown pre-requisite job " + prerequisite + " of job: " + job_id);
+                }
+            }
+
+            // Store inputs before anything is added, so that a failure leaves the manager as it was.
+            var ids = new long[jobs.size()];
+            var infos = new JobInfo[jobs.size()];
+            var inputs = new long[jobs.size()];
+            int n = 0;
+            for (var entry : jobs.entrySet()) {
+                ids[n] = entry.getKey();
+                infos[n] = entry.getValue();
+                if (this.inputs != null && infos[n].jobData != null) {
+                    try {
+                        inputs[n] = this.inputs.append(infos[n].jobData);
+                    } catch (IOException e) {
+                        throw new RXException("Could not store the input of job: " + ids[n], e);
+                    }
+                    infos[n] = infos[n].withoutData();
+                }
+                n += 1;
+            }
+            // Journal the batch once nothing can fail, so that recovery adds it only if it was added.
+            if (this.journal != null) {
+                try {
+                    this.journal.commit(this.journal.submitted(batch));
+                } catch (IOException e) {
+                    throw new RXException("Could not journal the submitted jobs.", e);
+                }
+            }
+
+            this.jarMap.putAll(jars);
+            // All jobs are in the table before any is indexed, so that edges between jobs of the batch can be added.
+            for (int i = 0; i < n; i++) this.jobs.put(ids[i], infos[i], inputs[i], JobGraph.gate(infos[i]));
+            for (int i = 0; i < n; i++) this.index(ids[i], infos[i]);
+            if (this.journal != null) {
+                for (int i = 0; i < n; i++) this.submitted.add(ids[i]);
+            }
+        } finally {
+            this.submitting.unlock();
+        }
+        this.snapshotIfDue();
+        return jobs.size();
+    }
+
+    /**
+     * Write a snapshot of the programs, the pending submitted jobs and the result counts, so that a restart only replays the journal after it.
+     * Servlets are served meanwhile; submissions wait until it is written. Does nothing without a journal.
+     * @throws IOException If the snapshot cannot be written; the journal before it is then kept.
+     */
+    public void snapshot() throws IOException {
+        if (this.journal == null) return;
+        this.submitting.lock();
+        try {
+            this.journal.snapshot(snapshot -> {
+                for (var jar : this.jarMap.entrySet()) snapshot.jar(jar.getKey(), jar.getValue());
+                for (var iterator = this.submitted.iterator(); iterator.hasNext();) {
+                    long job_id = iterator.next();
+                    var info = this.jobs.info(job_id);
+                    if (info == null) iterator.remove();
+                    else snapshot.job(job_id, info, this.input(job_id, info));
+                }
+                try {
+                    this.jobs.forEachCompleted((job_id, completions) -> {
+                        try {
+                            snapshot.completions(job_id, completions);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            });
+        } finally {
+            this.submitting.unlock();
+        }
+    }
+
+    /**
+     * Take a snapshot in the background, if the journal has grown enough since the last one and none is being taken.
+     */
+    private void snapshotIfDue() {
+        if (this.journal == null || this.snapshotInterval <= 0 || this.journal.sinceSnapshot() < this.snapshotInterval) return;
+        if (!this.snapshotting.compareAndSet(false, true)) return;
+        Thread.ofVirtual().name("job-snapshot").start(() -> {
+            try {
+                this.snapshot();
+            } catch (IOException e) {
+                Servlet.LOGGER.log(Level.WARNING, "Failed to write a job snapshot", e);
+            } finally {
+                this.snapshotting.set(false);
+            }
+        });
+    }
+
+    /**
+     * Make counted results durable, if the manager keeps a journal, before they are acknowledged.
+     * @param jobIds The jobs.
+     * @param completions The number of results of each job, including the new one.
+     * @param count The number of results counted, from the start of the arrays.
+     */
+    private void journalResults(long[] jobIds, int[] completions, int count) throws RXException {
+        if (this.journal == null || count == 0) return;
+        try {
+            this.journal.commit(this.journal.completed(jobIds, completions, count));
+        } catch (IOException e) {
+            throw new RXException("Could not journal results.", e);
+        }
+        this.snapshotIfDue();
+    }
+
+    /**
+     * End all leases held by a client, so that its unfinished jobs can be leased to others at once, and forget what it advertised and its late results.
+     * @param holder The client, as passed when leasing.
+     * @return The number of leases ended.
+     */
+    public int releaseLeases(Object holder) {
+        if (this.sizer != null) this.sizer.forget(holder);
+        if (this.speculation != null) this.speculation.forget(holder);
+        return this.leases.releaseAll(holder);
+    }
+
+    /**
+     * Record what a client advertised of itself, to size its claims until its own rate of work is known. Ignored unless claims are sized adaptively.
+     * @param hello The client's cores, free heap and measured rate of work.
+     * @param holder The client, as passed when leasing.
+     */
+    public void registerClient(ClientHello hello, Object holder) {
+        if (this.sizer == null || holder == null) return;
+        this.sizer.hello(holder, hello.getCores(), hello.getFreeHeap(), hello.getJobsPerSecond());
+    }
+
+    /**
+     * Fetch the pair of program ID, and Job input data for the given jar request.
      * @param jarRequest The Jar Request
-     * @return The Entry with Jar path as key, and Serializable input as value.
+     * @return The Entry with program ID as key, and Serializable input as value.
      * @throws RXException if request Job ID is invalid, role is incompatible, or pre-requisite jobs have not finished.
      */
-    public AbstractMap.SimpleEntry<String,Serializable> fetchJobInfoPair(JarRequest jarRequest) throws RXException {
+    public AbstractMap.SimpleEntry<Long,Serializable> fetchJobInfoPair(JarRequest jarRequest) throws RXException {
         var suitable = this.suitableJobType(jarRequest.getRoleKey());
         return _fetchJobInfoPairInner(jarRequest.getJobId(), suitable);
     }
 
-    private AbstractMap.SimpleEntry<String,Serializable> _fetchJobInfoPairInner(long job_id, JobType suitable) throws RXException {
-        var jobInfo = this.jobInfo.get(job_id);
+    private AbstractMap.SimpleEntry<Long,Serializable> _fetchJobInfoPairInner(long job_id, JobType suitable) throws RXException {
+        var jobInfo = this.info(job_id);
         if (jobInfo == null) throw new RXException("No pending job with id: " + job_id);
         if (suitable != jobInfo.type) {
             throw new RXException("Client ill-suited to the job.");
         }
-        if (!jobInfo.relaxed) verifyPrerequisites(jobInfo.prerequisite_jobs);
-        var entry = new AbstractMap.SimpleEntry<>(this.jarMap.get(jobInfo.programId), jobInfo.jobData);
+        if (!jobInfo.relaxed) verifyPrerequisites(job_id);
+        var entry = new AbstractMap.SimpleEntry<Long,Serializable>(jobInfo.programId, this.input(job_id, jobInfo));
         return entry;
     }
 
     /**
-     * Register the completion of this job. This DOES NOT save the result.
+     * Get the input of a job: from the input store if it is kept there, as an EncodedPayload that is sent without decoding it,
+     * from its family's generator, or from its info.
+     */
+    private Serializable input(long job_id, JobInfo info) {
+        long input = this.jobs.input(job_id);
+        if (input != 0) return this.inputs.get(input);
+        var family = this.families.isEmpty() ? null : this.family(job_id);
+        return family != null && family.template == info ? family.input(job_id) : info.jobData;
+    }
+
+    /**
+     * Get the jar of a program requested by the hash the client received with it in a WorkBatch, without going through any of its jobs.
+     * @param jarRequest The Jar Request, naming a program and its jar hash.
+     * @return The program artifact.
+     * @throws RXException If the role key is invalid, the program has no jar, or its jar does not have the requested hash.
+     * @throws IOException If the jar could not be read.
+     */
+    public ProgramArtifact fetchProgram(JarRequest jarRequest) throws RXException, IOException {
+        this.suitableJobType(jarRequest.getRoleKey());
+        var program = this.getProgram(jarRequest.getProgramId());
+        if (!program.getHashHex().equals(jarRequest.getProgramHash())) {
+            throw new RXException("No jar with the requested hash for program: " + jarRequest.getProgramId());
+        }
+        return program;
+    }
+
+    /**
+     * Get the jar of a program, ready to be sent.
+     * @param programId The program ID.
+     * @return The program artifact.
+     * @throws RXException If the program has no jar.
+     * @throws IOException If the jar could not be read.
+     */
+    public ProgramArtifact getProgram(long programId) throws RXException, IOException {
+        var jarPath = this.jarMap.get(programId);
+        if (jarPath == null) throw new RXException("No jar for program: " + programId);
+        return this.programs.get(programId, jarPath);
+    }
+
+    /**
+     * Stores the results the manager admits, before they are counted.
+     */
+    @FunctionalInterface
+    public interface ResultStore {
+        /**
+         * Store the results of the given jobs.
+         * @param jobIds The jobs whose results were admitted.
+         * @throws IOException If the results could not be stored; they are then not counted.
+         */
+        void store(List<Long> jobIds) throws IOException;
+    }
+
+    /**
+     * Register the completion of this job, ending the holder's lease on it and renewing its other leases. This DOES NOT save the result.
+     * With a journal, the completion is durable once this returns.
      * @param pushResult The result information.
-     * @throws RXException If the role key is invalid, the job was already completed with required redundancy, or client is ill-suited to the job.
+     * @param holder The client that pushed the result, as passed when leasing.
+     * @return Whether the result was admitted; false if it came late for a job that was re-issued to another client and has finished, and should be dropped.
+     * @throws RXException If the role key is invalid, the job was already completed with required redundancy, client is ill-suited to the job,
+     *                     or the completion cannot be journaled.
      */
-    public void registerJobResult(PushResult pushResult) throws RXException {
+    public boolean registerJobResult(PushResult pushResult, Object holder) throws RXException {
+        return this.registerJobResult(pushResult, holder, jobIds -> {});
+    }
+
+    /**
+     * Register the completion of this job, storing its result with `store` before the completion is counted, journaled or finishes the job.
+     * If the result cannot be stored, the completion is taken back, so no job is ever finished without its results.
+     * @param pushResult The result information.
+     * @param holder The client that pushed the result, as passed when leasing.
+     * @param store Stores the result, if it is admitted.
+     * @return Whether the result was admitted and stored; false if it came late for a job that was re-issued to another client and has finished, and was dropped.
+     * @throws RXException If the role key is invalid, the job was already completed with required redundancy, client is ill-suited to the job,
+     *                     or the result cannot be stored or its completion journaled.
+     */
+    public boolean registerJobResult(PushResult pushResult, Object holder, ResultStore store) throws RXException {
         var jobtype = this.suitableJobType(pushResult.getRoleKey());
-        synchronized(jobMetas) {
-            _registerJobResultInner(pushResult.getJobId(), jobtype);
-        }
+        long job_id = pushResult.getJobId();
+        var jobInfo = this.info(job_id);
+        int completions = _admitJobResultInner(job_id, jobInfo, jobtype, holder);
+        if (completions > 0) this.commitResults(new long[]{job_id}, new JobInfo[]{jobInfo}, new int[]{completions}, 1, holder, store);
+        this.leases.renewAll(holder, System.currentTimeMillis());
+        return completions > 0;
     }
 
     /**
-     * Register the completion of jobs in the bulk result. This DOES NOT save the result.
+     * Register the completion of jobs in the bulk result, ending the holder's leases on them and renewing its other leases. This DOES NOT save the result.
      * @param pushResult The Bulk result information.
+     * @param holder The client that pushed the results, as passed when leasing.
+     * @return The jobs whose results were not admitted, as they came late for jobs that were re-issued to other clients and have finished; their results should be dropped.
      * @throws RXException If the role key is invalid, or a job was already completed with required redundancy, or client is ill-suited to a job.
      */
-    public void registerJobResults(BulkPush pushResult) throws RXException {
+    public List<Long> registerJobResults(BulkPush pushResult, Object holder) throws RXException {
+        return this.registerJobResults(pushResult, holder, jobIds -> {});
+    }
+
+    /**
+     * Register the completion of jobs in the bulk result, storing the admitted results with `store` before their completions are counted,
+     * journaled or finish jobs. Results admitted before a failing one stand: they are stored and counted before the failure is thrown.
+     * @param pushResult The Bulk result information.
+     * @param holder The client that pushed the results, as passed when leasing.
+     * @param store Stores the admitted results.
+     * @return The jobs whose results were not admitted, as they came late for jobs that were re-issued to other clients and have finished; their results were dropped.
+     * @throws RXException If the role key is invalid, or a job was already completed with required redundancy, or client is ill-suited to a job,
+     *                     or the results cannot be stored or their completions journaled.
+     */
+    public List<Long> registerJobResults(BulkPush pushResult, Object holder, ResultStore store) throws RXException {
         var jobtype = this.suitableJobType(pushResult.getRoleKey());
         if (pushResult.getJobs().size() > this.bulkPushLimit) {
             throw new RXException("Bulk push exceeds limit of " + this.bulkPushLimit);
         }
-        synchronized(jobMetas) {
-            for (var job_id : pushResult.getJobs()) {
-                _registerJobResultInner(job_id, jobtype);
+        var jobIds = new long[pushResult.getJobs().size()];
+        var infos = new JobInfo[jobIds.length];
+        var completions = new int[jobIds.length];
+        var dropped = new ArrayList<Long>();
+        int counted = 0;
+        RXException failure = null;
+        for (var job_id : pushResult.getJobs()) {
+            var jobInfo = this.info(job_id);
+            int count;
+            try {
+                count = _admitJobResultInner(job_id, jobInfo, jobtype, holder);
+            } catch (RXException e) {
+                failure = e;
+                break;
             }
+            if (count == 0) {
+                dropped.add(job_id);
+                continue;
+            }
+            infos[counted] = jobInfo;
+            completions[counted] = count;
+            jobIds[counted++] = job_id;
+        }
+        try {
+            this.commitResults(jobIds, infos, completions, counted, holder, store);
+        } catch (RXException e) {
+            if (failure != null) e.addSuppressed(failure);
+            throw e;
         }
+        if (failure != null) throw failure;
+        this.leases.renewAll(holder, System.currentTimeMillis());
+        return dropped;
     }
 
-    private void _registerJobResultInner(long job_id, JobType suitable) throws RXException {
-        var jobMeta = this.jobMetas.get(job_id);
-        if (jobMeta == null) throw new RXException("No scheduled job with id: " + job_id);
-        var jobInfo = this.jobInfo.get(job_id);
-        if (jobInfo == null) throw new RXException("Redundant result.");
+    /**
+     * Count a result of a job, without letting it finish the job yet.
+     * @return The number of results of the job, including this one; 0 if the result came late for a re-issued job, and is dropped.
+     */
+    private int _admitJobResultInner(long job_id, JobInfo jobInfo, JobType suitable, Object holder) throws RXException {
+        if (jobInfo == null) {
+            if (!this.jobs.contains(job_id)) throw new RXException("No scheduled job with id: " + job_id);
+            if (this.isLateForReissued(job_id, holder)) return 0;
+            throw new RXException("Redundant result.");
+        }
         if (suitable != jobInfo.type) throw new RXException("Client ill-suited to the job.");
-        jobMeta.completion_count += 1;
-        if (jobInfo.redundancy_count == jobMeta.completion_count) {
-            this.jobInfo.remove(job_id);
+        // Concurrent results for the last slot race on the counter; exactly one of them completes the job.
+        int completions = this.jobs.addCompletions(job_id, 1);
+        if (completions > jobInfo.redundancy_count) {
+            this.jobs.addCompletions(job_id, -1);
+            if (this.isLateForReissued(job_id, holder)) return 0;
+            throw new RXException("Redundant result.");
+        }
+        return completions;
+    }
+
+    /**
+     * Store the first `count` admitted results, make their completions durable, and only then let them end leases and finish jobs.
+     * If the results cannot be stored or journaled, their completions are taken back, and the jobs stay pending.
+     */
+    private void commitResults(long[] jobIds, JobInfo[] infos, int[] completions, int count, Object holder, ResultStore store) throws RXException {
+        if (count == 0) return;
+        var admitted = new ArrayList<Long>(count);
+        for (int i = 0; i < count; i++) admitted.add(jobIds[i]);
+        try {
+            store.store(admitted);
+            this.journalResults(jobIds, completions, count);
+        } catch (IOException e) {
+            for (int i = 0; i < count; i++) this.jobs.addCompletions(jobIds[i], -1);
+            throw new RXException("Failed to store results.", e);
+        } catch (RXException | RuntimeException e) {
+            for (int i = 0; i < count; i++) this.jobs.addCompletions(jobIds[i], -1);
+            throw e;
+        }
+        for (int i = 0; i < count; i++) _finishJobResultInner(jobIds[i], infos[i], completions[i], holder);
+    }
+
+    /**
+     * Let a stored and journaled result end its lease, and finish its job if it is the last one needed.
+     */
+    private void _finishJobResultInner(long job_id, JobInfo jobInfo, int completions, Object holder) {
+        long leasedAt = this.leases.release(job_id, holder);
+        if (leasedAt >= 0) {
+            long now = System.currentTimeMillis();
+            if (this.speculation != null) this.speculation.record(jobInfo.type, now - leasedAt);
+            if (this.sizer != null) this.sizer.completed(holder, leasedAt, now);
         }
+        boolean complete = completions == jobInfo.redundancy_count;
+        if (complete) {
+            var ended = this.leases.retire(job_id, () -> {
+                this.jobs.finish(job_id);
+                this.pending.remove(job_id, jobInfo);
+            });
+            if (this.speculation != null) this.speculation.finished(job_id, ended);
+            this.graph.forget(job_id);
+        }
+        // A pre-requisite finishes with its first stored result, or its last if redundance is forced. The result counted first may have failed to store,
+        // so every stored result releases the dependents; only the first release does anything.
+        if (!forceRedundance || complete) {
+            var families = this.familiesWaiting.remove(job_id);
+            if (families != null) families.forEach(JobFamily::unblock);
+            for (long ready : this.graph.finish(job_id)) {
+                var readyInfo = this.jobs.info(ready);
+                if (readyInfo == null) continue;
+                this.pending.unblock(ready, readyInfo);
+                // A result pushed for the job while it was blocked may have completed it meanwhile.
+                if (this.jobs.info(ready) == null) this.pending.remove(ready, readyInfo);
+            }
+        }
+    }
+
+    /**
+     * Whether a redundant result came from one of the clients a job was re-issued to, after another finished it. The first result wins, and
+     * the others are dropped without failing their push.
+     */
+    private boolean isLateForReissued(long job_id, Object holder) {
+        if (this.speculation == null || !this.speculation.isLate(job_id, holder)) return false;
+        this.leases.release(job_id, holder);
+        return true;
     }
 
     public void _validateInspectionInner(long jobId, long parentJobId, JobType suitableType) throws RXException {
         if (suitableType != JobType.COLLECT) 
             throw new RXException("Client ill-suited to the job.");
-        if (!this.jobInfo.containsKey(parentJobId))
+        var pJobInfo = this.info(parentJobId);
+        if (pJobInfo == null)
             throw new RXException("No pending collect job with id: " + parentJobId);
-        var pJobInfo = this.jobInfo.get(parentJobId);
         if (!pJobInfo.prerequisite_jobs.contains(jobId))
             throw new RXException("Cannot inspect results of job with id: " + jobId);
     }
@@ -257,4 +992,32 @@ public class JobManager {
     public int getBulkInspectLimit() {
         return bulkInspLimit;
     }
+
+    public CompressionPolicy getCompressionPolicy() {
+        return compression;
+    }
+
+    public boolean usesSessionStreams() {
+        return sessionStreams;
+    }
+
+    public boolean usesBinaryCodec() {
+        return binaryCodec;
+    }
+
+    public int getStreamFrameSize() {
+        return streamFrameSize;
+    }
+
+    public int getStreamParallelism() {
+        return streamParallelism;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public long getLeaseDuration() {
+        return leases.getDuration();
+    }
 }
\ No newline at end of file
@@ -1,21 +1,45 @@
 package smolrx.jobs;
 
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.TreeMap;
+import java.util.function.LongFunction;
+import java.util.stream.LongStream;
+
+import smolrx.CompressionPolicy;
+import smolrx.SecureChannel;
 
 /**
  * Builder for creating and configuring instances of JobManager.
  */
 public class JobManagerBuilder {
     private final HashMap<Long, String> jarMap = new HashMap<>();
-    private final TreeMap<Long, JobInfo> jobInfo = new TreeMap<>();
-    private final HashMap<Long, JobMetadata> jobMetas = new HashMap<>();
+    private final JobTable jobs = new JobTable();
+    private final TreeMap<Long, JobFamily> families = new TreeMap<>();
     private final HashMap<String, JobType> keyMap = new HashMap<>();
+    private final HashSet<String> submitKeys = new HashSet<>();
     private boolean admitAnySlogger = false;
     private boolean forceRedundance = false;
     private int bulkReqLimit = 100;
     private int bulkPushLimit = 100;
     private int bulkInspLimit = 100;
+    private CompressionPolicy compression = CompressionPolicy.DEFAULT;
+    private boolean sessionStreams = true;
+    private boolean binaryCodec = true;
+    private int streamFrameSize = 256 * 1024;
+    private int streamParallelism = 1;
+    private int maxInFlight = 16;
+    private long leaseDuration = 60_000;
+    private JobInputStore inputs = null;
+    private JobJournal journal = null;
+    private long snapshotInterval = 1_000_000;
+    private double speculationPercentile = 0;
+    private long claimHorizon = 0;
 
     /**
      * Set the limit for bulk requests.
@@ -38,8 +62,9 @@ public class JobManagerBuilder {
     }
 
     /**
-     * Set the limit for bulk pushes. This limit should be set carefully, since the JobManager is locked for the duration of a Bulk Push operation.
-     * @param limit The maximum number of job inputs to push in bulk.
+     * Set the limit for bulk pushes. Pushes lock nothing beyond the table segment of each job, but the results of a push are stored and journaled together,
+     * and the client holds them all until the push is acknowledged.
+     * @param limit The maximum number of job results to push in bulk.
      * @return The current instance of JobManagerBuilder for method chaining.
      */
     public JobManagerBuilder setBulkPushLimit(int limit) {
@@ -47,18 +72,219 @@ public class JobManagerBuilder {
         return this;
     }
 
+    /**
+     * Set how frames are compressed on client channels, in both directions.
+     * @param policy The compression policy, announced to clients in ProtocolConfig.
+     * @return The current instance of JobManagerBuilder for method chaining.
+     */
+    public JobManagerBuilder setCompressionPolicy(CompressionPolicy policy) {
+        this.compression = policy;
+        return this;
+    }
+
+    /**
+     * Set whether client channels keep one serialization stream per direction for the whole session, in place of one per message.
+     * Session streams send each class descriptor once per channel. They are enabled by default.
+     * @param enabled True to use session streams.
+     * @return The current instance of JobManagerBuilder for method chaining.
+     */
+    public JobManagerBuilder setSessionStreams(boolean enabled) {
+        this.sessionStreams = enabled;
+        return this;
+    }
+
+    /**
+     * Set whether client channels carry protocol messages in the binary encoding of MessageCodec, in place of Java serialization.
+     * User payloads are serialized either way. The binary encoding is enabled by default.
+     * @param enabled True to use the binary encoding.
+     * @return The current instance of JobManagerBuilder for method chaining.
+     */
+    public JobManagerBuilder setBinaryCodec(boolean enabled) {
+        this.binaryCodec = enabled;
+        return this;
+    }
+
+    /**
+     * Set the size of frames in streams (jars) sent to clients, and how many frames are encrypted at once across cores.
+     * Larger frames amortize the per-frame cost of encryption; the default is 256 KiB frames, encrypted one at a time.
+     * @param frameSize Plaintext size of stream frames, from SecureChannel.FRAME_SIZE to SecureChannel.MAX_STREAM_FRAME_SIZE.
+     * @param parallelism Number of frames encrypted concurrently; 1 to encrypt on the servlet thread only.
+     * @return The current instance of JobManagerBuilder for method chaining.
+     */
+    public JobManagerBuilder setStreamFrames(int frameSize, int parallelism) {
+        if (frameSize < SecureChannel.FRAME_SIZE || frameSize > SecureChannel.MAX_STREAM_FRAME_SIZE) {
+            throw new IllegalArgumentException("Stream frame size out of range: " + frameSize);
+        }
+        if (parallelism < 1) throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        this.streamFrameSize = frameSize;
+        this.streamParallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Set how many requests from one client are handled concurrently, each on a virtual thread of its own.
+     * Clients may send up to this many requests on their channel before the first is answered. Defaults to 16.
+     * @param requests The number of requests in flight per client; 1 to handle requests one at a time.
+     * @return The current instance of JobManagerBuilder for method chaining.
+     */
+    public JobManagerBuilder setMaxInFlight(int requests) {
+        if (requests < 1) throw new IllegalArgumentException("Requests in flight must be positive: " + requests);
+        this.maxInFlight = requests;
+        return this;
+    }
+
+    /**
+     * Set how long a job listed or claimed by a client stays leased to it. While leased, the job is hidden from other clients,
+     * unless its redundancy count allows more leases. Leases also end when the client pushes the job's result or disconnects,
+     * and are renewed whenever the client pushes results. Defaults to 60 seconds.
+     * @param millis The lease duration in milliseconds.
+     * @return The current instance of JobManagerBuilder for method chaining.
+     */
+    public JobManagerBuilder setLeaseDuration(long millis) {
+        if (millis < 1) throw new IllegalArgumentException("Lease duration must be positive: " + millis);
+        this.leaseDuration = millis;
+        return this;
+    }
+
+    /**
+     * Re-issue stragglers to idle clients at the tail of a run. Once no job of a type is left to lease, a client asking for work is also leased jobs
+     * whose leases have all outlasted the given percentile of the times recent jobs of the type took from lease to result, e.g. as their clients are slow or dead.
+     * Each such job is leased once more than its redundancy count allows; the first result completes it, and later results for it are dropped without error.
+     * Off by default.
+     * @param percentile The percentile of recent lease-to-result times, from 0 (exclusive) to 1, e.g. 0.95.
+     * @return The current instance of JobManagerBuilder for method chaining.
+     */
+    public JobManagerBuilder enableSpeculation(double percentile) {
+        if (!(percentile > 0 && percentile <= 1)) throw new IllegalArgumentException("Percentile out of range: " + percentile);
+        this.speculationPercentile = percentile;
+        return this;
+    }
+
+    /**
+     * Size each client's claims to its rate of work, so that a client with many cores is leased many more jobs than a small one, and none hoards jobs.
+     * A claim is cut to the jobs the client runs in the given horizon, at an average of the rates it finished its past claims at; until it has finished one,
+     * at the rate it advertised in a ClientHello, or its cores times the rate per core of other clients, or else one job per advertised core;
+     * and to a quarter of its advertised free heap. Clients that advertise nothing are leased up to the bulk limit until their rate is known.
+     * Claims are never larger than the bulk request limit. Off by default.
+     * @param millis The work to lease a client per claim, in milliseconds.
+     * @return The current instance of JobManagerBuilder for method chaining.
+     */
+    public JobManagerBuilder enableAdaptiveClaims(long millis) {
+        if (millis < 1) throw new IllegalArgumentException("Claim horizon must be positive: " + millis);
+        this.claimHorizon = millis;
+        return this;
+    }
+
+    /**
+     * Keep the inputs of jobs added from now on in a memory-mapped file instead of the heap. Each input is encoded once, when its job is added,
+     * and sent to clients as it is stored, so queued input sets may be far larger than the heap. The manager keeps the file open for its lifetime.
+     * @param file The file to store inputs in. What it held is discarded.
+     * @return The current instance of JobManagerBuilder for method chaining.
+     * @throws IOException If the file cannot be opened.
+     */
+    public JobManagerBuilder setInputStore(Path file) throws IOException {
+        this.inputs = new JobInputStore(file);
+        return this;
+    }
+
+    /**
+     * Keep the manager's state on disk, in a directory: results are journaled before they are acknowledged, and so are submitted jobs before they are added,
+     * with one fsync for all servlets committing at once, and snapshots are taken as the journal grows. If the directory holds the state of an earlier run,
+     * the manager resumes from it: the jobs submitted then are added again, and the results counted then are counted again, so that finished jobs are not handed out again.
+     * Jobs and job families added to the builder should be the same on every run.
+     * @param directory The directory, created if it does not exist.
+     * @return The current instance of JobManagerBuilder for method chaining.
+     * @throws IOException If the directory cannot be read, or holds a corrupt snapshot or journal.
+     */
+    public JobManagerBuilder setJournal(Path directory) throws IOException {
+        this.journal = new JobJournal(directory);
+        return this;
+    }
+
+    /**
+     * Set how many records the journal takes before a snapshot is written in the background. A restart reads the newest snapshot and replays the journal after it,
+     * so this bounds the replay. Defaults to 1,000,000.
+     * @param records The number of records; 0 to write snapshots only with JobManager.snapshot.
+     * @return The current instance of JobManagerBuilder for method chaining.
+     */
+    public JobManagerBuilder setSnapshotInterval(long records) {
+        if (records < 0) throw new IllegalArgumentException("Snapshot interval must not be negative: " + records);
+        this.snapshotInterval = records;
+        return this;
+    }
+
     /**
      * Add a job to the job manager.
      * @param jobId The ID of the job.
      * @param jobInfo The information about the job.
      * @return The current instance of JobManagerBuilder for method chaining.
+     * @throws UncheckedIOException If the job's input cannot be written to the input store, e.g. as it is not serializable.
      */
     public JobManagerBuilder addJob(long jobId, JobInfo jobInfo) {
-        this.jobInfo.put(jobId, jobInfo);
-        this.jobMetas.put(jobId, new JobMetadata());
+        if (this.family(jobId) != null) throw new IllegalArgumentException("Job " + jobId + " belongs to a job family.");
+        if (this.inputs == null || jobInfo.jobData == null) {
+            this.jobs.put(jobId, jobInfo, 0, JobGraph.gate(jobInfo));
+            return this;
+        }
+        try {
+            this.jobs.put(jobId, jobInfo.withoutData(), this.inputs.append(jobInfo.jobData), JobGraph.gate(jobInfo));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not store the input of job: " + jobId, e);
+        }
         return this;
     }
 
+    /**
+     * Add a family of jobs that share one template, e.g. a parameter sweep: the jobs with IDs from `startId` to `endId`, each with the template's
+     * type, priority, program, properties, redundancy count, pre-requisites and link, and an input generated from its ID.
+     * The manager adds each job of the family only once clients reach it, so a family of millions of jobs takes constant time and space to add.
+     * @param startId The first job ID, inclusive.
+     * @param endId The last job ID, exclusive.
+     * @param template The info shared by the jobs. Its pre-requisites must lie outside the family.
+     * @param inputs Generates the input of a job from its ID, whenever a client fetches it, possibly from many threads at once;
+     *               null to give every job the template's input.
+     * @return The current instance of JobManagerBuilder for method chaining.
+     * @throws IllegalArgumentException If the range is empty, or overlaps another family.
+     */
+    public JobManagerBuilder addJobFamily(long startId, long endId, JobInfo template, LongFunction<? extends Serializable> inputs) {
+        if (startId >= endId) throw new IllegalArgumentException("Empty job family: " + startId + " to " + endId);
+        var before = this.families.floorEntry(endId - 1);
+        if (before != null && before.getValue().end > startId) {
+            throw new IllegalArgumentException("Job family " + startId + " to " + endId + " overlaps job family " + before.getKey() + " to " + before.getValue().end);
+        }
+        var family = new JobFamily(startId, endId, template, inputs);
+        for (long prerequisite : template.prerequisite_jobs) {
+            if (family.contains(prerequisite)) throw new IllegalArgumentException("Job family " + startId + " to " + endId + " depends on itself.");
+        }
+        this.families.put(startId, family);
+        return this;
+    }
+
+    private JobFamily family(long jobId) {
+        var entry = this.families.floorEntry(jobId);
+        return entry != null && entry.getValue().contains(jobId) ? entry.getValue() : null;
+    }
+
+    /**
+     * Check that no family waits, through the pre-requisites of its template, on a family that waits on it in turn.
+     * Such families would never be ready, and adding their jobs would not end.
+     */
+    private void checkFamilyCycles() {
+        var done = new HashSet<JobFamily>();
+        for (var family : this.families.values()) this.checkFamilyCycles(family, new HashSet<>(), done);
+    }
+
+    private void checkFamilyCycles(JobFamily family, HashSet<JobFamily> path, HashSet<JobFamily> done) {
+        if (done.contains(family)) return;
+        if (!path.add(family)) throw new IllegalArgumentException("Job families depend on each other in a cycle, through job family " + family.start + " to " + family.end);
+        for (long prerequisite : family.template.prerequisite_jobs) {
+            var next = this.family(prerequisite);
+            if (next != null) this.checkFamilyCycles(next, path, done);
+        }
+        path.remove(family);
+        done.add(family);
+    }
+
     /**
      * Add a job to the job manager with metadata.
      * @param programId The ID of the program.
@@ -81,6 +307,17 @@ public class JobManagerBuilder {
         return this;
     }
 
+    /**
+     * Add a key that lets clients submit jobs and programs while the server runs, with SubmitJobs.
+     * Submitted programs are jar files local to the server, so only trusted clients should hold such a key.
+     * @param key The submit key.
+     * @return The current instance of JobManagerBuilder for method chaining.
+     */
+    public JobManagerBuilder withSubmitKey(String key) {
+        this.submitKeys.add(key);
+        return this;
+    }
+
     /**
      * Job manager admits results from any slogger.
      * @return The current instance of JobManagerBuilder for method chaining.
@@ -100,20 +337,98 @@ public class JobManagerBuilder {
     }
 
     /**
-     * Build and return a new instance of JobManager with the configured properties.
+     * Build and return a new instance of JobManager with the configured properties. The jobs are handed over to the manager, not copied,
+     * so a builder builds one manager.
      * @return A new instance of JobManager.
+     * @throws IllegalArgumentException If a job was added in the range of a job family, or job families depend on each other in a cycle.
      */
     public JobManager build() {
         JobManager manager = new JobManager();
-        manager.jarMap = this.jarMap;
-        manager.jobInfo = this.jobInfo;
-        manager.jobMetas = this.jobMetas;
+        manager.jarMap = new ConcurrentHashMap<>(this.jarMap);
+        manager.jobs = this.jobs;
+        manager.families = this.families;
+        manager.inputs = this.inputs;
         manager.keyMap = this.keyMap;
+        manager.submitKeys = this.submitKeys;
         manager.bulkLimit = this.bulkReqLimit;
         manager.bulkPushLimit = this.bulkPushLimit;
         manager.admitAnySlogger = this.admitAnySlogger;
         manager.forceRedundance = this.forceRedundance;
         manager.bulkInspLimit = this.bulkInspLimit;
+        manager.compression = this.compression;
+        manager.sessionStreams = this.sessionStreams;
+        manager.binaryCodec = this.binaryCodec;
+        manager.streamFrameSize = this.streamFrameSize;
+        manager.streamParallelism = this.streamParallelism;
+        manager.maxInFlight = this.maxInFlight;
+        manager.leases = manager.newLeases(this.leaseDuration);
+        manager.snapshotInterval = this.snapshotInterval;
+        manager.speculation = this.speculationPercentile > 0 ? new Speculation(this.speculationPercentile) : null;
+        manager.sizer = this.claimHorizon > 0 ? new ClaimSizer(this.claimHorizon) : null;
+        // Index jobs once the manager can tell which pre-requisites are unfinished.
+        manager.graph = new JobGraph(this.jobs);
+        manager.pending = new PriorityIndex();
+        this.checkFamilyCycles();
+        long[] recovered = this.journal == null ? new long[0] : this.recover(manager);
+        this.jobs.forEachPending((jobId, info) -> {
+            // Jobs of families are added as they are reached, here as pre-requisites of other jobs.
+            var family = manager.family(jobId);
+            if (family != null && family.template == info) return;
+            if (family != null) throw new IllegalArgumentException("Job " + jobId + " belongs to a job family.");
+            manager.index(jobId, info);
+        });
+        for (long jobId : recovered) {
+            var info = this.jobs.info(jobId);
+            if (info != null) manager.index(jobId, info);
+        }
+        for (var family : this.families.values()) {
+            family.adding.lock();
+            try {
+                family.advance(this.jobs);
+            } finally {
+                family.adding.unlock();
+            }
+        }
+        manager.gateFamilies();
+        manager.journal = this.journal;
         return manager;
     }
+
+    /**
+     * Restore the state the journal recovered, before jobs are indexed: the submitted programs and pending jobs, and then the result counts.
+     * Jobs that had finished are finished again, and so left out of the index. A submitted job that had finished is known by its counts alone.
+     * @return The jobs of families that had results, which are added to the table here, and left to index once the other jobs are.
+     */
+    private long[] recover(JobManager manager) {
+        var journal = this.journal;
+        for (var jar : journal.recoveredJars.entrySet()) manager.jarMap.putIfAbsent(jar.getKey(), jar.getValue());
+        for (var job : journal.recoveredJobs.entrySet()) {
+            long jobId = job.getKey();
+            if (this.jobs.contains(jobId) || this.family(jobId) != null) continue;
+            this.addJob(jobId, job.getValue());
+            manager.submitted.add(jobId);
+        }
+        var familyJobs = LongStream.builder();
+        journal.forEachRecovered((jobId, completions) -> {
+            var info = this.jobs.info(jobId);
+            if (info == null && !this.jobs.contains(jobId)) {
+                var family = this.family(jobId);
+                if (family != null) {
+                    info = family.template;
+                    this.jobs.put(jobId, info, 0, JobGraph.gate(info));
+                    familyJobs.add(jobId);
+                } else {
+                    this.jobs.put(jobId, null, 0, 0);
+                    this.jobs.finish(jobId);
+                }
+            }
+            // A count above the redundancy is a result that was taken back.
+            int count = info == null ? completions : Math.min(completions, info.redundancy_count);
+            int known = this.jobs.completions(jobId);
+            if (count > known) this.jobs.addCompletions(jobId, count - known);
+            if (info != null && count == info.redundancy_count) this.jobs.finish(jobId);
+        });
+        journal.clearRecovered();
+        return familyJobs.build().toArray();
+    }
 }
@@ -3,7 +3,8 @@ package smolrx.jobs;
 import java.io.Serializable;
 
 /**
- * Book-keeping and tracking completion of Job.
+ * Book-keeping and tracking completion of Job. The manager keeps these counts in the columns of its JobTable;
+ * instances are snapshots of them, e.g. in job listings for auditors.
  */
 public class JobMetadata implements Serializable {
 
@@ -23,4 +24,22 @@ public class JobMetadata implements Serializable {
         // Default constructor.
     }
 
+    /**
+     * Create metadata with the given counts, e.g. when decoding a job listing.
+     * @param inspectCount The number of times the results of the job have been inspected.
+     * @param completionCount The number of times the job has been completed.
+     */
+    public JobMetadata(int inspectCount, int completionCount) {
+        this.inspect_count = inspectCount;
+        this.completion_count = completionCount;
+    }
+
+    public int getInspectCount() {
+        return inspect_count;
+    }
+
+    public int getCompletionCount() {
+        return completion_count;
+    }
+
 }
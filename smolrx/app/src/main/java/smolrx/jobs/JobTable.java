@@ -0,0 +1,471 @@
+package smolrx.jobs;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Jobs by ID, with their result counters and dependency edges, in open-addressing tables of primitive columns: IDs in a long[],
+ * counters in parallel int[]s, references to stored inputs in a long[], and job infos and dependents in arrays, so that a job costs no boxed key, map entry or metadata object.
+ * A finished job keeps its ID and counters, so that late results are told apart from results for unknown jobs, but drops its info.
+ * Thread-safe: jobs are spread over segments by ID, each guarded by a StampedLock. Lookups read optimistically, and only take
+ * the read lock if a write to the segment intervened. Writes are short and never wait on anything else.
+ */
+final class JobTable {
+
+    /**
+     * Number of segments; a power of two.
+     */
+    private static final int SEGMENTS = 64;
+    private static final int SEGMENT_BITS = Integer.numberOfTrailingZeros(SEGMENTS);
+
+    private static final byte EMPTY = 0;
+    private static final byte PENDING = 1;
+    private static final byte FINISHED = 2;
+
+    /**
+     * Dependents of a pre-requisite that has released them; no job can wait on it any more.
+     */
+    private static final long[] RELEASED = new long[1];
+
+    /**
+     * Visits pending jobs.
+     */
+    interface Visitor {
+        void visit(long jobId, JobInfo info);
+    }
+
+    /**
+     * Visits the result counters of jobs.
+     */
+    interface Counters {
+        void visit(long jobId, int completions);
+    }
+
+    /**
+     * The columns of one segment, replaced as a whole when the segment grows. The capacity is a power of two.
+     */
+    private static final class Columns {
+        final long[] ids;
+        final byte[] states;
+        final JobInfo[] infos;
+        final int[] completions;
+        final int[] inspections;
+        final int[] blockers;
+        final long[][] dependents;
+        final long[] inputs;
+
+        Columns(int capacity) {
+            this.ids = new long[capacity];
+            this.states = new byte[capacity];
+            this.infos = new JobInfo[capacity];
+            this.completions = new int[capacity];
+            this.inspections = new int[capacity];
+            this.blockers = new int[capacity];
+            this.dependents = new long[capacity][];
+            this.inputs = new long[capacity];
+        }
+
+        /**
+         * Find the slot of a job by linear probing.
+         * @return The slot, or -1 if the job is absent.
+         */
+        int find(long jobId, int hash) {
+            int mask = this.ids.length - 1;
+            // Bounded, since an optimistic reader may see a segment mid-write.
+            for (int i = hash & mask, n = 0; n <= mask; i = (i + 1) & mask, n++) {
+                if (this.states[i] == EMPTY) return -1;
+                if (this.ids[i] == jobId) return i;
+            }
+            return -1;
+        }
+
+        /**
+         * Find the slot of a job, or the empty slot where it belongs.
+         */
+        int slot(long jobId, int hash) {
+            int mask = this.ids.length - 1;
+            int i = hash & mask;
+            while (this.states[i] != EMPTY && this.ids[i] != jobId) i = (i + 1) & mask;
+            return i;
+        }
+    }
+
+    private static final class Segment {
+        final StampedLock lock = new StampedLock();
+        Columns columns;
+        int size;
+
+        Segment(int capacity) {
+            this.columns = new Columns(capacity);
+        }
+
+        /**
+         * Double the capacity when the segment is three-quarters full. Call with the write lock held.
+         */
+        void reserve() {
+            var old = this.columns;
+            if ((this.size + 1) * 4 <= old.ids.length * 3) return;
+            var grown = new Columns(old.ids.length * 2);
+            for (int i = 0; i < old.ids.length; i++) {
+                if (old.states[i] == EMPTY) continue;
+                int j = grown.slot(old.ids[i], hash(old.ids[i]));
+                grown.ids[j] = old.ids[i];
+                grown.states[j] = old.states[i];
+                grown.infos[j] = old.infos[i];
+                grown.completions[j] = old.completions[i];
+                grown.inspections[j] = old.inspections[i];
+                grown.blockers[j] = old.blockers[i];
+                grown.dependents[j] = old.dependents[i];
+                grown.inputs[j] = old.inputs[i];
+            }
+            this.columns = grown;
+        }
+    }
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    JobTable() {
+        this(0);
+    }
+
+    /**
+     * @param expected The number of jobs expected, to size the segments up front.
+     */
+    JobTable(int expected) {
+        int perSegment = Math.max(16, Integer.highestOneBit(Math.max(1, expected / SEGMENTS * 4 / 3)) * 2);
+        for (int i = 0; i < SEGMENTS; i++) this.segments[i] = new Segment(perSegment);
+    }
+
+    private static int hash(long jobId) {
+        long h = jobId * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private Segment segment(int hash) {
+        // The top bits pick the segment, and the low bits the slot.
+        return this.segments[hash >>> (Integer.SIZE - SEGMENT_BITS)];
+    }
+
+    /**
+     * Add a pending job, or replace one, with no results.
+     * @param input The reference of the job's input in a JobInputStore; 0 if the input is kept in the info.
+     * @param blockers The number of unfinished pre-requisites to start from, e.g. JobGraph.gate.
+     */
+    void put(long jobId, JobInfo info, long input, int blockers) {
+        int hash = hash(jobId);
+        var segment = this.segment(hash);
+        long stamp = segment.lock.writeLock();
+        try {
+            segment.reserve();
+            var columns = segment.columns;
+            int slot = columns.slot(jobId, hash);
+            if (columns.states[slot] == EMPTY) segment.size += 1;
+            columns.ids[slot] = jobId;
+            columns.states[slot] = PENDING;
+            columns.infos[slot] = info;
+            columns.completions[slot] = 0;
+            columns.inspections[slot] = 0;
+            columns.blockers[slot] = blockers;
+            columns.dependents[slot] = null;
+            columns.inputs[slot] = input;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Get a pending job.
+     * @return The job, or null if it is finished or unknown.
+     */
+    JobInfo info(long jobId) {
+        int hash = hash(jobId);
+        var segment = this.segment(hash);
+        long stamp = segment.lock.tryOptimisticRead();
+        var columns = segment.columns;
+        int slot = columns.find(jobId, hash);
+        var info = slot < 0 ? null : columns.infos[slot];
+        if (segment.lock.validate(stamp)) return info;
+        stamp = segment.lock.readLock();
+        try {
+            columns = segment.columns;
+            slot = columns.find(jobId, hash);
+            return slot < 0 ? null : columns.infos[slot];
+        } finally {
+            segment.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Get the reference of a job's input in a JobInputStore.
+     * @return The reference, or 0 if the job is unknown or its input is kept in its info.
+     */
+    long input(long jobId) {
+        int hash = hash(jobId);
+        var segment = this.segment(hash);
+        long stamp = segment.lock.tryOptimisticRead();
+        var columns = segment.columns;
+        int slot = columns.find(jobId, hash);
+        long input = slot < 0 ? 0 : columns.inputs[slot];
+        if (segment.lock.validate(stamp)) return input;
+        stamp = segment.lock.readLock();
+        try {
+            columns = segment.columns;
+            slot = columns.find(jobId, hash);
+            return slot < 0 ? 0 : columns.inputs[slot];
+        } finally {
+            segment.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Whether a job is pending or finished.
+     */
+    boolean contains(long jobId) {
+        return this.completions(jobId) >= 0;
+    }
+
+    /**
+     * Get the number of results registered for a job.
+     * @return The number, or -1 if the job is unknown.
+     */
+    int completions(long jobId) {
+        int hash = hash(jobId);
+        var segment = this.segment(hash);
+        long stamp = segment.lock.tryOptimisticRead();
+        var columns = segment.columns;
+        int slot = columns.find(jobId, hash);
+        int completions = slot < 0 ? -1 : columns.completions[slot];
+        if (segment.lock.validate(stamp)) return completions;
+        stamp = segment.lock.readLock();
+        try {
+            columns = segment.columns;
+            slot = columns.find(jobId, hash);
+            return slot < 0 ? -1 : columns.completions[slot];
+        } finally {
+            segment.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Get a snapshot of the counters of a job.
+     * @return The counters, or null if the job is unknown.
+     */
+    JobMetadata metadata(long jobId) {
+        int hash = hash(jobId);
+        var segment = this.segment(hash);
+        long stamp = segment.lock.readLock();
+        try {
+            var columns = segment.columns;
+            int slot = columns.find(jobId, hash);
+            return slot < 0 ? null : new JobMetadata(columns.inspections[slot], columns.completions[slot]);
+        } finally {
+            segment.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Count a result of a job, or take one back.
+     * @param delta 1 to count a result, -1 to take one back.
+     * @return The number of results, including this one, or -1 if the job is unknown.
+     */
+    int addCompletions(long jobId, int delta) {
+        int hash = hash(jobId);
+        var segment = this.segment(hash);
+        long stamp = segment.lock.writeLock();
+        try {
+            var columns = segment.columns;
+            int slot = columns.find(jobId, hash);
+            if (slot < 0) return -1;
+            return columns.completions[slot] += delta;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Mark a job finished, dropping its info but keeping its counters.
+     */
+    void finish(long jobId) {
+        int hash = hash(jobId);
+        var segment = this.segment(hash);
+        long stamp = segment.lock.writeLock();
+        try {
+            var columns = segment.columns;
+            int slot = columns.find(jobId, hash);
+            if (slot < 0) return;
+            columns.states[slot] = FINISHED;
+            columns.infos[slot] = null;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Set the number of unfinished pre-requisites of a job.
+     */
+    void setBlockers(long jobId, int count) {
+        int hash = hash(jobId);
+        var segment = this.segment(hash);
+        long stamp = segment.lock.writeLock();
+        try {
+            var columns = segment.columns;
+            int slot = columns.find(jobId, hash);
+            if (slot >= 0) columns.blockers[slot] = count;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Get the number of unfinished pre-requisites of a job; 0 if it is unknown.
+     */
+    int blockers(long jobId) {
+        int hash = hash(jobId);
+        var segment = this.segment(hash);
+        long stamp = segment.lock.tryOptimisticRead();
+        var columns = segment.columns;
+        int slot = columns.find(jobId, hash);
+        int blockers = slot < 0 ? 0 : columns.blockers[slot];
+        if (segment.lock.validate(stamp)) return blockers;
+        stamp = segment.lock.readLock();
+        try {
+            columns = segment.columns;
+            slot = columns.find(jobId, hash);
+            return slot < 0 ? 0 : columns.blockers[slot];
+        } finally {
+            segment.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Count one more unfinished pre-requisite of a job.
+     */
+    void addBlocker(long jobId) {
+        int hash = hash(jobId);
+        var segment = this.segment(hash);
+        long stamp = segment.lock.writeLock();
+        try {
+            var columns = segment.columns;
+            int slot = columns.find(jobId, hash);
+            if (slot >= 0) columns.blockers[slot] += 1;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Count off one unfinished pre-requisite of a job.
+     * @return Whether that was the last one.
+     */
+    boolean unblock(long jobId) {
+        int hash = hash(jobId);
+        var segment = this.segment(hash);
+        long stamp = segment.lock.writeLock();
+        try {
+            var columns = segment.columns;
+            int slot = columns.find(jobId, hash);
+            if (slot < 0 || columns.blockers[slot] == 0) return false;
+            return --columns.blockers[slot] == 0;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Record that a job waits on a pre-requisite.
+     * @return Whether the job now waits on it; false if the pre-requisite is unknown, or has released its dependents already.
+     */
+    boolean addDependent(long prerequisite, long dependent) {
+        int hash = hash(prerequisite);
+        var segment = this.segment(hash);
+        long stamp = segment.lock.writeLock();
+        try {
+            var columns = segment.columns;
+            int slot = columns.find(prerequisite, hash);
+            if (slot < 0 || columns.dependents[slot] == RELEASED) return false;
+            // The first element counts the dependents, so that the array can grow by doubling.
+            var dependents = columns.dependents[slot];
+            if (dependents == null) dependents = new long[2];
+            else if (dependents[0] + 1 == dependents.length) dependents = Arrays.copyOf(dependents, dependents.length * 2);
+            dependents[(int) ++dependents[0]] = dependent;
+            columns.dependents[slot] = dependents;
+            return true;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Take the jobs waiting on a pre-requisite, leaving none, and let no job wait on it from now on.
+     * @return The dependents, or an empty array.
+     */
+    long[] takeDependents(long prerequisite) {
+        int hash = hash(prerequisite);
+        var segment = this.segment(hash);
+        long stamp = segment.lock.writeLock();
+        try {
+            var columns = segment.columns;
+            int slot = columns.find(prerequisite, hash);
+            if (slot < 0) return new long[0];
+            var dependents = columns.dependents[slot];
+            columns.dependents[slot] = RELEASED;
+            if (dependents == null || dependents == RELEASED) return new long[0];
+            return Arrays.copyOfRange(dependents, 1, 1 + (int) dependents[0]);
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Visit the pending jobs, in no particular order. Each segment is copied under its read lock and visited after,
+     * so that the visitor may update the table.
+     */
+    void forEachPending(Visitor visitor) {
+        for (var segment : this.segments) {
+            long[] ids;
+            JobInfo[] infos;
+            int count = 0;
+            long stamp = segment.lock.readLock();
+            try {
+                var columns = segment.columns;
+                ids = new long[segment.size];
+                infos = new JobInfo[segment.size];
+                for (int i = 0; i < columns.ids.length; i++) {
+                    if (columns.states[i] != PENDING) continue;
+                    ids[count] = columns.ids[i];
+                    infos[count++] = columns.infos[i];
+                }
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+            for (int i = 0; i < count; i++) visitor.visit(ids[i], infos[i]);
+        }
+    }
+
+    /**
+     * Visit the jobs with results, pending or finished, a segment at a time, and in order of ID within a segment.
+     * In slot order, jobs put back into a growing table one by one would crowd into runs of slots, and probes would grow long.
+     * Each segment is copied under its read lock and visited after.
+     */
+    void forEachCompleted(Counters visitor) {
+        for (var segment : this.segments) {
+            long[] ids;
+            int[] completions;
+            int count = 0;
+            long stamp = segment.lock.readLock();
+            try {
+                var columns = segment.columns;
+                ids = new long[segment.size];
+                for (int i = 0; i < columns.ids.length; i++) {
+                    if (columns.states[i] != EMPTY && columns.completions[i] > 0) ids[count++] = columns.ids[i];
+                }
+                Arrays.sort(ids, 0, count);
+                completions = new int[count];
+                for (int i = 0; i < count; i++) completions[i] = columns.completions[columns.find(ids[i], hash(ids[i]))];
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+            for (int i = 0; i < count; i++) visitor.visit(ids[i], completions[i]);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package smolrx.jobs;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Pending jobs of each type, ordered by priority and then by job ID, split into ready jobs, jobs blocked on pre-requisites,
+ * and ready jobs with as many leases as they allow.
+ * Listing the first k ready jobs of a type at or above a priority takes O(k + log n), without scanning past jobs of other types, blocked jobs, or leased jobs.
+ * Thread-safe: the maps are concurrent skip lists, created up front for every type, so listings iterate them without locks while results remove jobs.
+ */
+final class PriorityIndex {
+
+    /**
+     * Position of a job in the index.
+     */
+    record Key(long priority, long jobId) implements Comparable<Key> {
+        @Override
+        public int compareTo(Key o) {
+            int c = Long.compare(this.priority, o.priority);
+            return c != 0 ? c : Long.compare(this.jobId, o.jobId);
+        }
+    }
+
+    private final EnumMap<JobType, ConcurrentSkipListMap<Key, JobInfo>> ready = new EnumMap<>(JobType.class);
+    private final EnumMap<JobType, ConcurrentSkipListMap<Key, JobInfo>> blocked = new EnumMap<>(JobType.class);
+    private final EnumMap<JobType, ConcurrentSkipListMap<Key, JobInfo>> leased = new EnumMap<>(JobType.class);
+
+    PriorityIndex() {
+        for (var type : JobType.values()) {
+            this.ready.put(type, new ConcurrentSkipListMap<>());
+            this.blocked.put(type, new ConcurrentSkipListMap<>());
+            this.leased.put(type, new ConcurrentSkipListMap<>());
+        }
+    }
+
+    void add(long jobId, JobInfo info, boolean isReady) {
+        (isReady ? this.ready : this.blocked).get(info.type).put(new Key(info.priority, jobId), info);
+    }
+
+    /**
+     * Move a blocked job to the ready jobs.
+     */
+    void unblock(long jobId, JobInfo info) {
+        if (this.blocked.get(info.type).remove(new Key(info.priority, jobId)) == null) return;
+        this.add(jobId, info, true);
+    }
+
+    /**
+     * Set a ready job aside while it has as many leases as it allows. Call with the job's lease stripe locked.
+     */
+    void park(long jobId, JobInfo info) {
+        var key = new Key(info.priority, jobId);
+        if (this.ready.get(info.type).remove(key) != null) this.leased.get(info.type).put(key, info);
+    }
+
+    /**
+     * Return a parked job to the ready jobs. Call with the job's lease stripe locked.
+     */
+    void unpark(long jobId, JobInfo info) {
+        var key = new Key(info.priority, jobId);
+        if (this.leased.get(info.type).remove(key) != null) this.ready.get(info.type).put(key, info);
+    }
+
+    void remove(long jobId, JobInfo info) {
+        var key = new Key(info.priority, jobId);
+        if (this.ready.get(info.type).remove(key) != null) return;
+        if (this.leased.get(info.type).remove(key) != null) return;
+        this.blocked.get(info.type).remove(key);
+    }
+
+    /**
+     * Ready jobs of a type with at least the given priority, in order.
+     * @param type The job type.
+     * @param minPriority The least priority to list.
+     * @return A weakly consistent view of the index.
+     */
+    Iterable<Map.Entry<Key, JobInfo>> from(JobType type, long minPriority) {
+        return tail(this.ready, type, minPriority);
+    }
+
+    /**
+     * Blocked jobs of a type with at least the given priority, in order.
+     * @see #from(JobType, long)
+     */
+    Iterable<Map.Entry<Key, JobInfo>> blockedFrom(JobType type, long minPriority) {
+        return tail(this.blocked, type, minPriority);
+    }
+
+    /**
+     * Parked jobs of a type with at least the given priority, in order.
+     * @see #from(JobType, long)
+     */
+    Iterable<Map.Entry<Key, JobInfo>> leasedFrom(JobType type, long minPriority) {
+        return tail(this.leased, type, minPriority);
+    }
+
+    /**
+     * Number of jobs a listing first reads from the skip list at once; each further chunk is twice as large, up to MAX_CHUNK.
+     */
+    private static final int CHUNK = 4;
+    private static final int MAX_CHUNK = 1024;
+
+    /**
+     * Jobs of a map from a priority on. They are read in chunks, each from a fresh seek through the skip list's index:
+     * a listing that waits on a lease stripe midway would otherwise follow links through every job removed meanwhile.
+     */
+    private static Iterable<Map.Entry<Key, JobInfo>> tail(EnumMap<JobType, ConcurrentSkipListMap<Key, JobInfo>> index, JobType type, long minPriority) {
+        var jobs = index.get(type);
+        return () -> new Iterator<>() {
+            private final ArrayDeque<Map.Entry<Key, JobInfo>> chunk = new ArrayDeque<>();
+            private int size = CHUNK;
+            private Key last;
+            private boolean done;
+
+            @Override
+            public boolean hasNext() {
+                if (this.chunk.isEmpty() && !this.done) {
+                    var rest = this.last == null ? jobs.tailMap(new Key(minPriority, Long.MIN_VALUE)) : jobs.tailMap(this.last, false);
+                    var it = rest.entrySet().iterator();
+                    while (this.chunk.size() < this.size && it.hasNext()) this.chunk.add(it.next());
+                    this.done = this.chunk.size() < this.size;
+                    this.size = Math.min(this.size * 2, MAX_CHUNK);
+                    if (!this.chunk.isEmpty()) this.last = this.chunk.peekLast().getKey();
+                }
+                return !this.chunk.isEmpty();
+            }
+
+            @Override
+            public Map.Entry<Key, JobInfo> next() {
+                if (!this.hasNext()) throw new NoSuchElementException();
+                return this.chunk.poll();
+            }
+        };
+    }
+}
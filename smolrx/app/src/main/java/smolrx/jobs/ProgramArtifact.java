@@ -0,0 +1,122 @@
+package smolrx.jobs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HexFormat;
+
+/**
+ * A program jar held in memory, ready to be sent to clients as-is.
+ * The jar is memory-mapped read-only, so its pages are shared by all sessions sending it, and by the page cache.
+ */
+public final class ProgramArtifact {
+
+    /**
+     * The program this artifact was loaded for.
+     */
+    private final long programId;
+
+    /**
+     * Local path of the jar.
+     */
+    private final Path path;
+
+    /**
+     * The contents of the jar.
+     */
+    private final MappedByteBuffer contents;
+
+    /**
+     * SHA-256 of the contents.
+     */
+    private final byte[] hash;
+
+    /**
+     * Size and modification time of the file when it was mapped, to notice changes.
+     */
+    private final long size;
+    private final FileTime lastModified;
+
+    /**
+     * When the file was last seen unchanged, by System.nanoTime.
+     */
+    private volatile long checkedAt;
+
+    ProgramArtifact(long programId, Path path, MappedByteBuffer contents, byte[] hash, long size, FileTime lastModified) {
+        this.programId = programId;
+        this.path = path;
+        this.contents = contents;
+        this.hash = hash;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.checkedAt = System.nanoTime();
+    }
+
+    public long getProgramId() {
+        return programId;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Get a read-only view of the contents of the jar, with its own position. Safe to use concurrently with other views.
+     * @return The contents.
+     */
+    public ByteBuffer contents() {
+        return this.contents.asReadOnlyBuffer();
+    }
+
+    /**
+     * Get the SHA-256 hash of the contents of the jar.
+     * @return A copy of the hash.
+     */
+    public byte[] getHash() {
+        return this.hash.clone();
+    }
+
+    public String getHashHex() {
+        return HexFormat.of().formatHex(this.hash);
+    }
+
+    /**
+     * Check whether the artifact was mapped from the same file, as it was when mapped. The file is only looked at if it was last seen unchanged
+     * longer ago than the given interval, so that a jar served to many clients costs no file system call per request.
+     * @param now The time, by System.nanoTime.
+     * @param recheck How long the file is taken to be unchanged after it was seen so, in nanoseconds.
+     */
+    boolean isSameFile(Path path, long now, long recheck) throws IOException {
+        if (!this.path.equals(path)) return false;
+        if (now - this.checkedAt < recheck) return true;
+        var attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        if (attributes.size() != this.size || !attributes.lastModifiedTime().equals(this.lastModified)) return false;
+        this.checkedAt = now;
+        return true;
+    }
+
+    /**
+     * Make an artifact for another program with the same contents, sharing the mapping.
+     */
+    ProgramArtifact forProgram(long programId, Path path, long size, FileTime lastModified) {
+        return new ProgramArtifact(programId, path, this.contents, this.hash, size, lastModified);
+    }
+
+    @Override
+    public String toString() {
+        return "ProgramArtifact{" +
+                "programId=" + programId +
+                ", path=" + path +
+                ", size=" + size +
+                ", sha256=" + this.getHashHex() +
+                '}';
+    }
+}
@@ -0,0 +1,99 @@
+package smolrx.jobs;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Server-side cache of program jars, so that serving a jar to many clients reads and hashes the file only once.
+ * Artifacts are keyed by program id, and by content hash, so that programs with identical jars share one mapping.
+ * A jar that changes on disk is mapped again on its first request once the change is noticed; a cached jar's file is looked at
+ * at most once a second, however many clients ask for it. Jars should be replaced by moving a new file into place;
+ * truncating a mapped jar in place makes reads of it fail.
+ */
+public final class ProgramCache {
+
+    /**
+     * How long a cached jar is taken to be unchanged after its file was last looked at, in nanoseconds.
+     */
+    private static final long RECHECK = 1_000_000_000L;
+
+    private final ConcurrentHashMap<Long, ProgramArtifact> byProgram = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ProgramArtifact> byHash = new ConcurrentHashMap<>();
+    private final ReentrantLock loading = new ReentrantLock();
+    private final long recheck;
+
+    public ProgramCache() {
+        this(RECHECK);
+    }
+
+    /**
+     * @param recheck How long a cached jar is taken to be unchanged after its file was last looked at, in nanoseconds.
+     */
+    ProgramCache(long recheck) {
+        this.recheck = recheck;
+    }
+
+    /**
+     * Get the artifact of a program, mapping and hashing its jar if it is not cached, or was seen to have changed.
+     * @param programId The program id.
+     * @param jarPath Local path of the program's jar.
+     * @return The artifact.
+     * @throws IOException If the jar could not be read.
+     */
+    public ProgramArtifact get(long programId, String jarPath) throws IOException {
+        var path = Path.of(jarPath);
+        long now = System.nanoTime();
+        var artifact = this.byProgram.get(programId);
+        if (artifact != null && artifact.isSameFile(path, now, this.recheck)) return artifact;
+        // Not a monitor: loading reads the file, which would pin a virtual thread's carrier.
+        this.loading.lock();
+        try {
+            artifact = this.byProgram.get(programId);
+            if (artifact != null && artifact.isSameFile(path, now, this.recheck)) return artifact;
+            var stale = artifact;
+            artifact = this.load(programId, path);
+            this.byProgram.put(programId, artifact);
+            if (stale != null && stale != artifact) this.byHash.remove(stale.getHashHex(), stale);
+            return artifact;
+        } finally {
+            this.loading.unlock();
+        }
+    }
+
+    /**
+     * Get an artifact by the hash of its contents.
+     * @param hash SHA-256 of the jar.
+     * @return The artifact, or null if no cached jar has this hash.
+     */
+    public ProgramArtifact getByHash(byte[] hash) {
+        return this.byHash.get(HexFormat.of().formatHex(hash));
+    }
+
+    private ProgramArtifact load(long programId, Path path) throws IOException {
+        var lastModified = Files.getLastModifiedTime(path);
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            var contents = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            var digest = MessageDigest.getInstance("SHA-256");
+            digest.update(contents.duplicate());
+            var hash = digest.digest();
+            var key = HexFormat.of().formatHex(hash);
+
+            var same = this.byHash.get(key);
+            if (same != null) return same.forProgram(programId, path, size, lastModified);
+            var artifact = new ProgramArtifact(programId, path, contents, hash, size, lastModified);
+            this.byHash.put(key, artifact);
+            return artifact;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package smolrx.jobs;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * What speculative re-execution of stragglers needs to know: how long recent jobs of each type took from lease to result,
+ * and which jobs were leased again to a second client. A lease that has outlasted a high percentile of those times is taken for a straggler,
+ * e.g. a slow or dead client, and its job may be leased to an idle client as well; the first result counts, and later ones are dropped.
+ * Re-issued jobs are forgotten as they finish, and their other holders as their late results come or they disconnect.
+ * Thread-safe: each type keeps its samples under a lock of its own.
+ */
+final class Speculation {
+
+    /**
+     * Number of recent lease-to-result times kept per type.
+     */
+    private static final int WINDOW = 256;
+
+    /**
+     * Fewer samples than this say too little of how long jobs take.
+     */
+    private static final int MIN_SAMPLES = 16;
+
+    /**
+     * Recent lease-to-result times of one type, in a ring.
+     */
+    private static final class Samples {
+        final ReentrantLock lock = new ReentrantLock();
+        final long[] millis = new long[WINDOW];
+        long count = 0;
+    }
+
+    private final double percentile;
+    private final Samples[] samples = new Samples[JobType.values().length];
+
+    /**
+     * Unfinished jobs leased again to a second client.
+     */
+    private final Set<Long> reissued = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Holders of re-issued jobs whose leases ended when another holder finished the job, by job. Their results are dropped without error;
+     * each holder is taken out once its result comes, or it disconnects, and a job once none are left.
+     */
+    private final ConcurrentHashMap<Long, HashSet<Object>> late = new ConcurrentHashMap<>();
+
+    /**
+     * @param percentile The share of recent lease-to-result times a lease must outlast, from 0 to 1.
+     */
+    Speculation(double percentile) {
+        this.percentile = percentile;
+        for (int i = 0; i < this.samples.length; i++) this.samples[i] = new Samples();
+    }
+
+    /**
+     * Record how long a job took from its lease to its result.
+     */
+    void record(JobType type, long millis) {
+        var samples = this.samples[type.ordinal()];
+        samples.lock.lock();
+        try {
+            samples.millis[(int) (samples.count++ % WINDOW)] = millis;
+        } finally {
+            samples.lock.unlock();
+        }
+    }
+
+    /**
+     * Get the age past which a lease on a job of a type is taken for a straggler.
+     * @return The age in milliseconds, or Long.MAX_VALUE if too few jobs of the type have had results yet.
+     */
+    long threshold(JobType type) {
+        var samples = this.samples[type.ordinal()];
+        long[] sorted;
+        samples.lock.lock();
+        try {
+            if (samples.count < MIN_SAMPLES) return Long.MAX_VALUE;
+            sorted = Arrays.copyOf(samples.millis, (int) Math.min(samples.count, WINDOW));
+        } finally {
+            samples.lock.unlock();
+        }
+        Arrays.sort(sorted);
+        int at = (int) Math.ceil(this.percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, at))];
+    }
+
+    void reissued(long jobId) {
+        this.reissued.add(jobId);
+    }
+
+    /**
+     * Record that a job has finished, so that it is no longer taken for re-issued.
+     * @param holders The holders whose leases on the job were ended as it finished.
+     */
+    void finished(long jobId, List<Object> holders) {
+        if (!this.reissued.contains(jobId)) return;
+        // Late holders are known before the job stops being re-issued, so that a result racing with this is dropped by either.
+        if (!holders.isEmpty()) this.late.put(jobId, new HashSet<>(holders));
+        this.reissued.remove(jobId);
+    }
+
+    /**
+     * Whether a redundant result of a holder is for a re-issued job another holder finished. A holder's late result is dropped once.
+     */
+    boolean isLate(long jobId, Object holder) {
+        if (this.reissued.contains(jobId)) return true;
+        var dropped = new boolean[1];
+        this.late.computeIfPresent(jobId, (id, holders) -> {
+            dropped[0] = holders.remove(holder);
+            return holders.isEmpty() ? null : holders;
+        });
+        return dropped[0];
+    }
+
+    /**
+     * Forget a holder's late results, e.g. once it disconnects.
+     */
+    void forget(Object holder) {
+        for (long jobId : this.late.keySet()) {
+            this.late.computeIfPresent(jobId, (id, holders) -> {
+                holders.remove(holder);
+                return holders.isEmpty() ? null : holders;
+            });
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package smolrx.msg;
 
 import java.io.IOException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -8,6 +10,9 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.logging.Level;
 
+import javax.crypto.BadPaddingException;
+import javax.crypto.IllegalBlockSizeException;
+
 import smolrx.RXException;
 import smolrx.SecureChannel;
 import smolrx.Servlet;
@@ -46,15 +51,44 @@ public final class BulkPush extends ClientMessage {
      */
      String roleKey = "";
 
+    /**
+     * If true, the servlet answers with a PushAck once the results are stored.
+     */
+    boolean ack = false;
+
+    /**
+     * Ask the servlet to acknowledge this push, so that it can be sent with `SecureChannel.request` and pipelined.
+     * @return this
+     */
+    public BulkPush withAck() {
+        this.ack = true;
+        return this;
+    }
+
+    public boolean wantsAck() {
+        return this.ack;
+    }
+
     @Override
     public void handle(SecureChannel channel, JobManager jobManager, ObjectStorage objectStorage) throws RXException {
-        jobManager.registerJobResults(this);
+        // Results are stored before they count. Late results for jobs other clients finished are dropped.
+        var dropped = jobManager.registerJobResults(this, channel, jobIds -> {
+            if (jobIds.size() == this.results.size()) {
+                objectStorage.putResultsBulk(this);
+                return;
+            }
+            var results = new HashMap<Long, Object>();
+            for (var jobId : jobIds) results.put(jobId, this.results.get(jobId));
+            objectStorage.putResultsBulk(new BulkPush(results, this.roleKey));
+        });
+        Servlet.LOGGER.log(Level.INFO, "Recieved BulkPush from client: {0}", channel.toString());
+        if (!this.ack) return;
         try {
-            objectStorage.putResultsBulk(this);
-        } catch (IOException e) {
-            throw new RXException("Failed to store bulk results", e);    
+            channel.sendObject(new PushAck(this.results.size() - dropped.size(), dropped.size()));
+        } catch (InvalidKeyException | IllegalBlockSizeException | BadPaddingException | IOException | InvalidAlgorithmParameterException e) {
+            Servlet.LOGGER.log(Level.WARNING, "Failed to acknowledge bulk push", e);
+            throw new RXException("Failed to acknowledge bulk push", e);
         }
-        Servlet.LOGGER.log(Level.INFO, "Recieved BulkPush from client: {0}", channel.toString());
     }
 
     public String getRoleKey() {
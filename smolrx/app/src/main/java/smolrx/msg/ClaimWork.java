@@ -0,0 +1,70 @@
+package smolrx.msg;
+
+import java.io.IOException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.util.logging.Level;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.IllegalBlockSizeException;
+
+import smolrx.RXException;
+import smolrx.SecureChannel;
+import smolrx.Servlet;
+import smolrx.jobs.JobManager;
+import smolrx.storage.ObjectStorage;
+
+/**
+ * Claim a batch of ready jobs suited to the client, with their inputs and program references, in one round trip.
+ * Replaces a JobRequest followed by InputRequests; the server answers with a WorkBatch.
+ * The jobs are leased to the client, and hidden from other clients until it pushes their results, disconnects, or the lease expires.
+ */
+public final class ClaimWork extends ClientMessage {
+
+    private static final long serialVersionUID = 271828182845L;
+
+    /**
+     * Claim jobs with at least this priority, as in JobRequest.
+     */
+    long min_priority;
+
+    /**
+     * Claim at most this number of jobs; the server claims no more than its bulk request limit.
+     */
+    int limit;
+
+    /**
+     * The role key of the client.
+     */
+    String roleKey;
+
+    public ClaimWork(long min_priority, int limit, String roleKey) {
+        this.min_priority = min_priority;
+        this.limit = limit;
+        this.roleKey = roleKey;
+    }
+
+    public long getMinPriority() {
+        return min_priority;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public String getRoleKey() {
+        return roleKey;
+    }
+
+    @Override
+    public void handle(SecureChannel channel, JobManager jobManager, ObjectStorage objectStorage) throws RXException {
+        var batch = jobManager.claimWork(this, channel);
+        try {
+            channel.sendObject(batch);
+        } catch (InvalidKeyException | IllegalBlockSizeException | BadPaddingException | IOException | InvalidAlgorithmParameterException e) {
+            Servlet.LOGGER.log(Level.WARNING, "Failed to send work batch", e);
+            throw new RXException("Failed to send work batch", e);
+        }
+        Servlet.LOGGER.log(Level.INFO, "Claimed {0} jobs for client: {1}", new Object[]{batch.getJobIDs().size(), channel.toString()});
+    }
+}
@@ -0,0 +1,74 @@
+package smolrx.msg;
+
+import java.util.logging.Level;
+
+import smolrx.RXException;
+import smolrx.SecureChannel;
+import smolrx.Servlet;
+import smolrx.jobs.JobManager;
+import smolrx.storage.ObjectStorage;
+
+/**
+ * Advertise the client's capacity for work, once it has the ProtocolConfig and before it claims jobs.
+ * A server that sizes claims adaptively leases the client jobs in proportion to it until the client's own rate of work is known; others ignore it.
+ * The server sends no reply.
+ */
+public final class ClientHello extends ClientMessage {
+
+    private static final long serialVersionUID = 0xc11e47e110L;
+
+    /**
+     * Number of cores the client runs jobs on.
+     */
+    int cores;
+
+    /**
+     * Heap the client has free for inputs and results, in bytes; 0 if unknown.
+     */
+    long freeHeap;
+
+    /**
+     * Jobs per second the client measured itself to run, e.g. in its last session; 0 if unknown.
+     */
+    double jobsPerSecond;
+
+    public ClientHello(int cores, long freeHeap, double jobsPerSecond) {
+        this.cores = cores;
+        this.freeHeap = freeHeap;
+        this.jobsPerSecond = jobsPerSecond;
+    }
+
+    /**
+     * Describe the running JVM: its available processors and free heap.
+     * @param jobsPerSecond The rate the client measured itself to run jobs at, or 0 if unknown.
+     */
+    public static ClientHello ofRuntime(double jobsPerSecond) {
+        var runtime = Runtime.getRuntime();
+        long freeHeap = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        return new ClientHello(runtime.availableProcessors(), freeHeap, jobsPerSecond);
+    }
+
+    public int getCores() {
+        return cores;
+    }
+
+    public long getFreeHeap() {
+        return freeHeap;
+    }
+
+    public double getJobsPerSecond() {
+        return jobsPerSecond;
+    }
+
+    @Override
+    public void handle(SecureChannel channel, JobManager jobManager, ObjectStorage objectStorage) throws RXException {
+        jobManager.registerClient(this, channel);
+        Servlet.LOGGER.log(Level.INFO, "Client {0} has {1} cores, {2} bytes of free heap, and runs {3} jobs/s",
+                new Object[]{channel.toString(), this.cores, this.freeHeap, this.jobsPerSecond});
+    }
+
+    @Override
+    public String toString() {
+        return "ClientHello{cores=" + cores + ", freeHeap=" + freeHeap + ", jobsPerSecond=" + jobsPerSecond + "}";
+    }
+}
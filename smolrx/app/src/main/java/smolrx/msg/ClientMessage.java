@@ -11,6 +11,6 @@ import smolrx.storage.ObjectStorage;
  * Aggregator interface for messages sent by the client.
  */
 public abstract sealed class ClientMessage implements Serializable 
-    permits JobRequest, JarRequest, PushResult, InspectResult, InputRequest, SignOff, BulkPush, InspectBlock {
+    permits JobRequest, JarRequest, PushResult, InspectResult, InputRequest, SignOff, BulkPush, InspectBlock, ClaimWork, SubmitJobs, ClientHello {
     public abstract void handle(SecureChannel channel, JobManager jobManager, ObjectStorage objectStorage) throws RXException;
 }
@@ -0,0 +1,92 @@
+package smolrx.msg;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+
+/**
+ * A user payload, e.g. a job input, already in the binary encoding of MessageCodec, such as a slice of a memory-mapped input store.
+ * MessageCodec writes the bytes as they are, without decoding them. With Java serialization the bytes are sent as well,
+ * and the receiving end decodes them back into the payload, so clients never see this class.
+ */
+public final class EncodedPayload implements Serializable {
+    private static final long serialVersionUID = 0xe4c0dedL;
+
+    /**
+     * Size of the chunks the bytes are copied to a stream in.
+     */
+    private static final int CHUNK = 8192;
+
+    /**
+     * The encoded payload, from its position to its limit. Only read with absolute gets, so that one payload may be written to several streams at once.
+     */
+    private transient ByteBuffer bytes;
+
+    /**
+     * @param bytes The payload, as encoded by `MessageCodec.encodePayload`, from the buffer's position to its limit. The buffer is not copied.
+     */
+    public EncodedPayload(ByteBuffer bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * Get the size of the encoded payload.
+     * @return The size in bytes.
+     */
+    public int size() {
+        return this.bytes.remaining();
+    }
+
+    /**
+     * Decode the payload.
+     * @return The payload.
+     * @throws IOException If the encoding is corrupt.
+     * @throws ClassNotFoundException If the class of a serialized object is unknown.
+     */
+    public Object decode() throws IOException, ClassNotFoundException {
+        return MessageCodec.decodePayload(this.bytes);
+    }
+
+    /**
+     * Copy the encoded payload to a stream.
+     */
+    void writeTo(ObjectOutput out) throws IOException {
+        var chunk = new byte[Math.min(CHUNK, this.bytes.remaining())];
+        for (int at = this.bytes.position(); at < this.bytes.limit(); at += chunk.length) {
+            int n = Math.min(chunk.length, this.bytes.limit() - at);
+            this.bytes.get(at, chunk, 0, n);
+            out.write(chunk, 0, n);
+        }
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(this.bytes.remaining());
+        this.writeTo(out);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int size = in.readInt();
+        if (size < 0) throw new StreamCorruptedException("Negative payload size: " + size);
+        var bytes = new byte[size];
+        in.readFully(bytes);
+        this.bytes = ByteBuffer.wrap(bytes);
+    }
+
+    private Object readResolve() throws ObjectStreamException {
+        try {
+            return this.decode();
+        } catch (IOException | ClassNotFoundException e) {
+            var invalid = new InvalidObjectException("Corrupt encoded payload.");
+            invalid.initCause(e);
+            throw invalid;
+        }
+    }
+}
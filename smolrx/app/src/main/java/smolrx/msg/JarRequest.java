@@ -1,7 +1,5 @@
 package smolrx.msg;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
@@ -14,10 +12,11 @@ import smolrx.RXException;
 import smolrx.SecureChannel;
 import smolrx.Servlet;
 import smolrx.jobs.JobManager;
+import smolrx.jobs.ProgramArtifact;
 import smolrx.storage.ObjectStorage;
 
 /**
- * Application message to request a Jar associated with a jobId.
+ * Application message to request a Jar associated with a jobId, or with a program whose jar hash came in a WorkBatch.
  */
 public final class JarRequest extends ClientMessage {
 
@@ -38,10 +37,26 @@ public final class JarRequest extends ClientMessage {
      */
     boolean noFetch;
 
+    /**
+     * If true, the program input is not sent ahead of the jar, e.g. when it came in a WorkBatch.
+     */
+    boolean jarOnly;
+
+    /**
+     * Program whose jar is requested, if the request names a program rather than a job.
+     */
+    long programId;
+
+    /**
+     * Hash of the program's jar, as sent in a WorkBatch; null if the request names a job.
+     */
+    String programHash;
+
     public JarRequest(long jobId, String roleKey) {
         this.jobId = jobId;
         this.roleKey = roleKey;
         this.noFetch = false;
+        this.jarOnly = false;
     }
 
     public long getJobId() {
@@ -53,39 +68,89 @@ public final class JarRequest extends ClientMessage {
         return this;
     }
 
+    public JarRequest jarOnly() {
+        this.jarOnly = true;
+        return this;
+    }
+
+    /**
+     * Request the jar of a program alone, rather than through one of its jobs. The hash the server sent with the program in a WorkBatch
+     * authorizes the request, so the jar is served however the jobs of the batch have fared meanwhile, and no job input is looked up.
+     * @param programId The program.
+     * @param programHash The hex SHA-256 of the program's jar, from `WorkBatch.getProgramHashes`.
+     * @param roleKey Must be a valid slogger or aggregator key.
+     * @return The request.
+     */
+    public static JarRequest forProgram(long programId, String programHash, String roleKey) {
+        var request = new JarRequest(-1, roleKey).jarOnly();
+        request.programId = programId;
+        request.programHash = programHash;
+        return request;
+    }
+
+    public long getProgramId() {
+        return programId;
+    }
+
+    public String getProgramHash() {
+        return programHash;
+    }
+
     public String getRoleKey() {
         return roleKey;
     }
 
     @Override
     public void handle(SecureChannel channel, JobManager jobManager, ObjectStorage objectStorage) throws RXException {
+        if (this.programHash != null) {
+            ProgramArtifact program;
+            try {
+                program = jobManager.fetchProgram(this);
+            } catch (IOException e) {
+                Servlet.LOGGER.log(Level.SEVERE, "Jar file could not be read for program: " + this.programId, e);
+                throw new RXException("Could not find local Jar file", e);
+            }
+            this.sendJar(channel, program);
+            return;
+        }
+
         var jobInfo = jobManager.fetchJobInfoPair(this);
-        var jarPath = jobInfo.getKey();
+        var programId = jobInfo.getKey();
         var programInput = jobInfo.getValue();
 
-        // Send program input first.
-        try {
-            channel.sendObject(programInput);
-        } catch (InvalidKeyException | IllegalBlockSizeException | BadPaddingException | IOException | InvalidAlgorithmParameterException e) {
-            Servlet.LOGGER.log(Level.WARNING, "Failed to send program input", e);
-            throw new RXException("Failed to send program input", e);
+        // Send program input first, unless the client has it already.
+        if (!this.jarOnly) {
+            try {
+                channel.sendObject(programInput);
+            } catch (InvalidKeyException | IllegalBlockSizeException | BadPaddingException | IOException | InvalidAlgorithmParameterException e) {
+                Servlet.LOGGER.log(Level.WARNING, "Failed to send program input", e);
+                throw new RXException("Failed to send program input", e);
+            }
         }
 
         // No need to fetch the jar file.
         if (this.noFetch) return;
 
-        // Send the associated program file next.
-        try (FileInputStream fis = new FileInputStream(jarPath)) {
-            channel.sendStream(fis);
-        } catch (FileNotFoundException e) {
-            Servlet.LOGGER.log(Level.SEVERE, "Jar file not found: " + jarPath, e);
+        // Send the associated program file next, from the cache; only encryption is done per request.
+        ProgramArtifact program;
+        try {
+            program = jobManager.getProgram(programId);
+        } catch (IOException e) {
+            Servlet.LOGGER.log(Level.SEVERE, "Jar file could not be read for program: " + programId, e);
             throw new RXException("Could not find local Jar file", e);
+        }
+        this.sendJar(channel, program);
+    }
+
+    private void sendJar(SecureChannel channel, ProgramArtifact program) throws RXException {
+        try {
+            channel.sendBuffer(program.contents());
         } catch (InvalidKeyException | IllegalBlockSizeException | BadPaddingException | IOException | InvalidAlgorithmParameterException e1) {
-            Servlet.LOGGER.log(Level.SEVERE, "Failed to send jar file: " + jarPath, e1);
+            Servlet.LOGGER.log(Level.SEVERE, "Failed to send jar file: " + program.getPath(), e1);
             throw new RXException("Failed to stream file.", e1);
         }
 
-        Servlet.LOGGER.log(Level.INFO, "Sent jar file: " + jarPath + " to client: " + channel.toString());
+        Servlet.LOGGER.log(Level.INFO, "Sent jar file: " + program.getPath() + " to client: " + channel.toString());
 
     }
 }
@@ -62,7 +62,7 @@ public final class JobRequest extends ClientMessage {
     @Override
     public void handle(SecureChannel channel, JobManager jobManager, ObjectStorage objectStorage) throws RXException {
         try {
-            channel.sendObject(jobManager.listJobs(this));
+            channel.sendObject(jobManager.listJobs(this, channel));
             Servlet.LOGGER.log(Level.INFO, "Sent job listing to client: {0}", channel.toString());
         } catch (InvalidKeyException | IllegalBlockSizeException | BadPaddingException | IOException | RXException | InvalidAlgorithmParameterException e) {
             Servlet.LOGGER.log(Level.WARNING, "Failed to send job listing to client: " + channel.toString(), e);
@@ -16,6 +16,11 @@ public final class Joblisting extends ServerMessage {
     List<JobInfo> jobInfos;
     List<JobMetadata> jobMeta;
 
+    /**
+     * Encodings of the job infos by MessageCodec, made ahead of time and written as they are; null to encode the infos.
+     */
+    transient List<byte[]> encodedInfos;
+
     /**
      * Create a new job listing with the specified jobs and their meta data.
      * @param jobIDs
@@ -39,6 +44,16 @@ public final class Joblisting extends ServerMessage {
         this.jobMeta = null;
     }
 
+    /**
+     * Attach the encodings of the job infos, made with `MessageCodec.encodeJobInfo`, so that the binary encoding of this listing copies them.
+     * @param encodedInfos The encodings, in the order of the job infos.
+     * @return This listing.
+     */
+    public Joblisting withEncodedInfos(ArrayList<byte[]> encodedInfos) {
+        this.encodedInfos = Collections.unmodifiableList(encodedInfos);
+        return this;
+    }
+
     public List<Long> getJobIDs() {
         return jobIDs;
     }
@@ -0,0 +1,766 @@
+package smolrx.msg;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import smolrx.CompressionPolicy;
+import smolrx.FrameCodec;
+import smolrx.jobs.JobBuilder;
+import smolrx.jobs.JobInfo;
+import smolrx.jobs.JobMetadata;
+import smolrx.jobs.JobType;
+
+/**
+ * Hand-written binary encoding of protocol messages, used in place of Java serialization when both ends agree to it.
+ * Counters and lengths are written as varints, and job ids as zigzag varints of their difference from the previous id, which is small for ranges of jobs.
+ * Job inputs, results and other user payloads of common simple types (boxed primitives, strings, byte, int, long and double arrays) are written raw behind a one-byte tag;
+ * any other payload is written with Java serialization.
+ * Payloads can also be encoded ahead of time with `encodePayload`, e.g. into a job input store, and are then sent as they are, wrapped in an EncodedPayload.
+ * Messages not covered here (JarRequest, PushResult, InspectResult, SubmitJobs, SubmitAck) are sent with Java serialization as a whole.
+ */
+public final class MessageCodec {
+
+    private static final byte JOB_REQUEST = 1;
+    private static final byte JOB_LISTING = 2;
+    private static final byte INPUT_REQUEST = 3;
+    private static final byte BULK_INPUTS = 4;
+    private static final byte BULK_PUSH = 5;
+    private static final byte INSPECT_BLOCK = 6;
+    private static final byte BULK_RESULTS = 7;
+    private static final byte PROTOCOL_CONFIG = 8;
+    private static final byte TERMINATION = 9;
+    private static final byte SIGN_OFF = 10;
+    private static final byte PUSH_ACK = 11;
+    private static final byte CLAIM_WORK = 12;
+    private static final byte WORK_BATCH = 13;
+    private static final byte CLIENT_HELLO = 14;
+
+    // Tags of user payloads. Integers are zigzag varints, floating-point values raw IEEE 754 bits.
+    private static final byte P_NULL = 0;
+    private static final byte P_OBJECT = 1;
+    private static final byte P_FALSE = 2;
+    private static final byte P_TRUE = 3;
+    private static final byte P_BYTE = 4;
+    private static final byte P_SHORT = 5;
+    private static final byte P_CHAR = 6;
+    private static final byte P_INT = 7;
+    private static final byte P_LONG = 8;
+    private static final byte P_FLOAT = 9;
+    private static final byte P_DOUBLE = 10;
+    private static final byte P_STRING = 11;
+    private static final byte P_BYTES = 12;
+    private static final byte P_INTS = 13;
+    private static final byte P_LONGS = 14;
+    private static final byte P_DOUBLES = 15;
+    private static final byte P_SERIALIZED = 16;
+
+    /**
+     * Upper bound on decoded collection and string lengths, so a corrupt length cannot cause a huge allocation.
+     */
+    private static final int MAX_LENGTH = 1 << 24;
+
+    private MessageCodec() {}
+
+    /**
+     * Check whether the object is a message this codec can encode.
+     * @param message The object to be sent.
+     * @return true if `write` accepts the object.
+     */
+    public static boolean supports(Object message) {
+        return message instanceof JobRequest
+            || message instanceof Joblisting
+            || message instanceof InputRequest
+            || message instanceof BulkInputs
+            || message instanceof BulkPush
+            || message instanceof InspectBlock
+            || message instanceof BulkResults
+            || message instanceof ProtocolConfig
+            || message instanceof Termination
+            || message instanceof SignOff
+            || message instanceof PushAck
+            || message instanceof ClaimWork
+            || message instanceof WorkBatch
+            || message instanceof ClientHello;
+    }
+
+    /**
+     * Encode a message.
+     * @param out The stream to write to; user payloads are written with its `writeObject`.
+     * @param message The message, for which `supports` must hold.
+     * @throws IOException If writing fails, or a payload is not serializable.
+     */
+    public static void write(ObjectOutput out, Object message) throws IOException {
+        switch (message) {
+            case JobRequest m -> {
+                out.writeByte(JOB_REQUEST);
+                writeSignedVarLong(out, m.min_priority);
+                writeSignedVarLong(out, m.limit);
+                writeString(out, m.roleKey);
+            }
+            case Joblisting m -> {
+                out.writeByte(JOB_LISTING);
+                writeIds(out, m.jobIDs);
+                writeJobInfos(out, m.jobInfos, m.encodedInfos);
+                out.writeBoolean(m.jobMeta != null);
+                if (m.jobMeta != null) {
+                    for (var meta : m.jobMeta) {
+                        writeVarLong(out, meta.getInspectCount());
+                        writeVarLong(out, meta.getCompletionCount());
+                    }
+                }
+            }
+            case InputRequest m -> {
+                out.writeByte(INPUT_REQUEST);
+                writeString(out, m.roleKey);
+                writeSignedVarLong(out, m.jobid_start);
+                writeSignedVarLong(out, m.jobid_end);
+                writeIds(out, m.additional_jobs);
+            }
+            case BulkInputs m -> {
+                out.writeByte(BULK_INPUTS);
+                writeVarLong(out, m.fetchFails);
+                writePayloadMap(out, m.inputs);
+            }
+            case BulkPush m -> {
+                out.writeByte(BULK_PUSH);
+                writeString(out, m.roleKey);
+                writePayloadMap(out, m.results);
+                out.writeBoolean(m.ack);
+            }
+            case InspectBlock m -> {
+                out.writeByte(INSPECT_BLOCK);
+                writeSignedVarLong(out, m.getRedLimit());
+                writeSignedVarLong(out, m.getJobRangeStart());
+                writeSignedVarLong(out, m.getJobRangeEnd());
+                writeIds(out, m.getAdditionalJobs());
+                writeString(out, m.getRoleKey());
+            }
+            case BulkResults m -> {
+                out.writeByte(BULK_RESULTS);
+                writeVarLong(out, m.getFetchFails());
+                var results = m.getResults();
+                writeVarLong(out, results.size());
+                long prev = 0;
+                for (var entry : results.entrySet()) {
+                    writeSignedVarLong(out, entry.getKey() - prev);
+                    prev = entry.getKey();
+                    var values = entry.getValue();
+                    writeVarLong(out, values == null ? 0 : values.length + 1L);
+                    if (values != null) {
+                        for (var value : values) writePayload(out, value);
+                    }
+                }
+            }
+            case ProtocolConfig m -> {
+                out.writeByte(PROTOCOL_CONFIG);
+                writeSignedVarLong(out, m.bulkRequestLimit);
+                writeSignedVarLong(out, m.bulkPushLimit);
+                writeSignedVarLong(out, m.bulkInspLimit);
+                writeBytes(out, m.sessionTicket);
+                writeSignedVarLong(out, m.ticketLifetime);
+                out.writeBoolean(m.compression != null);
+                if (m.compression != null) {
+                    out.writeByte(m.compression.getCodec().ordinal());
+                    writeSignedVarLong(out, m.compression.getLevel());
+                    writeSignedVarLong(out, m.compression.getMinSize());
+                }
+                out.writeBoolean(m.sessionStreams);
+                out.writeBoolean(m.binaryCodec);
+                writeSignedVarLong(out, m.streamFrameSize);
+                writeSignedVarLong(out, m.maxInFlight);
+            }
+            case Termination m -> {
+                out.writeByte(TERMINATION);
+                writeString(out, m.cause);
+            }
+            case SignOff m -> out.writeByte(SIGN_OFF);
+            case PushAck m -> {
+                out.writeByte(PUSH_ACK);
+                writeVarLong(out, m.stored);
+                writeVarLong(out, m.dropped);
+            }
+            case ClaimWork m -> {
+                out.writeByte(CLAIM_WORK);
+                writeSignedVarLong(out, m.min_priority);
+                writeSignedVarLong(out, m.limit);
+                writeString(out, m.roleKey);
+            }
+            case WorkBatch m -> {
+                out.writeByte(WORK_BATCH);
+                writeIds(out, m.jobIDs);
+                writeJobInfos(out, m.jobInfos, m.encodedInfos);
+                writePayloadMap(out, m.inputs);
+                writeVarLong(out, m.programHashes.size());
+                for (var entry : m.programHashes.entrySet()) {
+                    writeSignedVarLong(out, entry.getKey());
+                    writeString(out, entry.getValue());
+                }
+            }
+            case ClientHello m -> {
+                out.writeByte(CLIENT_HELLO);
+                writeVarLong(out, m.cores);
+                writeVarLong(out, m.freeHeap);
+                out.writeDouble(m.jobsPerSecond);
+            }
+            default -> throw new IllegalArgumentException("No binary encoding for " + message.getClass().getName());
+        }
+    }
+
+    /**
+     * Decode a message written by `write`.
+     * @param in The stream to read from.
+     * @return The message.
+     * @throws IOException If reading fails, or the data is malformed.
+     * @throws ClassNotFoundException If the class of a user payload is not found.
+     */
+    public static Object read(ObjectInput in) throws IOException, ClassNotFoundException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case JOB_REQUEST -> {
+                long minPriority = readSignedVarLong(in);
+                int limit = (int) readSignedVarLong(in);
+                return new JobRequest(minPriority, limit, readString(in));
+            }
+            case JOB_LISTING -> {
+                var ids = readIds(in);
+                var infos = new ArrayList<JobInfo>(ids.size());
+                for (int i = 0; i < ids.size(); i++) infos.add(readJobInfo(in));
+                if (!in.readBoolean()) return new Joblisting(ids, infos);
+                var metas = new ArrayList<JobMetadata>(ids.size());
+                for (int i = 0; i < ids.size(); i++) {
+                    int inspectCount = (int) readVarLong(in);
+                    metas.add(new JobMetadata(inspectCount, (int) readVarLong(in)));
+                }
+                return new Joblisting(ids, infos, metas);
+            }
+            case INPUT_REQUEST -> {
+                var roleKey = readString(in);
+                long start = readSignedVarLong(in);
+                long end = readSignedVarLong(in);
+                return new InputRequest(roleKey, start, end, readIds(in));
+            }
+            case BULK_INPUTS -> {
+                int fetchFails = (int) readVarLong(in);
+                return new BulkInputs(readPayloadMap(in), fetchFails);
+            }
+            case BULK_PUSH -> {
+                var roleKey = readString(in);
+                var push = new BulkPush(readPayloadMap(in), roleKey);
+                return in.readBoolean() ? push.withAck() : push;
+            }
+            case INSPECT_BLOCK -> {
+                int redLimit = (int) readSignedVarLong(in);
+                long start = readSignedVarLong(in);
+                long end = readSignedVarLong(in);
+                var additional = readIds(in);
+                return new InspectBlock(redLimit, start, end, additional, readString(in));
+            }
+            case BULK_RESULTS -> {
+                int fetchFails = (int) readVarLong(in);
+                int size = readLength(in);
+                var results = HashMap.<Long, Object[]>newHashMap(size);
+                long prev = 0;
+                for (int i = 0; i < size; i++) {
+                    prev += readSignedVarLong(in);
+                    int length = readLength(in);
+                    Object[] values = null;
+                    if (length > 0) {
+                        values = new Object[length - 1];
+                        for (int j = 0; j < values.length; j++) values[j] = readPayload(in);
+                    }
+                    results.put(prev, values);
+                }
+                return new BulkResults(results, fetchFails);
+            }
+            case PROTOCOL_CONFIG -> {
+                int requestLimit = (int) readSignedVarLong(in);
+                int pushLimit = (int) readSignedVarLong(in);
+                int inspectLimit = (int) readSignedVarLong(in);
+                var config = new ProtocolConfig(requestLimit, pushLimit, inspectLimit);
+                config.sessionTicket = readBytes(in);
+                config.ticketLifetime = readSignedVarLong(in);
+                if (in.readBoolean()) {
+                    int codec = in.readUnsignedByte();
+                    if (codec >= FrameCodec.values().length) throw new StreamCorruptedException("Unknown frame codec: " + codec);
+                    int level = (int) readSignedVarLong(in);
+                    config.compression = new CompressionPolicy(FrameCodec.values()[codec], level, (int) readSignedVarLong(in));
+                }
+                config.sessionStreams = in.readBoolean();
+                config.binaryCodec = in.readBoolean();
+                config.streamFrameSize = (int) readSignedVarLong(in);
+                config.maxInFlight = (int) readSignedVarLong(in);
+                return config;
+            }
+            case TERMINATION -> {
+                var cause = readString(in);
+                return cause == null ? Termination.normal() : Termination.abrupt(cause);
+            }
+            case SIGN_OFF -> {
+                return new SignOff();
+            }
+            case PUSH_ACK -> {
+                return new PushAck((int) readVarLong(in), (int) readVarLong(in));
+            }
+            case CLAIM_WORK -> {
+                long minPriority = readSignedVarLong(in);
+                int limit = (int) readSignedVarLong(in);
+                return new ClaimWork(minPriority, limit, readString(in));
+            }
+            case WORK_BATCH -> {
+                var ids = readIds(in);
+                var infos = new ArrayList<JobInfo>(ids.size());
+                for (int i = 0; i < ids.size(); i++) infos.add(readJobInfo(in));
+                var inputs = readPayloadMap(in);
+                int programs = readLength(in);
+                var hashes = HashMap.<Long, String>newHashMap(programs);
+                for (int i = 0; i < programs; i++) {
+                    long programId = readSignedVarLong(in);
+                    hashes.put(programId, readString(in));
+                }
+                return new WorkBatch(ids, infos, inputs, hashes);
+            }
+            case CLIENT_HELLO -> {
+                int cores = (int) readVarLong(in);
+                long freeHeap = readVarLong(in);
+                return new ClientHello(cores, freeHeap, in.readDouble());
+            }
+            default -> throw new StreamCorruptedException("Unknown message tag: " + tag);
+        }
+    }
+
+    /**
+     * Write job infos, copying the encodings made ahead of time where there are any.
+     */
+    private static void writeJobInfos(ObjectOutput out, List<JobInfo> infos, List<byte[]> encodedInfos) throws IOException {
+        if (encodedInfos == null) {
+            for (var info : infos) writeJobInfo(out, info);
+            return;
+        }
+        for (var encoded : encodedInfos) out.write(encoded);
+    }
+
+    /**
+     * Encode a job info ahead of time, as `write` would encode it within a Joblisting or WorkBatch, e.g. once for all listings of a job.
+     * @param info The job info.
+     * @return The encoded job info.
+     * @throws IOException If the info's input is not serializable.
+     */
+    public static byte[] encodeJobInfo(JobInfo info) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new PayloadOutput(bytes)) {
+            writeJobInfo(out, info);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeJobInfo(ObjectOutput out, JobInfo info) throws IOException {
+        out.writeByte(info.getType().ordinal());
+        writeSignedVarLong(out, info.getPriority());
+        writeSignedVarLong(out, info.getProgramId());
+        writeSignedVarLong(out, info.getRedundancyCount());
+        out.writeBoolean(info.isRelaxed());
+        writeString(out, info.getLink().orElse(null));
+        var properties = info.getProperties();
+        writeVarLong(out, properties.size());
+        for (var entry : properties.entrySet()) {
+            writeString(out, entry.getKey());
+            writeString(out, entry.getValue());
+        }
+        writeIds(out, info.getPrerequisiteJobs());
+        writePayload(out, info.getJobData());
+    }
+
+    private static JobInfo readJobInfo(ObjectInput in) throws IOException, ClassNotFoundException {
+        int type = in.readUnsignedByte();
+        if (type >= JobType.values().length) throw new StreamCorruptedException("Unknown job type: " + type);
+        long priority = readSignedVarLong(in);
+        long programId = readSignedVarLong(in);
+        JobBuilder builder;
+        try {
+            builder = JobBuilder.newInstance(priority, programId, JobType.values()[type]);
+        } catch (IllegalArgumentException e) {
+            throw new StreamCorruptedException("Invalid job info: " + e.getMessage());
+        }
+        builder.setRedundancyCount((int) readSignedVarLong(in));
+        if (in.readBoolean()) builder.relax();
+        builder.setLink(readString(in));
+        int properties = readLength(in);
+        for (int i = 0; i < properties; i++) {
+            var key = readString(in);
+            builder.setProperty(key, readString(in));
+        }
+        for (long id : readIds(in)) builder.addPrerequisiteJob(id);
+        var jobData = readPayload(in);
+        if (jobData != null && !(jobData instanceof Serializable)) throw new StreamCorruptedException("Job data is not serializable.");
+        return builder.setJobData((Serializable) jobData).build();
+    }
+
+    private static void writePayloadMap(ObjectOutput out, Map<Long, Object> map) throws IOException {
+        writeVarLong(out, map.size());
+        long prev = 0;
+        for (var entry : map.entrySet()) {
+            writeSignedVarLong(out, entry.getKey() - prev);
+            prev = entry.getKey();
+            writePayload(out, entry.getValue());
+        }
+    }
+
+    private static HashMap<Long, Object> readPayloadMap(ObjectInput in) throws IOException, ClassNotFoundException {
+        int size = readLength(in);
+        var map = HashMap.<Long, Object>newHashMap(size);
+        long prev = 0;
+        for (int i = 0; i < size; i++) {
+            prev += readSignedVarLong(in);
+            map.put(prev, readPayload(in));
+        }
+        return map;
+    }
+
+    /**
+     * Write a user payload. Boxed primitives, strings, byte arrays and int, long and double arrays are written as a tag followed by their raw value;
+     * any other object is written with Java serialization.
+     */
+    private static void writePayload(ObjectOutput out, Object payload) throws IOException {
+        switch (payload) {
+            case null -> out.writeByte(P_NULL);
+            case Boolean b -> out.writeByte(b ? P_TRUE : P_FALSE);
+            case Integer i -> {
+                out.writeByte(P_INT);
+                writeSignedVarLong(out, i);
+            }
+            case Long l -> {
+                out.writeByte(P_LONG);
+                writeSignedVarLong(out, l);
+            }
+            case Double d -> {
+                out.writeByte(P_DOUBLE);
+                out.writeDouble(d);
+            }
+            case String str -> {
+                out.writeByte(P_STRING);
+                writeString(out, str);
+            }
+            case Byte b -> {
+                out.writeByte(P_BYTE);
+                out.writeByte(b);
+            }
+            case Short sh -> {
+                out.writeByte(P_SHORT);
+                writeSignedVarLong(out, sh);
+            }
+            case Character c -> {
+                out.writeByte(P_CHAR);
+                out.writeChar(c);
+            }
+            case Float f -> {
+                out.writeByte(P_FLOAT);
+                out.writeFloat(f);
+            }
+            case byte[] bytes -> {
+                out.writeByte(P_BYTES);
+                writeBytes(out, bytes);
+            }
+            case int[] ints -> {
+                out.writeByte(P_INTS);
+                writeVarLong(out, ints.length);
+                for (int i : ints) writeSignedVarLong(out, i);
+            }
+            case long[] longs -> {
+                out.writeByte(P_LONGS);
+                writeVarLong(out, longs.length);
+                for (long l : longs) writeSignedVarLong(out, l);
+            }
+            case double[] doubles -> {
+                out.writeByte(P_DOUBLES);
+                writeVarLong(out, doubles.length);
+                for (double d : doubles) out.writeDouble(d);
+            }
+            case EncodedPayload encoded -> encoded.writeTo(out);
+            default -> {
+                // A payload encoded ahead of time cannot refer to the stream it is later written to, so its object is serialized on its own.
+                out.writeByte(out instanceof PayloadOutput ? P_SERIALIZED : P_OBJECT);
+                out.writeObject(payload);
+            }
+        }
+    }
+
+    /**
+     * Encode a user payload ahead of time, as `write` would encode it within a message. Objects without a raw encoding are serialized
+     * in a stream of their own, so that the bytes can be written to any stream later, as an EncodedPayload.
+     * @param payload The payload.
+     * @return The encoded payload.
+     * @throws IOException If the payload is not serializable.
+     */
+    public static byte[] encodePayload(Object payload) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new PayloadOutput(bytes)) {
+            writePayload(out, payload);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decode a user payload encoded with `encodePayload`.
+     * @param bytes The encoded payload, from its position to its limit.
+     * @return The payload.
+     * @throws IOException If the encoding is corrupt.
+     * @throws ClassNotFoundException If the class of a serialized object is unknown.
+     */
+    static Object decodePayload(ByteBuffer bytes) throws IOException, ClassNotFoundException {
+        var array = new byte[bytes.remaining()];
+        bytes.get(bytes.position(), array);
+        try (var in = new PayloadInput(new ByteArrayInputStream(array))) {
+            return readPayload(in);
+        }
+    }
+
+    private static Object readPayload(ObjectInput in) throws IOException, ClassNotFoundException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case P_NULL -> {
+                return null;
+            }
+            case P_FALSE -> {
+                return Boolean.FALSE;
+            }
+            case P_TRUE -> {
+                return Boolean.TRUE;
+            }
+            case P_INT -> {
+                return (int) readSignedVarLong(in);
+            }
+            case P_LONG -> {
+                return readSignedVarLong(in);
+            }
+            case P_DOUBLE -> {
+                return in.readDouble();
+            }
+            case P_STRING -> {
+                var str = readString(in);
+                if (str == null) throw new StreamCorruptedException("Null string payload.");
+                return str;
+            }
+            case P_BYTE -> {
+                return in.readByte();
+            }
+            case P_SHORT -> {
+                return (short) readSignedVarLong(in);
+            }
+            case P_CHAR -> {
+                return in.readChar();
+            }
+            case P_FLOAT -> {
+                return in.readFloat();
+            }
+            case P_BYTES -> {
+                var bytes = readBytes(in);
+                if (bytes == null) throw new StreamCorruptedException("Null byte[] payload.");
+                return bytes;
+            }
+            case P_INTS -> {
+                var ints = new int[readLength(in)];
+                for (int i = 0; i < ints.length; i++) ints[i] = (int) readSignedVarLong(in);
+                return ints;
+            }
+            case P_LONGS -> {
+                var longs = new long[readLength(in)];
+                for (int i = 0; i < longs.length; i++) longs[i] = readSignedVarLong(in);
+                return longs;
+            }
+            case P_DOUBLES -> {
+                var doubles = new double[readLength(in)];
+                for (int i = 0; i < doubles.length; i++) doubles[i] = in.readDouble();
+                return doubles;
+            }
+            case P_OBJECT -> {
+                return in.readObject();
+            }
+            case P_SERIALIZED -> {
+                var serialized = new BoundedInput(in, readVarLong(in));
+                var object = new ObjectInputStream(serialized).readObject();
+                serialized.skipRemaining();
+                return object;
+            }
+            default -> throw new StreamCorruptedException("Unknown payload tag: " + tag);
+        }
+    }
+
+    private static void writeIds(ObjectOutput out, Collection<Long> ids) throws IOException {
+        writeVarLong(out, ids.size());
+        long prev = 0;
+        for (long id : ids) {
+            writeSignedVarLong(out, id - prev);
+            prev = id;
+        }
+    }
+
+    private static ArrayList<Long> readIds(ObjectInput in) throws IOException {
+        int size = readLength(in);
+        var ids = new ArrayList<Long>(size);
+        long prev = 0;
+        for (int i = 0; i < size; i++) {
+            prev += readSignedVarLong(in);
+            ids.add(prev);
+        }
+        return ids;
+    }
+
+    private static void writeString(ObjectOutput out, String s) throws IOException {
+        if (s == null) {
+            writeVarLong(out, 0);
+            return;
+        }
+        writeBytes(out, s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readString(ObjectInput in) throws IOException {
+        var bytes = readBytes(in);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write a possibly null byte array, as its length plus one followed by its contents; 0 stands for null.
+     */
+    private static void writeBytes(ObjectOutput out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            writeVarLong(out, 0);
+            return;
+        }
+        writeVarLong(out, bytes.length + 1L);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(ObjectInput in) throws IOException {
+        int length = readLength(in);
+        if (length == 0) return null;
+        var bytes = new byte[length - 1];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static int readLength(ObjectInput in) throws IOException {
+        long length = readVarLong(in);
+        if (length > MAX_LENGTH) throw new StreamCorruptedException("Length out of bounds: " + length);
+        return (int) length;
+    }
+
+    /**
+     * Write an unsigned varint: seven bits per byte, least significant first, with the high bit set on all but the last byte.
+     */
+    static void writeVarLong(ObjectOutput out, long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            out.writeByte((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(ObjectInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new StreamCorruptedException("Malformed varint.");
+    }
+
+    /**
+     * Write a signed varint, zigzag encoded so that values near zero, negative or not, take few bytes.
+     */
+    static void writeSignedVarLong(ObjectOutput out, long value) throws IOException {
+        writeVarLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    static long readSignedVarLong(ObjectInput in) throws IOException {
+        long value = readVarLong(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Output for payloads encoded ahead of time: primitives go straight to the bytes, and an object goes in a length-prefixed serialization stream of its own.
+     */
+    private static final class PayloadOutput extends DataOutputStream implements ObjectOutput {
+        PayloadOutput(ByteArrayOutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void writeObject(Object obj) throws IOException {
+            var serialized = new ByteArrayOutputStream();
+            try (var out = new ObjectOutputStream(serialized)) {
+                out.writeObject(obj);
+            }
+            writeVarLong(this, serialized.size());
+            serialized.writeTo(this);
+        }
+    }
+
+    /**
+     * Input for payloads encoded ahead of time, which hold no objects of the stream.
+     */
+    private static final class PayloadInput extends DataInputStream implements ObjectInput {
+        PayloadInput(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public Object readObject() throws IOException {
+            throw new StreamCorruptedException("Stream object in an encoded payload.");
+        }
+    }
+
+    /**
+     * Reads at most a given number of bytes of a message, so that a nested serialization stream cannot read past its end.
+     */
+    private static final class BoundedInput extends InputStream {
+        private final ObjectInput in;
+        private long remaining;
+
+        BoundedInput(ObjectInput in, long length) {
+            this.in = in;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (this.remaining == 0) return -1;
+            int b = this.in.read();
+            if (b >= 0) this.remaining -= 1;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (this.remaining == 0) return -1;
+            int n = this.in.read(b, off, (int) Math.min(len, this.remaining));
+            if (n > 0) this.remaining -= n;
+            return n;
+        }
+
+        void skipRemaining() throws IOException {
+            while (this.remaining > 0) {
+                long n = this.in.skip(this.remaining);
+                if (n <= 0) throw new StreamCorruptedException("Serialized payload ends early.");
+                this.remaining -= n;
+            }
+        }
+    }
+}
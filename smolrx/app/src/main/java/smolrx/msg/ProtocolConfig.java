@@ -1,5 +1,9 @@
 package smolrx.msg;
 
+import java.util.Optional;
+
+import smolrx.CompressionPolicy;
+
 /**
  * Data-class for server-side configuration details that should be known to the client.
  */
@@ -10,6 +14,41 @@ public final class ProtocolConfig extends ServerMessage {
     int bulkPushLimit;
     int bulkInspLimit;
 
+    /**
+     * Encrypted session ticket the client may present to resume a later session. Null if the server does not issue tickets.
+     */
+    byte[] sessionTicket;
+
+    /**
+     * Milliseconds for which the session ticket remains valid.
+     */
+    long ticketLifetime;
+
+    /**
+     * Compression policy the client should use for frames it sends. Null to leave the client's default in place.
+     */
+    CompressionPolicy compression;
+
+    /**
+     * If true, the client should send objects through one serialization stream kept for the whole session.
+     */
+    boolean sessionStreams;
+
+    /**
+     * If true, the client should send protocol messages in the binary encoding of MessageCodec.
+     */
+    boolean binaryCodec;
+
+    /**
+     * Plaintext size of the frames in streams (jars), if larger than the default frame size; 0 otherwise.
+     */
+    int streamFrameSize;
+
+    /**
+     * Number of numbered requests the servlet handles concurrently for this client; 0 or 1 if it handles one at a time.
+     */
+    int maxInFlight;
+
     public int getBulkPushLimit() {
         return bulkPushLimit;
     }
@@ -22,17 +61,112 @@ public final class ProtocolConfig extends ServerMessage {
         return bulkInspLimit;
     }
     
+    public Optional<byte[]> getSessionTicket() {
+        return sessionTicket == null ? Optional.empty() : Optional.of(sessionTicket);
+    }
+
+    public long getTicketLifetime() {
+        return ticketLifetime;
+    }
+
+    public Optional<CompressionPolicy> getCompressionPolicy() {
+        return Optional.ofNullable(compression);
+    }
+
+    public boolean usesSessionStreams() {
+        return sessionStreams;
+    }
+
+    public boolean usesBinaryCodec() {
+        return binaryCodec;
+    }
+
+    public int getStreamFrameSize() {
+        return streamFrameSize;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
     public ProtocolConfig(int bulkRequestLimit, int bulkPushLimit, int bulkInspLimit) {
         this.bulkRequestLimit = bulkRequestLimit;
         this.bulkPushLimit = bulkPushLimit;
         this.bulkInspLimit = bulkInspLimit; // Default to the same as bulkRequestLimit
     }
 
+    /**
+     * Attach a session ticket to this configuration.
+     * @param ticket The encrypted ticket.
+     * @param lifetime Milliseconds for which the ticket remains valid.
+     * @return this
+     */
+    public ProtocolConfig withSessionTicket(byte[] ticket, long lifetime) {
+        this.sessionTicket = ticket;
+        this.ticketLifetime = lifetime;
+        return this;
+    }
+
+    /**
+     * Ask the client to compress the frames it sends according to the given policy.
+     * @param policy The compression policy.
+     * @return this
+     */
+    public ProtocolConfig withCompressionPolicy(CompressionPolicy policy) {
+        this.compression = policy;
+        return this;
+    }
+
+    /**
+     * Ask the client to send objects through one serialization stream kept for the whole session, or not.
+     * @param enabled True to use session streams.
+     * @return this
+     */
+    public ProtocolConfig withSessionStreams(boolean enabled) {
+        this.sessionStreams = enabled;
+        return this;
+    }
+
+    /**
+     * Ask the client to send protocol messages in the binary encoding of MessageCodec, or with Java serialization.
+     * @param enabled True to use the binary encoding.
+     * @return this
+     */
+    public ProtocolConfig withBinaryCodec(boolean enabled) {
+        this.binaryCodec = enabled;
+        return this;
+    }
+
+    /**
+     * Tell the client the size of frames in streams sent by the server, so that it accepts them.
+     * @param frameSize Plaintext size of stream frames; 0 for the default.
+     * @return this
+     */
+    public ProtocolConfig withStreamFrameSize(int frameSize) {
+        this.streamFrameSize = frameSize;
+        return this;
+    }
+
+    /**
+     * Tell the client how many requests it may have in flight at once on its channel.
+     * @param requests The number of requests the servlet handles concurrently.
+     * @return this
+     */
+    public ProtocolConfig withMaxInFlight(int requests) {
+        this.maxInFlight = requests;
+        return this;
+    }
+
     @Override
     public String toString() {
         return "ProtocolConfig{" +
                 "bulkRequestLimit=" + bulkRequestLimit +
                 ", bulkPushLimit=" + bulkPushLimit +
+                ", compression=" + compression +
+                ", sessionStreams=" + sessionStreams +
+                ", binaryCodec=" + binaryCodec +
+                ", streamFrameSize=" + streamFrameSize +
+                ", maxInFlight=" + maxInFlight +
                 '}';
     }
     
@@ -0,0 +1,40 @@
+package smolrx.msg;
+
+/**
+ * Acknowledge a PushResult or BulkPush that asked for it, once its results are registered and stored.
+ */
+public final class PushAck extends ServerMessage {
+    private static final long serialVersionUID = 5550123987L;
+
+    /**
+     * Number of results stored.
+     */
+    int stored;
+
+    /**
+     * Number of results dropped, as they came late for jobs that were re-issued to other clients and have finished.
+     */
+    int dropped;
+
+    public PushAck(int stored) {
+        this(stored, 0);
+    }
+
+    public PushAck(int stored, int dropped) {
+        this.stored = stored;
+        this.dropped = dropped;
+    }
+
+    public int getStored() {
+        return stored;
+    }
+
+    public int getDropped() {
+        return dropped;
+    }
+
+    @Override
+    public String toString() {
+        return "PushAck{stored=" + stored + ",dropped=" + dropped + "}";
+    }
+}
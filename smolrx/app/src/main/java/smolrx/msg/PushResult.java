@@ -1,9 +1,16 @@
 package smolrx.msg;
 
 import java.io.IOException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.util.logging.Level;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.IllegalBlockSizeException;
 
 import smolrx.RXException;
 import smolrx.SecureChannel;
+import smolrx.Servlet;
 import smolrx.jobs.JobManager;
 import smolrx.storage.ObjectStorage;
 
@@ -26,6 +33,11 @@ public final class PushResult extends ClientMessage {
      */
     Object resultObject;
 
+    /**
+     * If true, the servlet answers with a PushAck once the result is stored.
+     */
+    boolean ack = false;
+
     public PushResult(long job_id, String roleKey, Object resultObject) {
         this.job_id = job_id;
         this.roleKey = roleKey;
@@ -44,6 +56,19 @@ public final class PushResult extends ClientMessage {
         return resultObject;
     }
 
+    /**
+     * Ask the servlet to acknowledge this push, so that it can be sent with `SecureChannel.request` and pipelined.
+     * @return this
+     */
+    public PushResult withAck() {
+        this.ack = true;
+        return this;
+    }
+
+    public boolean wantsAck() {
+        return this.ack;
+    }
+
     @Override
     public String toString() {
         return "PushResult{" +
@@ -55,12 +80,14 @@ public final class PushResult extends ClientMessage {
 
     @Override
     public void handle(SecureChannel channel, JobManager jobManager, ObjectStorage objectStorage) throws RXException {
-        jobManager.registerJobResult(this);
+        // The result is stored before it counts; a late result for a job another client finished is dropped.
+        boolean stored = jobManager.registerJobResult(this, channel, jobIds -> objectStorage.putResult(this));
+        if (!this.ack) return;
         try {
-            objectStorage.putResult(this);
-        } catch (IOException e) {
-            // This re-throw is correct.
-            throw new RXException("Failed to store result object", e);
+            channel.sendObject(stored ? new PushAck(1, 0) : new PushAck(0, 1));
+        } catch (InvalidKeyException | IllegalBlockSizeException | BadPaddingException | IOException | InvalidAlgorithmParameterException e) {
+            Servlet.LOGGER.log(Level.WARNING, "Failed to acknowledge push", e);
+            throw new RXException("Failed to acknowledge push", e);
         }
     }
 }
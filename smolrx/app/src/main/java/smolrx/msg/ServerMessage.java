@@ -3,6 +3,6 @@ package smolrx.msg;
 import java.io.Serializable;
 
 public abstract sealed class ServerMessage implements Serializable 
-    permits Joblisting, Termination, BulkInputs, ProtocolConfig, BulkResults {
+    permits Joblisting, Termination, BulkInputs, ProtocolConfig, BulkResults, PushAck, WorkBatch, SubmitAck {
     // blank
 }
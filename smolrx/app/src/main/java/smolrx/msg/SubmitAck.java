@@ -0,0 +1,26 @@
+package smolrx.msg;
+
+/**
+ * Acknowledge a SubmitJobs, once its whole batch is added.
+ */
+public final class SubmitAck extends ServerMessage {
+    private static final long serialVersionUID = 2357111317L;
+
+    /**
+     * Number of jobs added.
+     */
+    int submitted;
+
+    public SubmitAck(int submitted) {
+        this.submitted = submitted;
+    }
+
+    public int getSubmitted() {
+        return submitted;
+    }
+
+    @Override
+    public String toString() {
+        return "SubmitAck{submitted=" + submitted + "}";
+    }
+}
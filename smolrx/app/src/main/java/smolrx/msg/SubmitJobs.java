@@ -0,0 +1,60 @@
+package smolrx.msg;
+
+import java.io.IOException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.util.logging.Level;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.IllegalBlockSizeException;
+
+import smolrx.RXException;
+import smolrx.SecureChannel;
+import smolrx.Servlet;
+import smolrx.jobs.JobBatch;
+import smolrx.jobs.JobManager;
+import smolrx.storage.ObjectStorage;
+
+/**
+ * Add a batch of jobs and programs to the server while it runs, e.g. the next stage of a pipeline. Only clients holding a submit key may send it.
+ * The batch is added as a whole or not at all; the server answers with a SubmitAck once it is added.
+ */
+public final class SubmitJobs extends ClientMessage {
+
+    private static final long serialVersionUID = 1123581321L;
+
+    /**
+     * The jobs and programs to add.
+     */
+    JobBatch batch;
+
+    /**
+     * The submit key of the client.
+     */
+    String submitKey;
+
+    public SubmitJobs(JobBatch batch, String submitKey) {
+        this.batch = batch;
+        this.submitKey = submitKey;
+    }
+
+    public JobBatch getBatch() {
+        return batch;
+    }
+
+    public String getSubmitKey() {
+        return submitKey;
+    }
+
+    @Override
+    public void handle(SecureChannel channel, JobManager jobManager, ObjectStorage objectStorage) throws RXException {
+        int added = jobManager.submit(this);
+        try {
+            channel.sendObject(new SubmitAck(added));
+        } catch (InvalidKeyException | IllegalBlockSizeException | BadPaddingException | IOException | InvalidAlgorithmParameterException e) {
+            Servlet.LOGGER.log(Level.WARNING, "Failed to acknowledge job submission", e);
+            throw new RXException("Failed to acknowledge job submission", e);
+        }
+        Servlet.LOGGER.log(Level.INFO, "Added {0} submitted jobs from client: {1}", new Object[]{added, channel.toString()});
+    }
+}
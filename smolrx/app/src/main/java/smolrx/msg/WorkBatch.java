@@ -0,0 +1,87 @@
+package smolrx.msg;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import smolrx.jobs.JobInfo;
+
+/**
+ * Server response to ClaimWork: the claimed jobs, their inputs, and the SHA-256 of the jar of each program they run.
+ * The client fetches a jar only if it holds none with that hash, using `JarRequest.forProgram`.
+ */
+public final class WorkBatch extends ServerMessage {
+    private static final long serialVersionUID = 314159265358L;
+
+    /**
+     * IDs of the claimed jobs.
+     */
+    ArrayList<Long> jobIDs;
+
+    /**
+     * Masked job information, in the order of `jobIDs`.
+     */
+    ArrayList<JobInfo> jobInfos;
+
+    /**
+     * Map job IDs to their inputs.
+     */
+    HashMap<Long, Object> inputs;
+
+    /**
+     * Map program IDs to the hex SHA-256 of their jars.
+     */
+    HashMap<Long, String> programHashes;
+
+    /**
+     * Encodings of the job infos by MessageCodec, made ahead of time and written as they are; null to encode the infos.
+     */
+    transient List<byte[]> encodedInfos;
+
+    public WorkBatch(ArrayList<Long> jobIDs, ArrayList<JobInfo> jobInfos, HashMap<Long, Object> inputs, HashMap<Long, String> programHashes) {
+        this.jobIDs = jobIDs;
+        this.jobInfos = jobInfos;
+        this.inputs = inputs;
+        this.programHashes = programHashes;
+    }
+
+    /**
+     * Attach the encodings of the job infos, made with `MessageCodec.encodeJobInfo`, so that the binary encoding of this batch copies them.
+     * @param encodedInfos The encodings, in the order of the job infos.
+     * @return This batch.
+     */
+    public WorkBatch withEncodedInfos(ArrayList<byte[]> encodedInfos) {
+        this.encodedInfos = Collections.unmodifiableList(encodedInfos);
+        return this;
+    }
+
+    public List<Long> getJobIDs() {
+        return Collections.unmodifiableList(jobIDs);
+    }
+
+    public List<JobInfo> getJobInfos() {
+        return Collections.unmodifiableList(jobInfos);
+    }
+
+    public Map<Long, Object> getInputs() {
+        return Collections.unmodifiableMap(inputs);
+    }
+
+    public Map<Long, String> getProgramHashes() {
+        return Collections.unmodifiableMap(programHashes);
+    }
+
+    public boolean isEmpty() {
+        return jobIDs.isEmpty();
+    }
+
+    /**
+     * View this batch as a job listing, for code written against JobRequest.
+     * @return A listing of the claimed jobs.
+     */
+    public Joblisting toListing() {
+        return new Joblisting(new ArrayList<>(jobIDs), new ArrayList<>(jobInfos));
+    }
+}
@@ -0,0 +1,96 @@
+package smolrx;
+
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import smolrx.jobs.JobBuilder;
+import smolrx.jobs.JobManager;
+import smolrx.jobs.JobManagerBuilder;
+import smolrx.jobs.JobType;
+import smolrx.msg.BulkPush;
+import smolrx.msg.ClaimWork;
+import smolrx.msg.ClientHello;
+
+/**
+ * Measure the makespan of a wave of slog jobs followed by a collect job that depends on all of them, worked by one large client and a few small ones,
+ * with claims of a fixed size and with claims sized to each client's rate. Clients are threads that advertise their cores in a ClientHello,
+ * wait a round trip before each claim, and sleep as long as their cores take to run the claimed jobs, before pushing the results.
+ * Usage: java smolrx.AdaptiveClaimBench [jobs] [job ms] [round trip ms]
+ */
+public class AdaptiveClaimBench {
+
+    private static final int[] CORES = {16, 1, 1, 1};
+
+    public static void main(String[] args) throws Exception {
+        int jobs = args.length > 0 ? Integer.parseInt(args[0]) : 8000;
+        long jobTime = args.length > 1 ? Long.parseLong(args[1]) : 2;
+        long roundTrip = args.length > 2 ? Long.parseLong(args[2]) : 5;
+
+        System.out.println("Claims\t\tmakespan (ms)\tjobs run (16 cores / 1 core each)\tmean claim (16 cores / 1 core)");
+        for (int round = 0; round < 2; round++) {
+            for (var claims : new String[]{"fixed 1000", "fixed 50", "adaptive"}) {
+                var r = run(jobs, jobTime, roundTrip, claims);
+                System.out.printf("%s\t%d\t\t%d / %d\t\t\t\t%.1f / %.1f%n", claims, r[0], r[1], r[2], (double) r[1] / r[3], (double) r[2] / r[4]);
+            }
+        }
+    }
+
+    /**
+     * @return {makespan in ms, jobs run by the large client, mean jobs run by a small client, claims of the large client, mean claims of a small client}
+     */
+    private static long[] run(int jobs, long jobTime, long roundTrip, String claims) throws Exception {
+        int limit = claims.equals("fixed 50") ? 50 : 1000;
+        var builder = new JobManagerBuilder().withKey("slog-key", JobType.SLOG).withKey("collect-key", JobType.COLLECT)
+                .setBulkReqLimit(limit).setBulkPushLimit(limit).addJar(1, "./testjars/bfcarm.jar");
+        if (claims.equals("adaptive")) builder.enableAdaptiveClaims(200);
+        var collect = JobBuilder.newInstance(1, 1, JobType.COLLECT).setProperty("Xclass", "bfcarm.Count");
+        for (long i = 0; i < jobs; i++) {
+            builder.addJob(i, JobBuilder.newInstance(1, 1, JobType.SLOG).setJobData(i).setProperty("Xclass", "bfcarm.Test").build());
+            collect.addPrerequisiteJob(i);
+        }
+        builder.addJob(jobs, collect.build());
+        JobManager manager = builder.build();
+
+        var done = new AtomicBoolean();
+        var ran = new long[CORES.length];
+        var claimed = new long[CORES.length];
+        var threads = new Thread[CORES.length];
+        long t0 = System.nanoTime();
+        for (int c = 0; c < CORES.length; c++) {
+            int client = c;
+            int cores = CORES[c];
+            threads[c] = Thread.ofPlatform().start(() -> {
+                var holder = "client-" + client;
+                try {
+                    manager.registerClient(new ClientHello(cores, 0, 0), holder);
+                    while (!done.get()) {
+                        Thread.sleep(roundTrip);
+                        var batch = manager.claimWork(new ClaimWork(0, limit, "slog-key"), holder).getJobIDs();
+                        if (batch.isEmpty()) continue;
+                        claimed[client] += 1;
+                        Thread.sleep((batch.size() + cores - 1) / cores * jobTime);
+                        var results = new HashMap<Long, Object>();
+                        for (long id : batch) results.put(id, true);
+                        manager.registerJobResults(new BulkPush(results, "slog-key"), holder);
+                        ran[client] += batch.size();
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+        while (manager.claimWork(new ClaimWork(0, 1, "collect-key"), "collector").getJobIDs().isEmpty()) Thread.sleep(1);
+        long makespan = (System.nanoTime() - t0) / 1_000_000;
+        done.set(true);
+        for (var thread : threads) thread.join();
+
+        long smallRan = 0;
+        long smallClaims = 0;
+        for (int c = 1; c < CORES.length; c++) {
+            smallRan += ran[c];
+            smallClaims += claimed[c];
+        }
+        int small = CORES.length - 1;
+        return new long[]{makespan, ran[0], smallRan / small, claimed[0], Math.max(1, smallClaims / small)};
+    }
+}
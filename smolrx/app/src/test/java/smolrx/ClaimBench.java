@@ -0,0 +1,90 @@
+package smolrx;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import smolrx.jobs.JobBuilder;
+import smolrx.jobs.JobManagerBuilder;
+import smolrx.jobs.JobType;
+import smolrx.msg.BulkInputs;
+import smolrx.msg.ClaimWork;
+import smolrx.msg.InputRequest;
+import smolrx.msg.JobRequest;
+import smolrx.msg.Joblisting;
+import smolrx.msg.ProtocolConfig;
+import smolrx.msg.SignOff;
+import smolrx.msg.WorkBatch;
+import smolrx.storage.FileStorage;
+
+/**
+ * Measure the time to get a batch of work through a relay that delays traffic in each direction:
+ * a JobRequest followed by an InputRequest for the listed jobs, against one ClaimWork.
+ * Usage: java smolrx.ClaimBench [batches] [one-way delay in ms] [jobs per batch]
+ */
+public class ClaimBench {
+
+    public static void main(String[] args) throws Exception {
+        int batches = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int delayMs = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int perBatch = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        Logger.getLogger("").setLevel(Level.WARNING);
+
+        var builder = new JobManagerBuilder().allowAnySlogger().addJar(1, "./testjars/bfcarm.jar");
+        // Claimed jobs stay leased until the benchmark's connection closes, so every batch needs jobs of its own.
+        for (int i = 1; i <= Math.max(1000, batches * perBatch); i++) {
+            builder.addJob(i, JobBuilder.newInstance(i, 1, JobType.SLOG).setJobData(i).setRedundancyCount(1).build());
+        }
+        var storage = FileStorage.create(Files.createTempDirectory("smolrx-bench").toString() + "/");
+        int port;
+        try (var probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        var server = new Server(port, 10, builder.build(), storage);
+        server.setDaemon(true);
+        server.start();
+
+        try (var relay = new ServerSocket(0, 10, InetAddress.getLoopbackAddress())) {
+            Thread.ofVirtual().start(() -> MultiplexBench.relay(relay, port, delayMs));
+            System.out.println("One-way delay: " + delayMs + " ms, " + perBatch + " jobs per batch");
+            System.out.println("Mode\t\t\tms/batch");
+            for (boolean claim : new boolean[]{false, true}) {
+                measure(relay.getLocalPort(), claim, perBatch, Math.max(1, batches / 10));
+                long t = measure(relay.getLocalPort(), claim, perBatch, batches);
+                System.out.printf("%s\t%.2f%n", claim ? "ClaimWork\t" : "JobRequest+Input", t / 1e6 / batches);
+            }
+        } finally {
+            server.kill();
+        }
+    }
+
+    /**
+     * Fetch `batches` batches of work, one after another.
+     * @return wall-clock nanos for all batches.
+     */
+    private static long measure(int port, boolean claim, int perBatch, int batches) throws Exception {
+        try (var socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            var channel = SecureChannel.openServerChannel(socket);
+            channel.applyConfig((ProtocolConfig) channel.readObject());
+            long t0 = System.nanoTime();
+            for (int i = 0; i < batches; i++) {
+                if (claim) {
+                    var reply = channel.request(new ClaimWork(0, perBatch, "slog-key"));
+                    if (!(reply instanceof WorkBatch batch) || batch.isEmpty()) throw new IllegalStateException("No work claimed: " + reply);
+                } else {
+                    var listing = (Joblisting) channel.request(new JobRequest(0, perBatch, "slog-key"));
+                    var ids = listing.getJobIDs();
+                    var inputs = channel.request(new InputRequest("slog-key", ids.get(0), ids.get(ids.size() - 1) + 1, new ArrayList<>()));
+                    if (!(inputs instanceof BulkInputs)) throw new IllegalStateException("Unexpected reply: " + inputs);
+                }
+            }
+            long t1 = System.nanoTime();
+            channel.sendObject(new SignOff());
+            return t1 - t0;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package smolrx;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.Deflater;
+
+import smolrx.msg.BulkPush;
+import smolrx.msg.JobRequest;
+import smolrx.msg.SignOff;
+
+/**
+ * Measure bytes on the wire and time per message for each compression policy, over loopback.
+ * Usage: java smolrx.CompressionBench [messages] [jar]
+ */
+public class CompressionBench {
+
+    private static final int WARMUP = 1000;
+
+    public static void main(String[] args) throws Exception {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        var jar = Files.readAllBytes(Path.of(args.length > 1 ? args[1] : "./testjars/bfcarm.jar"));
+
+        var results = new HashMap<Long, Object>();
+        for (long i = 0; i < 100; i++) results.put(i, i % 7 == 0);
+
+        var policies = new HashMap<String, CompressionPolicy>();
+        policies.put("none", CompressionPolicy.NONE);
+        policies.put("deflate-1", new CompressionPolicy(FrameCodec.DEFLATE, Deflater.BEST_SPEED, 0));
+        policies.put("deflate-6", new CompressionPolicy(FrameCodec.DEFLATE, Deflater.DEFAULT_COMPRESSION, 0));
+        policies.put("default", CompressionPolicy.DEFAULT);
+
+        System.out.println("Policy\t\tMessage\t\twire (B/msg)\tsend (us/msg)\tread (us/msg)");
+        for (var name : new String[]{"none", "deflate-1", "deflate-6", "default"}) {
+            var policy = policies.get(name);
+            run(name, "SignOff", new SignOff(), policy, messages);
+            run(name, "JobRequest", new JobRequest(0, 100, "slog-key"), policy, messages);
+            run(name, "BulkPush[100]", new BulkPush(results, "slog-key"), policy, messages);
+            run(name, "jar (" + jar.length + " B)", jar, policy, messages / 10);
+        }
+    }
+
+    private static void run(String policyName, String name, Object message, CompressionPolicy policy, int messages) throws Exception {
+        measure(message, policy, WARMUP);
+        var r = measure(message, policy, messages);
+        System.out.printf("%s\t%s\t%.0f\t\t%.2f\t\t%.2f%n", policyName, name,
+            (double) r[0] / messages, r[1] / 1e3 / messages, r[2] / 1e3 / messages);
+    }
+
+    /**
+     * Send messages from one end of a fresh channel. A byte[] message is sent as a stream, like a jar.
+     * @return {bytes written by sender, sender nanos, reader nanos}
+     */
+    private static long[] measure(Object message, CompressionPolicy policy, int messages) throws Exception {
+        boolean stream = message instanceof byte[];
+        try (var serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            var reader = CompletableFuture.supplyAsync(() -> {
+                try (var conn = serverSocket.accept(); var channel = SecureChannel.openClientChannel(conn)) {
+                    long t0 = System.nanoTime();
+                    for (int i = 0; i < messages; i++) {
+                        if (stream) channel.readStream(OutputStream.nullOutputStream());
+                        else channel.readObject();
+                    }
+                    long t1 = System.nanoTime();
+                    channel.sendObject("done");
+                    return t1 - t0;
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+
+            try (var socket = new CountingSocket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort())) {
+                var channel = SecureChannel.openServerChannel(socket, HandshakeMode.X25519);
+                channel.setCompressionPolicy(policy);
+                long w0 = socket.written(), t0 = System.nanoTime();
+                for (int i = 0; i < messages; i++) {
+                    if (stream) channel.sendStream(new ByteArrayInputStream((byte[]) message));
+                    else channel.sendObject(message);
+                }
+                long t1 = System.nanoTime(), w1 = socket.written();
+                channel.readObject();
+                return new long[]{w1 - w0, t1 - t0, reader.get()};
+            }
+        }
+    }
+}
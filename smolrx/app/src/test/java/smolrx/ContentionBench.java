@@ -0,0 +1,93 @@
+package smolrx;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import smolrx.jobs.JobBuilder;
+import smolrx.jobs.JobManager;
+import smolrx.jobs.JobManagerBuilder;
+import smolrx.jobs.JobType;
+import smolrx.msg.BulkPush;
+import smolrx.msg.ClaimWork;
+import smolrx.msg.InputRequest;
+import smolrx.msg.PushResult;
+
+/**
+ * Measure the JobManager under many concurrent servlets, each a virtual thread, as the Server runs them.
+ * Each servlet claims a batch of jobs, fetches their inputs again as older clients do, and pushes their results, singly or in bulk, until no work is left for it.
+ * Servlets yield between requests, as they wait on their clients' next requests, so that their calls interleave.
+ * Usage: java smolrx.ContentionBench [servlets] [jobs] [jobs per claim]
+ */
+public class ContentionBench {
+
+    public static void main(String[] args) throws Exception {
+        int servlets = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int jobs = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+        int perClaim = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        System.out.println(servlets + " servlets, " + jobs + " jobs, " + perClaim + " per claim");
+        System.out.println("Push\tjobs/s");
+        for (int round = 0; round < 3; round++) {
+            for (boolean bulk : new boolean[]{false, true}) {
+                long t = run(servlets, jobs, perClaim, bulk);
+                System.out.printf("%s\t%.0f%n", bulk ? "bulk" : "single", jobs / (t / 1e9));
+            }
+        }
+    }
+
+    /**
+     * @return wall-clock nanos until all jobs are done.
+     */
+    private static long run(int servlets, int jobs, int perClaim, boolean bulk) throws Exception {
+        var builder = new JobManagerBuilder().allowAnySlogger().setBulkReqLimit(perClaim).addJar(1, "./testjars/bfcarm.jar");
+        for (int i = 1; i <= jobs; i++) {
+            builder.addJob(i, JobBuilder.newInstance(i, 1, JobType.SLOG).setJobData(i).setRedundancyCount(1).build());
+        }
+        JobManager manager = builder.build();
+        var done = new AtomicInteger();
+        var start = new CountDownLatch(1);
+        long t0;
+        try (var pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < servlets; c++) {
+                var holder = new Object();
+                pool.execute(() -> {
+                    try {
+                        start.await();
+                        while (true) {
+                            var batch = manager.claimWork(new ClaimWork(0, perClaim, "slog-key"), holder);
+                            // Clients end their session once no work is left for them.
+                            if (batch.isEmpty()) break;
+                            Thread.yield();
+                            var ids = new ArrayList<>(batch.getJobIDs());
+                            manager.getJobInputs(new InputRequest("slog-key", 0, 0, ids));
+                            Thread.yield();
+                            if (bulk) {
+                                var results = new HashMap<Long, Object>();
+                                for (var jobId : ids) results.put(jobId, true);
+                                manager.registerJobResults(new BulkPush(results, "slog-key"), holder);
+                                Thread.yield();
+                            } else {
+                                for (var jobId : ids) {
+                                    manager.registerJobResult(new PushResult(jobId, "slog-key", true), holder);
+                                    Thread.yield();
+                                }
+                            }
+                            done.addAndGet(ids.size());
+                        }
+                        manager.releaseLeases(holder);
+                    } catch (RXException | InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+            }
+            t0 = System.nanoTime();
+            start.countDown();
+        }
+        long t = System.nanoTime() - t0;
+        if (done.get() != jobs) throw new IllegalStateException("Done " + done.get() + " of " + jobs + " jobs");
+        return t;
+    }
+}
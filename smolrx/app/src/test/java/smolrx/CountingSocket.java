@@ -0,0 +1,43 @@
+package smolrx;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * Socket that counts the bytes written to it, for measuring bytes on the wire.
+ */
+class CountingSocket extends Socket {
+    private long written = 0;
+    private OutputStream out;
+
+    CountingSocket(InetAddress address, int port) throws IOException {
+        super(address, port);
+    }
+
+    long written() {
+        return this.written;
+    }
+
+    @Override
+    public synchronized OutputStream getOutputStream() throws IOException {
+        if (this.out == null) {
+            this.out = new FilterOutputStream(super.getOutputStream()) {
+                @Override
+                public void write(int b) throws IOException {
+                    CountingSocket.this.written++;
+                    this.out.write(b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    CountingSocket.this.written += len;
+                    this.out.write(b, off, len);
+                }
+            };
+        }
+        return this.out;
+    }
+}
@@ -0,0 +1,51 @@
+package smolrx;
+
+import smolrx.jobs.JobBuilder;
+import smolrx.jobs.JobManager;
+import smolrx.jobs.JobManagerBuilder;
+import smolrx.jobs.JobType;
+import smolrx.msg.ClaimWork;
+import smolrx.msg.PushResult;
+
+/**
+ * Measure how a collect job with many pre-requisites becomes schedulable, against the JobManager directly.
+ * Slog results are registered one by one while a collector polls for work, as collectors do while their job is blocked.
+ * Usage: java smolrx.DagBench [pre-requisites] [results between polls]
+ */
+public class DagBench {
+
+    public static void main(String[] args) throws Exception {
+        int prerequisites = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int pollEvery = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+
+        for (int round = 0; round < 3; round++) {
+            var builder = new JobManagerBuilder().withKey("slog-key", JobType.SLOG).withKey("collect-key", JobType.COLLECT).addJar(1, "./testjars/bfcarm.jar");
+            var reducer = JobBuilder.newInstance(0, 1, JobType.COLLECT).setRedundancyCount(1);
+            for (int i = 1; i <= prerequisites; i++) {
+                builder.addJob(i, JobBuilder.newInstance(i, 1, JobType.SLOG).setRedundancyCount(1).build());
+                reducer.addPrerequisiteJob(i);
+            }
+            builder.addJob(prerequisites + 1, reducer.build());
+            JobManager manager = builder.build();
+
+            var slogger = new Object();
+            var collector = new Object();
+            var poll = new ClaimWork(0, 1, "collect-key");
+            long resultNanos = 0, pollNanos = 0;
+            int polls = 0;
+            for (int i = 1; i <= prerequisites; i++) {
+                long t0 = System.nanoTime();
+                manager.registerJobResult(new PushResult(i, "slog-key", true), slogger);
+                long t1 = System.nanoTime();
+                resultNanos += t1 - t0;
+                if (i % pollEvery != 0 && i != prerequisites) continue;
+                boolean ready = !manager.claimWork(poll, collector).isEmpty();
+                pollNanos += System.nanoTime() - t1;
+                polls += 1;
+                if (ready != (i == prerequisites)) throw new IllegalStateException("Reducer ready after " + i + " results");
+            }
+            System.out.printf("pre-requisites %d\tresult %.2f us\tpoll %.2f us\tpolls %d%n",
+                prerequisites, resultNanos / 1e3 / prerequisites, pollNanos / 1e3 / polls, polls);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package smolrx;
+
+import java.lang.management.ManagementFactory;
+
+import smolrx.jobs.JobBuilder;
+import smolrx.jobs.JobManager;
+import smolrx.jobs.JobManagerBuilder;
+import smolrx.jobs.JobType;
+import smolrx.msg.BulkPush;
+import smolrx.msg.ClaimWork;
+
+/**
+ * Compare a sweep of slog jobs added one JobInfo at a time with the same sweep added as one job family: the time to add the jobs and build the manager,
+ * the heap it takes after a full GC, and the time to claim jobs in batches of 100 and push their results, for the first jobs of the sweep.
+ * Each job's input is its ID, and its properties name the class to run.
+ * Usage: java -Xmx4g smolrx.FamilyBench [jobs] [worked]
+ */
+public class FamilyBench {
+
+    private static final int BATCH = 100;
+
+    public static void main(String[] args) throws Exception {
+        int jobs = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int worked = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+
+        System.out.println("Jobs\t\tAdded as\tbuild (ms)\theap (MB)\tclaim+push (us/job)");
+        for (boolean family : new boolean[]{false, true}) {
+            long before = usedHeap();
+            long t0 = System.nanoTime();
+            var builder = new JobManagerBuilder().allowAnySlogger().setBulkReqLimit(BATCH).setBulkPushLimit(BATCH).addJar(1, "./testjars/bfcarm.jar");
+            if (family) {
+                var template = JobBuilder.newInstance(1, 1, JobType.SLOG).setProperty("Xclass", "bfcarm.Test").build();
+                builder.addJobFamily(0, jobs, template, id -> id);
+            } else {
+                for (long i = 0; i < jobs; i++) {
+                    builder.addJob(i, JobBuilder.newInstance(1, 1, JobType.SLOG).setJobData(i).setProperty("Xclass", "bfcarm.Test").build());
+                }
+            }
+            JobManager manager = builder.build();
+            builder = null;
+            long t1 = System.nanoTime();
+            long after = usedHeap();
+
+            double work = 0;
+            for (int round = 0; round < 3; round++) work = work(manager, worked / 3, round);
+            System.out.printf("%d\t\t%s\t\t%.1f\t\t%.1f\t\t%.2f%n", jobs, family ? "family" : "JobInfo", (t1 - t0) / 1e6, (after - before) / 1e6, work);
+            manager = null;
+        }
+    }
+
+    /**
+     * @return Microseconds per job claimed and pushed.
+     */
+    private static double work(JobManager manager, int jobs, int round) throws Exception {
+        var holder = "client-" + round;
+        long t0 = System.nanoTime();
+        for (int done = 0; done < jobs; done += BATCH) {
+            var batch = manager.claimWork(new ClaimWork(0, BATCH, "slog-key"), holder);
+            var results = new java.util.HashMap<Long, Object>();
+            for (long id : batch.getJobIDs()) results.put(id, true);
+            manager.registerJobResults(new BulkPush(results, "slog-key"), holder);
+        }
+        return (System.nanoTime() - t0) / 1e3 / jobs;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        var memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
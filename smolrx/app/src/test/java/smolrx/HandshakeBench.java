@@ -0,0 +1,83 @@
+package smolrx;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+
+import smolrx.msg.ProtocolConfig;
+
+/**
+ * Measure the latency of opening a secure channel over loopback, for each handshake mode and for ticket resumption.
+ * Usage: java smolrx.HandshakeBench [iterations]
+ */
+public class HandshakeBench {
+
+    private static final int WARMUP = 50;
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        var tickets = new SessionTickets();
+
+        try (var serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            var acceptor = Thread.ofVirtual().name("bench-acceptor").start(() -> accept(serverSocket, tickets));
+            int port = serverSocket.getLocalPort();
+
+            System.out.println("Mode\tN\tmean (ms)\tmedian (ms)\tp99 (ms)");
+            for (var mode : HandshakeMode.values()) {
+                bench(port, mode, WARMUP, false);
+                report(mode.toString(), bench(port, mode, iterations, false));
+            }
+
+            bench(port, HandshakeMode.X25519, 1, true); // obtain a ticket.
+            bench(port, HandshakeMode.X25519, WARMUP, false);
+            report("RESUME", bench(port, HandshakeMode.X25519, iterations, false));
+            acceptor.interrupt();
+        }
+    }
+
+    private static void accept(ServerSocket serverSocket, SessionTickets tickets) {
+        while (!serverSocket.isClosed()) {
+            try {
+                var conn = serverSocket.accept();
+                Thread.ofVirtual().start(() -> {
+                    try (var channel = SecureChannel.openClientChannel(conn, tickets)) {
+                        channel.sendObject(new ProtocolConfig(0, 0, 0).withSessionTicket(tickets.issue(channel.resumptionSecret()), tickets.getLifetime()));
+                    } catch (Exception e) {
+                        System.err.println("Server side handshake failed: " + e);
+                    }
+                });
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Open channels and time each until the first message is decrypted, which proves both sides derived the same key.
+     * @param keepTicket If true, remember the session ticket sent by the server, so that later channels resume.
+     */
+    private static double[] bench(int port, HandshakeMode mode, int iterations, boolean keepTicket) throws Exception {
+        var samples = new double[iterations];
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            try (var socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+                var channel = SecureChannel.openServerChannel(socket, mode);
+                var config = (ProtocolConfig) channel.readObject();
+                samples[i] = (System.nanoTime() - start) / 1e6;
+                if (keepTicket) channel.applyConfig(config);
+                channel.close();
+            }
+        }
+        return samples;
+    }
+
+    private static void report(String mode, double[] samples) {
+        Arrays.sort(samples);
+        double mean = Arrays.stream(samples).average().orElse(0);
+        double median = samples[samples.length / 2];
+        double p99 = samples[(int) Math.min(samples.length - 1, Math.ceil(samples.length * 0.99) - 1)];
+        System.out.printf("%s\t%d\t%.3f\t\t%.3f\t\t%.3f%n", mode, samples.length, mean, median, p99);
+    }
+}
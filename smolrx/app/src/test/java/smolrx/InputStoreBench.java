@@ -0,0 +1,78 @@
+package smolrx;
+
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+
+import smolrx.jobs.JobBuilder;
+import smolrx.jobs.JobManager;
+import smolrx.jobs.JobManagerBuilder;
+import smolrx.jobs.JobType;
+import smolrx.msg.InputRequest;
+import smolrx.msg.MessageCodec;
+
+/**
+ * Compare job inputs kept on the heap with inputs kept in a memory-mapped input store: the heap a manager takes after a full GC,
+ * and the CPU time to fetch inputs with InputRequests of 100 jobs and encode the responses with MessageCodec, as a servlet does.
+ * Each job's input is an int[] of 256 values.
+ * Usage: java -Xmx4g smolrx.InputStoreBench [jobs]
+ */
+public class InputStoreBench {
+
+    private static final int BATCH = 100;
+
+    public static void main(String[] args) throws Exception {
+        int jobs = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+
+        System.out.println("Inputs\theap (MB)\tbytes/job\tserve (us/input)");
+        for (boolean stored : new boolean[]{false, true}) {
+            var file = Files.createTempFile("inputs", ".bin");
+            try {
+                long before = usedHeap();
+                var builder = new JobManagerBuilder().allowAnySlogger().setBulkReqLimit(BATCH).addJar(1, "./testjars/bfcarm.jar");
+                if (stored) builder.setInputStore(file);
+                for (int i = 0; i < jobs; i++) {
+                    var input = new int[256];
+                    for (int j = 0; j < input.length; j++) input[j] = i * 31 + j * 1_000_003;
+                    builder.addJob(i, JobBuilder.newInstance(i, 1, JobType.SLOG).setJobData(input).build());
+                }
+                JobManager manager = builder.build();
+                builder = null;
+                long after = usedHeap();
+
+                double serve = 0;
+                for (int round = 0; round < 3; round++) serve = serve(manager, jobs);
+                System.out.printf("%s\t%.1f\t\t%.1f\t\t%.2f%n", stored ? "store" : "heap", (after - before) / 1e6, (after - before) / (double) jobs, serve);
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * @return CPU microseconds per input fetched and encoded.
+     */
+    private static double serve(JobManager manager, int jobs) throws Exception {
+        var out = new ObjectOutputStream(OutputStream.nullOutputStream());
+        var threads = ManagementFactory.getThreadMXBean();
+        long c0 = threads.getCurrentThreadCpuTime();
+        for (int i = 0; i < jobs; i += BATCH) {
+            var inputs = manager.getJobInputs(new InputRequest("slog-key", i, i + BATCH, new ArrayList<>()));
+            MessageCodec.write(out, inputs);
+            out.reset();
+        }
+        long c1 = threads.getCurrentThreadCpuTime();
+        return (c1 - c0) / 1e3 / jobs;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        var memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,106 @@
+package smolrx;
+
+import java.io.FileInputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import smolrx.jobs.ProgramCache;
+
+/**
+ * Measure the server-side cost of sending a jar to a client: reading the file per request, against the program cache,
+ * then the program cache with large stream frames, sealed on one thread or across all cores.
+ * Reports CPU time and heap allocation of the sending thread per request, over loopback. Frames sealed on the common pool are not counted in CPU time.
+ * Usage: java smolrx.JarServeBench [requests] [jar size in KiB]
+ */
+public class JarServeBench {
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int sizeKiB = args.length > 1 ? Integer.parseInt(args[1]) : 4096;
+
+        var jar = Files.createTempFile("smolrx-bench", ".jar");
+        try {
+            writeJar(jar, sizeKiB * 1024);
+            var cache = new ProgramCache();
+            System.out.println("Jar size: " + Files.size(jar) + " B");
+            int cores = Runtime.getRuntime().availableProcessors();
+            System.out.println("Method\t\tFrame (KiB)\tThreads\tCPU (ms/req)\talloc (KiB/req)\tMiB/s");
+            run(jar, cache, false, 16, 1, requests);
+            run(jar, cache, true, 16, 1, requests);
+            for (int frameKiB : new int[]{256, 1024, 4096}) {
+                run(jar, cache, true, frameKiB, 1, requests);
+                if (cores > 1) run(jar, cache, true, frameKiB, cores, requests);
+            }
+            run(jar, cache, false, 1024, 1, requests);
+        } finally {
+            Files.delete(jar);
+        }
+    }
+
+    private static void run(Path jar, ProgramCache cache, boolean cached, int frameKiB, int parallelism, int requests) throws Exception {
+        measure(jar, cache, cached, frameKiB * 1024, parallelism, Math.max(1, requests / 10));
+        var r = measure(jar, cache, cached, frameKiB * 1024, parallelism, requests);
+        System.out.printf("%s\t%d\t\t%d\t%.3f\t\t%.1f\t\t%.0f%n", cached ? "cache+buffer" : "file+stream", frameKiB, parallelism,
+            r[0] / 1e6 / requests, r[1] / 1024.0 / requests, Files.size(jar) * (double) requests / (1 << 20) / (r[2] / 1e9));
+    }
+
+    /**
+     * Write a jar of the given size, filled with incompressible data, as real jars mostly are.
+     */
+    private static void writeJar(Path path, int size) throws Exception {
+        var data = new byte[size];
+        new Random(42).nextBytes(data);
+        try (var zip = new ZipOutputStream(Files.newOutputStream(path))) {
+            zip.putNextEntry(new ZipEntry("data.bin"));
+            zip.write(data);
+            zip.closeEntry();
+        }
+    }
+
+    /**
+     * @return {sender CPU nanos, sender bytes allocated, wall-clock nanos}
+     */
+    private static long[] measure(Path jar, ProgramCache cache, boolean cached, int frameSize, int parallelism, int requests) throws Exception {
+        try (var serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            var reader = CompletableFuture.runAsync(() -> {
+                try (var conn = serverSocket.accept(); var channel = SecureChannel.openClientChannel(conn)) {
+                    channel.setStreamFrames(frameSize, 1);
+                    for (int i = 0; i < requests; i++) channel.readStream(OutputStream.nullOutputStream());
+                    channel.sendObject("done");
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+
+            try (var socket = new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort())) {
+                var channel = SecureChannel.openServerChannel(socket, HandshakeMode.X25519);
+                channel.setStreamFrames(frameSize, parallelism);
+                var bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+                long c0 = bean.getCurrentThreadCpuTime(), a0 = bean.getCurrentThreadAllocatedBytes(), t0 = System.nanoTime();
+                for (int i = 0; i < requests; i++) {
+                    if (cached) {
+                        channel.sendBuffer(cache.get(1, jar.toString()).contents());
+                    } else {
+                        try (var fis = new FileInputStream(jar.toFile())) {
+                            channel.sendStream(fis);
+                        }
+                    }
+                }
+                long c1 = bean.getCurrentThreadCpuTime(), a1 = bean.getCurrentThreadAllocatedBytes();
+                channel.readObject();
+                long t1 = System.nanoTime();
+                reader.get();
+                return new long[]{c1 - c0, a1 - a0, t1 - t0};
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package smolrx;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import smolrx.jobs.JobBuilder;
+import smolrx.jobs.JobManager;
+import smolrx.jobs.JobManagerBuilder;
+import smolrx.jobs.JobType;
+import smolrx.msg.ClaimWork;
+import smolrx.msg.PushResult;
+
+/**
+ * Measure how well concurrent clients share a queue of jobs, against the JobManager directly.
+ * Each client claims a batch, works on each job for a while, and registers the results; a result for a job that is already complete is wasted work.
+ * A lease of 1 ms stands in for no leasing, where every client is handed the lowest pending jobs until their results arrive.
+ * Usage: java smolrx.LeaseBench [jobs] [ms per job] [jobs per claim]
+ */
+public class LeaseBench {
+
+    public static void main(String[] args) throws Exception {
+        int jobs = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int workMs = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        int perClaim = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        System.out.println("Lease (ms)\tClients\tcomputed/job\twall (ms)\tjobs/s");
+        for (long lease : new long[]{1, 60_000}) {
+            for (int clients : new int[]{1, 8, 32}) {
+                var r = run(jobs, workMs, perClaim, clients, lease);
+                System.out.printf("%d\t\t%d\t%.2f\t\t%d\t\t%.0f%n", lease, clients, (double) r[0] / jobs, r[1] / 1_000_000, jobs / (r[1] / 1e9));
+            }
+        }
+    }
+
+    /**
+     * Let `clients` virtual threads work through all jobs.
+     * @return {jobs computed, including wasted ones; wall-clock nanos}
+     */
+    private static long[] run(int jobs, int workMs, int perClaim, int clients, long lease) throws Exception {
+        var builder = new JobManagerBuilder().allowAnySlogger().setBulkReqLimit(perClaim).setLeaseDuration(lease).addJar(1, "./testjars/bfcarm.jar");
+        for (int i = 1; i <= jobs; i++) {
+            builder.addJob(i, JobBuilder.newInstance(i, 1, JobType.SLOG).setJobData(i).setRedundancyCount(1).build());
+        }
+        JobManager manager = builder.build();
+        var computed = new AtomicInteger();
+        var done = new AtomicInteger();
+        long t0 = System.nanoTime();
+        try (var pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < clients; c++) {
+                var holder = new Object();
+                pool.execute(() -> {
+                    try {
+                        while (done.get() < jobs) {
+                            var batch = manager.claimWork(new ClaimWork(0, perClaim, "slog-key"), holder);
+                            if (batch.isEmpty()) {
+                                Thread.sleep(1);
+                                continue;
+                            }
+                            for (var jobId : batch.getJobIDs()) {
+                                Thread.sleep(workMs);
+                                computed.incrementAndGet();
+                                try {
+                                    manager.registerJobResult(new PushResult(jobId, "slog-key", true), holder);
+                                    done.incrementAndGet();
+                                } catch (RXException e) {
+                                    // Completed by another client meanwhile.
+                                }
+                            }
+                        }
+                    } catch (RXException | InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+            }
+        }
+        return new long[]{computed.get(), System.nanoTime() - t0};
+    }
+}
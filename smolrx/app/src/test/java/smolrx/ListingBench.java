@@ -0,0 +1,46 @@
+package smolrx;
+
+import smolrx.jobs.JobBuilder;
+import smolrx.jobs.JobManager;
+import smolrx.jobs.JobManagerBuilder;
+import smolrx.jobs.JobType;
+import smolrx.msg.JobRequest;
+
+/**
+ * Measure the cost of listing jobs from a large queue of pending jobs of mixed types, against the JobManager directly.
+ * Slog jobs come first in job ID order, and collect jobs last, so a collector's listing must skip every slog job unless jobs are indexed by type.
+ * Listings are made without a lease holder, so every listing sees the same queue.
+ * Usage: java smolrx.ListingBench [jobs] [jobs per listing]
+ */
+public class ListingBench {
+
+    public static void main(String[] args) throws Exception {
+        int jobs = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int limit = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+
+        var builder = new JobManagerBuilder().withKey("slog-key", JobType.SLOG).withKey("collect-key", JobType.COLLECT);
+        int slogs = jobs - jobs / 10;
+        for (int i = 1; i <= jobs; i++) {
+            builder.addJob(i, JobBuilder.newInstance(i, 1, i <= slogs ? JobType.SLOG : JobType.COLLECT).setRedundancyCount(1).build());
+        }
+        JobManager manager = builder.build();
+
+        System.out.println(jobs + " pending jobs, " + limit + " per listing");
+        System.out.println("Client\tMin priority\tus/listing");
+        measure(manager, "slog", "slog-key", 0, limit);
+        measure(manager, "slog", "slog-key", slogs / 2, limit);
+        measure(manager, "collect", "collect-key", 0, limit);
+    }
+
+    private static void measure(JobManager manager, String name, String key, long minPriority, int limit) throws RXException {
+        var request = new JobRequest(minPriority, limit, key);
+        int rounds = 200;
+        for (int i = 0; i < rounds; i++) manager.listJobs(request, null);
+        long t0 = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            if (manager.listJobs(request, null).getJobIDs().size() != limit) throw new IllegalStateException("Short listing");
+        }
+        long t1 = System.nanoTime();
+        System.out.printf("%s\t%d\t\t%.1f%n", name, minPriority, (t1 - t0) / 1e3 / rounds);
+    }
+}
@@ -0,0 +1,66 @@
+package smolrx;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.lang.management.ManagementFactory;
+
+import smolrx.jobs.JobBuilder;
+import smolrx.jobs.JobManager;
+import smolrx.jobs.JobManagerBuilder;
+import smolrx.jobs.JobType;
+import smolrx.msg.JobRequest;
+import smolrx.msg.MessageCodec;
+
+/**
+ * Measure the server's CPU time to answer a JobRequest: listing the jobs and encoding the Joblisting with MessageCodec, as a servlet does.
+ * Slog jobs have one property; collect jobs have one property and 100 pre-requisites each, and are relaxed so that they are ready.
+ * Listings are made without a holder, so that no job is leased and every listing returns the same jobs.
+ * Usage: java smolrx.ListingEncodeBench [listings]
+ */
+public class ListingEncodeBench {
+
+    private static final int LIMIT = 100;
+
+    public static void main(String[] args) throws Exception {
+        int listings = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+
+        var builder = new JobManagerBuilder().allowAnySlogger().withKey("collect-key", JobType.COLLECT).addJar(1, "./testjars/bfcarm.jar");
+        for (long i = 0; i < LIMIT * LIMIT; i++) {
+            builder.addJob(i, JobBuilder.newInstance(1, 1, JobType.SLOG).setJobData(i).setProperty("Xclass", "bfcarm.Test").build());
+        }
+        for (long i = 0; i < LIMIT; i++) {
+            var collect = JobBuilder.newInstance(1, 1, JobType.COLLECT).setProperty("Xclass", "bfcarm.Count").relax();
+            for (long j = 0; j < LIMIT; j++) collect.addPrerequisiteJob(i * LIMIT + j);
+            builder.addJob(LIMIT * LIMIT + i, collect.build());
+        }
+        var manager = builder.build();
+
+        System.out.println("Listing\t\tbytes\tCPU (us/listing)");
+        for (var role : new String[]{"slog-key", "collect-key"}) {
+            long[] r = null;
+            for (int round = 0; round < 3; round++) r = measure(manager, role, listings);
+            System.out.printf("%s\t%d\t%.2f%n", role.equals("slog-key") ? "slog[100]" : "collect[100]", r[0], r[1] / 1e3 / listings);
+        }
+    }
+
+    /**
+     * @return {bytes per listing, CPU nanos}
+     */
+    private static long[] measure(JobManager manager, String role, int listings) throws Exception {
+        var bytes = new ByteArrayOutputStream();
+        var out = new ObjectOutputStream(bytes);
+        long size = 0;
+        var threads = ManagementFactory.getThreadMXBean();
+        long c0 = threads.getCurrentThreadCpuTime();
+        for (int i = 0; i < listings; i++) {
+            var listing = manager.listJobs(new JobRequest(0, LIMIT, role), null);
+            MessageCodec.write(out, listing);
+            out.flush();
+            size = bytes.size();
+            bytes.reset();
+            out.reset();
+        }
+        long c1 = threads.getCurrentThreadCpuTime();
+        return new long[]{size, c1 - c0};
+    }
+}
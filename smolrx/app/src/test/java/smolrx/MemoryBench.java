@@ -0,0 +1,47 @@
+package smolrx;
+
+import java.lang.management.ManagementFactory;
+
+import smolrx.jobs.JobBuilder;
+import smolrx.jobs.JobManager;
+import smolrx.jobs.JobManagerBuilder;
+import smolrx.jobs.JobType;
+
+/**
+ * Measure the heap a JobManager takes per pending job, after a full GC.
+ * Jobs come in groups of ten: nine slog jobs without input, and a collect job with the nine as pre-requisites.
+ * Usage: java -Xmx4g smolrx.MemoryBench [jobs]
+ */
+public class MemoryBench {
+
+    public static void main(String[] args) throws Exception {
+        int jobs = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+
+        long before = usedHeap();
+        var builder = new JobManagerBuilder().allowAnySlogger().addJar(1, "./testjars/bfcarm.jar");
+        for (int i = 0; i < jobs; i += 10) {
+            var collect = JobBuilder.newInstance(i + 9, 1, JobType.COLLECT);
+            for (int j = i; j < i + 9; j++) {
+                builder.addJob(j, JobBuilder.newInstance(j, 1, JobType.SLOG).build());
+                collect.addPrerequisiteJob(j);
+            }
+            builder.addJob(i + 9, collect.build());
+        }
+        JobManager manager = builder.build();
+        builder = null;
+        long after = usedHeap();
+
+        System.out.printf("jobs %d\theap %.1f MB\tbytes/job %.1f%n", jobs, (after - before) / 1e6, (after - before) / (double) jobs);
+        // Keep the manager reachable until the heap has been measured.
+        System.out.println(manager.getBulkRequestLimit() > 0 ? "" : "-");
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        var memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
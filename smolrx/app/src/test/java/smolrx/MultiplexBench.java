@@ -0,0 +1,170 @@
+package smolrx;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import smolrx.jobs.JobBuilder;
+import smolrx.jobs.JobManagerBuilder;
+import smolrx.jobs.JobType;
+import smolrx.msg.BulkInputs;
+import smolrx.msg.InputRequest;
+import smolrx.msg.ProtocolConfig;
+import smolrx.msg.SignOff;
+import smolrx.storage.FileStorage;
+
+/**
+ * Measure InputRequest round trips on one channel, through a relay that delays traffic in each direction, as a long link would.
+ * Compares requests sent one after another with requests in flight together, multiplexed on the same channel,
+ * either from several threads, or pipelined from one thread with `SecureChannel.requestAll`.
+ * Usage: java smolrx.MultiplexBench [requests] [one-way delay in ms]
+ */
+public class MultiplexBench {
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int delayMs = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        Logger.getLogger("").setLevel(Level.WARNING);
+
+        var builder = new JobManagerBuilder().allowAnySlogger().setMaxInFlight(16);
+        for (int i = 1; i <= 1000; i++) {
+            builder.addJob(i, JobBuilder.newInstance(i, 1, JobType.SLOG).setJobData(i).setRedundancyCount(1).build());
+        }
+        var storage = FileStorage.create(Files.createTempDirectory("smolrx-bench").toString() + "/");
+        int port;
+        try (var probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        var server = new Server(port, 10, builder.build(), storage);
+        server.setDaemon(true);
+        server.start();
+
+        try (var relay = new ServerSocket(0, 10, InetAddress.getLoopbackAddress())) {
+            Thread.ofVirtual().start(() -> relay(relay, port, delayMs));
+            System.out.println("One-way delay: " + delayMs + " ms");
+            System.out.println("Mode\t\tIn flight\tms/req\treq/s");
+            for (int inFlight : new int[]{1, 4, 16}) {
+                measure(relay.getLocalPort(), inFlight, Math.max(inFlight, requests / 10));
+                long t = measure(relay.getLocalPort(), inFlight, requests);
+                System.out.printf("%s\t%d\t\t%.2f\t%.0f%n", inFlight == 1 ? "sequential" : "multiplexed", inFlight,
+                    t / 1e6 / requests, requests / (t / 1e9));
+            }
+            pipelined(relay.getLocalPort(), requests / 10);
+            long t = pipelined(relay.getLocalPort(), requests);
+            System.out.printf("pipelined\t16\t\t%.2f\t%.0f%n", t / 1e6 / requests, requests / (t / 1e9));
+        } finally {
+            server.kill();
+        }
+    }
+
+    /**
+     * Request inputs for 10 jobs at a time, from `inFlight` threads sharing one channel.
+     * @return wall-clock nanos for all requests.
+     */
+    private static long measure(int port, int inFlight, int requests) throws Exception {
+        try (var socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            var channel = SecureChannel.openServerChannel(socket);
+            channel.applyConfig((ProtocolConfig) channel.readObject());
+            long t0 = System.nanoTime();
+            try (var senders = Executors.newFixedThreadPool(inFlight, Thread.ofVirtual().factory())) {
+                var replies = new ArrayList<Future<Object>>();
+                for (int i = 0; i < requests; i++) {
+                    long start = 1 + (i * 10) % 990;
+                    var request = new InputRequest("slog-key", start, start + 10, new ArrayList<>());
+                    // In flight: 1 sends each request only after the previous reply, as clients did before multiplexing.
+                    replies.add(senders.submit(() -> inFlight == 1 ? sendAndRead(channel, request) : channel.request(request)));
+                }
+                for (var reply : replies) {
+                    if (!(reply.get() instanceof BulkInputs)) throw new IllegalStateException("Unexpected reply: " + reply.get());
+                }
+            }
+            long t1 = System.nanoTime();
+            channel.sendObject(new SignOff());
+            return t1 - t0;
+        }
+    }
+
+    /**
+     * Request inputs for 10 jobs at a time, pipelined from one thread.
+     * @return wall-clock nanos for all requests.
+     */
+    private static long pipelined(int port, int requests) throws Exception {
+        try (var socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            var channel = SecureChannel.openServerChannel(socket);
+            channel.applyConfig((ProtocolConfig) channel.readObject());
+            var batch = new ArrayList<InputRequest>();
+            for (int i = 0; i < requests; i++) {
+                long start = 1 + (i * 10) % 990;
+                batch.add(new InputRequest("slog-key", start, start + 10, new ArrayList<>()));
+            }
+            long t0 = System.nanoTime();
+            for (var reply : channel.requestAll(batch)) {
+                if (!(reply instanceof BulkInputs)) throw new IllegalStateException("Unexpected reply: " + reply);
+            }
+            long t1 = System.nanoTime();
+            channel.sendObject(new SignOff());
+            return t1 - t0;
+        }
+    }
+
+    private static Object sendAndRead(SecureChannel channel, Object request) throws Exception {
+        channel.sendObject(request);
+        return channel.readObject();
+    }
+
+    /**
+     * Forward each connection to the server, holding back everything sent in either direction by `delayMs`.
+     */
+    static void relay(ServerSocket relay, int serverPort, int delayMs) {
+        while (!relay.isClosed()) {
+            try {
+                var client = relay.accept();
+                var server = new Socket(InetAddress.getLoopbackAddress(), serverPort);
+                for (var ends : new Socket[][]{{client, server}, {server, client}}) {
+                    var chunks = new LinkedBlockingQueue<Object[]>();
+                    Thread.ofVirtual().start(() -> pump(ends[0], chunks));
+                    Thread.ofVirtual().start(() -> deliver(chunks, ends[1], delayMs));
+                }
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private static void pump(Socket from, LinkedBlockingQueue<Object[]> chunks) {
+        var buf = new byte[64 * 1024];
+        try (InputStream in = from.getInputStream()) {
+            int n;
+            while ((n = in.read(buf)) != -1) chunks.add(new Object[]{System.nanoTime(), Arrays.copyOf(buf, n)});
+        } catch (IOException e) {
+            // Connection closed.
+        }
+        chunks.add(new Object[]{System.nanoTime(), null});
+    }
+
+    private static void deliver(LinkedBlockingQueue<Object[]> chunks, Socket to, int delayMs) {
+        try (OutputStream out = to.getOutputStream()) {
+            while (true) {
+                var chunk = chunks.take();
+                long wait = (long) chunk[0] + delayMs * 1_000_000L - System.nanoTime();
+                if (wait > 0) Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+                if (chunk[1] == null) return;
+                out.write((byte[]) chunk[1]);
+                out.flush();
+            }
+        } catch (IOException | InterruptedException e) {
+            // Connection closed.
+        }
+    }
+}
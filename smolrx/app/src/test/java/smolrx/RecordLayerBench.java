@@ -0,0 +1,75 @@
+package smolrx;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+
+import smolrx.msg.BulkPush;
+import smolrx.msg.JobRequest;
+
+/**
+ * Measure heap allocation and time per message on both ends of a channel over loopback.
+ * Usage: java smolrx.RecordLayerBench [messages]
+ */
+public class RecordLayerBench {
+
+    private static final int WARMUP = 2000;
+
+    public static void main(String[] args) throws Exception {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+
+        var results = new HashMap<Long, Object>();
+        for (long i = 0; i < 100; i++) results.put(i, i % 7 == 0);
+        var large = new HashMap<Long, Object>();
+        for (long i = 0; i < 20000; i++) large.put(i, "result-" + i);
+
+        System.out.println("Message\tN\tsend (B/msg)\tread (B/msg)\tsend (us/msg)\tread (us/msg)");
+        run("JobRequest", new JobRequest(0, 100, "slog-key"), messages);
+        run("BulkPush[100]", new BulkPush(results, "slog-key"), messages);
+        run("BulkPush[20000]", new BulkPush(large, "slog-key"), messages / 100);
+    }
+
+    private static void run(String name, Object message, int messages) throws Exception {
+        measure(message, Math.min(WARMUP, messages));
+        var r = measure(message, messages);
+        System.out.printf("%s\t%d\t%.0f\t\t%.0f\t\t%.2f\t\t%.2f%n", name, messages,
+            (double) r[0] / messages, (double) r[1] / messages, r[2] / 1e3 / messages, r[3] / 1e3 / messages);
+    }
+
+    /**
+     * @return {bytes allocated by sender, bytes allocated by reader, sender nanos, reader nanos}
+     */
+    private static long[] measure(Object message, int messages) throws Exception {
+        try (var serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            var reader = CompletableFuture.supplyAsync(() -> {
+                try (var conn = serverSocket.accept(); var channel = SecureChannel.openClientChannel(conn)) {
+                    long a0 = allocatedBytes(), t0 = System.nanoTime();
+                    for (int i = 0; i < messages; i++) channel.readObject();
+                    long t1 = System.nanoTime(), a1 = allocatedBytes();
+                    channel.sendObject("done");
+                    return new long[]{a1 - a0, t1 - t0};
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+
+            try (var socket = new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort())) {
+                var channel = SecureChannel.openServerChannel(socket, HandshakeMode.X25519);
+                long a0 = allocatedBytes(), t0 = System.nanoTime();
+                for (int i = 0; i < messages; i++) channel.sendObject(message);
+                long t1 = System.nanoTime(), a1 = allocatedBytes();
+                channel.readObject();
+                var r = reader.get();
+                return new long[]{a1 - a0, r[0], t1 - t0, r[1]};
+            }
+        }
+    }
+
+    private static long allocatedBytes() {
+        var bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return bean.getCurrentThreadAllocatedBytes();
+    }
+}
@@ -0,0 +1,90 @@
+package smolrx;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+
+import smolrx.jobs.JobBuilder;
+import smolrx.jobs.JobManager;
+import smolrx.jobs.JobManagerBuilder;
+import smolrx.jobs.JobType;
+import smolrx.msg.BulkPush;
+import smolrx.msg.ClaimWork;
+
+/**
+ * Measure restarting a manager from its journal: a family of slog jobs, of which the first half get results, pushed in bulks of 10,000.
+ * Reports the time to push the results with and without a journal, the time and size of a snapshot, and the time to build a manager
+ * from the journal alone and from the snapshot, checking that the first job it hands out is the first one without a result.
+ * Usage: java -Xmx3g smolrx.RecoveryBench [jobs] [results]
+ */
+public class RecoveryBench {
+
+    private static final int BULK = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        int jobs = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int results = args.length > 1 ? Integer.parseInt(args[1]) : jobs / 2;
+        var directory = Files.createTempDirectory("journal");
+        try {
+            System.out.printf("push without journal: %.2f us/result%n", push(build(jobs, null), results));
+            System.out.printf("push with journal: %.2f us/result, journal %.1f MB%n", push(build(jobs, directory), results), size(directory));
+
+            long t0 = System.nanoTime();
+            var manager = build(jobs, directory);
+            long t1 = System.nanoTime();
+            System.out.printf("restart from journal: %.2f s, next job %d%n", (t1 - t0) / 1e9, next(manager));
+
+            t0 = System.nanoTime();
+            manager.snapshot();
+            t1 = System.nanoTime();
+            System.out.printf("snapshot: %.2f s, %.1f MB%n", (t1 - t0) / 1e9, size(directory));
+            manager = null;
+
+            t0 = System.nanoTime();
+            manager = build(jobs, directory);
+            t1 = System.nanoTime();
+            System.out.printf("restart from snapshot: %.2f s, next job %d%n", (t1 - t0) / 1e9, next(manager));
+        } finally {
+            try (var files = Files.walk(directory)) {
+                for (var file : files.sorted(Comparator.reverseOrder()).toList()) Files.delete(file);
+            }
+        }
+    }
+
+    private static JobManager build(int jobs, Path directory) throws IOException {
+        System.gc();
+        var builder = new JobManagerBuilder().allowAnySlogger().setBulkPushLimit(BULK).setSnapshotInterval(0).addJar(1, "./testjars/bfcarm.jar");
+        if (directory != null) builder.setJournal(directory);
+        builder.addJobFamily(0, jobs, JobBuilder.newInstance(1, 1, JobType.SLOG).build(), id -> id);
+        return builder.build();
+    }
+
+    /**
+     * @return Microseconds per result pushed.
+     */
+    private static double push(JobManager manager, int results) throws RXException {
+        long t0 = System.nanoTime();
+        for (long start = 0; start < results; start += BULK) {
+            var bulk = new HashMap<Long, Object>();
+            for (long id = start; id < Math.min(results, start + BULK); id++) bulk.put(id, true);
+            manager.registerJobResults(new BulkPush(bulk, "slog-key"), "client");
+        }
+        return (System.nanoTime() - t0) / 1e3 / results;
+    }
+
+    private static long next(JobManager manager) throws RXException {
+        return new ArrayList<>(manager.claimWork(new ClaimWork(0, 1, "slog-key"), "client").getJobIDs()).get(0);
+    }
+
+    private static double size(Path directory) throws IOException {
+        try (var files = Files.list(directory)) {
+            long bytes = 0;
+            for (var file : files.toList()) bytes += Files.size(file);
+            return bytes / 1e6;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package smolrx;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.function.UnaryOperator;
+
+import javax.crypto.BadPaddingException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import smolrx.msg.PushResult;
+import smolrx.msg.SignOff;
+import smolrx.msg.Termination;
+
+class SecureChannelTest {
+
+    private SecureChannel server;
+    private SecureChannel client;
+
+    @BeforeEach
+    void connect() throws Exception {
+        try (var listener = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+             var accepting = Executors.newVirtualThreadPerTaskExecutor()) {
+            var accepted = accepting.submit(() -> SecureChannel.openClientChannel(listener.accept()));
+            this.client = SecureChannel.openServerChannel(new Socket(listener.getInetAddress(), listener.getLocalPort()));
+            this.server = accepted.get();
+        }
+    }
+
+    @AfterEach
+    void close() throws IOException {
+        this.client.close();
+        this.server.close();
+    }
+
+    @Test
+    void streamIsReadAsStream() throws Exception {
+        var data = new byte[100_000];
+        for (int i = 0; i < data.length; i++) data[i] = (byte) (i * 31);
+        this.server.sendStream(new ByteArrayInputStream(data));
+        var out = new ByteArrayOutputStream();
+        assertNull(this.client.readStreamOrObject(out));
+        assertArrayEquals(data, out.toByteArray());
+    }
+
+    @Test
+    void largeFramesThenObjects() throws Exception {
+        this.server.setStreamFrames(1 << 20, 2);
+        this.client.setStreamFrames(1 << 20, 1);
+        var data = new byte[3 * (1 << 20) + 5];
+        for (int i = 0; i < data.length; i++) data[i] = (byte) i;
+        this.server.sendStream(new ByteArrayInputStream(data));
+        this.server.sendObject(Termination.abrupt("after"));
+        var out = new ByteArrayOutputStream();
+        this.client.readStream(out);
+        assertArrayEquals(data, out.toByteArray());
+        assertEquals("after", assertInstanceOf(Termination.class, this.client.readObject()).getCause());
+    }
+
+    @Test
+    void emptyStreamIsReadAsStream() throws Exception {
+        this.server.sendStream(new ByteArrayInputStream(new byte[0]));
+        var out = new ByteArrayOutputStream();
+        assertNull(this.client.readStreamOrObject(out));
+        assertEquals(0, out.size());
+    }
+
+    @Test
+    void terminationInPlaceOfStreamIsReturned() throws Exception {
+        this.server.sendObject(Termination.abrupt("No such program"));
+        var out = new ByteArrayOutputStream();
+        var reply = assertInstanceOf(Termination.class, this.client.readStreamOrObject(out));
+        assertEquals("No such program", reply.getCause());
+        assertEquals(0, out.size());
+        // The channel stays in step.
+        this.server.sendObject(new SignOff());
+        assertInstanceOf(SignOff.class, this.client.readObject());
+    }
+
+    @Test
+    void readStreamRejectsObject() throws Exception {
+        this.server.sendObject(Termination.abrupt("boom"));
+        var e = assertThrows(IOException.class, () -> this.client.readStream(new ByteArrayOutputStream()));
+        assertEquals(true, e.getMessage().contains("boom"));
+    }
+
+    @Test
+    void objectsInterleaveInBothDirections() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            this.server.sendObject(i);
+            this.client.sendObject(-i);
+            if (i % 3 == 0) this.server.sendObject("extra " + i);
+            assertEquals(i, this.client.readObject());
+            assertEquals(-i, this.server.readObject());
+            if (i % 3 == 0) assertEquals("extra " + i, this.client.readObject());
+        }
+    }
+
+    /**
+     * Open a channel pair whose server-to-client bytes pass through a relay, which may rewrite each chunk it forwards once the handshake is done.
+     * @return the server end and the client end.
+     */
+    private static SecureChannel[] relayed(UnaryOperator<byte[]> rewrite) throws Exception {
+        var listener = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        var relay = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        try (listener; relay; var accepting = Executors.newVirtualThreadPerTaskExecutor()) {
+            var accepted = accepting.submit(() -> SecureChannel.openClientChannel(listener.accept()));
+            var relayedClient = accepting.submit(relay::accept);
+            var toServer = new Socket(listener.getInetAddress(), listener.getLocalPort());
+            var clientEnd = accepting.submit(() -> SecureChannel.openServerChannel(new Socket(relay.getInetAddress(), relay.getLocalPort())));
+            var toClient = relayedClient.get();
+            var handshakeDone = new boolean[1];
+            Thread.ofVirtual().start(() -> pipe(toClient, toServer, UnaryOperator.identity(), handshakeDone));
+            Thread.ofVirtual().start(() -> pipe(toServer, toClient, rewrite, handshakeDone));
+            var ends = new SecureChannel[]{accepted.get(), clientEnd.get()};
+            synchronized (handshakeDone) {
+                handshakeDone[0] = true;
+            }
+            return ends;
+        }
+    }
+
+    private static void pipe(Socket from, Socket to, UnaryOperator<byte[]> rewrite, boolean[] handshakeDone) {
+        var buf = new byte[1 << 16];
+        try {
+            int n;
+            while ((n = from.getInputStream().read(buf)) != -1) {
+                var chunk = Arrays.copyOf(buf, n);
+                synchronized (handshakeDone) {
+                    if (handshakeDone[0]) chunk = rewrite.apply(chunk);
+                }
+                to.getOutputStream().write(chunk);
+            }
+        } catch (IOException e) {
+            // The test closed the channel.
+        } finally {
+            try {
+                to.close();
+            } catch (IOException e) {
+                // Already closed.
+            }
+        }
+    }
+
+    @Test
+    @Timeout(30)
+    void tamperedFrameIsRejected() throws Exception {
+        // Flip the last byte of the first whole frame sent after the handshake; it lies in the frame's tag.
+        var flipped = new boolean[1];
+        var ends = relayed(chunk -> {
+            if (!flipped[0] && chunk.length > 5 + 16) {
+                flipped[0] = true;
+                chunk[chunk.length - 1] ^= 1;
+            }
+            return chunk;
+        });
+        try (var server = ends[0]; var client = ends[1]) {
+            server.sendObject("secret");
+            assertThrows(BadPaddingException.class, client::readObject);
+        }
+    }
+
+    @Test
+    @Timeout(30)
+    void replayedFrameIsRejected() throws Exception {
+        // Send the first whole frame after the handshake twice; the copy is sealed under the previous nonce.
+        var replayed = new boolean[1];
+        var ends = relayed(chunk -> {
+            if (!replayed[0] && chunk.length > 5 + 16) {
+                replayed[0] = true;
+                var twice = Arrays.copyOf(chunk, 2 * chunk.length);
+                System.arraycopy(chunk, 0, twice, chunk.length, chunk.length);
+                return twice;
+            }
+            return chunk;
+        });
+        try (var server = ends[0]; var client = ends[1]) {
+            server.sendObject("once");
+            assertEquals("once", client.readObject());
+            assertThrows(BadPaddingException.class, client::readObject);
+        }
+    }
+
+    /**
+     * A result too large for one frame, ending in an object that cannot be serialized, so that frames are sent before the failure.
+     */
+    private static ArrayList<Object> unsendable() {
+        var payload = new ArrayList<Object>();
+        for (int i = 0; i < 20_000; i++) payload.add("item " + i);
+        payload.add(new Object());
+        return payload;
+    }
+
+    private void sendFailsThenChannelCarriesOn() throws Exception {
+        this.server.sendObject(new PushResult(1, "key", "before"));
+        assertThrows(NotSerializableException.class, () -> this.server.sendObject(new PushResult(2, "key", unsendable())));
+        assertThrows(NotSerializableException.class, () -> this.server.sendObject(new Object()));
+        this.server.sendObject(new PushResult(3, "key", "after"));
+        assertEquals("before", assertInstanceOf(PushResult.class, this.client.readObject()).getResultObject());
+        var after = assertInstanceOf(PushResult.class, this.client.readObject());
+        assertEquals(3, after.getJobId());
+        assertEquals("after", after.getResultObject());
+        // And the other direction is untouched.
+        this.client.sendObject(new SignOff());
+        assertInstanceOf(SignOff.class, this.server.readObject());
+    }
+
+    @Test
+    void unserializablePayloadIsAborted() throws Exception {
+        this.sendFailsThenChannelCarriesOn();
+    }
+
+    @Test
+    void unserializablePayloadIsAbortedOnSessionStreams() throws Exception {
+        this.server.setSessionStreams(true);
+        this.sendFailsThenChannelCarriesOn();
+        this.server.sendObject(new PushResult(4, "key", "again"));
+        assertEquals("again", assertInstanceOf(PushResult.class, this.client.readObject()).getResultObject());
+    }
+
+    @Test
+    void unserializablePayloadIsAbortedWithBinaryCodec() throws Exception {
+        this.server.setSessionStreams(true);
+        this.server.setBinaryCodec(true);
+        this.sendFailsThenChannelCarriesOn();
+    }
+
+    @Test
+    void abortedObjectInPlaceOfStreamIsSkipped() throws Exception {
+        assertThrows(NotSerializableException.class, () -> this.server.sendObject(unsendable()));
+        this.server.sendStream(new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        var out = new ByteArrayOutputStream();
+        assertNull(this.client.readStreamOrObject(out));
+        assertArrayEquals(new byte[]{1, 2, 3}, out.toByteArray());
+    }
+}
@@ -0,0 +1,171 @@
+package smolrx;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import smolrx.jobs.JobBuilder;
+import smolrx.jobs.JobManager;
+import smolrx.jobs.JobManagerBuilder;
+import smolrx.jobs.JobType;
+import smolrx.msg.ClaimWork;
+import smolrx.msg.InspectResult;
+import smolrx.msg.JarRequest;
+import smolrx.msg.ProtocolConfig;
+import smolrx.msg.PushAck;
+import smolrx.msg.PushResult;
+import smolrx.msg.SignOff;
+import smolrx.msg.Termination;
+import smolrx.msg.WorkBatch;
+import smolrx.storage.ObjectStorage;
+
+class ServletTest {
+
+    /**
+     * Storage that fails unexpectedly, as with an UncheckedIOException, until it is mended.
+     */
+    private static final class BrokenStorage extends ObjectStorage {
+        volatile boolean broken = true;
+        final List<Long> stored = new CopyOnWriteArrayList<>();
+
+        @Override
+        public Object[] getResults(InspectResult iResult) {
+            return new Object[0];
+        }
+
+        @Override
+        public void putResult(PushResult pResult) {
+            if (this.broken) throw new IllegalStateException("disk on fire");
+            this.stored.add(pResult.getJobId());
+        }
+    }
+
+    private final BrokenStorage storage = new BrokenStorage();
+
+    private JobManager manager;
+    private Thread servlet;
+    private SecureChannel client;
+
+    @BeforeEach
+    void connect(@TempDir Path dir) throws Exception {
+        var jar = Files.write(dir.resolve("program.jar"), new byte[]{'P', 'K'});
+        var builder = new JobManagerBuilder().withKey("slog-key", JobType.SLOG).addJar(1, jar.toString());
+        for (long i = 0; i < 4; i++) {
+            builder.addJob(i, JobBuilder.newInstance(1, 1, JobType.SLOG).setJobData(i).build());
+        }
+        this.manager = builder.build();
+        try (var listener = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            var socket = new Socket(listener.getInetAddress(), listener.getLocalPort());
+            this.servlet = Thread.ofVirtual().start(new Servlet(listener.accept(), this.manager, this.storage, new SessionTickets()));
+            this.client = SecureChannel.openServerChannel(socket);
+        }
+        this.client.applyConfig(assertInstanceOf(ProtocolConfig.class, this.client.readObject()));
+    }
+
+    @AfterEach
+    void close() throws Exception {
+        this.client.close();
+        this.servlet.join(5_000);
+    }
+
+    @Test
+    @Timeout(value = 30, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void failingRequestIsAnsweredWithTermination() throws Exception {
+        var batch = assertInstanceOf(WorkBatch.class, this.client.request(new ClaimWork(0, 4, "slog-key")));
+        assertEquals(4, batch.getJobIDs().size());
+        long jobId = batch.getJobIDs().get(0);
+
+        var reply = assertInstanceOf(Termination.class, this.client.request(new PushResult(jobId, "slog-key", true).withAck()));
+        assertTrue(reply.getCause().contains("disk on fire"), reply.getCause());
+
+        // The session carries on, and later requests are still answered.
+        var replies = this.client.requestAll(List.of(
+                new PushResult(batch.getJobIDs().get(1), "slog-key", true).withAck(),
+                new ClaimWork(0, 4, "slog-key")));
+        assertInstanceOf(Termination.class, replies.get(0));
+        assertInstanceOf(WorkBatch.class, replies.get(1));
+
+        this.client.sendObject(new SignOff());
+        this.servlet.join(5_000);
+        assertEquals(false, this.servlet.isAlive());
+    }
+
+    @Test
+    void requestsInFlightAreRoutedToTheirReplies() throws Exception {
+        var replies = this.client.requestAll(List.of(
+                new ClaimWork(0, 1, "slog-key"),
+                new ClaimWork(0, 1, "no-such-key"),
+                new ClaimWork(0, 2, "slog-key")));
+        assertEquals(1, assertInstanceOf(WorkBatch.class, replies.get(0)).getJobIDs().size());
+        assertInstanceOf(Termination.class, replies.get(1));
+        assertEquals(2, assertInstanceOf(WorkBatch.class, replies.get(2)).getJobIDs().size());
+    }
+
+    @Test
+    @Timeout(value = 30, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void unexpectedFailureStillReleasesLeases() throws Exception {
+        var batch = assertInstanceOf(WorkBatch.class, this.client.request(new ClaimWork(0, 4, "slog-key")));
+        assertEquals(4, batch.getJobIDs().size());
+        assertEquals(List.of(), this.manager.claimWork(new ClaimWork(0, 4, "slog-key"), "other").getJobIDs());
+
+        // Not a ClientMessage: the servlet fails outside any request, and ends the session.
+        this.client.sendObject("hello");
+        this.servlet.join(5_000);
+        assertEquals(false, this.servlet.isAlive());
+        assertEquals(4, this.manager.claimWork(new ClaimWork(0, 4, "slog-key"), "other").getJobIDs().size());
+    }
+
+    @Test
+    @Timeout(value = 30, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void jarIsServedByHashAfterTheBatchFinishedElsewhere() throws Exception {
+        var batch = assertInstanceOf(WorkBatch.class, this.client.request(new ClaimWork(0, 4, "slog-key")));
+        var hash = batch.getProgramHashes().get(1L);
+        for (long jobId : batch.getJobIDs()) this.manager.registerJobResult(new PushResult(jobId, "slog-key", true), "elsewhere");
+
+        this.client.sendObject(JarRequest.forProgram(1, hash, "slog-key"));
+        var jar = new ByteArrayOutputStream();
+        assertNull(this.client.readStreamOrObject(jar));
+        assertArrayEquals(new byte[]{'P', 'K'}, jar.toByteArray());
+
+        // A hash the server never sent does not open the jar.
+        this.client.sendObject(JarRequest.forProgram(1, "00" + hash.substring(2), "slog-key"));
+        var refusal = assertInstanceOf(Termination.class, this.client.readStreamOrObject(new ByteArrayOutputStream()));
+        assertTrue(refusal.getCause().contains("hash"), refusal.getCause());
+    }
+
+    @Test
+    @Timeout(value = 30, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void pushAskingForAnAckIsAnsweredOnceStored() throws Exception {
+        this.storage.broken = false;
+        var batch = assertInstanceOf(WorkBatch.class, this.client.request(new ClaimWork(0, 4, "slog-key")));
+        long jobId = batch.getJobIDs().get(0);
+
+        var ack = assertInstanceOf(PushAck.class, this.client.request(new PushResult(jobId, "slog-key", true).withAck()));
+        assertEquals(1, ack.getStored());
+        assertEquals(List.of(jobId), this.storage.stored);
+
+        // A push without an ack gets no reply, so it cannot be a request; it is posted instead.
+        var unanswered = new PushResult(batch.getJobIDs().get(1), "slog-key", true);
+        assertThrows(IllegalArgumentException.class, () -> this.client.request(unanswered));
+        this.client.post(unanswered);
+        while (this.storage.stored.size() < 2) Thread.sleep(10);
+    }
+}
@@ -0,0 +1,86 @@
+package smolrx;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+
+import smolrx.msg.BulkInputs;
+import smolrx.msg.BulkPush;
+import smolrx.msg.InputRequest;
+import smolrx.msg.JobRequest;
+import smolrx.msg.SignOff;
+
+/**
+ * Compare per-message serialization streams with session streams: bytes on the wire, and CPU time per message on each end, over loopback.
+ * Usage: java smolrx.SessionStreamBench [messages]
+ */
+public class SessionStreamBench {
+
+    private static final int WARMUP = 2000;
+
+    public static void main(String[] args) throws Exception {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+
+        var results = new HashMap<Long, Object>();
+        for (long i = 0; i < 100; i++) results.put(i, i % 7 == 0);
+        var inputs = new HashMap<Long, Object>();
+        for (long i = 0; i < 100; i++) inputs.put(i, i * 31);
+
+        Object[][] cases = {
+            {"SignOff", new SignOff()},
+            {"JobRequest", new JobRequest(0, 100, "slog-key")},
+            {"InputRequest[10]", new InputRequest("slog-key", 0, 10, new ArrayList<>())},
+            {"BulkInputs[100]", new BulkInputs(inputs, 0)},
+            {"BulkPush[100]", new BulkPush(results, "slog-key")},
+        };
+
+        System.out.println("Compression\tMessage\t\tStreams\t\twire (B/msg)\tsend CPU (us/msg)\tread CPU (us/msg)");
+        for (var policy : new CompressionPolicy[]{CompressionPolicy.NONE, CompressionPolicy.DEFAULT}) {
+            for (var c : cases) {
+                for (boolean session : new boolean[]{false, true}) {
+                    measure(c[1], policy, session, WARMUP);
+                    var r = measure(c[1], policy, session, messages);
+                    System.out.printf("%s\t%s\t%s\t%.0f\t\t%.2f\t\t\t%.2f%n", policy.getCodec(), c[0], session ? "session" : "per-message",
+                        (double) r[0] / messages, r[1] / 1e3 / messages, r[2] / 1e3 / messages);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return {bytes written by sender, sender CPU nanos, reader CPU nanos}
+     */
+    private static long[] measure(Object message, CompressionPolicy policy, boolean session, int messages) throws Exception {
+        try (var serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            var reader = CompletableFuture.supplyAsync(() -> {
+                try (var conn = serverSocket.accept(); var channel = SecureChannel.openClientChannel(conn)) {
+                    long c0 = cpuTime();
+                    for (int i = 0; i < messages; i++) channel.readObject();
+                    long c1 = cpuTime();
+                    channel.sendObject("done");
+                    return c1 - c0;
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+
+            try (var socket = new CountingSocket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort())) {
+                var channel = SecureChannel.openServerChannel(socket, HandshakeMode.X25519);
+                channel.setCompressionPolicy(policy);
+                channel.setSessionStreams(session);
+                long w0 = socket.written(), c0 = cpuTime();
+                for (int i = 0; i < messages; i++) channel.sendObject(message);
+                long c1 = cpuTime(), w1 = socket.written();
+                channel.readObject();
+                return new long[]{w1 - w0, c1 - c0, reader.get()};
+            }
+        }
+    }
+
+    private static long cpuTime() {
+        return ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime();
+    }
+}
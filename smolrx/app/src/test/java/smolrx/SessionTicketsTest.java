@@ -0,0 +1,115 @@
+package smolrx;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import smolrx.msg.ProtocolConfig;
+
+class SessionTicketsTest {
+
+    private static byte[] secret(int seed) {
+        var secret = new byte[32];
+        for (int i = 0; i < secret.length; i++) secret[i] = (byte) (seed + i);
+        return secret;
+    }
+
+    @Test
+    void lifetimeMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new SessionTickets(0));
+    }
+
+    @Test
+    void ticketRedeemsToItsSecret() throws Exception {
+        var tickets = new SessionTickets();
+        assertArrayEquals(secret(1), tickets.redeem(tickets.issue(secret(1))));
+    }
+
+    @Test
+    void tamperedTicketIsRejected() throws Exception {
+        var tickets = new SessionTickets();
+        var ticket = tickets.issue(secret(1));
+        for (int i = 0; i < ticket.length; i++) {
+            var tampered = ticket.clone();
+            tampered[i] ^= 1;
+            assertNull(tickets.redeem(tampered), "byte " + i);
+        }
+        assertNull(tickets.redeem(new byte[3]));
+        // Another issuer's key does not open it either.
+        assertNull(new SessionTickets().redeem(ticket));
+    }
+
+    @Test
+    void ticketOutlivesOneRotationButNotTwo() throws Exception {
+        var tickets = new SessionTickets();
+        var ticket = tickets.issue(secret(1));
+        tickets.rotateKey();
+        assertArrayEquals(secret(1), tickets.redeem(ticket));
+        tickets.rotateKey();
+        assertNull(tickets.redeem(ticket));
+    }
+
+    @Test
+    void expiredTicketIsRejected() throws Exception {
+        var tickets = new SessionTickets(1);
+        var ticket = tickets.issue(secret(1));
+        Thread.sleep(5);
+        assertNull(tickets.redeem(ticket));
+    }
+
+    /**
+     * Connect to a server that hands out a ticket on every channel, and report whether each channel was resumed.
+     */
+    private static List<Boolean> connect(SessionTickets tickets, Runnable... beforeEach) throws Exception {
+        var resumed = new ArrayList<Boolean>();
+        try (var listener = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+             var accepting = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (var before : beforeEach) {
+                before.run();
+                var served = accepting.submit(() -> {
+                    try (var channel = SecureChannel.openClientChannel(listener.accept(), tickets)) {
+                        channel.sendObject(new ProtocolConfig(0, 0, 0).withSessionTicket(tickets.issue(channel.resumptionSecret()), tickets.getLifetime()));
+                        return channel.readObject();
+                    }
+                });
+                try (var channel = SecureChannel.openServerChannel(new Socket(listener.getInetAddress(), listener.getLocalPort()))) {
+                    channel.applyConfig((ProtocolConfig) channel.readObject());
+                    channel.sendObject("bye");
+                    resumed.add(channel.isResumed());
+                }
+                assertEquals("bye", served.get());
+            }
+        }
+        return resumed;
+    }
+
+    @Test
+    @Timeout(30)
+    void laterChannelsResumeWithTheirTicket() throws Exception {
+        Runnable nothing = () -> {};
+        assertEquals(List.of(false, true, true), connect(new SessionTickets(), nothing, nothing, nothing));
+    }
+
+    @Test
+    @Timeout(30)
+    void retiredTicketFallsBackToAFullHandshake() throws Exception {
+        var tickets = new SessionTickets();
+        Runnable nothing = () -> {};
+        Runnable retire = () -> {
+            tickets.rotateKey();
+            tickets.rotateKey();
+        };
+        assertEquals(List.of(false, false, true), connect(tickets, nothing, retire, nothing));
+    }
+}
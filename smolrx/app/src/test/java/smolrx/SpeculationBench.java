@@ -0,0 +1,96 @@
+package smolrx;
+
+import java.util.HashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import smolrx.jobs.JobBuilder;
+import smolrx.jobs.JobManager;
+import smolrx.jobs.JobManagerBuilder;
+import smolrx.jobs.JobType;
+import smolrx.msg.BulkPush;
+import smolrx.msg.ClaimWork;
+
+/**
+ * Measure the makespan of a wave of slog jobs followed by a collect job that depends on all of them, with and without speculative re-execution,
+ * when a few workers stall. Workers are threads that claim batches of slog jobs, sleep for a while as if running them, and push their results;
+ * stalled workers claim one batch, then push it only after a long pause. The makespan is the time until the collect job can be claimed.
+ * Usage: java smolrx.SpeculationBench [jobs] [workers] [stalled] [stall ms]
+ */
+public class SpeculationBench {
+
+    private static final int BATCH = 10;
+
+    public static void main(String[] args) throws Exception {
+        int jobs = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int workers = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int stalled = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        long stall = args.length > 3 ? Long.parseLong(args[3]) : 3000;
+
+        System.out.println("Speculation\tmakespan (ms)\tre-issued\tdropped");
+        for (int round = 0; round < 3; round++) {
+            for (boolean speculate : new boolean[]{false, true}) {
+                var r = run(jobs, workers, stalled, stall, speculate);
+                System.out.printf("%s\t\t%d\t\t%d\t\t%d%n", speculate ? "p95" : "off", r[0], r[1], r[2]);
+            }
+        }
+    }
+
+    /**
+     * @return {makespan in ms, slog jobs claimed more than once, results dropped}
+     */
+    private static long[] run(int jobs, int workers, int stalled, long stall, boolean speculate) throws Exception {
+        var builder = new JobManagerBuilder().withKey("slog-key", JobType.SLOG).withKey("collect-key", JobType.COLLECT)
+                .setBulkReqLimit(BATCH).setBulkPushLimit(BATCH).setLeaseDuration(60_000).addJar(1, "./testjars/bfcarm.jar");
+        if (speculate) builder.enableSpeculation(0.95);
+        var collect = JobBuilder.newInstance(1, 1, JobType.COLLECT).setProperty("Xclass", "bfcarm.Count");
+        for (long i = 0; i < jobs; i++) {
+            builder.addJob(i, JobBuilder.newInstance(1, 1, JobType.SLOG).setJobData(i).setProperty("Xclass", "bfcarm.Test").build());
+            collect.addPrerequisiteJob(i);
+        }
+        builder.addJob(jobs, collect.build());
+        JobManager manager = builder.build();
+
+        var done = new AtomicBoolean();
+        var claims = new int[jobs];
+        var dropped = new long[workers];
+        var threads = new Thread[workers];
+        long t0 = System.nanoTime();
+        for (int w = 0; w < workers; w++) {
+            int worker = w;
+            boolean stalls = w < stalled;
+            threads[w] = Thread.ofPlatform().start(() -> {
+                var holder = "worker-" + worker;
+                try {
+                    while (!done.get()) {
+                        var batch = manager.claimWork(new ClaimWork(0, BATCH, "slog-key"), holder).getJobIDs();
+                        if (batch.isEmpty()) {
+                            Thread.sleep(5);
+                            continue;
+                        }
+                        synchronized (claims) {
+                            for (long id : batch) claims[(int) id] += 1;
+                        }
+                        Thread.sleep(stalls ? stall : 10 + ThreadLocalRandom.current().nextInt(10));
+                        var results = new HashMap<Long, Object>();
+                        for (long id : batch) results.put(id, true);
+                        dropped[worker] += manager.registerJobResults(new BulkPush(results, "slog-key"), holder).size();
+                        if (stalls) break;
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+        while (manager.claimWork(new ClaimWork(0, 1, "collect-key"), "collector").getJobIDs().isEmpty()) Thread.sleep(1);
+        long makespan = (System.nanoTime() - t0) / 1_000_000;
+        done.set(true);
+        for (var thread : threads) thread.join();
+
+        long reissued = 0;
+        for (int c : claims) if (c > 1) reissued += 1;
+        long drops = 0;
+        for (long d : dropped) drops += d;
+        return new long[]{makespan, reissued, drops};
+    }
+}
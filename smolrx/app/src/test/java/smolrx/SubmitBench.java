@@ -0,0 +1,80 @@
+package smolrx;
+
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import smolrx.jobs.JobBatch;
+import smolrx.jobs.JobBuilder;
+import smolrx.jobs.JobManager;
+import smolrx.jobs.JobManagerBuilder;
+import smolrx.jobs.JobType;
+import smolrx.msg.BulkPush;
+import smolrx.msg.ClaimWork;
+
+/**
+ * Measure submitting batches of jobs to a running manager while a worker thread claims jobs in batches of 100 and pushes their results, as servlets do:
+ * the rate at which jobs are submitted, and the worker's mean and longest time per claim and push, without and with submissions going on.
+ * Each batch has slog jobs with an int input, and one collect job that depends on all of them.
+ * Usage: java smolrx.SubmitBench [batches] [batch size]
+ */
+public class SubmitBench {
+
+    private static final int CLAIM = 100;
+
+    public static void main(String[] args) throws Exception {
+        int batches = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+
+        System.out.println("Submitting\tsubmit (jobs/s)\tclaim+push mean (us)\tclaim+push max (ms)");
+        for (boolean submitting : new boolean[]{false, true}) {
+            var builder = new JobManagerBuilder().allowAnySlogger().setBulkReqLimit(CLAIM).setBulkPushLimit(CLAIM).addJar(1, "./testjars/bfcarm.jar");
+            builder.addJobFamily(0, 10_000_000, JobBuilder.newInstance(1, 1, JobType.SLOG).build(), id -> (int) id);
+            JobManager manager = builder.build();
+
+            var stop = new AtomicBoolean();
+            long[] worked = new long[3]; // rounds, total nanos, max nanos
+            var worker = new Thread(() -> {
+                try {
+                    while (!stop.get()) {
+                        long t0 = System.nanoTime();
+                        var batch = manager.claimWork(new ClaimWork(0, CLAIM, "slog-key"), "worker");
+                        var results = new HashMap<Long, Object>();
+                        for (long id : batch.getJobIDs()) results.put(id, true);
+                        manager.registerJobResults(new BulkPush(results, "slog-key"), "worker");
+                        long t = System.nanoTime() - t0;
+                        worked[0] += 1;
+                        worked[1] += t;
+                        worked[2] = Math.max(worked[2], t);
+                    }
+                } catch (RXException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            worker.start();
+            Thread.sleep(1000);
+            long t0 = System.nanoTime();
+            int submitted = 0;
+            for (int b = 0; b < batches; b++) {
+                long base = 100_000_000L + (long) b * (size + 1);
+                var batch = new JobBatch();
+                var collect = JobBuilder.newInstance(1, 1, JobType.COLLECT);
+                for (long i = 1; i <= size; i++) {
+                    collect.addPrerequisiteJob(base + i);
+                    batch.addJob(base + i, JobBuilder.newInstance(2, 1, JobType.SLOG).setJobData((int) i).build());
+                }
+                batch.addJob(base, collect.build());
+                if (submitting) {
+                    submitted += manager.submit(batch);
+                } else {
+                    submitted += batch.size();
+                }
+            }
+            long t1 = System.nanoTime();
+            if (!submitting) Thread.sleep(Math.max(1000, (t1 - t0) / 1_000_000));
+            stop.set(true);
+            worker.join();
+            System.out.printf("%s\t\t%s\t\t%.1f\t\t\t%.2f%n", submitting ? "yes" : "no",
+                submitting ? String.format("%.0f", submitted / ((t1 - t0) / 1e9)) : "-", worked[1] / 1e3 / worked[0], worked[2] / 1e6);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package smolrx.jobs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class ClaimSizerTest {
+
+    /**
+     * Claims are sized to 100 ms of each client's work.
+     */
+    private final ClaimSizer sizer = new ClaimSizer(100);
+
+    /**
+     * Claim jobs for a client at a time, and have all their results come in after the given time.
+     */
+    private void work(Object holder, long leasedAt, int jobs, long millis) {
+        this.sizer.claimed(holder, leasedAt, jobs, 0, 0);
+        for (int i = 0; i < jobs; i++) this.sizer.completed(holder, leasedAt, leasedAt + millis);
+    }
+
+    @Test
+    void unknownClientGetsTheLimit() {
+        assertEquals(1000, this.sizer.size("anon", 1000));
+        this.sizer.hello("blank", 0, 0, 0);
+        assertEquals(1000, this.sizer.size("blank", 1000));
+    }
+
+    @Test
+    void clientWithoutARateGetsAJobPerCore() {
+        this.sizer.hello("big", 64, 0, 0);
+        assertEquals(64, this.sizer.size("big", 1000));
+        assertEquals(10, this.sizer.size("big", 10));
+    }
+
+    @Test
+    void advertisedRateSizesTheFirstClaims() {
+        this.sizer.hello("adv", 4, 0, 50);
+        assertEquals(5, this.sizer.size("adv", 1000));
+    }
+
+    @Test
+    void measuredRateSizesLaterClaims() {
+        this.sizer.hello("small", 1, 0, 50);
+        // 10 jobs in 100 ms: 100 jobs/s, which replaces the advertised rate.
+        this.work("small", 1000, 10, 100);
+        assertEquals(10, this.sizer.size("small", 1000));
+        // A slower claim moves the average down by its weight.
+        this.work("small", 2000, 10, 1000);
+        assertEquals(7, this.sizer.size("small", 1000));
+    }
+
+    @Test
+    void claimIsMeasuredOnlyOnceAllItsResultsAreIn() {
+        this.sizer.hello("small", 1, 0, 0);
+        this.sizer.claimed("small", 0, 10, 0, 0);
+        for (int i = 0; i < 9; i++) this.sizer.completed("small", 0, 50);
+        assertEquals(1, this.sizer.size("small", 1000));
+        this.sizer.completed("small", 0, 50);
+        assertEquals(20, this.sizer.size("small", 1000));
+    }
+
+    @Test
+    void rateOfOtherClientsSizesNewOnesByCores() {
+        this.sizer.hello("small", 1, 0, 0);
+        this.work("small", 0, 10, 100);
+        this.sizer.hello("quad", 4, 0, 0);
+        assertEquals(40, this.sizer.size("quad", 1000));
+    }
+
+    @Test
+    void claimsAreKeptToAQuarterOfFreeHeap() {
+        this.sizer.hello("tight", 64, 40_000, 0);
+        // Stored inputs of 1000 bytes each.
+        this.sizer.claimed("other", 0, 10, 10_000, 10);
+        assertEquals(10, this.sizer.size("tight", 1000));
+    }
+
+    @Test
+    void forgottenClientGetsTheLimitAgain() {
+        this.sizer.hello("small", 1, 0, 0);
+        this.work("small", 0, 10, 100);
+        this.sizer.forget("small");
+        assertEquals(1000, this.sizer.size("small", 1000));
+    }
+}
@@ -0,0 +1,139 @@
+package smolrx.jobs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import smolrx.RXException;
+import smolrx.msg.ClaimWork;
+import smolrx.msg.InputRequest;
+import smolrx.msg.PushResult;
+
+class JobFamilyTest {
+
+    private String jar;
+
+    @BeforeEach
+    void writeJar(@TempDir Path dir) throws Exception {
+        this.jar = Files.write(dir.resolve("program.jar"), new byte[]{'P', 'K'}).toString();
+    }
+
+    private JobManagerBuilder builder() {
+        return new JobManagerBuilder().withKey("slog-key", JobType.SLOG).withKey("collect-key", JobType.COLLECT)
+                .addJar(1, this.jar).setBulkReqLimit(100);
+    }
+
+    private static List<Long> range(long start, long end) {
+        return LongStream.range(start, end).boxed().toList();
+    }
+
+    private static List<Long> claim(JobManager manager, String key, String holder) throws RXException {
+        return manager.claimWork(new ClaimWork(0, 100, key), holder).getJobIDs();
+    }
+
+    @Test
+    void familyJobsAreListedInOrderOfPriority() throws Exception {
+        var manager = this.builder()
+                .addJob(1, JobBuilder.newInstance(4, 1, JobType.SLOG).setJobData("one").build())
+                .addJob(2, JobBuilder.newInstance(6, 1, JobType.SLOG).setJobData("two").build())
+                .addJobFamily(100, 110, JobBuilder.newInstance(5, 1, JobType.SLOG).build(), id -> "in" + id)
+                .build();
+        var batch = manager.claimWork(new ClaimWork(0, 100, "slog-key"), "h1");
+        var expected = new ArrayList<Long>();
+        expected.add(1L);
+        expected.addAll(range(100, 110));
+        expected.add(2L);
+        assertEquals(expected, batch.getJobIDs());
+        assertEquals("in103", batch.getInputs().get(103L));
+        assertEquals("one", batch.getInputs().get(1L));
+        // Jobs are added to the table only as they are reached.
+        assertTrue(manager.jobs.contains(109));
+    }
+
+    @Test
+    void familyJobsAreAddedWhenNamed() throws Exception {
+        var manager = this.builder().addJobFamily(0, 10_000_000, JobBuilder.newInstance(1, 1, JobType.SLOG).build(), id -> id * 2).build();
+        var inputs = manager.getJobInputs(new InputRequest("slog-key", 5_000_000, 5_000_010, new ArrayList<>())).getInputs();
+        assertEquals(10, inputs.size());
+        assertEquals(10_000_006L, inputs.get(5_000_003L));
+        assertEquals(false, manager.jobs.contains(4_999_999));
+
+        manager.registerJobResult(new PushResult(7_000_000, "slog-key", 0), "h");
+        var redundant = assertThrows(RXException.class, () -> manager.registerJobResult(new PushResult(7_000_000, "slog-key", 0), "h"));
+        assertTrue(redundant.getMessage().contains("Redundant"));
+        var unknown = assertThrows(RXException.class, () -> manager.registerJobResult(new PushResult(10_000_000, "slog-key", 0), "h"));
+        assertTrue(unknown.getMessage().contains("No scheduled"));
+        assertEquals(range(0, 5), manager.claimWork(new ClaimWork(0, 5, "slog-key"), "h").getJobIDs());
+    }
+
+    @Test
+    void familyIsGatedOnItsPrerequisites() throws Exception {
+        var manager = this.builder()
+                .addJob(1, JobBuilder.newInstance(4, 1, JobType.SLOG).build())
+                .addJobFamily(100, 110, JobBuilder.newInstance(5, 1, JobType.SLOG).build(), null)
+                // Waits on an explicit job and on a job of the other family.
+                .addJobFamily(200, 205, JobBuilder.newInstance(5, 1, JobType.COLLECT).addPrerequisiteJob(1).addPrerequisiteJob(101).build(), null)
+                .build();
+        var gated = manager.family(200);
+        assertEquals(false, gated.isReady());
+        assertEquals(List.of(), claim(manager, "collect-key", "c"));
+
+        manager.registerJobResult(new PushResult(1, "slog-key", 0), "h");
+        assertEquals(false, gated.isReady());
+        assertEquals(List.of(), claim(manager, "collect-key", "c"));
+
+        manager.registerJobResult(new PushResult(101, "slog-key", 0), "h");
+        assertTrue(gated.isReady());
+        assertTrue(manager.familiesWaiting.isEmpty());
+        assertEquals(range(200, 205), claim(manager, "collect-key", "c"));
+        // None of the gated family's jobs were added while it waited.
+        assertEquals(false, manager.jobs.contains(205));
+    }
+
+    @Test
+    void relaxedFamilyIsNotGated() throws Exception {
+        var manager = this.builder()
+                .addJob(1, JobBuilder.newInstance(4, 1, JobType.SLOG).build())
+                .addJobFamily(200, 203, JobBuilder.newInstance(5, 1, JobType.COLLECT).addPrerequisiteJob(1).relax().build(), null)
+                .build();
+        assertTrue(manager.familiesWaiting.isEmpty());
+        assertEquals(range(200, 203), claim(manager, "collect-key", "c"));
+    }
+
+    @Test
+    void jobsWaitingOnAFamilyAreUnblockedByItsResults() throws Exception {
+        var collect = JobBuilder.newInstance(9, 1, JobType.COLLECT);
+        for (long i = 100; i < 110; i++) collect.addPrerequisiteJob(i);
+        var manager = this.builder()
+                .addJobFamily(100, 110, JobBuilder.newInstance(5, 1, JobType.SLOG).build(), null)
+                .addJob(300, collect.build())
+                .build();
+        for (long i = 100; i < 109; i++) manager.registerJobResult(new PushResult(i, "slog-key", 0), "h");
+        assertEquals(List.of(), claim(manager, "collect-key", "c"));
+        manager.registerJobResult(new PushResult(109, "slog-key", 0), "h");
+        assertEquals(List.of(300L), claim(manager, "collect-key", "c"));
+    }
+
+    @Test
+    void overlappingAndCyclicFamiliesAreRejected() {
+        var builder = this.builder().addJobFamily(100, 110, JobBuilder.newInstance(5, 1, JobType.SLOG).build(), null);
+        assertThrows(IllegalArgumentException.class, () -> builder.addJob(105, JobBuilder.newInstance(1, 1, JobType.SLOG).build()));
+        assertThrows(IllegalArgumentException.class, () -> builder.addJobFamily(108, 120, JobBuilder.newInstance(1, 1, JobType.SLOG).build(), null));
+        assertThrows(IllegalArgumentException.class, () -> builder.addJobFamily(95, 101, JobBuilder.newInstance(1, 1, JobType.SLOG).build(), null));
+
+        var cyclic = this.builder()
+                .addJobFamily(0, 10, JobBuilder.newInstance(1, 1, JobType.SLOG).addPrerequisiteJob(15).build(), null)
+                .addJobFamily(10, 20, JobBuilder.newInstance(1, 1, JobType.SLOG).addPrerequisiteJob(5).build(), null);
+        assertThrows(IllegalArgumentException.class, cyclic::build);
+    }
+}
@@ -0,0 +1,154 @@
+package smolrx.jobs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import smolrx.RXException;
+import smolrx.msg.ClaimWork;
+import smolrx.msg.JarRequest;
+import smolrx.msg.PushResult;
+
+class JobGraphTest {
+
+    private final JobTable jobs = new JobTable();
+    private final JobGraph graph = new JobGraph(this.jobs);
+
+    private static JobInfo job(JobType type, long... prerequisites) {
+        var builder = JobBuilder.newInstance(1, 1, type);
+        for (long prerequisite : prerequisites) builder.addPrerequisiteJob(prerequisite);
+        return builder.build();
+    }
+
+    /**
+     * Put a job in the table with its gate and add it to the graph, as the manager does.
+     */
+    private boolean add(long jobId, JobInfo info) {
+        this.jobs.put(jobId, info, 0, JobGraph.gate(info));
+        return this.graph.add(jobId, info, id -> this.jobs.info(id) != null);
+    }
+
+    /**
+     * Finish a job as its first result does.
+     */
+    private List<Long> finish(long jobId) {
+        this.jobs.finish(jobId);
+        return this.graph.finish(jobId);
+    }
+
+    @Test
+    void jobIsReadyOnceItsLastPrerequisiteFinishes() {
+        this.add(1, job(JobType.SLOG));
+        this.add(2, job(JobType.SLOG));
+        assertEquals(false, this.add(3, job(JobType.COLLECT, 1, 2)));
+        assertEquals(2, this.graph.remaining(3));
+
+        assertEquals(List.of(), this.finish(1));
+        assertEquals(false, this.graph.isReady(3));
+        assertEquals(List.of(3L), this.finish(2));
+        assertTrue(this.graph.isReady(3));
+        // Finishing a job again releases nothing.
+        assertEquals(List.of(), this.graph.finish(2));
+    }
+
+    @Test
+    void diamondUnblocksInOrder() {
+        this.add(1, job(JobType.SLOG));
+        this.add(2, job(JobType.SLOG, 1));
+        this.add(3, job(JobType.SLOG, 1));
+        this.add(4, job(JobType.COLLECT, 2, 3));
+        assertEquals(Set.of(2L, 3L), Set.copyOf(this.finish(1)));
+        assertEquals(List.of(), this.finish(2));
+        assertEquals(List.of(4L), this.finish(3));
+    }
+
+    @Test
+    void finishedAndUnknownPrerequisitesDoNotBlock() {
+        this.add(1, job(JobType.SLOG));
+        this.finish(1);
+        assertTrue(this.add(2, job(JobType.COLLECT, 1, 99)));
+        assertEquals(0, this.graph.remaining(2));
+    }
+
+    @Test
+    void relaxedJobIsNeverBlocked() {
+        this.add(1, job(JobType.SLOG));
+        var relaxed = JobBuilder.newInstance(1, 1, JobType.COLLECT).addPrerequisiteJob(1).relax().build();
+        assertEquals(0, JobGraph.gate(relaxed));
+        assertTrue(this.add(2, relaxed));
+    }
+
+    @Test
+    void forgottenJobIsNotReleasedAgain() {
+        this.add(1, job(JobType.SLOG));
+        this.add(2, job(JobType.COLLECT, 1));
+        this.graph.forget(2);
+        assertTrue(this.graph.isReady(2));
+    }
+
+    @Test
+    void concurrentFinishesReleaseADependentOnce() throws Exception {
+        int prerequisites = 1000;
+        var ids = new long[prerequisites];
+        for (int i = 0; i < prerequisites; i++) {
+            ids[i] = i + 1;
+            this.add(ids[i], job(JobType.SLOG));
+        }
+        this.add(5000, job(JobType.COLLECT, ids));
+        var released = ConcurrentHashMap.<Long>newKeySet();
+        var count = new AtomicInteger();
+        var start = new CountDownLatch(1);
+        var threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int first = t;
+            threads[t] = Thread.ofPlatform().start(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = first; i < prerequisites; i += threads.length) {
+                    for (long ready : this.finish(ids[i])) {
+                        released.add(ready);
+                        count.incrementAndGet();
+                    }
+                }
+            });
+        }
+        start.countDown();
+        for (var thread : threads) thread.join();
+        assertEquals(Set.of(5000L), released);
+        assertEquals(1, count.get());
+    }
+
+    @Test
+    void managerListsCollectJobsOnceTheirPrerequisitesHaveResults(@TempDir Path dir) throws Exception {
+        var jar = Files.write(dir.resolve("program.jar"), new byte[]{'P', 'K'}).toString();
+        var manager = new JobManagerBuilder().withKey("slog-key", JobType.SLOG).withKey("collect-key", JobType.COLLECT).addJar(1, jar)
+                .addJob(1, job(JobType.SLOG))
+                .addJob(2, job(JobType.SLOG))
+                .addJob(3, job(JobType.COLLECT, 1, 2))
+                .build();
+        var claim = new ClaimWork(0, 10, "collect-key");
+        assertEquals(List.of(), manager.claimWork(claim, "c").getJobIDs());
+        var early = assertThrows(RXException.class, () -> manager.fetchJobInfoPair(new JarRequest(3, "collect-key")));
+        assertTrue(early.getMessage().contains("pending"), early.getMessage());
+
+        manager.registerJobResult(new PushResult(1, "slog-key", 0), "s");
+        assertEquals(List.of(), manager.claimWork(claim, "c").getJobIDs());
+        manager.registerJobResult(new PushResult(2, "slog-key", 0), "s");
+        assertEquals(List.of(3L), manager.claimWork(claim, "c").getJobIDs());
+        assertEquals(1L, manager.fetchJobInfoPair(new JarRequest(3, "collect-key")).getKey());
+    }
+}
@@ -0,0 +1,45 @@
+package smolrx.jobs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class JobInfoTest {
+
+    @Test
+    void nullPropertyIsRejectedWhenSet() {
+        var builder = JobBuilder.newInstance(1, 1, JobType.SLOG);
+        var e = assertThrows(IllegalArgumentException.class, () -> builder.setProperty("Xclass", null));
+        assertTrue(e.getMessage().contains("Xclass"), e.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> builder.setProperty(null, "a.B"));
+        assertEquals(Map.of(), builder.build().getProperties());
+    }
+
+    @Test
+    void jobInfoSurvivesJavaSerialization() throws Exception {
+        var info = JobBuilder.newInstance(3, 2, JobType.COLLECT).setProperty("Xclass", "a.B").addPrerequisiteJob(5).addPrerequisiteJob(1)
+                .setJobData("input").build();
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new ObjectOutputStream(bytes)) {
+            out.writeObject(info);
+        }
+        try (var in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            var copy = assertInstanceOf(JobInfo.class, in.readObject());
+            assertEquals(Map.of("Xclass", "a.B"), copy.getProperties());
+            assertEquals(Set.of(1L, 5L), copy.getPrerequisiteJobs());
+            assertEquals("input", copy.jobData);
+            assertEquals(JobType.COLLECT, copy.getType());
+            assertEquals(3, copy.getPriority());
+        }
+    }
+}
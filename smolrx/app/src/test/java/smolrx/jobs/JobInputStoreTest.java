@@ -0,0 +1,169 @@
+package smolrx.jobs;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import smolrx.msg.ClaimWork;
+import smolrx.msg.EncodedPayload;
+import smolrx.msg.MessageCodec;
+import smolrx.msg.WorkBatch;
+
+class JobInputStoreTest {
+
+    /**
+     * Regions of 256 bytes, so that inputs reach their boundaries quickly.
+     */
+    private static final int REGION_BITS = 8;
+    private static final int REGION_SIZE = 1 << REGION_BITS;
+
+    /**
+     * Bytes an input takes in the store: its length, then its encoding.
+     */
+    private static int stored(Object input) throws IOException {
+        return Integer.BYTES + MessageCodec.encodePayload(input).length;
+    }
+
+    /**
+     * An input that takes exactly `size` bytes in the store.
+     */
+    private static byte[] sized(int size) throws IOException {
+        var input = new byte[size];
+        while (stored(input) > size) input = new byte[input.length - 1];
+        assertEquals(size, stored(input));
+        return input;
+    }
+
+    private static Object read(JobInputStore store, long reference) throws Exception {
+        return store.get(reference).decode();
+    }
+
+    @Test
+    void inputEndingOnARegionBoundaryStaysInItsRegion(@TempDir Path dir) throws Exception {
+        var store = new JobInputStore(dir.resolve("inputs.bin"), REGION_BITS);
+        var first = sized(100);
+        var last = sized(REGION_SIZE - 100);
+        assertEquals(1, store.append(first));
+        assertEquals(101, store.append(last));
+        // The region is full, so the next input starts the next one.
+        assertEquals(REGION_SIZE + 1, store.append("next"));
+
+        assertArrayEquals(first, (byte[]) read(store, 1));
+        assertArrayEquals(last, (byte[]) read(store, 101));
+        assertEquals("next", read(store, REGION_SIZE + 1));
+    }
+
+    @Test
+    void inputThatWouldStraddleABoundaryStartsTheNextRegion(@TempDir Path dir) throws Exception {
+        var store = new JobInputStore(dir.resolve("inputs.bin"), REGION_BITS);
+        var first = sized(100);
+        var straddling = sized(REGION_SIZE - 99);
+        assertEquals(1, store.append(first));
+        assertEquals(REGION_SIZE + 1, store.append(straddling));
+        // The rest of the first region stays unused.
+        assertEquals(REGION_SIZE + stored(straddling) + 1, store.append(7L));
+
+        assertArrayEquals(first, (byte[]) read(store, 1));
+        assertArrayEquals(straddling, (byte[]) read(store, REGION_SIZE + 1));
+        assertEquals(7L, read(store, REGION_SIZE + stored(straddling) + 1));
+    }
+
+    @Test
+    void earlierInputsAreReadAfterNewRegionsAreMapped(@TempDir Path dir) throws Exception {
+        var store = new JobInputStore(dir.resolve("inputs.bin"), REGION_BITS);
+        var references = new ArrayList<Long>();
+        for (int i = 0; i < 100; i++) {
+            references.add(store.append(new int[]{i, -i, i * 31}));
+            // A payload handed out earlier still reads the same once later regions are mapped.
+            var early = store.get(references.get(0));
+            assertArrayEquals(new int[]{0, 0, 0}, (int[]) early.decode());
+        }
+        assertTrue(references.getLast() > 4 * REGION_SIZE);
+        for (int i = 0; i < references.size(); i++) {
+            assertArrayEquals(new int[]{i, -i, i * 31}, (int[]) read(store, references.get(i)));
+        }
+    }
+
+    @Test
+    void inputLargerThanARegionIsRejected(@TempDir Path dir) throws Exception {
+        var store = new JobInputStore(dir.resolve("inputs.bin"), REGION_BITS);
+        assertThrows(IOException.class, () -> store.append(sized(REGION_SIZE + 1)));
+        // The store carries on, and a region-sized input still fits.
+        var full = sized(REGION_SIZE);
+        assertEquals(1, store.append(full));
+        assertArrayEquals(full, (byte[]) read(store, 1));
+    }
+
+    @Test
+    void unserializableInputIsRejected(@TempDir Path dir) throws Exception {
+        var store = new JobInputStore(dir.resolve("inputs.bin"), REGION_BITS);
+        assertThrows(IOException.class, () -> store.append(new Object()));
+        assertEquals(1, store.append("after"));
+    }
+
+    /**
+     * A manager keeping the inputs of four jobs in a store, with an input of each kind the codec writes differently.
+     */
+    private static JobManager manager(Path dir) throws Exception {
+        var jar = Files.write(dir.resolve("program.jar"), new byte[]{'P', 'K'});
+        return new JobManagerBuilder().withKey("slog-key", JobType.SLOG).addJar(1, jar.toString()).setInputStore(dir.resolve("inputs.bin"))
+                .addJob(1, JobBuilder.newInstance(1, 1, JobType.SLOG).setJobData(new int[]{1, -2, 3}).build())
+                .addJob(2, JobBuilder.newInstance(1, 1, JobType.SLOG).setJobData("two").build())
+                .addJob(3, JobBuilder.newInstance(1, 1, JobType.SLOG).setJobData(new ArrayList<>(List.of(3L, 4L))).build())
+                .addJob(4, JobBuilder.newInstance(1, 1, JobType.SLOG).build())
+                .build();
+    }
+
+    private static void assertInputs(Map<Long, Object> inputs) {
+        assertEquals(4, inputs.size());
+        assertArrayEquals(new int[]{1, -2, 3}, (int[]) inputs.get(1L));
+        assertEquals("two", inputs.get(2L));
+        assertEquals(List.of(3L, 4L), inputs.get(3L));
+        assertNull(inputs.get(4L));
+    }
+
+    @Test
+    void storedInputsRoundTripWithTheBinaryCodec(@TempDir Path dir) throws Exception {
+        var batch = manager(dir).claimWork(new ClaimWork(0, 4, "slog-key"), "client");
+        assertInstanceOf(EncodedPayload.class, batch.getInputs().get(1L));
+
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new ObjectOutputStream(bytes)) {
+            MessageCodec.write(out, batch);
+        }
+        try (var in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertInputs(assertInstanceOf(WorkBatch.class, MessageCodec.read(in)).getInputs());
+        }
+    }
+
+    @Test
+    void storedInputsRoundTripWithJavaSerialization(@TempDir Path dir) throws Exception {
+        var batch = manager(dir).claimWork(new ClaimWork(0, 4, "slog-key"), "client");
+        assertInstanceOf(EncodedPayload.class, batch.getInputs().get(2L));
+
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new ObjectOutputStream(bytes)) {
+            out.writeObject(batch);
+        }
+        try (var in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertInputs(assertInstanceOf(WorkBatch.class, in.readObject()).getInputs());
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package smolrx.jobs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import smolrx.RXException;
+import smolrx.msg.BulkPush;
+import smolrx.msg.ClaimWork;
+import smolrx.msg.PushResult;
+
+class JobJournalTest {
+
+    @TempDir
+    Path dir;
+
+    private static List<String> recovered(JobJournal journal) {
+        var counters = new ArrayList<String>();
+        journal.forEachRecovered((jobId, completions) -> counters.add(jobId + "=" + completions));
+        return counters;
+    }
+
+    private Set<String> files() throws Exception {
+        var names = new TreeSet<String>();
+        try (var files = Files.list(this.dir)) {
+            files.forEach(file -> names.add(file.getFileName().toString()));
+        }
+        return names;
+    }
+
+    @Test
+    void committedRecordsAreReplayed() throws Exception {
+        var journal = new JobJournal(this.dir);
+        journal.commit(journal.completed(new long[]{1, 2}, new int[]{1, 1}, 2));
+        var batch = new JobBatch().addJar(7, "./program.jar")
+                .addJob(100, JobBuilder.newInstance(7, 1, JobType.SLOG).setJobData("input").build());
+        journal.commit(journal.submitted(batch));
+        journal.commit(journal.completed(new long[]{2, 3, 4}, new int[]{2, 1, 0}, 2));
+
+        var reopened = new JobJournal(this.dir);
+        assertEquals(List.of("1=1", "2=1", "2=2", "3=1"), recovered(reopened));
+        assertEquals("./program.jar", reopened.recoveredJars.get(7L));
+        assertEquals("input", reopened.recoveredJobs.get(100L).jobData);
+    }
+
+    @Test
+    void tornRecordIsCutOff() throws Exception {
+        var journal = new JobJournal(this.dir);
+        journal.commit(journal.completed(new long[]{1}, new int[]{1}, 1));
+        var file = this.dir.resolve("journal-0");
+        long intact = Files.size(file);
+        // A frame that claims more than was written, as a crash mid-write leaves it.
+        Files.write(file, new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        var reopened = new JobJournal(this.dir);
+        assertEquals(List.of("1=1"), recovered(reopened));
+        assertEquals(intact, Files.size(file));
+        // Records appended after the cut are replayed after it.
+        reopened.commit(reopened.completed(new long[]{2}, new int[]{1}, 1));
+        assertEquals(List.of("1=1", "2=1"), recovered(new JobJournal(this.dir)));
+    }
+
+    @Test
+    void corruptRecordEndsTheJournal() throws Exception {
+        var journal = new JobJournal(this.dir);
+        journal.commit(journal.completed(new long[]{1}, new int[]{1}, 1));
+        long intact = Files.size(this.dir.resolve("journal-0"));
+        journal.commit(journal.completed(new long[]{2}, new int[]{1}, 1));
+        // Flip a byte of the second record's body, so its checksum no longer matches.
+        var bytes = Files.readAllBytes(this.dir.resolve("journal-0"));
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(this.dir.resolve("journal-0"), bytes);
+
+        assertEquals(List.of("1=1"), recovered(new JobJournal(this.dir)));
+        assertEquals(intact, Files.size(this.dir.resolve("journal-0")));
+    }
+
+    @Test
+    void snapshotReplacesEarlierGenerations() throws Exception {
+        var journal = new JobJournal(this.dir);
+        journal.commit(journal.completed(new long[]{1, 2}, new int[]{1, 1}, 2));
+        journal.snapshot(snapshot -> {
+            snapshot.jar(7, "./program.jar");
+            snapshot.completions(1, 1);
+            snapshot.completions(2, 1);
+        });
+        assertEquals(0, journal.sinceSnapshot());
+        journal.commit(journal.completed(new long[]{3}, new int[]{1}, 1));
+        assertEquals(Set.of("snapshot-1", "journal-1"), this.files());
+
+        var reopened = new JobJournal(this.dir);
+        assertEquals(List.of("1=1", "2=1", "3=1"), recovered(reopened));
+        assertEquals("./program.jar", reopened.recoveredJars.get(7L));
+    }
+
+    @Test
+    void commitOfAnEarlierRecordReturnsOnceSynced() throws Exception {
+        var journal = new JobJournal(this.dir);
+        long first = journal.completed(new long[]{1}, new int[]{1}, 1);
+        long second = journal.completed(new long[]{2}, new int[]{1}, 1);
+        // Syncing the later record syncs the earlier one with it.
+        journal.commit(second);
+        journal.commit(first);
+        journal.commit(0);
+        assertTrue(second > first);
+        assertEquals(List.of("1=1", "2=1"), recovered(new JobJournal(this.dir)));
+    }
+
+    /**
+     * A manager journaling to `dir`, with three SLOG jobs and a COLLECT job that waits on them.
+     */
+    private JobManager manager(Path jars) throws Exception {
+        var jar = Files.write(jars.resolve("program.jar"), new byte[]{'P', 'K'}).toString();
+        return new JobManagerBuilder().withKey("slog-key", JobType.SLOG).withKey("collect-key", JobType.COLLECT).addJar(1, jar)
+                .addJob(1, JobBuilder.newInstance(1, 1, JobType.SLOG).build())
+                .addJob(2, JobBuilder.newInstance(1, 1, JobType.SLOG).build())
+                .addJob(3, JobBuilder.newInstance(1, 1, JobType.SLOG).build())
+                .addJob(4, JobBuilder.newInstance(1, 1, JobType.COLLECT).addPrerequisiteJob(1).build())
+                .setJournal(this.dir)
+                .build();
+    }
+
+    @Test
+    void resultIsJournaledOnlyOnceStored(@TempDir Path jars) throws Exception {
+        var manager = this.manager(jars);
+        var push = new PushResult(1, "slog-key", 0);
+        var failed = assertThrows(RXException.class, () -> manager.registerJobResult(push, "a", jobIds -> {
+            throw new IOException("disk full");
+        }));
+        assertEquals("disk full", failed.getCause().getMessage());
+        assertEquals(List.of(), recovered(new JobJournal(this.dir)));
+        // The job is still pending, so its dependent stays blocked and the result can be pushed again.
+        assertEquals(List.of(), manager.claimWork(new ClaimWork(0, 10, "collect-key"), "c").getJobIDs());
+        var stored = new ArrayList<Long>();
+        assertTrue(manager.registerJobResult(push, "a", stored::addAll));
+        assertEquals(List.of(1L), stored);
+        assertEquals(List.of("1=1"), recovered(new JobJournal(this.dir)));
+        assertEquals(List.of(4L), manager.claimWork(new ClaimWork(0, 10, "collect-key"), "c").getJobIDs());
+    }
+
+    @Test
+    void resultIsNotCountedWhenStorageFailsUnexpectedly(@TempDir Path jars) throws Exception {
+        var manager = this.manager(jars);
+        var push = new PushResult(1, "slog-key", 0);
+        assertThrows(IllegalStateException.class, () -> manager.registerJobResult(push, "a", jobIds -> {
+            throw new IllegalStateException("disk on fire");
+        }));
+        assertEquals(List.of(), recovered(new JobJournal(this.dir)));
+        assertTrue(manager.registerJobResult(push, "a"));
+    }
+
+    @Test
+    void bulkPushStoresTheResultsCountedBeforeAFailingOne(@TempDir Path jars) throws Exception {
+        var manager = this.manager(jars);
+        manager.registerJobResult(new PushResult(2, "slog-key", 0), "a");
+        var results = new HashMap<Long, Object>();
+        results.put(1L, 0);
+        results.put(2L, 0);
+        results.put(3L, 0);
+        var stored = new ArrayList<Long>();
+        var redundant = assertThrows(RXException.class, () -> manager.registerJobResults(new BulkPush(results, "slog-key"), "b", stored::addAll));
+        assertEquals("Redundant result.", redundant.getMessage());
+        assertEquals(List.of(1L), stored);
+        assertEquals(List.of("2=1", "1=1"), recovered(new JobJournal(this.dir)));
+        // The job after the failing one was not counted.
+        assertTrue(manager.registerJobResult(new PushResult(3, "slog-key", 0), "b"));
+    }
+
+    @Test
+    void bulkPushThatFailsToStoreIsNotCounted(@TempDir Path jars) throws Exception {
+        var manager = this.manager(jars);
+        var results = new HashMap<Long, Object>();
+        results.put(1L, 0);
+        results.put(2L, 0);
+        var push = new BulkPush(results, "slog-key");
+        assertThrows(RXException.class, () -> manager.registerJobResults(push, "a", jobIds -> {
+            throw new IOException("disk full");
+        }));
+        assertEquals(List.of(), recovered(new JobJournal(this.dir)));
+        assertEquals(List.of(), manager.registerJobResults(push, "a"));
+        assertEquals(List.of("1=1", "2=1"), recovered(new JobJournal(this.dir)));
+    }
+}
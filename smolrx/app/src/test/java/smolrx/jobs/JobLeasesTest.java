@@ -0,0 +1,119 @@
+package smolrx.jobs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntSupplier;
+
+import org.junit.jupiter.api.Test;
+
+class JobLeasesTest {
+
+    private static final long DURATION = 1000;
+    private static final IntSupplier ONE = () -> 1;
+
+    /**
+     * What the listener heard, e.g. "full 1" or "freed 1 0".
+     */
+    private final List<String> heard = new ArrayList<>();
+
+    private final JobLeases leases = new JobLeases(DURATION, new JobLeases.Listener() {
+        @Override
+        public void full(long jobId) {
+            JobLeasesTest.this.heard.add("full " + jobId);
+        }
+
+        @Override
+        public void freed(long jobId, int live) {
+            JobLeasesTest.this.heard.add("freed " + jobId + " " + live);
+        }
+    });
+
+    @Test
+    void leasedJobIsHiddenUntilReleased() {
+        assertTrue(this.leases.tryLease(1, "A", ONE, 0));
+        assertEquals(List.of("full 1"), this.heard);
+        assertEquals(false, this.leases.tryLease(1, "B", ONE, 10));
+        assertEquals(false, this.leases.available(1, ONE, 10));
+
+        assertEquals(0, this.leases.release(1, "A"));
+        assertEquals(-1, this.leases.release(1, "A"));
+        assertTrue(this.leases.available(1, ONE, 20));
+        assertTrue(this.leases.tryLease(1, "B", ONE, 20));
+    }
+
+    @Test
+    void jobIsLeasedUpToItsCapacityOncePerHolder() {
+        IntSupplier two = () -> 2;
+        assertTrue(this.leases.tryLease(1, "A", two, 0));
+        assertEquals(false, this.leases.tryLease(1, "A", two, 0));
+        assertTrue(this.leases.tryLease(1, "B", two, 0));
+        assertEquals(false, this.leases.tryLease(1, "C", two, 0));
+    }
+
+    @Test
+    void leaseExpiresAfterItsDuration() {
+        this.leases.tryLease(1, "A", ONE, 0);
+        this.leases.expire(DURATION - 1);
+        assertEquals(false, this.leases.available(1, ONE, DURATION - 1));
+        this.leases.expire(DURATION);
+        assertTrue(this.heard.contains("freed 1 0"));
+        assertTrue(this.leases.tryLease(1, "B", ONE, DURATION));
+        // The expired holder's result no longer ends a lease.
+        assertEquals(-1, this.leases.release(1, "A"));
+    }
+
+    @Test
+    void expiredLeaseIsNotCountedBeforeItIsDropped() {
+        this.leases.tryLease(1, "A", ONE, 0);
+        assertTrue(this.leases.available(1, ONE, DURATION));
+        assertTrue(this.leases.tryLease(1, "B", ONE, DURATION));
+    }
+
+    @Test
+    void renewalExtendsAllLeasesOfTheHolder() {
+        this.leases.tryLease(1, "A", ONE, 0);
+        this.leases.tryLease(2, "A", ONE, 0);
+        this.leases.tryLease(3, "B", ONE, 0);
+        this.leases.renewAll("A", DURATION - 100);
+        this.leases.expire(DURATION);
+        assertEquals(false, this.leases.available(1, ONE, DURATION));
+        assertEquals(false, this.leases.available(2, ONE, DURATION));
+        assertTrue(this.leases.available(3, ONE, DURATION));
+        // Until the renewal runs out.
+        this.leases.expire(2 * DURATION - 100);
+        assertTrue(this.leases.available(1, ONE, 2 * DURATION - 100));
+    }
+
+    @Test
+    void disconnectReleasesAllLeasesOfTheHolder() {
+        for (long jobId = 0; jobId < 200; jobId++) this.leases.tryLease(jobId, "A", ONE, 0);
+        this.leases.tryLease(500, "B", ONE, 0);
+        assertEquals(200, this.leases.releaseAll("A"));
+        assertTrue(this.leases.available(150, ONE, 1));
+        assertEquals(false, this.leases.available(500, ONE, 1));
+    }
+
+    @Test
+    void stuckLeaseIsLeasedAgainOnce() {
+        this.leases.tryLease(1, "A", ONE, 0);
+        assertEquals(false, this.leases.tryLeaseAgain(1, "B", ONE, 50, 100));
+        assertEquals(false, this.leases.tryLeaseAgain(1, "A", ONE, 200, 100));
+        assertTrue(this.leases.tryLeaseAgain(1, "B", ONE, 200, 100));
+        // Now it has more leases than it allows.
+        assertEquals(false, this.leases.tryLeaseAgain(1, "C", ONE, 300, 100));
+    }
+
+    @Test
+    void retireEndsTheLeasesOnAJob() {
+        this.leases.tryLease(1, "A", ONE, 0);
+        this.leases.tryLeaseAgain(1, "B", ONE, 200, 100);
+        var retired = new boolean[1];
+        assertEquals(List.of("A", "B"), this.leases.retire(1, () -> retired[0] = true));
+        assertTrue(retired[0]);
+        assertEquals(-1, this.leases.release(1, "B"));
+        assertEquals(List.of(), this.leases.retire(2, () -> {}));
+    }
+}
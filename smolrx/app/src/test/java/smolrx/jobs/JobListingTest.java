@@ -0,0 +1,89 @@
+package smolrx.jobs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import smolrx.msg.ClaimWork;
+import smolrx.msg.JobRequest;
+import smolrx.msg.PushResult;
+
+class JobListingTest {
+
+    private JobManager manager;
+
+    /**
+     * Slog and collect jobs of mixed priorities, added out of order. Collect job 21 waits on slog job 11.
+     */
+    @BeforeEach
+    void build(@TempDir Path dir) throws Exception {
+        var jar = Files.write(dir.resolve("program.jar"), new byte[]{'P', 'K'});
+        this.manager = new JobManagerBuilder().withKey("slog-key", JobType.SLOG).withKey("collect-key", JobType.COLLECT).withKey("audit-key", JobType.AUDIT)
+                .addJar(1, jar.toString())
+                .addJob(5, JobBuilder.newInstance(3, 1, JobType.SLOG).build())
+                .addJob(22, JobBuilder.newInstance(2, 1, JobType.COLLECT).build())
+                .addJob(10, JobBuilder.newInstance(2, 1, JobType.SLOG).build())
+                .addJob(21, JobBuilder.newInstance(0, 1, JobType.COLLECT).addPrerequisiteJob(11).build())
+                .addJob(12, JobBuilder.newInstance(1, 1, JobType.SLOG).build())
+                .addJob(20, JobBuilder.newInstance(1, 1, JobType.COLLECT).build())
+                .addJob(11, JobBuilder.newInstance(1, 1, JobType.SLOG).build())
+                .build();
+    }
+
+    private List<Long> list(long minPriority, int limit, String key, Object holder) throws Exception {
+        return this.manager.listJobs(new JobRequest(minPriority, limit, key), holder).getJobIDs();
+    }
+
+    @Test
+    void jobsAreListedByPriorityThenJobId() throws Exception {
+        assertEquals(List.of(11L, 12L, 10L, 5L), this.list(0, 10, "slog-key", "a"));
+        assertEquals(List.of(20L, 22L), this.list(0, 10, "collect-key", "a"));
+    }
+
+    @Test
+    void auditListingMergesTypesByPriorityThenJobId() throws Exception {
+        assertEquals(List.of(21L, 11L, 12L, 20L, 10L, 22L, 5L), this.list(0, 10, "audit-key", null));
+        assertEquals(List.of(21L, 11L, 12L), this.list(0, 3, "audit-key", null));
+        // Leased jobs are still audited.
+        this.list(0, 10, "slog-key", "a");
+        assertEquals(List.of(21L, 11L, 12L, 20L, 10L, 22L, 5L), this.list(0, 10, "audit-key", null));
+    }
+
+    @Test
+    void jobsBelowTheMinimumPriorityAreNotListed() throws Exception {
+        assertEquals(List.of(11L, 12L, 20L, 10L, 22L, 5L), this.list(1, 10, "audit-key", null));
+        assertEquals(List.of(10L, 22L, 5L), this.list(2, 10, "audit-key", null));
+        assertEquals(List.of(10L, 5L), this.list(2, 10, "slog-key", "a"));
+        assertEquals(List.of(), this.list(4, 10, "slog-key", "a"));
+        // The jobs skipped above are still there for a listing from a lower priority.
+        assertEquals(List.of(11L, 12L), this.list(0, 10, "slog-key", "b"));
+    }
+
+    @Test
+    void leasedAndBlockedJobsAreSkipped() throws Exception {
+        assertEquals(List.of(11L, 12L), this.list(0, 2, "slog-key", "a"));
+        assertEquals(List.of(10L, 5L), this.list(0, 10, "slog-key", "b"));
+        assertEquals(List.of(), this.list(0, 10, "slog-key", "c"));
+
+        assertEquals(List.of(20L, 22L), this.list(0, 10, "collect-key", "c"));
+        assertEquals(List.of(), this.list(0, 10, "collect-key", "d"));
+
+        // Once its pre-requisite has a result, the blocked job is listed ahead of the rest.
+        this.manager.registerJobResult(new PushResult(11, "slog-key", "result"), "a");
+        assertEquals(List.of(21L), this.list(0, 10, "collect-key", "d"));
+    }
+
+    @Test
+    void claimsFollowTheSameOrder() throws Exception {
+        var claim = this.manager.claimWork(new ClaimWork(2, 10, "slog-key"), "a");
+        assertEquals(List.of(10L, 5L), claim.getJobIDs());
+        assertEquals(List.of(11L, 12L), this.manager.claimWork(new ClaimWork(0, 10, "slog-key"), "b").getJobIDs());
+        assertEquals(List.of(20L, 22L), this.manager.claimWork(new ClaimWork(0, 10, "collect-key"), "b").getJobIDs());
+    }
+}
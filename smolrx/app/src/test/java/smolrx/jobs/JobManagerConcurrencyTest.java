@@ -0,0 +1,101 @@
+package smolrx.jobs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import smolrx.RXException;
+import smolrx.msg.ClaimWork;
+import smolrx.msg.PushResult;
+
+/**
+ * Many servlets claiming and pushing at once, on virtual threads, as the Server runs them.
+ */
+@Timeout(60)
+class JobManagerConcurrencyTest {
+
+    private static final int JOBS = 5000;
+    private static final int CLIENTS = 16;
+
+    private JobManager manager;
+
+    @BeforeEach
+    void build(@TempDir Path dir) throws Exception {
+        var jar = Files.write(dir.resolve("program.jar"), new byte[]{'P', 'K'}).toString();
+        var builder = new JobManagerBuilder().withKey("slog-key", JobType.SLOG).withKey("collect-key", JobType.COLLECT)
+                .addJar(1, jar).setBulkReqLimit(50).setBulkPushLimit(50);
+        var collect = JobBuilder.newInstance(1, 1, JobType.COLLECT);
+        for (long i = 0; i < JOBS; i++) {
+            builder.addJob(i, JobBuilder.newInstance(1, 1, JobType.SLOG).setJobData(i).build());
+            collect.addPrerequisiteJob(i);
+        }
+        builder.addJob(JOBS, collect.build());
+        this.manager = builder.build();
+    }
+
+    @Test
+    void concurrentClaimsLeaseEachJobOnce() throws Exception {
+        var leased = new ConcurrentHashMap<Long, Integer>();
+        var start = new CountDownLatch(1);
+        var futures = new ArrayList<Future<?>>();
+        try (var clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < CLIENTS; c++) {
+                var holder = "client-" + c;
+                futures.add(clients.submit(() -> {
+                    start.await();
+                    while (true) {
+                        var batch = this.manager.claimWork(new ClaimWork(0, 50, "slog-key"), holder).getJobIDs();
+                        if (batch.isEmpty()) return null;
+                        for (long jobId : batch) leased.merge(jobId, 1, Integer::sum);
+                    }
+                }));
+            }
+            start.countDown();
+            for (var future : futures) future.get();
+        }
+        assertEquals(JOBS, leased.size());
+        assertTrue(leased.values().stream().allMatch(n -> n == 1));
+    }
+
+    @Test
+    void concurrentResultsAreCountedOnceAndReleaseTheCollectJob() throws Exception {
+        var accepted = new AtomicInteger();
+        var start = new CountDownLatch(1);
+        var futures = new ArrayList<Future<?>>();
+        try (var clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < CLIENTS; c++) {
+                var holder = "client-" + c;
+                futures.add(clients.submit(() -> {
+                    start.await();
+                    // Every client pushes a result for every job; exactly one per job is admitted.
+                    for (long jobId = 0; jobId < JOBS; jobId++) {
+                        try {
+                            if (this.manager.registerJobResult(new PushResult(jobId, "slog-key", holder), holder)) accepted.incrementAndGet();
+                        } catch (RXException e) {
+                            // Redundant: another client's result came first.
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (var future : futures) future.get();
+        }
+        assertEquals(JOBS, accepted.get());
+        assertEquals(List.of((long) JOBS), this.manager.claimWork(new ClaimWork(0, 10, "collect-key"), "collector").getJobIDs());
+    }
+}
@@ -0,0 +1,82 @@
+package smolrx.jobs;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ProgramCacheTest {
+
+    @TempDir
+    Path dir;
+
+    private String write(String name, String contents) throws Exception {
+        return Files.writeString(this.dir.resolve(name), contents).toString();
+    }
+
+    /**
+     * Replace a jar by moving a new file into place, as the cache asks.
+     */
+    private void replace(String jar, String contents) throws Exception {
+        var next = Files.writeString(this.dir.resolve("next.jar"), contents);
+        Files.move(next, Path.of(jar), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static byte[] bytes(ProgramArtifact artifact) {
+        var contents = artifact.contents();
+        var bytes = new byte[contents.remaining()];
+        contents.get(bytes);
+        return bytes;
+    }
+
+    @Test
+    void jarIsMappedAndHashedOnce() throws Exception {
+        var cache = new ProgramCache();
+        var jar = this.write("a.jar", "first");
+        var artifact = cache.get(1, jar);
+        assertSame(artifact, cache.get(1, jar));
+        assertArrayEquals("first".getBytes(), bytes(artifact));
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest("first".getBytes()), artifact.getHash());
+        assertSame(artifact, cache.getByHash(artifact.getHash()));
+    }
+
+    @Test
+    void programsWithTheSameJarShareItsHash() throws Exception {
+        var cache = new ProgramCache();
+        var first = cache.get(1, this.write("a.jar", "same"));
+        var second = cache.get(2, this.write("b.jar", "same"));
+        assertNotSame(first, second);
+        assertEquals(2, second.getProgramId());
+        assertEquals(first.getHashHex(), second.getHashHex());
+    }
+
+    @Test
+    void changedJarIsNotLookedAtBeforeTheRecheck() throws Exception {
+        var cache = new ProgramCache(Long.MAX_VALUE);
+        var jar = this.write("a.jar", "first");
+        var artifact = cache.get(1, jar);
+        this.replace(jar, "second, longer");
+        assertSame(artifact, cache.get(1, jar));
+    }
+
+    @Test
+    void changedJarIsMappedAgain() throws Exception {
+        var cache = new ProgramCache(0);
+        var jar = this.write("a.jar", "first");
+        var stale = cache.get(1, jar);
+        this.replace(jar, "second, longer");
+        var fresh = cache.get(1, jar);
+        assertNotSame(stale, fresh);
+        assertArrayEquals("second, longer".getBytes(), bytes(fresh));
+        assertEquals(null, cache.getByHash(stale.getHash()));
+        assertSame(fresh, cache.get(1, jar));
+    }
+}
@@ -0,0 +1,109 @@
+package smolrx.jobs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import smolrx.RXException;
+import smolrx.msg.BulkPush;
+import smolrx.msg.ClaimWork;
+import smolrx.msg.PushResult;
+
+class SpeculationTest {
+
+    @Test
+    void thresholdIsAPercentileOfRecentTimes() {
+        var speculation = new Speculation(0.9);
+        for (long millis = 1; millis < 16; millis++) speculation.record(JobType.SLOG, millis);
+        assertEquals(Long.MAX_VALUE, speculation.threshold(JobType.SLOG));
+        for (long millis = 16; millis <= 100; millis++) speculation.record(JobType.SLOG, millis);
+        assertEquals(90, speculation.threshold(JobType.SLOG));
+        assertEquals(Long.MAX_VALUE, speculation.threshold(JobType.COLLECT));
+        // Only the most recent times count.
+        for (int i = 0; i < 1000; i++) speculation.record(JobType.SLOG, 5);
+        assertEquals(5, speculation.threshold(JobType.SLOG));
+    }
+
+    @Test
+    void lateResultsAreDroppedOncePerHolder() {
+        var speculation = new Speculation(0.9);
+        speculation.reissued(7);
+        // Until the job is retired, any redundant result is taken for late.
+        assertTrue(speculation.isLate(7, "B"));
+        speculation.finished(7, List.of("B", "C"));
+        assertTrue(speculation.isLate(7, "B"));
+        assertEquals(false, speculation.isLate(7, "B"));
+        assertTrue(speculation.isLate(7, "C"));
+        assertEquals(false, speculation.isLate(7, "C"));
+    }
+
+    @Test
+    void finishedJobsAndDisconnectedHoldersAreForgotten() {
+        var speculation = new Speculation(0.9);
+        speculation.reissued(7);
+        speculation.finished(7, List.of());
+        assertEquals(false, speculation.isLate(7, "B"));
+
+        speculation.reissued(8);
+        speculation.finished(8, List.of("B"));
+        speculation.forget("B");
+        assertEquals(false, speculation.isLate(8, "B"));
+
+        // Jobs never re-issued are not tracked when they finish.
+        speculation.finished(9, List.of("B"));
+        assertEquals(false, speculation.isLate(9, "B"));
+    }
+
+    private static List<Long> push(JobManager manager, Object holder, List<Long> jobIds) throws RXException {
+        var results = new HashMap<Long, Object>();
+        for (long jobId : jobIds) results.put(jobId, 0);
+        return manager.registerJobResults(new BulkPush(results, "slog-key"), holder);
+    }
+
+    @Test
+    void stragglersAreReissuedAndTheFirstResultWins(@TempDir Path dir) throws Exception {
+        var jar = Files.write(dir.resolve("program.jar"), new byte[]{'P', 'K'}).toString();
+        var builder = new JobManagerBuilder().withKey("slog-key", JobType.SLOG).withKey("collect-key", JobType.COLLECT)
+                .addJar(1, jar).setBulkReqLimit(100).setBulkPushLimit(100).enableSpeculation(0.9);
+        var collect = JobBuilder.newInstance(1, 1, JobType.COLLECT);
+        for (long i = 0; i < 40; i++) {
+            builder.addJob(i, JobBuilder.newInstance(1, 1, JobType.SLOG).setJobData((int) i).build());
+            collect.addPrerequisiteJob(i);
+        }
+        builder.addJob(100, collect.build());
+        var manager = builder.build();
+
+        var fast = manager.claimWork(new ClaimWork(0, 10, "slog-key"), "A").getJobIDs();
+        var slow = manager.claimWork(new ClaimWork(0, 30, "slog-key"), "B").getJobIDs();
+        push(manager, "A", fast);
+        // Too few results yet to tell a straggler.
+        assertEquals(List.of(), manager.claimWork(new ClaimWork(0, 100, "slog-key"), "C").getJobIDs());
+        Thread.sleep(30);
+        push(manager, "B", slow.subList(0, 10));
+        var stuck = slow.subList(10, 30);
+        Thread.sleep(300);
+
+        var reissued = manager.claimWork(new ClaimWork(0, 100, "slog-key"), "C");
+        assertEquals(stuck, reissued.getJobIDs());
+        assertEquals(25, reissued.getInputs().get(25L));
+        // A straggling job is re-issued once.
+        assertEquals(List.of(), manager.claimWork(new ClaimWork(0, 100, "slog-key"), "D").getJobIDs());
+
+        assertEquals(List.of(), push(manager, "C", reissued.getJobIDs()));
+        assertEquals(List.of(100L), manager.claimWork(new ClaimWork(0, 100, "collect-key"), "E").getJobIDs());
+        // The straggler's results come late, and are dropped without failing its push, once.
+        assertEquals(new HashSet<>(stuck), new HashSet<>(push(manager, "B", stuck)));
+        var again = assertThrows(RXException.class, () -> manager.registerJobResult(new PushResult(20, "slog-key", 0), "B"));
+        assertTrue(again.getMessage().contains("Redundant"));
+        assertEquals(false, manager.speculation.isLate(20, "B"));
+    }
+}
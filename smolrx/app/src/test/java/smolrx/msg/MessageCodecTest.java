@@ -0,0 +1,152 @@
+package smolrx.msg;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import smolrx.CompressionPolicy;
+import smolrx.jobs.JobBuilder;
+import smolrx.jobs.JobType;
+
+class MessageCodecTest {
+
+    /**
+     * Encode a message and decode it again, checking that the decoder reads exactly what was written.
+     */
+    private static <T> T roundTrip(T message) throws Exception {
+        assertTrue(MessageCodec.supports(message));
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new ObjectOutputStream(bytes)) {
+            MessageCodec.write(out, message);
+        }
+        try (var in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            @SuppressWarnings("unchecked")
+            var decoded = (T) assertInstanceOf(message.getClass(), MessageCodec.read(in));
+            assertEquals(-1, in.read());
+            return decoded;
+        }
+    }
+
+    private static HashMap<Long, Object> payloads() {
+        var payloads = new HashMap<Long, Object>();
+        payloads.put(1L, 7);
+        payloads.put(-3L, "text");
+        payloads.put(4L, null);
+        payloads.put(5L, Long.MIN_VALUE);
+        payloads.put(6L, 2.5);
+        payloads.put(7L, false);
+        payloads.put(8L, new int[]{1, -2});
+        payloads.put(9L, new long[]{-1, Long.MAX_VALUE});
+        payloads.put(10L, new double[]{1.5});
+        payloads.put(11L, new byte[]{1, 2, 3});
+        payloads.put(12L, new ArrayList<>(List.of(1, 2)));
+        return payloads;
+    }
+
+    private static void assertPayloads(Map<Long, Object> expected, Map<Long, Object> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        for (var entry : expected.entrySet()) {
+            var value = entry.getValue();
+            var decoded = actual.get(entry.getKey());
+            switch (value) {
+                case int[] ints -> assertArrayEquals(ints, (int[]) decoded);
+                case long[] longs -> assertArrayEquals(longs, (long[]) decoded);
+                case double[] doubles -> assertArrayEquals(doubles, (double[]) decoded);
+                case byte[] bytes -> assertArrayEquals(bytes, (byte[]) decoded);
+                case null -> assertNull(decoded);
+                default -> assertEquals(value, decoded);
+            }
+        }
+    }
+
+    @Test
+    void requestsRoundTrip() throws Exception {
+        var claim = roundTrip(new ClaimWork(-2, 50, "role"));
+        assertEquals(-2, claim.getMinPriority());
+        assertEquals(50, claim.getLimit());
+        assertEquals("role", claim.getRoleKey());
+        assertNull(roundTrip(new ClaimWork(0, 0, null)).getRoleKey());
+
+        var inputs = roundTrip(new InputRequest("role", 10, 20, new ArrayList<>(List.of(3L, Long.MAX_VALUE, Long.MIN_VALUE))));
+        assertEquals(10, inputs.getJobRangeStart());
+        assertEquals(20, inputs.getJobRangeEnd());
+        assertEquals(List.of(3L, Long.MAX_VALUE, Long.MIN_VALUE), inputs.getAdditionalJobs());
+
+        var hello = roundTrip(new ClientHello(64, 1L << 34, 1234.5));
+        assertEquals(64, hello.getCores());
+        assertEquals(1L << 34, hello.getFreeHeap());
+        assertEquals(1234.5, hello.getJobsPerSecond());
+        assertInstanceOf(SignOff.class, roundTrip(new SignOff()));
+    }
+
+    @Test
+    void payloadsRoundTrip() throws Exception {
+        var push = roundTrip(new BulkPush(payloads(), "role").withAck());
+        assertEquals("role", push.getRoleKey());
+        assertTrue(push.wantsAck());
+        var results = new HashMap<Long, Object>();
+        for (var entry : push.getResults()) results.put(entry.getKey(), entry.getValue());
+        assertPayloads(payloads(), results);
+
+        assertPayloads(payloads(), roundTrip(new BulkInputs(payloads(), 3)).getInputs());
+    }
+
+    @Test
+    void workBatchRoundTrips() throws Exception {
+        var info = JobBuilder.newInstance(5, 2, JobType.COLLECT).setProperty("Xclass", "a.B").addPrerequisiteJob(3).addPrerequisiteJob(1)
+                .setLink("http://example.org").relax().setRedundancyCount(3).build();
+        var batch = roundTrip(new WorkBatch(new ArrayList<>(List.of(3L, 1L)), new ArrayList<>(List.of(info, info)), payloads(),
+                new HashMap<>(Map.of(2L, "ab12"))));
+        assertEquals(List.of(3L, 1L), batch.getJobIDs());
+        var decoded = batch.getJobInfos().get(1);
+        assertEquals(JobType.COLLECT, decoded.getType());
+        assertEquals(5, decoded.getPriority());
+        assertEquals(2, decoded.getProgramId());
+        assertEquals(3, decoded.getRedundancyCount());
+        assertTrue(decoded.isRelaxed());
+        assertEquals(Set.of(1L, 3L), decoded.getPrerequisiteJobs());
+        assertEquals("a.B", decoded.getProperties().get("Xclass"));
+        assertEquals("http://example.org", decoded.getLink().orElseThrow());
+        assertPayloads(payloads(), batch.getInputs());
+        assertEquals(Map.of(2L, "ab12"), batch.getProgramHashes());
+
+        var empty = roundTrip(new WorkBatch(new ArrayList<>(), new ArrayList<>(), new HashMap<>(), new HashMap<>()));
+        assertTrue(empty.getJobIDs().isEmpty());
+    }
+
+    @Test
+    void repliesRoundTrip() throws Exception {
+        var config = roundTrip(new ProtocolConfig(1, 2, 3).withSessionTicket(new byte[]{4, 5}, 999)
+                .withCompressionPolicy(CompressionPolicy.DEFAULT).withSessionStreams(true).withBinaryCodec(true));
+        assertEquals(1, config.getBulkRequestLimit());
+        assertEquals(2, config.getBulkPushLimit());
+        assertEquals(3, config.getBulkInspectLimit());
+        assertEquals(999, config.getTicketLifetime());
+        assertTrue(config.getCompressionPolicy().isPresent());
+        assertTrue(config.usesSessionStreams());
+        assertTrue(config.usesBinaryCodec());
+
+        var abrupt = roundTrip(Termination.abrupt("boom"));
+        assertTrue(abrupt.isAbrupt());
+        assertEquals("boom", abrupt.getCause());
+        assertEquals(false, roundTrip(Termination.normal()).isAbrupt());
+
+        var ack = roundTrip(new PushAck(5, 3));
+        assertEquals(5, ack.getStored());
+        assertEquals(3, ack.getDropped());
+    }
+}